@@ -0,0 +1,329 @@
+package database;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import models.BudgetPlan;
+import models.Category;
+import models.DateCodec;
+import models.Goal;
+import models.Transaction;
+
+import static org.junit.Assert.*;
+
+/**
+ * 🧪 Các câu truy vấn của TransactionDAO / CategoryDAO / BudgetDAO / GoalDAO / MonthlyRollupDAO / DailySeriesDAO /
+ * TransactionPageDAO / TransactionSearchDAO
+ * trên database trong bộ nhớ, so với số tính tay từ dữ liệu mẫu.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DaoQueriesTest {
+
+    private DatabaseHelper dbHelper;
+    private int userId;
+    private long food;
+    private long rent;
+    private long salary;
+
+    @Before
+    public void setUp() {
+        dbHelper = TestDatabase.create();
+        userId = (int) TestDatabase.insertUser(dbHelper, "alice");
+        food = TestDatabase.insertCategory(dbHelper, "Test Food", "expense");
+        rent = TestDatabase.insertCategory(dbHelper, "Test Rent", "expense");
+        salary = TestDatabase.insertCategory(dbHelper, "Test Salary", "income");
+
+        TestDatabase.insertTransaction(dbHelper, userId, "expense", 70_000, food, day("2024-12-31"));
+        TestDatabase.insertTransaction(dbHelper, userId, "expense", 1_000_000, rent, day("2025-01-01"));
+        TestDatabase.insertTransaction(dbHelper, userId, "income", 5_000_000, salary, day("2025-01-01"));
+        TestDatabase.insertTransaction(dbHelper, userId, "expense", 100_000, food, day("2025-01-05"));
+        TestDatabase.insertTransaction(dbHelper, userId, "expense", 50_000, food, day("2025-01-20"));
+        TestDatabase.insertTransaction(dbHelper, userId, "expense", 30_000, food, day("2025-02-03"));
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    private static int day(String date) {
+        return DateCodec.parse(date);
+    }
+
+    // ==================== TransactionDAO ====================
+
+    @Test
+    public void expenseByCategories_batchMatchesSingleCategoryQueries() {
+        TransactionDAO dao = new TransactionDAO(dbHelper);
+        Map<Long, CategoryDAO.Usage> spent = dao.getExpenseByCategories(userId,
+                Arrays.asList(food, rent, salary), day("2025-01-01"), day("2025-01-31"));
+
+        assertEquals(2, spent.get(food).transactionCount);
+        assertEquals(150_000, spent.get(food).totalAmount);
+        assertEquals(1, spent.get(rent).transactionCount);
+        assertEquals(1_000_000, spent.get(rent).totalAmount);
+        // Thu nhập không phải chi tiêu
+        assertFalse(spent.containsKey(salary));
+
+        CategoryDAO.Usage single = dao.getExpenseByCategory(userId, food, day("2025-01-01"), day("2025-01-31"));
+        assertEquals(spent.get(food).totalAmount, single.totalAmount);
+        assertEquals(spent.get(food).transactionCount, single.transactionCount);
+        assertSame(CategoryDAO.NO_USAGE, dao.getExpenseByCategory(userId, salary, day("2025-01-01"), day("2025-01-31")));
+    }
+
+    @Test
+    public void expenseByCategories_splitsLargeIdListsIntoChunks() {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 10_000; id < 11_000; id++) {
+            ids.add(id);
+        }
+        ids.add(food);
+
+        Map<Long, CategoryDAO.Usage> spent = new TransactionDAO(dbHelper).getExpenseByCategories(userId, ids,
+                day("2024-01-01"), day("2025-12-31"));
+
+        assertEquals(1, spent.size());
+        assertEquals(250_000, spent.get(food).totalAmount);
+    }
+
+    @Test
+    public void monthlyExpenseByCategories_ordersMonthsAscending() {
+        Map<Long, LinkedHashMap<String, Long>> monthly = new TransactionDAO(dbHelper)
+                .getMonthlyExpenseByCategories(userId, Arrays.asList(food, rent), day("2024-12-01"));
+
+        LinkedHashMap<String, Long> foodMonths = monthly.get(food);
+        assertEquals(Arrays.asList("2024-12", "2025-01", "2025-02"), new ArrayList<>(foodMonths.keySet()));
+        assertEquals(Long.valueOf(70_000), foodMonths.get("2024-12"));
+        assertEquals(Long.valueOf(150_000), foodMonths.get("2025-01"));
+        assertEquals(Long.valueOf(30_000), foodMonths.get("2025-02"));
+        assertEquals(Long.valueOf(1_000_000), monthly.get(rent).get("2025-01"));
+    }
+
+    @Test
+    public void transactionsByCategory_newestFirstWithinRange() {
+        List<Transaction> transactions = new TransactionDAO(dbHelper)
+                .getTransactionsByCategory(userId, food, day("2025-01-01"), day("2025-02-28"));
+
+        assertEquals(3, transactions.size());
+        assertEquals("2025-02-03", transactions.get(0).getDate());
+        assertEquals("2025-01-20", transactions.get(1).getDate());
+        assertEquals("2025-01-05", transactions.get(2).getDate());
+        assertEquals("Test Food", transactions.get(0).getCategoryName());
+    }
+
+    @Test
+    public void columns_areSortedByDayFromStartDay() {
+        TransactionColumns columns = new TransactionDAO(dbHelper).getColumns(userId, day("2025-01-01"));
+
+        assertEquals(5, columns.size);
+        long total = 0;
+        int incomes = 0;
+        for (int i = 0; i < columns.size; i++) {
+            if (i > 0) assertTrue(columns.days[i - 1] <= columns.days[i]);
+            assertTrue(columns.days[i] >= day("2025-01-01"));
+            total += columns.amounts[i];
+            if (!columns.expense[i]) {
+                incomes++;
+                assertEquals(salary, columns.categories[i]);
+            }
+        }
+        assertEquals(6_180_000, total);
+        assertEquals(1, incomes);
+    }
+
+    @Test
+    public void transactionCount_getAndDelete() {
+        TransactionDAO dao = new TransactionDAO(dbHelper);
+        assertEquals(6, dao.getTransactionCount(userId));
+
+        long id = TestDatabase.insertTransaction(dbHelper, userId, "expense", 12_345, rent, day("2025-03-01"));
+        Transaction transaction = dao.getTransaction(id);
+        assertNotNull(transaction);
+        assertEquals(12_345, transaction.getAmount());
+        assertEquals("expense", transaction.getType());
+        assertEquals("Test Rent", transaction.getCategoryName());
+        assertEquals(7, dao.getTransactionCount(userId));
+
+        assertEquals(1, dao.deleteTransaction(id));
+        assertNull(dao.getTransaction(id));
+        assertEquals(6, dao.getTransactionCount(userId));
+        assertEquals(0, dao.deleteTransaction(id));
+    }
+
+    // ==================== CategoryDAO ====================
+
+    @Test
+    public void categoryUsage_groupedMatchesSingleCategory() {
+        CategoryDAO dao = new CategoryDAO(dbHelper);
+        Map<Long, CategoryDAO.Usage> usage = dao.getUsageByCategory(userId);
+
+        assertEquals(4, usage.get(food).transactionCount);
+        assertEquals(250_000, usage.get(food).totalAmount);
+        assertEquals(1, usage.get(salary).transactionCount);
+
+        CategoryDAO.Usage rentUsage = dao.getUsage(userId, rent);
+        assertEquals(1, rentUsage.transactionCount);
+        assertEquals(1_000_000, rentUsage.totalAmount);
+    }
+
+    @Test
+    public void categories_getOrCreateIsIdempotentAndListIsSortedByName() {
+        CategoryDAO dao = new CategoryDAO(dbHelper);
+        assertEquals(food, dao.getOrCreateCategoryId("Test Food", "expense", "🍜", "#FF0000"));
+        assertEquals("Test Food", dao.getCategory(food).getName());
+
+        List<Category> expenses = dao.getCategoriesByType("expense");
+        List<String> names = new ArrayList<>();
+        for (Category category : expenses) {
+            assertEquals("expense", category.getType());
+            names.add(category.getName());
+        }
+        List<String> sorted = new ArrayList<>(names);
+        Collections.sort(sorted);
+        assertEquals(sorted, names);
+        assertTrue(names.contains("Test Food"));
+        assertFalse(names.contains("Test Salary"));
+    }
+
+    // ==================== BudgetDAO ====================
+
+    @Test
+    public void budgetItems_readSpentFromProgress() {
+        long planId = TestDatabase.insertPlan(dbHelper, userId, "January", "2025-01-01", "2025-01-31");
+        TestDatabase.insertItem(dbHelper, planId, food, 200_000);
+        TestDatabase.insertItem(dbHelper, planId, rent, 900_000);
+
+        BudgetDAO dao = new BudgetDAO(dbHelper);
+        Map<Integer, BudgetPlan.CategoryBudget> items = itemsByCategory(dao.getItems(planId));
+        assertEquals(150_000, items.get((int) food).getSpentAmount(), 0);
+        assertEquals(2, items.get((int) food).getTransactionCount());
+        assertEquals(1_000_000, items.get((int) rent).getSpentAmount(), 0);
+
+        // Giao dịch mới trong khoảng của kế hoạch được cộng ngay (triggers budget_progress)
+        TestDatabase.insertTransaction(dbHelper, userId, "expense", 40_000, food, day("2025-01-25"));
+        items = itemsByCategory(dao.getItems(planId));
+        assertEquals(190_000, items.get((int) food).getSpentAmount(), 0);
+        assertEquals(3, items.get((int) food).getTransactionCount());
+
+        BudgetPlan.CategoryBudget foodItem = items.get((int) food);
+        assertTrue(dao.updateItemAmount(foodItem.getId(), 250_000));
+        assertEquals(250_000, itemsByCategory(dao.getItems(planId)).get((int) food).getAllocatedAmount(), 0);
+    }
+
+    @Test
+    public void budgetPlans_lookupIsScopedToOwner() {
+        long otherUser = TestDatabase.insertUser(dbHelper, "bob");
+        TestDatabase.insertPlan(dbHelper, userId, "Monthly", "2025-01-01", "2025-01-31");
+        long latest = TestDatabase.insertPlan(dbHelper, userId, "Monthly", "2025-02-01", "2025-02-28");
+
+        BudgetDAO dao = new BudgetDAO(dbHelper);
+        assertNotNull(dao.getPlan(userId, latest));
+        assertNull(dao.getPlan((int) otherUser, latest));
+        assertNull(dao.getLatestPlanByName((int) otherUser, "Monthly"));
+        assertEquals("2025-02-01", dao.getLatestPlanByName(userId, "Monthly").getStartDate());
+    }
+
+    private static Map<Integer, BudgetPlan.CategoryBudget> itemsByCategory(List<BudgetPlan.CategoryBudget> items) {
+        Map<Integer, BudgetPlan.CategoryBudget> byCategory = new HashMap<>();
+        for (BudgetPlan.CategoryBudget item : items) {
+            byCategory.put(item.getCategoryId(), item);
+        }
+        return byCategory;
+    }
+
+    // ==================== GoalDAO ====================
+
+    @Test
+    public void goals_countsAndFiltersByStatus() {
+        long otherUser = TestDatabase.insertUser(dbHelper, "bob");
+        long goalId = TestDatabase.insertGoal(dbHelper, userId, "Laptop", GoalDAO.STATUS_ACTIVE);
+        TestDatabase.insertGoal(dbHelper, userId, "Trip", GoalDAO.STATUS_ACTIVE);
+        TestDatabase.insertGoal(dbHelper, userId, "Phone", GoalDAO.STATUS_COMPLETED);
+        TestDatabase.insertGoal(dbHelper, otherUser, "Car", GoalDAO.STATUS_PAUSED);
+
+        GoalDAO dao = new GoalDAO(dbHelper);
+        GoalDAO.StatusCounts counts = dao.getStatusCounts(userId);
+        assertEquals(3, counts.total);
+        assertEquals(2, counts.active);
+        assertEquals(1, counts.completed);
+        assertEquals(0, counts.paused);
+
+        assertEquals(2, dao.getGoals(userId, GoalDAO.STATUS_ACTIVE).size());
+        assertEquals(3, dao.getGoals(userId, null).size());
+
+        Goal goal = dao.getGoal((int) goalId, userId);
+        assertNotNull(goal);
+        assertEquals("Laptop", goal.getName());
+        assertNull(dao.getGoal((int) goalId, (int) otherUser));
+    }
+
+    // ==================== MonthlyRollupDAO / DailySeriesDAO ====================
+
+    @Test
+    public void rollupsAndDailySeries_matchRawTotalsAcrossPartialMonths() {
+        String start = "2024-12-15";
+        String end = "2025-02-10";
+
+        long[] rollup = new MonthlyRollupDAO(dbHelper).getIncomeExpense(userId, start, end);
+        assertEquals(5_000_000, rollup[0]);
+        assertEquals(1_250_000, rollup[1]);
+
+        long[] daily = DailySeriesDAO.sumRange(new DailySeriesDAO(dbHelper).getDailyTotals(userId, start, end), start, end);
+        assertArrayEquals(rollup, daily);
+
+        // Chỉ phần lẻ của 1 tháng
+        long[] partial = new MonthlyRollupDAO(dbHelper).getIncomeExpense(userId, "2025-01-02", "2025-01-19");
+        assertEquals(0, partial[0]);
+        assertEquals(100_000, partial[1]);
+    }
+
+    // ==================== TransactionPageDAO ====================
+
+    @Test
+    public void totals_amountRangeBoundsAreInclusiveMinorUnits() {
+        TransactionQuery query = TransactionQuery.forUser(userId).amountRange(50_000L, 100_000L).build();
+
+        // 70k + 100k + 50k; 30k, 1tr và lương 5tr nằm ngoài khoảng
+        assertArrayEquals(new long[]{0, 220_000}, new TransactionPageDAO(dbHelper).getTotals(query));
+    }
+
+    // ==================== TransactionSearchDAO ====================
+
+    @Test
+    public void search_ranksByHitCountNotOffsetsLength() {
+        // 4 lần khớp ở đầu ghi chú vs 3 lần khớp ở vị trí 6 chữ số: offsets() của dòng sau dài hơn nhưng ít khớp hơn
+        long moreHits = TestDatabase.insertTransaction(dbHelper, userId, "expense", 40_000, food, day("2025-01-10"));
+        setNote(moreHits, "Cà phê sữa, cà");
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            padding.append("x ");
+        }
+        long fewerHits = TestDatabase.insertTransaction(dbHelper, userId, "expense", 45_000, food, day("2025-01-12"));
+        setNote(fewerHits, padding + "cà phê sữa");
+
+        TransactionQuery query = TransactionQuery.forUser(userId).text("ca phe sua").build();
+        List<Transaction> results = new TransactionSearchDAO(dbHelper).search(query, 10, 0);
+
+        assertEquals(2, results.size());
+        assertEquals(moreHits, (long) results.get(0).getId());
+        assertEquals(fewerHits, (long) results.get(1).getId());
+    }
+
+    // Trigger FTS update bỏ dấu lại ghi chú
+    private void setNote(long transactionId, String note) {
+        dbHelper.getWritableDatabase().execSQL("UPDATE " + DatabaseHelper.TABLE_TRANSACTIONS + " SET " + DatabaseHelper.COLUMN_NOTE +
+                " = ? WHERE " + DatabaseHelper.COLUMN_ID + " = ?", new Object[]{note, transactionId});
+    }
+}
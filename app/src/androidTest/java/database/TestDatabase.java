@@ -0,0 +1,82 @@
+package database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import models.DateCodec;
+
+/**
+ * 🧪 Database trong bộ nhớ (schema đầy đủ qua onCreate) + hàm tạo dữ liệu mẫu cho test các DAO.
+ * Mỗi test tạo helper riêng và close() ở @After - không đụng tới database thật của app.
+ */
+final class TestDatabase {
+
+    private TestDatabase() {}
+
+    static DatabaseHelper create() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        return new DatabaseHelper(context, null);
+    }
+
+    static long insertUser(DatabaseHelper dbHelper, String username) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COLUMN_USERNAME, username);
+        values.put(DatabaseHelper.COLUMN_PASSWORD, "secret");
+        values.put(DatabaseHelper.COLUMN_EMAIL, username + "@example.com");
+        return insert(dbHelper, DatabaseHelper.TABLE_USERS, values);
+    }
+
+    static long insertCategory(DatabaseHelper dbHelper, String name, String type) {
+        return new CategoryDAO(dbHelper).getOrCreateCategoryId(name, type, "🧪", "#607D8B");
+    }
+
+    static long insertTransaction(DatabaseHelper dbHelper, long userId, String type, long amount, long categoryId, int epochDay) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COLUMN_USER_ID, userId);
+        values.put(DatabaseHelper.COLUMN_TYPE, type);
+        values.put(DatabaseHelper.COLUMN_AMOUNT, amount);
+        values.put(DatabaseHelper.COLUMN_CATEGORY_ID, categoryId);
+        values.put(DatabaseHelper.COLUMN_NOTE, type + " " + amount);
+        values.put(DatabaseHelper.COLUMN_DATE, DateCodec.format(epochDay));
+        values.put(DatabaseHelper.COLUMN_PAYMENT_METHOD, "cash");
+        return insert(dbHelper, DatabaseHelper.TABLE_TRANSACTIONS, values);
+    }
+
+    // start_day / end_day do triggers điền từ start_date / end_date
+    static long insertPlan(DatabaseHelper dbHelper, long userId, String name, String startDate, String endDate) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COLUMN_USER_ID, userId);
+        values.put(DatabaseHelper.COLUMN_BUDGET_NAME, name);
+        values.put(DatabaseHelper.COLUMN_BUDGET_PERIOD, "monthly");
+        values.put(DatabaseHelper.COLUMN_BUDGET_START_DATE, startDate);
+        values.put(DatabaseHelper.COLUMN_BUDGET_END_DATE, endDate);
+        return insert(dbHelper, DatabaseHelper.TABLE_BUDGET_PLANS, values);
+    }
+
+    static long insertItem(DatabaseHelper dbHelper, long planId, long categoryId, long amount) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COLUMN_PLAN_ID, planId);
+        values.put(DatabaseHelper.COLUMN_CATEGORY_ID, categoryId);
+        values.put(DatabaseHelper.COLUMN_BUDGET_AMOUNT, amount);
+        return insert(dbHelper, DatabaseHelper.TABLE_BUDGET_ITEMS, values);
+    }
+
+    static long insertGoal(DatabaseHelper dbHelper, long userId, String name, String status) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COLUMN_USER_ID, userId);
+        values.put(DatabaseHelper.COLUMN_GOAL_NAME, name);
+        values.put(DatabaseHelper.COLUMN_GOAL_TARGET_AMOUNT, 1_000_000L);
+        values.put(DatabaseHelper.COLUMN_GOAL_CURRENT_AMOUNT, 0L);
+        values.put(DatabaseHelper.COLUMN_GOAL_DEADLINE, "2030-12-31");
+        values.put(DatabaseHelper.COLUMN_GOAL_STATUS, status);
+        return insert(dbHelper, DatabaseHelper.TABLE_GOALS, values);
+    }
+
+    private static long insert(DatabaseHelper dbHelper, String table, ContentValues values) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        return db.insertOrThrow(table, null, values);
+    }
+}
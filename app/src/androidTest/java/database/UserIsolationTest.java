@@ -0,0 +1,327 @@
+package database;
+
+import android.database.Cursor;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import models.DateCodec;
+import models.SmartInsight;
+
+import static org.junit.Assert.*;
+
+/**
+ * 🧪 2 user có dữ liệu đan xen (cùng danh mục, cùng ngày): mỗi truy vấn theo user chỉ trả về dòng của user đó.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserIsolationTest {
+
+    // Đủ LARGE_MIN_SAMPLES giao dịch trước khoản lớn để trigger đánh dấu 'large'
+    private static final int HISTORY = DatabaseHelper.LARGE_MIN_SAMPLES;
+
+    private DatabaseHelper dbHelper;
+    private int alice;
+    private int bob;
+    private long food;
+    private long travel;
+    private long salary;
+
+    private final Set<Long> aliceTransactions = new HashSet<>();
+    private final Set<Long> bobTransactions = new HashSet<>();
+    private long aliceLarge;
+    private long bobLarge;
+
+    @Before
+    public void setUp() {
+        dbHelper = TestDatabase.create();
+        alice = (int) TestDatabase.insertUser(dbHelper, "alice");
+        bob = (int) TestDatabase.insertUser(dbHelper, "bob");
+        food = TestDatabase.insertCategory(dbHelper, "Test Food", "expense");
+        travel = TestDatabase.insertCategory(dbHelper, "Test Travel", "expense");
+        salary = TestDatabase.insertCategory(dbHelper, "Test Salary", "income");
+
+        // Cùng danh mục, cùng ngày, số tiền khác nhau - tổng sai user là lộ ngay
+        int first = day("2025-01-01");
+        for (int i = 0; i < HISTORY; i++) {
+            aliceTransactions.add(TestDatabase.insertTransaction(dbHelper, alice, "expense", 50_000, food, first + i));
+            bobTransactions.add(TestDatabase.insertTransaction(dbHelper, bob, "expense", 20_000, food, first + i));
+        }
+        aliceLarge = TestDatabase.insertTransaction(dbHelper, alice, "expense", 5_000_000, food, day("2025-01-15"));
+        bobLarge = TestDatabase.insertTransaction(dbHelper, bob, "expense", 900_000, food, day("2025-01-16"));
+        aliceTransactions.add(aliceLarge);
+        bobTransactions.add(bobLarge);
+
+        aliceTransactions.add(TestDatabase.insertTransaction(dbHelper, alice, "income", 8_000_000, salary, day("2025-01-20")));
+        bobTransactions.add(TestDatabase.insertTransaction(dbHelper, bob, "income", 3_000_000, salary, day("2025-01-20")));
+        // Chỉ bob có Travel
+        bobTransactions.add(TestDatabase.insertTransaction(dbHelper, bob, "expense", 2_000_000, travel, day("2025-01-25")));
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    private static int day(String date) {
+        return DateCodec.parse(date);
+    }
+
+    // ==================== TransactionDAO ====================
+
+    @Test
+    public void columns_containOnlyCallersTransactions() {
+        TransactionDAO dao = new TransactionDAO(dbHelper);
+
+        TransactionColumns aliceColumns = dao.getColumns(alice, day("2024-12-01"));
+        assertEquals(HISTORY + 2, aliceColumns.size);
+        assertEquals(HISTORY * 50_000L + 5_000_000 + 8_000_000, sumOf(aliceColumns));
+        for (int i = 0; i < aliceColumns.size; i++) {
+            assertNotEquals(travel, aliceColumns.categories[i]);
+        }
+
+        TransactionColumns bobColumns = dao.getColumns(bob, day("2024-12-01"));
+        assertEquals(HISTORY + 3, bobColumns.size);
+        assertEquals(HISTORY * 20_000L + 900_000 + 3_000_000 + 2_000_000, sumOf(bobColumns));
+    }
+
+    private static long sumOf(TransactionColumns columns) {
+        long sum = 0;
+        for (int i = 0; i < columns.size; i++) {
+            sum += columns.amounts[i];
+        }
+        return sum;
+    }
+
+    // ==================== AnomalyDAO ====================
+
+    @Test
+    public void anomalies_areFlaggedAndReadPerUser() {
+        AnomalyDAO dao = new AnomalyDAO(dbHelper);
+
+        List<AnomalyDAO.Anomaly> aliceFlags = dao.getAnomalies(alice, day("2024-12-01"));
+        assertTrue(largeIds(aliceFlags).contains(aliceLarge));
+        for (AnomalyDAO.Anomaly anomaly : aliceFlags) {
+            assertEquals(alice, anomaly.userId);
+            assertTrue(aliceTransactions.contains(anomaly.transactionId));
+        }
+
+        // Khoản 900k của bob so với thống kê Food của bob (20k), không phải của alice (50k + 5tr)
+        List<AnomalyDAO.Anomaly> bobFlags = dao.getAnomalies(bob, day("2024-12-01"));
+        assertTrue(largeIds(bobFlags).contains(bobLarge));
+        for (AnomalyDAO.Anomaly anomaly : bobFlags) {
+            assertEquals(bob, anomaly.userId);
+            assertTrue(bobTransactions.contains(anomaly.transactionId));
+        }
+    }
+
+    private static Set<Long> largeIds(List<AnomalyDAO.Anomaly> anomalies) {
+        Set<Long> ids = new HashSet<>();
+        for (AnomalyDAO.Anomaly anomaly : anomalies) {
+            if (anomaly.isLarge()) ids.add(anomaly.transactionId);
+        }
+        return ids;
+    }
+
+    // ==================== InsightDAO ====================
+
+    @Test
+    public void insights_sameSourceAndPlanAreKeptPerUser() {
+        InsightDAO dao = new InsightDAO(dbHelper);
+        dao.save(alice, 0, "PATTERNS", "w1", listOf("Alice insight"));
+        dao.save(bob, 0, "PATTERNS", "w1", listOf("Bob insight"));
+
+        assertEquals(Collections.singletonList("Alice insight"), titlesOf(dao.getInsights(alice, 0).get("PATTERNS")));
+        assertEquals(Collections.singletonList("Bob insight"), titlesOf(dao.getInsights(bob, 0).get("PATTERNS")));
+        assertEquals(Collections.singletonList("Alice insight"), titlesOf(dao.getIfCurrent(alice, 0, "PATTERNS", "w1")));
+        assertEquals(Collections.singletonList("Bob insight"), titlesOf(dao.getIfCurrent(bob, 0, "PATTERNS", "w1")));
+
+        // Watermark mới của bob không làm kết quả của alice hết hạn
+        dao.save(bob, 0, "PATTERNS", "w2", listOf("Bob insight v2"));
+        assertNull(dao.getIfCurrent(bob, 0, "PATTERNS", "w1"));
+        assertEquals(Collections.singletonList("Alice insight"), titlesOf(dao.getIfCurrent(alice, 0, "PATTERNS", "w1")));
+    }
+
+    @Test
+    public void insights_dismissWithIdFromEarlierSaveSurvivesRecompute() {
+        InsightDAO dao = new InsightDAO(dbHelper);
+        SmartInsight shown = dao.save(alice, 0, "PATTERNS", "w1", listOf("Alice insight")).get(0);
+
+        // Tính lại trước khi lượt dismiss (id của danh sách đang hiển thị) kịp chạy
+        List<SmartInsight> recomputed = dao.save(alice, 0, "PATTERNS", "w2", listOf("Alice insight"));
+        assertEquals(shown.getId(), recomputed.get(0).getId());
+
+        assertTrue(dao.dismiss(shown.getId()));
+        assertNull(dao.getInsights(alice, 0).get("PATTERNS"));
+        assertTrue(dao.save(alice, 0, "PATTERNS", "w3", listOf("Alice insight")).get(0).isDismissed());
+    }
+
+    @Test
+    public void dayVersion_changesOnlyForWritingUser() {
+        InsightDAO dao = new InsightDAO(dbHelper);
+        int from = day("2025-01-01");
+        long aliceBefore = dao.getDayVersion(alice, from);
+        long bobBefore = dao.getDayVersion(bob, from);
+
+        TestDatabase.insertTransaction(dbHelper, bob, "expense", 10_000, food, day("2025-01-10"));
+
+        assertEquals(aliceBefore, dao.getDayVersion(alice, from));
+        assertTrue(dao.getDayVersion(bob, from) > bobBefore);
+    }
+
+    private static List<SmartInsight> listOf(String title) {
+        SmartInsight insight = new SmartInsight();
+        insight.setType(SmartInsight.Type.OPTIMIZATION);
+        insight.setTitle(title);
+        insight.setMessage(title);
+        List<SmartInsight> insights = new ArrayList<>();
+        insights.add(insight);
+        return insights;
+    }
+
+    private static List<String> titlesOf(List<SmartInsight> insights) {
+        assertNotNull(insights);
+        List<String> titles = new ArrayList<>();
+        for (SmartInsight insight : insights) {
+            titles.add(insight.getTitle());
+        }
+        return titles;
+    }
+
+    // ==================== MonthlyRollupDAO ====================
+
+    @Test
+    public void rollups_incomeExpenseArePerUser() {
+        MonthlyRollupDAO dao = new MonthlyRollupDAO(dbHelper);
+
+        // Trọn tháng (đọc monthly_rollups) và khoảng lẻ (đọc theo ngày) cùng phải tách user
+        assertArrayEquals(new long[]{8_000_000, HISTORY * 50_000L + 5_000_000},
+                dao.getIncomeExpense(alice, "2025-01-01", "2025-01-31"));
+        assertArrayEquals(new long[]{3_000_000, HISTORY * 20_000L + 900_000 + 2_000_000},
+                dao.getIncomeExpense(bob, "2025-01-01", "2025-01-31"));
+        assertArrayEquals(new long[]{0, 5 * 20_000L},
+                dao.getIncomeExpense(bob, "2025-01-02", "2025-01-06"));
+    }
+
+    @Test
+    public void rollups_topCategoriesArePerUser() {
+        MonthlyRollupDAO dao = new MonthlyRollupDAO(dbHelper);
+
+        Map<String, Long> aliceTop = topOf(dao, alice);
+        assertEquals(1, aliceTop.size());
+        assertEquals(Long.valueOf(HISTORY * 50_000L + 5_000_000), aliceTop.get("Test Food"));
+
+        Map<String, Long> bobTop = topOf(dao, bob);
+        assertEquals(2, bobTop.size());
+        assertEquals(Long.valueOf(HISTORY * 20_000L + 900_000), bobTop.get("Test Food"));
+        assertEquals(Long.valueOf(2_000_000), bobTop.get("Test Travel"));
+    }
+
+    private static Map<String, Long> topOf(MonthlyRollupDAO dao, int userId) {
+        Map<String, Long> totals = new HashMap<>();
+        Cursor cursor = dao.getTopExpenseCategories(userId, "2025-01-01", "2025-01-31", 10);
+        try {
+            while (cursor.moveToNext()) {
+                totals.put(cursor.getString(cursor.getColumnIndexOrThrow("category_name")),
+                        cursor.getLong(cursor.getColumnIndexOrThrow("total")));
+            }
+        } finally {
+            cursor.close();
+        }
+        return totals;
+    }
+
+    // ==================== ResultCache ====================
+
+    @Test
+    public void resultCache_sameComputationIsCachedPerUser() {
+        ResultCache cache = dbHelper.getResultCache();
+        String[] tables = {DatabaseHelper.TABLE_TRANSACTIONS};
+        AtomicInteger computed = new AtomicInteger();
+
+        assertEquals("alice", cache.get(alice, "isolation", "p", tables, () -> {
+            computed.incrementAndGet();
+            return "alice";
+        }));
+        // Cùng phép tính + tham số nhưng khác user: không được lấy kết quả của alice
+        assertEquals("bob", cache.get(bob, "isolation", "p", tables, () -> {
+            computed.incrementAndGet();
+            return "bob";
+        }));
+        assertEquals(2, computed.get());
+
+        // Mỗi user trúng cache của chính mình
+        assertEquals("alice", cache.get(alice, "isolation", "p", tables, () -> {
+            computed.incrementAndGet();
+            return "wrong";
+        }));
+        assertEquals("bob", cache.get(bob, "isolation", "p", tables, () -> {
+            computed.incrementAndGet();
+            return "wrong";
+        }));
+        assertEquals(2, computed.get());
+    }
+
+    // ==================== Query plans ====================
+
+    @Test
+    public void perUserQueries_searchUserLeadingIndexes() {
+        QueryStats.setEnabled(true);
+        QueryStats.reset();
+        try {
+            new TransactionDAO(dbHelper).getColumns(alice, day("2024-12-01"));
+            new AnomalyDAO(dbHelper).getAnomalies(alice, day("2024-12-01"));
+            MonthlyRollupDAO rollups = new MonthlyRollupDAO(dbHelper);
+            rollups.getIncomeExpense(alice, "2025-01-01", "2025-01-31");
+            rollups.getIncomeExpense(alice, "2025-01-02", "2025-01-06");
+            topOf(rollups, alice);
+            new DailySeriesDAO(dbHelper).getDailyTotals(alice, "2025-01-01", "2025-01-31");
+
+            // Mọi câu đã chạy (QueryStats ghi lại SQL) có lọc theo user: chỉ đọc dải của user qua index bắt đầu bằng user_id
+            int checked = 0;
+            for (QueryStats.Statement statement : QueryStats.snapshot()) {
+                if (!statement.sql.contains(DatabaseHelper.COLUMN_USER_ID + " = ?")) continue;
+                checked++;
+                for (String detail : planOf(statement.sql)) {
+                    String message = detail + " in " + statement.sql;
+                    if (detail.startsWith("SCAN ")) {
+                        // Chỉ được quét kết quả trung gian (UNION ALL), không quét bảng
+                        assertTrue(message, detail.startsWith("SCAN (subquery") || detail.startsWith("SCAN SUBQUERY"));
+                    } else if (detail.startsWith("SEARCH ")) {
+                        // Bảng theo user tìm theo tiền tố user_id; categories JOIN theo khóa chính
+                        assertTrue(message, detail.contains("(" + DatabaseHelper.COLUMN_USER_ID + "=?") || detail.contains("(rowid=?)"));
+                    }
+                }
+            }
+            assertEquals(6, checked);
+        } finally {
+            QueryStats.reset();
+        }
+    }
+
+    // Chi tiết EXPLAIN QUERY PLAN, bỏ tiền tố "TABLE " của SQLite cũ; tham số không bind = NULL, không đổi kế hoạch
+    private List<String> planOf(String sql) {
+        List<String> details = new ArrayList<>();
+        Cursor cursor = dbHelper.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            while (cursor.moveToNext()) {
+                details.add(cursor.getString(cursor.getColumnCount() - 1).replace(" TABLE ", " "));
+            }
+        } finally {
+            cursor.close();
+        }
+        return details;
+    }
+}
@@ -12,6 +12,8 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.expensemanagement.R;
@@ -20,29 +22,69 @@ import com.google.android.material.card.MaterialCardView;
 import models.Transaction;
 
 import java.text.DecimalFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * ListAdapter cho danh sách giao dịch: diff chạy trên background thread theo _id (stable IDs),
+ * nên lọc/tìm kiếm chỉ bind lại những dòng thực sự thay đổi.
+ * Hiệu ứng xuất hiện chỉ chạy cho các dòng vừa được chèn, không chạy lại khi view được tái sử dụng.
+ */
+public class TransactionAdapter extends ListAdapter<Transaction, TransactionAdapter.TransactionViewHolder> {
+
+    private static final DiffUtil.ItemCallback<Transaction> DIFF_CALLBACK = new DiffUtil.ItemCallback<Transaction>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Transaction oldItem, @NonNull Transaction newItem) {
+            return Objects.equals(oldItem.getId(), newItem.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Transaction oldItem, @NonNull Transaction newItem) {
+            return oldItem.getAmount() == newItem.getAmount()
+                    && Objects.equals(oldItem.getType(), newItem.getType())
+                    && Objects.equals(oldItem.getNote(), newItem.getNote())
+                    && Objects.equals(oldItem.getDate(), newItem.getDate())
+                    && Objects.equals(oldItem.getCreatedAt(), newItem.getCreatedAt())
+                    && Objects.equals(oldItem.getPaymentMethod(), newItem.getPaymentMethod())
+                    && Objects.equals(oldItem.getCategoryName(), newItem.getCategoryName())
+                    && Objects.equals(oldItem.getCategoryIcon(), newItem.getCategoryIcon())
+                    && Objects.equals(oldItem.getCategoryColor(), newItem.getCategoryColor());
+        }
+    };
 
-public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.TransactionViewHolder> {
+    // _id của các dòng vừa được chèn, chờ chạy hiệu ứng ở lần bind đầu tiên
+    private final Set<Long> pendingEntryIds = new HashSet<>();
 
-    private List<Transaction> transactions;
     private OnTransactionClickListener listener;
     private DecimalFormat currencyFormatter = new DecimalFormat("#,###,###");
-    private SimpleDateFormat inputDateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-    private SimpleDateFormat outputDateFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
-    private SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
-    private SimpleDateFormat fullDateTimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
 
     public interface OnTransactionClickListener {
         void onTransactionClick(Transaction transaction);
         void onTransactionLongClick(Transaction transaction);
     }
 
+    public TransactionAdapter() {
+        super(DIFF_CALLBACK);
+        setHasStableIds(true);
+
+        // Diff báo dòng mới chèn -> đánh dấu để chạy hiệu ứng khi bind
+        registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                List<Transaction> current = getCurrentList();
+                for (int i = positionStart; i < positionStart + itemCount && i < current.size(); i++) {
+                    pendingEntryIds.add(current.get(i).getId());
+                }
+            }
+        });
+    }
+
     public TransactionAdapter(List<Transaction> transactions) {
-        this.transactions = transactions;
+        this();
+        submitList(new ArrayList<>(transactions));
     }
 
     public void setOnTransactionClickListener(OnTransactionClickListener listener) {
@@ -59,29 +101,51 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
 
     @Override
     public void onBindViewHolder(@NonNull TransactionViewHolder holder, int position) {
-        Transaction transaction = transactions.get(position);
+        Transaction transaction = getItem(position);
         holder.bind(transaction);
 
-        // Add entrance animation
-        animateItemEntry(holder.itemView, position);
+        if (pendingEntryIds.remove(transaction.getId())) {
+            animateItemEntry(holder.itemView);
+        } else {
+            resetItemState(holder.itemView);
+        }
+    }
+
+    @Override
+    public long getItemId(int position) {
+        Long id = getItem(position).getId();
+        return id != null ? id : RecyclerView.NO_ID;
+    }
+
+    @Override
+    public void submitList(List<Transaction> list) {
+        // Dòng chèn ở lần trước nhưng chưa kịp hiển thị thì không cần hiệu ứng nữa
+        pendingEntryIds.clear();
+        super.submitList(list);
     }
 
     @Override
-    public int getItemCount() {
-        return transactions.size();
+    public void onViewRecycled(@NonNull TransactionViewHolder holder) {
+        super.onViewRecycled(holder);
+        resetItemState(holder.itemView);
     }
 
-    private void animateItemEntry(View view, int position) {
+    private void animateItemEntry(View view) {
+        view.animate().cancel();
         view.setAlpha(0f);
         view.setTranslationY(50f);
-
-        ObjectAnimator.ofFloat(view, "alpha", 0f, 1f)
+        view.animate()
+                .alpha(1f)
+                .translationY(0f)
                 .setDuration(300)
+                .setInterpolator(new DecelerateInterpolator())
                 .start();
+    }
 
-        ObjectAnimator.ofFloat(view, "translationY", 50f, 0f)
-                .setDuration(300)
-                .start();
+    private void resetItemState(View view) {
+        view.animate().cancel();
+        view.setAlpha(1f);
+        view.setTranslationY(0f);
     }
 
     class TransactionViewHolder extends RecyclerView.ViewHolder {
@@ -113,7 +177,7 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
                 int pos = getAdapterPosition();
                 if (pos != RecyclerView.NO_POSITION && listener != null) {
                     animateClick();
-                    listener.onTransactionClick(transactions.get(pos));
+                    listener.onTransactionClick(getItem(pos));
                 }
             });
 
@@ -121,7 +185,7 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
                 int pos = getAdapterPosition();
                 if (pos != RecyclerView.NO_POSITION && listener != null) {
                     animateLongClick();
-                    listener.onTransactionLongClick(transactions.get(pos));
+                    listener.onTransactionLongClick(getItem(pos));
                     return true;
                 }
                 return false;
@@ -228,7 +292,7 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
         private void setupDateTime(Transaction transaction) {
             if (tvTransactionDate == null) return;
 
-            String dateTimeString = formatDateTime(transaction.getDate(), transaction.getCreatedAt());
+            String dateTimeString = formatDateTime(transaction);
             tvTransactionDate.setText(dateTimeString);
         }
 
@@ -250,29 +314,16 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
             return prefix + currencyFormatter.format(amount) + "₫";
         }
 
-        private String formatDateTime(String dateStr, String createdAtStr) {
-            try {
-                // Parse and format date
-                Date date = inputDateFormat.parse(dateStr);
-                String formattedDate = outputDateFormat.format(date);
-
-                // Extract time from createdAt if available
-                String timeStr = "";
-                if (createdAtStr != null && !createdAtStr.isEmpty()) {
-                    try {
-                        Date fullDate = fullDateTimeFormat.parse(createdAtStr);
-                        timeStr = " • " + timeFormat.format(fullDate);
-                    } catch (ParseException e) {
-                        // If time parsing fails, just show date
-                        timeStr = "";
-                    }
-                }
+        // 📅 Không parse Date cho từng dòng: ngày đã có dạng epoch day, giờ cắt thẳng từ "yyyy-MM-dd HH:mm:ss"
+        private String formatDateTime(Transaction transaction) {
+            String createdAtStr = transaction.getCreatedAt();
+            String formattedDate = transaction.getFormattedDate();
 
-                return formattedDate + timeStr;
-            } catch (ParseException e) {
-                // If date parsing fails, return original date string
-                return dateStr;
+            // Extract time from createdAt if available
+            if (createdAtStr != null && createdAtStr.length() >= 16 && createdAtStr.charAt(13) == ':') {
+                return formattedDate + " • " + createdAtStr.substring(11, 16);
             }
+            return formattedDate;
         }
 
         private int adjustColorOpacity(int color, float opacity) {
@@ -284,60 +335,37 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
         }
     }
 
-    // Public methods for external updates
+    // Public methods for external updates - luôn submit bản sao để diff so với danh sách cũ
     public void updateTransactions(List<Transaction> newTransactions) {
-        this.transactions = newTransactions;
-        notifyDataSetChanged();
+        submitList(new ArrayList<>(newTransactions));
     }
 
     public void addTransaction(Transaction transaction) {
-        transactions.add(0, transaction); // Add at beginning
-        notifyItemInserted(0);
+        List<Transaction> updated = new ArrayList<>(getCurrentList());
+        updated.add(0, transaction); // Add at beginning
+        submitList(updated);
     }
 
     public void removeTransaction(int position) {
-        if (position >= 0 && position < transactions.size()) {
-            transactions.remove(position);
-            notifyItemRemoved(position);
-            notifyItemRangeChanged(position, transactions.size());
+        if (position >= 0 && position < getItemCount()) {
+            List<Transaction> updated = new ArrayList<>(getCurrentList());
+            updated.remove(position);
+            submitList(updated);
         }
     }
 
     public void updateTransaction(int position, Transaction transaction) {
-        if (position >= 0 && position < transactions.size()) {
-            transactions.set(position, transaction);
-            notifyItemChanged(position);
+        if (position >= 0 && position < getItemCount()) {
+            List<Transaction> updated = new ArrayList<>(getCurrentList());
+            updated.set(position, transaction);
+            submitList(updated);
         }
     }
 
     public Transaction getTransaction(int position) {
-        if (position >= 0 && position < transactions.size()) {
-            return transactions.get(position);
+        if (position >= 0 && position < getItemCount()) {
+            return getItem(position);
         }
         return null;
     }
-
-    public void animateItemRemoval(int position) {
-        if (position >= 0 && position < transactions.size()) {
-            View itemView = null; // Get the view if needed
-            if (itemView != null) {
-                ObjectAnimator.ofFloat(itemView, "alpha", 1f, 0f)
-                        .setDuration(250)
-                        .start();
-                ObjectAnimator.ofFloat(itemView, "translationX", 0f, itemView.getWidth())
-                        .setDuration(250)
-                        .start();
-            }
-        }
-    }
-
-    // Filter methods
-    public void filter(String query) {
-        // This method can be used for additional filtering if needed
-        notifyDataSetChanged();
-    }
-
-    public void clearSelection() {
-        notifyDataSetChanged();
-    }
-}
\ No newline at end of file
+}
@@ -26,6 +26,7 @@ import java.util.Date;
 import java.util.Locale;
 
 import database.DatabaseHelper;
+import models.Money;
 
 public class AddGoalActivity extends AppCompatActivity {
     private static final String TAG = "AddGoalActivity";
@@ -96,7 +97,7 @@ public class AddGoalActivity extends AppCompatActivity {
     }
 
     private void initDatabase() {
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
     }
 
     private void setupIconGrid() {
@@ -308,8 +309,8 @@ public class AddGoalActivity extends AppCompatActivity {
 
             ContentValues values = new ContentValues();
             values.put(DatabaseHelper.COLUMN_GOAL_NAME, goalName);
-            values.put(DatabaseHelper.COLUMN_GOAL_TARGET_AMOUNT, targetAmount);
-            values.put(DatabaseHelper.COLUMN_GOAL_CURRENT_AMOUNT, currentAmount);
+            values.put(DatabaseHelper.COLUMN_GOAL_TARGET_AMOUNT, Money.toMinorUnits(targetAmount));
+            values.put(DatabaseHelper.COLUMN_GOAL_CURRENT_AMOUNT, Money.toMinorUnits(currentAmount));
             values.put(DatabaseHelper.COLUMN_GOAL_DEADLINE, dateFormatter.format(selectedDeadline.getTime()));
             values.put(DatabaseHelper.COLUMN_GOAL_ICON, selectedIcon);
             values.put(DatabaseHelper.COLUMN_GOAL_STATUS, currentAmount >= targetAmount ? "completed" : "active");
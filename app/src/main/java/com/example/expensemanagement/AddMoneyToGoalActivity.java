@@ -3,7 +3,6 @@
 package com.example.expensemanagement;
 
 import android.content.ContentValues;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
 import android.text.Editable;
@@ -30,13 +29,21 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
+import database.BalanceDAO;
+import database.CategoryDAO;
 import database.DatabaseHelper;
+import database.GoalDAO;
+import models.DateCodec;
 import models.Goal;
+import models.Money;
 
 public class AddMoneyToGoalActivity extends AppCompatActivity {
     private static final String TAG = "AddMoneyToGoalActivity";
 
     private DatabaseHelper dbHelper;
+    private BalanceDAO balanceDAO;
+    private GoalDAO goalDAO;
+    private CategoryDAO categoryDAO;
     private int currentUserId;
     private List<Goal> activeGoals = new ArrayList<>();
     private Goal selectedGoal = null;
@@ -113,39 +120,17 @@ public class AddMoneyToGoalActivity extends AppCompatActivity {
     }
 
     private void initDatabase() {
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
+        balanceDAO = new BalanceDAO(dbHelper);
+        goalDAO = new GoalDAO(dbHelper);
+        categoryDAO = new CategoryDAO(dbHelper);
     }
 
     private void loadActiveGoals() {
         activeGoals.clear();
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
 
         try {
-            Cursor cursor = db.query(
-                    DatabaseHelper.TABLE_GOALS,
-                    null,
-                    DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
-                            DatabaseHelper.COLUMN_GOAL_STATUS + " = 'active'",
-                    new String[]{String.valueOf(currentUserId)},
-                    null,
-                    null,
-                    DatabaseHelper.COLUMN_CREATED_AT + " DESC"
-            );
-
-            while (cursor.moveToNext()) {
-                Goal goal = new Goal();
-                goal.setId(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID)));
-                goal.setName(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_NAME)));
-                goal.setTargetAmount(cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_TARGET_AMOUNT)));
-                goal.setCurrentAmount(cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_CURRENT_AMOUNT)));
-                goal.setDeadline(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_DEADLINE)));
-                goal.setIcon(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_ICON)));
-                goal.setStatus(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_STATUS)));
-                goal.setUserId(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USER_ID)));
-
-                activeGoals.add(goal);
-            }
-            cursor.close();
+            activeGoals.addAll(goalDAO.getGoals(currentUserId, GoalDAO.STATUS_ACTIVE));
 
             displayGoalSelection();
 
@@ -241,7 +226,7 @@ public class AddMoneyToGoalActivity extends AppCompatActivity {
 
         // Progress info
         DecimalFormat formatter = new DecimalFormat("#,###");
-        int progress = (int) ((goal.getCurrentAmount() * 100) / goal.getTargetAmount());
+        int progress = goal.getProgressPercentage();
         String progressText = String.format("%s / %s đ (%d%%)",
                 formatter.format(goal.getCurrentAmount()),
                 formatter.format(goal.getTargetAmount()),
@@ -336,7 +321,7 @@ public class AddMoneyToGoalActivity extends AppCompatActivity {
         tvGoalProgress.setText(progressText);
 
         // Update progress percentage and bar
-        int progress = (int) ((selectedGoal.getCurrentAmount() * 100) / selectedGoal.getTargetAmount());
+        int progress = selectedGoal.getProgressPercentage();
         tvCurrentProgress.setText(progress + "%");
         progressBarGoal.setProgress(Math.min(progress, 100));
 
@@ -588,15 +573,16 @@ public class AddMoneyToGoalActivity extends AppCompatActivity {
                 // 1. Create transaction record
                 ContentValues transactionValues = new ContentValues();
                 transactionValues.put(DatabaseHelper.COLUMN_TYPE, "expense");
-                transactionValues.put(DatabaseHelper.COLUMN_AMOUNT, amount);
-                transactionValues.put(DatabaseHelper.COLUMN_CATEGORY_ID, getCategoryIdForGoalSaving(db));
+                long amountMinor = Money.toMinorUnits(amount);
+                transactionValues.put(DatabaseHelper.COLUMN_AMOUNT, amountMinor);
+                transactionValues.put(DatabaseHelper.COLUMN_CATEGORY_ID, categoryDAO.getOrCreateCategoryId("Tiết kiệm", "expense", "💰", "#4CAF50"));
                 transactionValues.put(DatabaseHelper.COLUMN_USER_ID, currentUserId);
                 transactionValues.put(DatabaseHelper.COLUMN_NOTE,
                         note.isEmpty() ? "Tiết kiệm cho: " + selectedGoal.getName() : note);
 
-                SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-                String currentDate = dateFormatter.format(new Date());
-                transactionValues.put(DatabaseHelper.COLUMN_DATE, currentDate);
+                int today = DateCodec.today();
+                transactionValues.put(DatabaseHelper.COLUMN_DATE, DateCodec.format(today));
+                transactionValues.put(DatabaseHelper.COLUMN_DATE_EPOCH_DAY, today);
                 transactionValues.put(DatabaseHelper.COLUMN_PAYMENT_METHOD, "Tiết kiệm");
 
                 long transactionId = db.insert(DatabaseHelper.TABLE_TRANSACTIONS, null, transactionValues);
@@ -606,7 +592,7 @@ public class AddMoneyToGoalActivity extends AppCompatActivity {
                 }
 
                 // 2. Update goal current amount
-                double newCurrentAmount = selectedGoal.getCurrentAmount() + amount;
+                long newCurrentAmount = selectedGoal.getCurrentAmount() + amountMinor;
                 String newStatus = newCurrentAmount >= selectedGoal.getTargetAmount() ? "completed" : "active";
 
                 ContentValues goalValues = new ContentValues();
@@ -659,59 +645,7 @@ public class AddMoneyToGoalActivity extends AppCompatActivity {
 
     // Thêm method để tính số dư hiện tại
     private double getCurrentBalance() {
-        double balance = 0;
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-
-        try {
-            String query = "SELECT " + DatabaseHelper.COLUMN_TYPE + ", " + DatabaseHelper.COLUMN_AMOUNT +
-                    " FROM " + DatabaseHelper.TABLE_TRANSACTIONS +
-                    " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ?";
-
-            Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(currentUserId)});
-
-            while (cursor.moveToNext()) {
-                String type = cursor.getString(0);
-                double amount = cursor.getDouble(1);
-
-                if ("income".equals(type)) {
-                    balance += amount;
-                } else if ("expense".equals(type)) {
-                    balance -= amount;
-                }
-            }
-            cursor.close();
-        } catch (Exception e) {
-            Log.e(TAG, "Error calculating balance: " + e.getMessage());
-        }
-
-        return balance;
-    }
-
-    private int getCategoryIdForGoalSaving(SQLiteDatabase db) {
-        // Try to find "Tiết kiệm" category, create if not exists
-        Cursor cursor = db.query(
-                DatabaseHelper.TABLE_CATEGORIES,
-                new String[]{DatabaseHelper.COLUMN_ID},
-                DatabaseHelper.COLUMN_CATEGORY_NAME + " = ? AND " + DatabaseHelper.COLUMN_CATEGORY_TYPE + " = ?",
-                new String[]{"Tiết kiệm", "expense"},
-                null, null, null
-        );
-
-        if (cursor.moveToFirst()) {
-            int categoryId = cursor.getInt(0);
-            cursor.close();
-            return categoryId;
-        }
-        cursor.close();
-
-        // Create "Tiết kiệm" category
-        ContentValues values = new ContentValues();
-        values.put(DatabaseHelper.COLUMN_CATEGORY_NAME, "Tiết kiệm");
-        values.put(DatabaseHelper.COLUMN_CATEGORY_TYPE, "expense");
-        values.put(DatabaseHelper.COLUMN_CATEGORY_ICON, "💰");
-        values.put(DatabaseHelper.COLUMN_CATEGORY_COLOR, "#4CAF50");
-
-        long categoryId = db.insert(DatabaseHelper.TABLE_CATEGORIES, null, values);
-        return (int) categoryId;
+        // 💰 Đọc từ sổ cái user_balances thay vì cộng dồn toàn bộ giao dịch
+        return balanceDAO.getBalance(currentUserId);
     }
 }
\ No newline at end of file
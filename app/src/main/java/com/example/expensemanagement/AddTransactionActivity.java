@@ -10,8 +10,6 @@ import android.app.DatePickerDialog;
 import android.content.ContentValues;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.text.Editable;
@@ -43,13 +41,19 @@ import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
 
+import database.BalanceDAO;
+import database.CategoryDAO;
 import database.DatabaseHelper;
+import database.TransactionWriteQueue;
+import models.DateCodec;
+import models.Money;
 
 public class AddTransactionActivity extends AppCompatActivity {
 
     // Database
     private DatabaseHelper dbHelper;
-    private SQLiteDatabase database;
+    private BalanceDAO balanceDAO;
+    private CategoryDAO categoryDAO;
 
     // Shared Preferences
     private SharedPreferences sharedPreferences;
@@ -120,10 +124,6 @@ public class AddTransactionActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (database != null && database.isOpen()) {
-            database.close();
-        }
-
         // Ẩn tất cả in-app notifications
         if (inAppNotificationManager != null) {
             inAppNotificationManager.hideAllNotifications(); // ✅ SỬA
@@ -168,8 +168,9 @@ public class AddTransactionActivity extends AppCompatActivity {
     }
 
     private void setupDatabase() {
-        dbHelper = new DatabaseHelper(this);
-        database = dbHelper.getWritableDatabase();
+        dbHelper = DatabaseHelper.getInstance(this);
+        balanceDAO = new BalanceDAO(dbHelper);
+        categoryDAO = new CategoryDAO(dbHelper);
     }
 
     private void setupFormatters() {
@@ -273,23 +274,10 @@ public class AddTransactionActivity extends AppCompatActivity {
         categories.clear();
 
         try {
-            String query = "SELECT * FROM " + DatabaseHelper.TABLE_CATEGORIES +
-                    " WHERE " + DatabaseHelper.COLUMN_CATEGORY_TYPE + " = ? ORDER BY " +
-                    DatabaseHelper.COLUMN_CATEGORY_NAME;
-
-            Cursor cursor = database.rawQuery(query, new String[]{transactionType});
-
-            while (cursor.moveToNext()) {
-                Category category = new Category(
-                        cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CATEGORY_NAME)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CATEGORY_TYPE)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CATEGORY_ICON)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CATEGORY_COLOR))
-                );
-                categories.add(category);
+            for (models.Category category : categoryDAO.getCategoriesByType(transactionType)) {
+                categories.add(new Category(category.getId().intValue(), category.getName(),
+                        category.getType(), category.getIcon(), category.getColor()));
             }
-            cursor.close();
 
             if (categoryAdapter != null) {
                 categoryAdapter.notifyDataSetChanged();
@@ -505,7 +493,7 @@ public class AddTransactionActivity extends AppCompatActivity {
 //
 //            ContentValues values = new ContentValues();
 //            values.put(DatabaseHelper.COLUMN_TYPE, transactionType);
-//            values.put(DatabaseHelper.COLUMN_AMOUNT, amount);
+//            values.put(DatabaseHelper.COLUMN_AMOUNT, Money.toMinorUnits(amount));
 //            values.put(DatabaseHelper.COLUMN_CATEGORY_ID, selectedCategoryId);
 //            values.put(DatabaseHelper.COLUMN_USER_ID, userId);
 //            values.put(DatabaseHelper.COLUMN_NOTE, note.isEmpty() ? null : note);
@@ -582,110 +570,65 @@ public class AddTransactionActivity extends AppCompatActivity {
 
             ContentValues values = new ContentValues();
             values.put(DatabaseHelper.COLUMN_TYPE, transactionType);
-            values.put(DatabaseHelper.COLUMN_AMOUNT, amount);
+            values.put(DatabaseHelper.COLUMN_AMOUNT, Money.toMinorUnits(amount));
             values.put(DatabaseHelper.COLUMN_CATEGORY_ID, selectedCategoryId);
             values.put(DatabaseHelper.COLUMN_USER_ID, userId);
             values.put(DatabaseHelper.COLUMN_NOTE, note.isEmpty() ? null : note);
 
-            SimpleDateFormat dbDateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-            values.put(DatabaseHelper.COLUMN_DATE, dbDateFormat.format(selectedDate));
+            int epochDay = DateCodec.fromMillis(selectedDate);
+            values.put(DatabaseHelper.COLUMN_DATE, DateCodec.format(epochDay));
+            values.put(DatabaseHelper.COLUMN_DATE_EPOCH_DAY, epochDay);
             values.put(DatabaseHelper.COLUMN_PAYMENT_METHOD, selectedPaymentMethod);
             values.put(DatabaseHelper.COLUMN_CREATED_AT, System.currentTimeMillis());
 
-            long result = database.insert(DatabaseHelper.TABLE_TRANSACTIONS, null, values);
-
-            if (result != -1) {
-                String message = "income".equals(transactionType) ?
-                        "Đã thêm thu nhập thành công!" :
-                        "Đã thêm chi tiêu thành công!";
+            // 🧾 Ghi nền qua hàng đợi (group commit) - không chờ insert trên main thread.
+            // Lỗi ghi được báo qua listener của MainApplication vì lúc đó màn hình này đã đóng.
+            TransactionWriteQueue writeQueue = dbHelper.getWriteQueue();
+            TransactionWriteQueue.Write write = writeQueue.enqueue(values);
 
-                android.util.Log.d("AddTransaction", "Transaction saved successfully");
-                android.util.Log.d("AddTransaction", "Type: " + transactionType + ", Amount: " + amount + ", Category: " + selectedCategoryName);
+            String message = "income".equals(transactionType) ?
+                    "Đã thêm thu nhập thành công!" :
+                    "Đã thêm chi tiêu thành công!";
 
-                // ✅ 1. HIỂN THỊ TOAST
-                showToast(message);
-
-                // ✅ 2. HIỂN THỊ IN-APP NOTIFICATION (LUÔN HIỂN THỊ)
-                try {
-                    inAppNotificationManager.showTransactionSuccess(transactionType, amount, selectedCategoryName);
-                    android.util.Log.d("AddTransaction", "In-app notification shown");
-                } catch (Exception e) {
-                    android.util.Log.e("AddTransaction", "Error showing in-app notification: " + e.getMessage());
-                    e.printStackTrace();
-                }
+            android.util.Log.d("AddTransaction", "Transaction queued: " + write.provisionalId);
+            android.util.Log.d("AddTransaction", "Type: " + transactionType + ", Amount: " + amount + ", Category: " + selectedCategoryName);
 
-                // ✅ 3. HIỂN THỊ SYSTEM NOTIFICATION (NẾU CÓ QUYỀN)
-                try {
-                    if (NotificationPermissionHelper.hasNotificationPermission(this)) {
-                        android.util.Log.d("AddTransaction", "Has notification permission, showing system notification");
-                        NotificationHelper notificationHelper = new NotificationHelper(this);
-                        notificationHelper.showTransactionSuccessNotification(transactionType, amount, selectedCategoryName);
-                        android.util.Log.d("AddTransaction", "System notification sent");
-                    } else {
-                        android.util.Log.w("AddTransaction", "No notification permission, skipping system notification");
-                    }
-                } catch (Exception e) {
-                    android.util.Log.e("AddTransaction", "Error showing system notification: " + e.getMessage());
-                    e.printStackTrace();
-                }
+            // ✅ 1. HIỂN THỊ TOAST
+            showToast(message);
 
-                // ✅ 4. KIỂM TRA VÀ CẢNH BÁO SỐ DƯ THẤP
-                if ("expense".equals(transactionType)) {
-                    double newBalance = getCurrentBalance() - amount;
-                    android.util.Log.d("AddTransaction", "New balance after expense: " + newBalance);
-
-                    if (newBalance < 100000) { // Dưới 100,000đ
-                        // In-app warning (luôn hiện)
-                        try {
-                            inAppNotificationManager.showLowBalanceWarning(newBalance);
-                            android.util.Log.d("AddTransaction", "In-app low balance warning shown");
-                        } catch (Exception e) {
-                            android.util.Log.e("AddTransaction", "Error showing in-app low balance warning: " + e.getMessage());
-                        }
-
-                        // System notification warning (nếu có quyền)
-                        try {
-                            if (NotificationPermissionHelper.hasNotificationPermission(this)) {
-                                android.util.Log.d("AddTransaction", "Showing system low balance warning");
-                                NotificationHelper notificationHelper = new NotificationHelper(this);
-
-                                // Delay để không bị conflict với notification giao dịch
-                                new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
-                                    notificationHelper.showLowBalanceWarning(newBalance);
-                                }, 1500);
-                            }
-                        } catch (Exception e) {
-                            android.util.Log.e("AddTransaction", "Error showing system low balance warning: " + e.getMessage());
-                        }
-                    }
+            // ✅ 2. HIỂN THỊ SYSTEM NOTIFICATION (NẾU CÓ QUYỀN)
+            try {
+                if (NotificationPermissionHelper.hasNotificationPermission(this)) {
+                    android.util.Log.d("AddTransaction", "Has notification permission, showing system notification");
+                    NotificationHelper notificationHelper = new NotificationHelper(this);
+                    notificationHelper.showTransactionSuccessNotification(transactionType, amount, selectedCategoryName);
+                    android.util.Log.d("AddTransaction", "System notification sent");
+                } else {
+                    android.util.Log.w("AddTransaction", "No notification permission, skipping system notification");
                 }
+            } catch (Exception e) {
+                android.util.Log.e("AddTransaction", "Error showing system notification: " + e.getMessage());
+                e.printStackTrace();
+            }
 
-                // ✅ 5. RETURN RESULT
-                Intent resultIntent = new Intent();
-                resultIntent.putExtra("transaction_added", true);
-                resultIntent.putExtra("transaction_type", transactionType);
-                resultIntent.putExtra("transaction_amount", amount);
-                resultIntent.putExtra("refresh_needed", true);
-                setResult(RESULT_OK, resultIntent);
+            // ✅ 3. KIỂM TRA VÀ CẢNH BÁO SỐ DƯ THẤP (số dư đã tính cả giao dịch đang chờ ghi, kể cả giao dịch này).
+            // Đọc sổ cái trên thread ghi - màn hình đã đóng khi có kết quả nên chỉ dùng application context
+            if ("expense".equals(transactionType)) {
+                android.content.Context appContext = getApplicationContext();
+                writeQueue.getProjectedBalanceAsync(userId, balance -> warnIfLowBalance(appContext, balance));
+            }
 
-                // ✅ 6. DELAY TRƯỚC KHI FINISH
-                new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
-                    finish();
-                    overridePendingTransition(R.anim.slide_in_down, R.anim.slide_out_up);
-                }, 2000); // 2 seconds để user thấy notification
+            // ✅ 4. RETURN RESULT
+            Intent resultIntent = new Intent();
+            resultIntent.putExtra("transaction_added", true);
+            resultIntent.putExtra("transaction_type", transactionType);
+            resultIntent.putExtra("transaction_amount", amount);
+            resultIntent.putExtra("refresh_needed", true);
+            setResult(RESULT_OK, resultIntent);
 
-            } else {
-                android.util.Log.e("AddTransaction", "Failed to insert transaction");
-                showToast("Lỗi khi lưu giao dịch");
-
-                // Hiển thị error notification
-                try {
-                    inAppNotificationManager.showCustomNotification(
-                            "❌ Lỗi", "Không thể lưu giao dịch. Vui lòng thử lại.");
-                } catch (Exception e) {
-                    android.util.Log.e("AddTransaction", "Error showing error notification: " + e.getMessage());
-                }
-            }
+            // ✅ 5. ĐÓNG NGAY - màn hình trước tự tải lại khi listener báo đã ghi xong
+            finish();
+            overridePendingTransition(R.anim.slide_in_down, R.anim.slide_out_up);
 
         } catch (Exception e) {
             android.util.Log.e("AddTransaction", "Exception in saveTransaction: " + e.getMessage());
@@ -703,34 +646,34 @@ public class AddTransactionActivity extends AppCompatActivity {
     }
 
 
-    // Thêm method mới để tính số dư hiện tại
-    private double getCurrentBalance() {
-        double balance = 0;
-        int userId = sharedPreferences.getInt(KEY_USER_ID, 1);
+    private static void warnIfLowBalance(android.content.Context appContext, double newBalance) {
+        android.util.Log.d("AddTransaction", "New balance after expense: " + newBalance);
+        if (newBalance >= 100000) { // Dưới 100,000đ mới cảnh báo
+            return;
+        }
 
         try {
-            String query = "SELECT " + DatabaseHelper.COLUMN_TYPE + ", " + DatabaseHelper.COLUMN_AMOUNT +
-                    " FROM " + DatabaseHelper.TABLE_TRANSACTIONS +
-                    " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ?";
-
-            Cursor cursor = database.rawQuery(query, new String[]{String.valueOf(userId)});
-
-            while (cursor.moveToNext()) {
-                String type = cursor.getString(0);
-                double amount = cursor.getDouble(1);
+            if (NotificationPermissionHelper.hasNotificationPermission(appContext)) {
+                android.util.Log.d("AddTransaction", "Showing system low balance warning");
+                NotificationHelper notificationHelper = new NotificationHelper(appContext);
 
-                if ("income".equals(type)) {
-                    balance += amount;
-                } else if ("expense".equals(type)) {
-                    balance -= amount;
-                }
+                // Delay để không bị conflict với notification giao dịch
+                new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+                    notificationHelper.showLowBalanceWarning(newBalance);
+                }, 1500);
+            } else {
+                Toast.makeText(appContext, "⚠️ Số dư thấp: " + Money.fromMajor(newBalance).format(), Toast.LENGTH_SHORT).show();
             }
-            cursor.close();
         } catch (Exception e) {
-            e.printStackTrace();
+            android.util.Log.e("AddTransaction", "Error showing system low balance warning: " + e.getMessage());
         }
+    }
 
-        return balance;
+    // Thêm method mới để tính số dư hiện tại
+    private double getCurrentBalance() {
+        // 💰 Đọc từ sổ cái user_balances thay vì cộng dồn toàn bộ giao dịch
+        int userId = sharedPreferences.getInt(KEY_USER_ID, 1);
+        return balanceDAO.getBalance(userId);
     }
 
     private boolean validateFormForSave() {
@@ -9,6 +9,7 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import database.DatabaseHelper;
 import models.BudgetPlan;
+import models.Money;
 import adapters.AdjustBudgetAdapter;
 
 import java.text.NumberFormat;
@@ -50,7 +51,7 @@ public class AdjustBudgetActivity extends AppCompatActivity {
         rvAdjustCategories = findViewById(R.id.rv_adjust_categories);
         layoutAdjustmentSummary = findViewById(R.id.layout_adjustment_summary);
 
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
         currencyFormatter = NumberFormat.getCurrencyInstance(new Locale("vi", "VN"));
 
         // Setup RecyclerView
@@ -125,14 +126,14 @@ public class AdjustBudgetActivity extends AppCompatActivity {
         try {
             for (BudgetPlan.CategoryBudget category : currentBudget.getCategories()) {
                 ContentValues values = new ContentValues();
-                values.put(DatabaseHelper.COLUMN_BUDGET_AMOUNT, category.getAllocatedAmount());
+                values.put(DatabaseHelper.COLUMN_BUDGET_AMOUNT, Money.toMinorUnits(category.getAllocatedAmount()));
 
-                // ✅ FIXED: Use getCategoryId() instead of getId()
-                String whereClause = DatabaseHelper.COLUMN_CATEGORY_ID + " = ? AND " +
-                        DatabaseHelper.COLUMN_BUDGET_PERIOD + " = ?";
-                String[] whereArgs = {String.valueOf(category.getCategoryId()), currentBudget.getPeriodValue()};
+                // ✅ Chỉ sửa dòng của kế hoạch này: khóa theo (plan_id, category_id)
+                String whereClause = DatabaseHelper.COLUMN_PLAN_ID + " = ? AND " +
+                        DatabaseHelper.COLUMN_CATEGORY_ID + " = ?";
+                String[] whereArgs = {String.valueOf(currentBudget.getId()), String.valueOf(category.getCategoryId())};
 
-                db.update(DatabaseHelper.TABLE_BUDGETS, values, whereClause, whereArgs);
+                db.update(DatabaseHelper.TABLE_BUDGET_ITEMS, values, whereClause, whereArgs);
             }
 
             db.setTransactionSuccessful();
@@ -1,5 +1,6 @@
 package com.example.expensemanagement;
 
+import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Color;
@@ -37,10 +38,16 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
 
 import adapters.TopCategoryAdapter;
+import database.DailySeriesDAO;
 import database.DatabaseHelper;
+import database.MonthlyRollupDAO;
+import database.ResultCache;
 import models.CategoryAnalytics;
+import models.DateCodec;
 
 public class AnalyticsActivity extends AppCompatActivity {
 
@@ -67,6 +74,31 @@ public class AnalyticsActivity extends AppCompatActivity {
     // Database
     private DatabaseHelper dbHelper;
     private SQLiteDatabase db;
+    private MonthlyRollupDAO rollupDAO;
+    private DailySeriesDAO dailySeriesDAO;
+    private ResultCache resultCache;
+
+    // 👤 User đang đăng nhập - mọi truy vấn của màn hình chỉ đọc giao dịch của user này
+    private int userId = -1;
+
+    // 🗃️ Số liệu 1 kỳ đọc từ transactions (qua rollups) + tên/icon danh mục
+    private static final String[] PERIOD_TABLES = {DatabaseHelper.TABLE_TRANSACTIONS, DatabaseHelper.TABLE_CATEGORIES};
+
+    // Kết quả truy vấn của 1 kỳ - dùng chung trong ResultCache nên không sửa sau khi tạo
+    private static final class PeriodData {
+        final long income;
+        final long expense;
+        final List<CategoryAnalytics> topCategories;
+        // -1 = lỗi khi đọc
+        final long previousExpense;
+
+        PeriodData(long income, long expense, List<CategoryAnalytics> topCategories, long previousExpense) {
+            this.income = income;
+            this.expense = expense;
+            this.topCategories = topCategories;
+            this.previousExpense = previousExpense;
+        }
+    }
 
     // Data
     private String selectedPeriod = "this_month";
@@ -84,6 +116,7 @@ public class AnalyticsActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_analytics);
 
+        userId = getCurrentUserId();
         initDatabase();
         initViews();
         setupToolbar();
@@ -94,10 +127,18 @@ public class AnalyticsActivity extends AppCompatActivity {
         loadAnalyticsData();
     }
 
+    private int getCurrentUserId() {
+        SharedPreferences sharedPreferences = getSharedPreferences("MoneyMasterPrefs", MODE_PRIVATE);
+        return sharedPreferences.getInt("userId", -1);
+    }
+
     private void initDatabase() {
         try {
-            dbHelper = new DatabaseHelper(this);
+            dbHelper = DatabaseHelper.getInstance(this);
             db = dbHelper.getReadableDatabase();
+            rollupDAO = new MonthlyRollupDAO(dbHelper);
+            dailySeriesDAO = new DailySeriesDAO(dbHelper);
+            resultCache = dbHelper.getResultCache();
             Log.d(TAG, "Database initialized for analytics");
         } catch (Exception e) {
             Log.e(TAG, "Error initializing database: " + e.getMessage());
@@ -222,10 +263,17 @@ public class AnalyticsActivity extends AppCompatActivity {
         try {
             String[] dateRange = getDateRange(selectedPeriod);
 
-            // Load all data
-            loadSummaryData(dateRange);
-            loadTopCategories(dateRange);
-            loadSpendingTrend();
+            // 🗃️ Đổi qua lại giữa các kỳ / mở lại màn hình khi chưa có giao dịch mới thì không truy vấn lại
+            PeriodData data = resultCache.get(userId, "analytics_period",
+                    selectedPeriod + ":" + dateRange[0] + ":" + dateRange[1], PERIOD_TABLES,
+                    () -> queryPeriodData(dateRange));
+
+            totalIncome = data.income;
+            totalExpense = data.expense;
+            balance = totalIncome - totalExpense;
+            topCategories.clear();
+            topCategories.addAll(data.topCategories);
+            showSpendingTrend(data.previousExpense);
 
             // Update UI
             updateUI();
@@ -245,6 +293,13 @@ public class AnalyticsActivity extends AppCompatActivity {
         }
     }
 
+    private PeriodData queryPeriodData(String[] dateRange) {
+        long[] totals = loadSummaryData(dateRange);
+        List<CategoryAnalytics> categories = loadTopCategories(dateRange, totals[1]);
+        long previousExpense = totals[1] > 0 ? loadPreviousExpense() : 0;
+        return new PeriodData(totals[0], totals[1], categories, previousExpense);
+    }
+
     private String[] getDateRange(String period) {
         Calendar cal = Calendar.getInstance();
         String endDate = dateFormatter.format(cal.getTime());
@@ -290,66 +345,26 @@ public class AnalyticsActivity extends AppCompatActivity {
         return new String[]{startDate, endDate};
     }
 
-    private void loadSummaryData(String[] dateRange) {
-        totalIncome = 0;
-        totalExpense = 0;
-
-        String query = "SELECT " + DatabaseHelper.COLUMN_TYPE + ", SUM(" + DatabaseHelper.COLUMN_AMOUNT + ") as total FROM " +
-                DatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + DatabaseHelper.COLUMN_DATE + " BETWEEN ? AND ? GROUP BY " + DatabaseHelper.COLUMN_TYPE;
-
-        Log.d(TAG, "Loading summary data with query: " + query);
+    // {thu, chi} trong kỳ
+    private long[] loadSummaryData(String[] dateRange) {
+        Log.d(TAG, "Loading summary data from monthly rollups");
         Log.d(TAG, "Date range: " + dateRange[0] + " - " + dateRange[1]);
 
-        Cursor cursor = null;
-        try {
-            cursor = db.rawQuery(query, dateRange);
-            Log.d(TAG, "Summary cursor count: " + cursor.getCount());
-
-            while (cursor.moveToNext()) {
-                String type = cursor.getString(cursor.getColumnIndexOrThrow("type"));
-                double amount = cursor.getDouble(cursor.getColumnIndexOrThrow("total"));
-
-                Log.d(TAG, "Type: " + type + ", Amount: " + amount);
-
-                if ("income".equals(type)) {
-                    totalIncome = amount;
-                } else if ("expense".equals(type)) {
-                    totalExpense = amount;
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error loading summary data: " + e.getMessage());
-            e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
-
-        balance = totalIncome - totalExpense;
-        Log.d(TAG, "Final totals - Income: " + totalIncome + ", Expense: " + totalExpense + ", Balance: " + balance);
+        // 📊 Tháng trọn vẹn đọc từ monthly_rollups, phần lẻ đọc từ transactions
+        long[] totals = rollupDAO.getIncomeExpense(userId, dateRange[0], dateRange[1]);
+        Log.d(TAG, "Final totals - Income: " + totals[0] + ", Expense: " + totals[1] + ", Balance: " + (totals[0] - totals[1]));
+        return totals;
     }
 
-    private void loadTopCategories(String[] dateRange) {
-        topCategories.clear();
-
-        String query = "SELECT c." + DatabaseHelper.COLUMN_NAME + " as category_name, " +
-                "c." + DatabaseHelper.COLUMN_CATEGORY_ICON + " as icon, " +
-                "c." + DatabaseHelper.COLUMN_CATEGORY_COLOR + " as color, " +
-                "SUM(t." + DatabaseHelper.COLUMN_AMOUNT + ") as total " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " t " +
-                "JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID + " " +
-                "WHERE t." + DatabaseHelper.COLUMN_DATE + " BETWEEN ? AND ? " +
-                "AND t." + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "GROUP BY c." + DatabaseHelper.COLUMN_ID + ", c." + DatabaseHelper.COLUMN_NAME + ", c." + DatabaseHelper.COLUMN_CATEGORY_ICON + ", c." + DatabaseHelper.COLUMN_CATEGORY_COLOR + " " +
-                "ORDER BY total DESC " +
-                "LIMIT 5";
+    private List<CategoryAnalytics> loadTopCategories(String[] dateRange, long expense) {
+        List<CategoryAnalytics> categories = new ArrayList<>();
 
-        Log.d(TAG, "Loading top categories with query: " + query);
+        Log.d(TAG, "Loading top categories from monthly rollups");
 
         Cursor cursor = null;
         try {
-            cursor = db.rawQuery(query, dateRange);
+            // 📊 O(số danh mục) thay vì quét toàn bộ giao dịch trong kỳ
+            cursor = rollupDAO.getTopExpenseCategories(userId, dateRange[0], dateRange[1], 5);
             Log.d(TAG, "Top categories cursor count: " + cursor.getCount());
 
             while (cursor.moveToNext()) {
@@ -357,12 +372,12 @@ public class AnalyticsActivity extends AppCompatActivity {
                 String icon = cursor.getString(cursor.getColumnIndexOrThrow("icon"));
                 String color = cursor.getString(cursor.getColumnIndexOrThrow("color"));
                 double amount = cursor.getDouble(cursor.getColumnIndexOrThrow("total"));
-                double percentage = totalExpense > 0 ? (amount / totalExpense) * 100 : 0;
+                double percentage = expense > 0 ? (amount / expense) * 100 : 0;
 
                 Log.d(TAG, "Category: " + categoryName + ", Amount: " + amount + ", Percentage: " + percentage);
 
                 CategoryAnalytics category = new CategoryAnalytics(categoryName, amount, percentage, icon, color);
-                topCategories.add(category);
+                categories.add(category);
             }
         } catch (Exception e) {
             Log.e(TAG, "Error loading top categories: " + e.getMessage());
@@ -372,51 +387,58 @@ public class AnalyticsActivity extends AppCompatActivity {
                 cursor.close();
             }
         }
+
+        return categories;
     }
 
-    private void loadSpendingTrend() {
+    // Tổng chi kỳ trước (cùng độ dài), -1 nếu lỗi
+    private long loadPreviousExpense() {
         try {
-            if (totalExpense <= 0) {
-                tvSpendingTrend.setText("Không có dữ liệu");
-                tvSpendingTrend.setTextColor(Color.parseColor("#666666"));
-                return;
-            }
-
             String[] previousPeriodRange = getPreviousPeriodRange(selectedPeriod);
             Log.d(TAG, "Previous period range: " + previousPeriodRange[0] + " - " + previousPeriodRange[1]);
 
             String query = "SELECT SUM(" + DatabaseHelper.COLUMN_AMOUNT + ") as total FROM " +
-                    DatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + DatabaseHelper.COLUMN_DATE +
-                    " BETWEEN ? AND ? AND " + DatabaseHelper.COLUMN_TYPE + " = 'expense'";
+                    DatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
+                    DatabaseHelper.COLUMN_TYPE + " = 'expense' AND " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " BETWEEN ? AND ?";
 
             Cursor cursor = null;
-            double previousExpense = 0;
-
             try {
-                cursor = db.rawQuery(query, previousPeriodRange);
-                if (cursor.moveToFirst()) {
-                    previousExpense = cursor.getDouble(cursor.getColumnIndexOrThrow("total"));
-                }
+                cursor = db.rawQuery(query, new String[]{
+                        String.valueOf(userId),
+                        DateCodec.toEpochDayArg(previousPeriodRange[0]),
+                        DateCodec.toEpochDayArg(previousPeriodRange[1])
+                });
+                return cursor.moveToFirst() ? cursor.getLong(0) : 0;
             } finally {
                 if (cursor != null) {
                     cursor.close();
                 }
             }
-
-            Log.d(TAG, "Previous expense: " + previousExpense + ", Current expense: " + totalExpense);
-
-            if (previousExpense <= 0) {
-                tvSpendingTrend.setText("Kỳ đầu");
-                tvSpendingTrend.setTextColor(Color.parseColor("#2196F3"));
-            } else {
-                double changePercent = ((totalExpense - previousExpense) / previousExpense) * 100;
-                updateSpendingTrendUI(changePercent);
-            }
         } catch (Exception e) {
             Log.e(TAG, "Error loading spending trend: " + e.getMessage());
             e.printStackTrace();
+            return -1;
+        }
+    }
+
+    private void showSpendingTrend(long previousExpense) {
+        if (totalExpense <= 0) {
+            tvSpendingTrend.setText("Không có dữ liệu");
+            tvSpendingTrend.setTextColor(Color.parseColor("#666666"));
+            return;
+        }
+
+        Log.d(TAG, "Previous expense: " + previousExpense + ", Current expense: " + totalExpense);
+
+        if (previousExpense < 0) {
             tvSpendingTrend.setText("Lỗi tính toán");
             tvSpendingTrend.setTextColor(Color.parseColor("#666666"));
+        } else if (previousExpense == 0) {
+            tvSpendingTrend.setText("Kỳ đầu");
+            tvSpendingTrend.setTextColor(Color.parseColor("#2196F3"));
+        } else {
+            double changePercent = ((totalExpense - previousExpense) / previousExpense) * 100;
+            updateSpendingTrendUI(changePercent);
         }
     }
 
@@ -650,22 +672,18 @@ public class AnalyticsActivity extends AppCompatActivity {
         List<String> labels = new ArrayList<>();
         boolean hasData = false;
 
-        // Get date list for the selected period
-        List<String> dateList = getDateListForPeriod(dateRange[0], dateRange[1]);
-        SimpleDateFormat labelFormat = new SimpleDateFormat("dd/MM", Locale.getDefault());
+        // 📈 Cả chuỗi ngày được load bằng 1 truy vấn, ngày trống đã được điền 0
+        TreeMap<String, long[]> series = dailySeriesDAO.getDailyTotals(
+                userId, dateRange[0], dateRange[1]);
 
-        for (int i = 0; i < dateList.size(); i++) {
-            String date = dateList.get(i);
-            double dailyExpense = getDailyExpense(date);
-            entries.add(new Entry(i, (float) dailyExpense));
+        int i = 0;
+        for (Map.Entry<String, long[]> day : series.entrySet()) {
+            String date = day.getKey();
+            long dailyExpense = day.getValue()[1];
+            entries.add(new Entry(i++, (float) dailyExpense));
 
-            try {
-                Calendar cal = Calendar.getInstance();
-                cal.setTime(dateFormatter.parse(date));
-                labels.add(labelFormat.format(cal.getTime()));
-            } catch (Exception e) {
-                labels.add(date.substring(8)); // fallback: just the day
-            }
+            // "yyyy-MM-dd" -> "dd/MM" (không cần parse Date cho từng điểm)
+            labels.add(date.substring(8, 10) + "/" + date.substring(5, 7));
 
             if (dailyExpense > 0) {
                 hasData = true;
@@ -689,6 +707,12 @@ public class AnalyticsActivity extends AppCompatActivity {
         dataSet.setValueTextSize(9f);
         dataSet.setDrawFilled(true);
         dataSet.setFillColor(Color.parseColor("#E3F2FD"));
+
+        // Chuỗi dài (quý/năm): bỏ vòng tròn + nhãn giá trị từng điểm để vẽ mượt, không cần lấy mẫu
+        if (entries.size() > 31) {
+            dataSet.setDrawCircles(false);
+            dataSet.setDrawValues(false);
+        }
         dataSet.setValueFormatter(new ValueFormatter() {
             @Override
             public String getFormattedValue(float value) {
@@ -746,69 +770,6 @@ public class AnalyticsActivity extends AppCompatActivity {
         lineChart.invalidate();
     }
 
-    private List<String> getDateListForPeriod(String startDate, String endDate) {
-        List<String> dates = new ArrayList<>();
-        try {
-            Calendar start = Calendar.getInstance();
-            Calendar end = Calendar.getInstance();
-            start.setTime(dateFormatter.parse(startDate));
-            end.setTime(dateFormatter.parse(endDate));
-
-            // Limit number of days to prevent UI overload
-            long daysDiff = (end.getTimeInMillis() - start.getTimeInMillis()) / (24 * 60 * 60 * 1000);
-            if (daysDiff > 90) {
-                // If more than 90 days, sample the data
-                int step = (int) Math.ceil(daysDiff / 30.0); // Get about 30 points
-                Calendar current = (Calendar) start.clone();
-                while (!current.after(end)) {
-                    dates.add(dateFormatter.format(current.getTime()));
-                    current.add(Calendar.DAY_OF_YEAR, step);
-                }
-            } else {
-                // Get all days
-                Calendar current = (Calendar) start.clone();
-                while (!current.after(end)) {
-                    dates.add(dateFormatter.format(current.getTime()));
-                    current.add(Calendar.DAY_OF_YEAR, 1);
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error creating date list: " + e.getMessage());
-            // Fallback: create last 7 days
-            Calendar cal = Calendar.getInstance();
-            for (int i = 6; i >= 0; i--) {
-                Calendar dayCal = (Calendar) cal.clone();
-                dayCal.add(Calendar.DAY_OF_YEAR, -i);
-                dates.add(dateFormatter.format(dayCal.getTime()));
-            }
-        }
-        return dates;
-    }
-
-    private double getDailyExpense(String date) {
-        String query = "SELECT SUM(" + DatabaseHelper.COLUMN_AMOUNT + ") as total FROM " +
-                DatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + DatabaseHelper.COLUMN_DATE +
-                " = ? AND " + DatabaseHelper.COLUMN_TYPE + " = 'expense'";
-
-        Cursor cursor = null;
-        double total = 0;
-
-        try {
-            cursor = db.rawQuery(query, new String[]{date});
-            if (cursor.moveToFirst()) {
-                total = cursor.getDouble(cursor.getColumnIndexOrThrow("total"));
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting daily expense for " + date + ": " + e.getMessage());
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
-
-        return total;
-    }
-
     private void setupBarChart() {
         String[] dateRange = getDateRange(selectedPeriod);
         List<BarEntry> entries = new ArrayList<>();
@@ -818,9 +779,19 @@ public class AnalyticsActivity extends AppCompatActivity {
         // Get period data based on selected period
         List<String[]> periods = getPeriodRangesForBarChart(selectedPeriod, dateRange);
 
+        // 📈 Load chuỗi ngày 1 lần cho toàn bộ các cột rồi cộng dồn trong Java
+        String seriesStart = dateRange[0];
+        String seriesEnd = dateRange[1];
+        for (String[] period : periods) {
+            if (period[0].compareTo(seriesStart) < 0) seriesStart = period[0];
+            if (period[1].compareTo(seriesEnd) > 0) seriesEnd = period[1];
+        }
+        TreeMap<String, long[]> series = dailySeriesDAO.getDailyTotals(
+                userId, seriesStart, seriesEnd);
+
         for (int i = 0; i < periods.size(); i++) {
             String[] period = periods.get(i);
-            double[] periodData = getPeriodData(period[0], period[1]);
+            long[] periodData = DailySeriesDAO.sumRange(series, period[0], period[1]);
 
             entries.add(new BarEntry(i, new float[]{(float)periodData[0], (float)periodData[1]}));
             labels.add(period[2]); // label
@@ -1046,37 +1017,6 @@ public class AnalyticsActivity extends AppCompatActivity {
         return periods;
     }
 
-    private double[] getPeriodData(String startDate, String endDate) {
-        double income = 0, expense = 0;
-
-        String query = "SELECT " + DatabaseHelper.COLUMN_TYPE + ", SUM(" + DatabaseHelper.COLUMN_AMOUNT + ") as total FROM " +
-                DatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + DatabaseHelper.COLUMN_DATE + " BETWEEN ? AND ? GROUP BY " + DatabaseHelper.COLUMN_TYPE;
-
-        Cursor cursor = null;
-        try {
-            cursor = db.rawQuery(query, new String[]{startDate, endDate});
-
-            while (cursor.moveToNext()) {
-                String type = cursor.getString(cursor.getColumnIndexOrThrow("type"));
-                double amount = cursor.getDouble(cursor.getColumnIndexOrThrow("total"));
-
-                if ("income".equals(type)) {
-                    income = amount;
-                } else if ("expense".equals(type)) {
-                    expense = amount;
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting period data from " + startDate + " to " + endDate + ": " + e.getMessage());
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
-
-        return new double[]{income, expense};
-    }
-
     private String formatCurrency(double amount) {
         return currencyFormatter.format(amount) + " đ";
     }
@@ -1089,15 +1029,4 @@ public class AnalyticsActivity extends AppCompatActivity {
         }
         return super.onOptionsItemSelected(item);
     }
-
-    @Override
-    protected void onDestroy() {
-        if (db != null && db.isOpen()) {
-            db.close();
-        }
-        if (dbHelper != null) {
-            dbHelper.close();
-        }
-        super.onDestroy();
-    }
 }
\ No newline at end of file
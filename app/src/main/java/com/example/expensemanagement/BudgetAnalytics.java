@@ -3,12 +3,29 @@ package com.example.expensemanagement;
 
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
+import database.AnomalyDAO;
 import database.DatabaseHelper;
-import java.text.SimpleDateFormat;
+import database.InsightDAO;
+import database.ResultCache;
+import database.TransactionColumns;
+import database.TransactionDAO;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import models.BudgetPlan;
+import models.DateCodec;
 import models.SmartInsight;
 import models.BudgetAnalysisReport;
 
@@ -26,75 +43,307 @@ import models.BudgetAnalysisReport;
 public class BudgetAnalytics {
 
     private static final String TAG = "BudgetAnalytics";
+
+    // 🗃️ Bảng mà chỉ số hiệu suất đọc - ghi vào bảng nào thì kết quả cache hết hạn
+    private static final String[] ANALYTICS_TABLES = {
+            DatabaseHelper.TABLE_TRANSACTIONS,
+            DatabaseHelper.TABLE_CATEGORIES,
+            DatabaseHelper.TABLE_BUDGET_PLANS,
+            DatabaseHelper.TABLE_BUDGET_ITEMS
+    };
+
+    // strftime('%w'): 0 = Chủ Nhật
+    private static final String[] WEEKDAY_NAMES = {
+            "Sunday", "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday"
+    };
+
+    // 🧵 Các phần của báo cáo chạy song song trên pool giới hạn, dùng chung mọi BudgetAnalytics (WAL cho đọc đồng thời)
+    private static final int ANALYZER_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final ExecutorService ANALYZER_POOL = Executors.newFixedThreadPool(ANALYZER_THREADS, r -> {
+        Thread thread = new Thread(r, "budget-analyzer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 🧵 Việc của 1 báo cáo trên ANALYZER_POOL. Giữ Future của pool vì CompletableFuture.cancel() không ngắt thread
+     * đang chạy - cancel() ở đây interrupt thread, các vòng lặp phân tích gọi checkInterrupted() để dừng sớm.
+     */
+    private static final class SectionTasks {
+        private final List<Future<?>> futures = new ArrayList<>();
+        private boolean cancelled;
+
+        <T> CompletableFuture<T> submit(Callable<T> work) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            synchronized (this) {
+                if (cancelled) {
+                    result.cancel(false);
+                    return result;
+                }
+                futures.add(ANALYZER_POOL.submit(() -> {
+                    try {
+                        T value = work.call();
+                        // Bị ngắt giữa chừng thì kết quả có thể thiếu - không trả về để không bị lưu
+                        if (Thread.interrupted()) {
+                            result.cancel(false);
+                        } else {
+                            result.complete(value);
+                        }
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                }));
+            }
+            return result;
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    // Gọi trong vòng lặp phân tích: báo cáo đã hết hạn phần này thì dừng thay vì chạy tiếp cho xong
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Analysis interrupted");
+        }
+    }
+
+    /**
+     * Các phần của báo cáo tổng hợp, mỗi phần có hạn thời gian riêng (ms, tính từ lúc bắt đầu báo cáo)
+     */
+    public enum Section {
+        PATTERNS(3000),
+        VARIANCE(2000),
+        FORECAST(3000),
+        RISK(1000),
+        OPTIMIZATIONS(1000),
+        ANOMALIES(3000);
+
+        final long timeoutMs;
+
+        Section(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    /**
+     * Nhận từng phần báo cáo ngay khi xong (main thread)
+     */
+    public interface ReportListener {
+        void onSectionReady(Section section, List<SmartInsight> insights);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private DatabaseHelper dbHelper;
-    private SimpleDateFormat dateFormatter;
+    private TransactionDAO transactionDAO;
+    private AnomalyDAO anomalyDAO;
+    private InsightDAO insightDAO;
+    private ResultCache resultCache;
 
     public BudgetAnalytics(DatabaseHelper dbHelper) {
         this.dbHelper = dbHelper;
-        this.dateFormatter = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+        this.transactionDAO = new TransactionDAO(dbHelper);
+        this.anomalyDAO = new AnomalyDAO(dbHelper);
+        this.insightDAO = new InsightDAO(dbHelper);
+        this.resultCache = dbHelper.getResultCache();
+    }
+
+    // ==================== SPENDING SNAPSHOT ====================
+
+    /**
+     * 📊 Số liệu cho mọi phân tích chi tiêu, tích lũy trong 1 vòng lặp trên TransactionColumns (12 tháng gần nhất).
+     * Các cửa sổ (7 / 30 / 90 ngày, 6 / 12 tháng, các tuần 35..8 ngày trước) tính theo hôm nay như các câu SQL trước đây.
+     */
+    private static final class SpendingStats {
+        // Tuần (từ Thứ Hai) chạm khoảng 35..8 ngày trước: tối đa 5 tuần
+        private static final int WEEK_SLOTS = 5;
+
+        final int userId;
+        final int today;
+
+        // Chi theo thứ trong tuần (0 = Chủ Nhật), 90 ngày
+        final long[] weekdaySum = new long[7];
+        final int[] weekdayCount = new int[7];
+
+        // Chi theo ngày trong tháng (1..31), 6 tháng
+        final long[] dayOfMonthSum = new long[32];
+        final int[] dayOfMonthCount = new int[32];
+
+        // Chi theo tháng (1..12), 12 tháng
+        final long[] monthSum = new long[13];
+        final int[] monthCount = new int[13];
+
+        // 30 ngày: tổng chi từng ngày có giao dịch (ngày tăng dần) + tổng/số giao dịch thu, chi
+        final List<Double> dailySpending = new ArrayList<>();
+        long expense30Sum;
+        int expense30Count;
+        long income30Sum;
+        int income30Count;
+
+        // 7 ngày + các tuần trước đó: số giao dịch chi
+        int expense7Count;
+        final int[] weekCount = new int[WEEK_SLOTS];
+
+        SpendingStats(int userId, TransactionColumns columns, int today) {
+            this.userId = userId;
+            this.today = today;
+
+            int from7 = today - 7;
+            int from30 = today - 30;
+            int from90 = today - 90;
+            int from6Months = DateCodec.plusMonths(today, -6);
+            int from12Months = DateCodec.plusMonths(today, -12);
+            int weeksFrom = today - 35;
+            int weeksTo = today - 8;
+            int firstWeek = DateCodec.startOfWeek(weeksFrom);
+
+            int currentDay = Integer.MIN_VALUE;
+            long currentDaySum = 0;
+
+            for (int i = columns.indexOf(from12Months); i < columns.size; i++) {
+                if ((i & 1023) == 0) checkInterrupted();
+                int day = columns.days[i];
+                long amount = columns.amounts[i];
+
+                if (!columns.expense[i]) {
+                    if (day >= from30) {
+                        income30Sum += amount;
+                        income30Count++;
+                    }
+                    continue;
+                }
+
+                int month = DateCodec.month(day);
+                monthSum[month] += amount;
+                monthCount[month]++;
+
+                if (day >= from6Months) {
+                    int dayOfMonth = DateCodec.dayOfMonth(day);
+                    dayOfMonthSum[dayOfMonth] += amount;
+                    dayOfMonthCount[dayOfMonth]++;
+                }
+
+                if (day >= from90) {
+                    int weekday = DateCodec.dayOfWeek(day) % 7;
+                    weekdaySum[weekday] += amount;
+                    weekdayCount[weekday]++;
+                }
+
+                if (day >= from30) {
+                    // Mảng sắp theo ngày nên các dòng cùng ngày liền nhau
+                    if (day != currentDay) {
+                        if (currentDay != Integer.MIN_VALUE) dailySpending.add((double) currentDaySum);
+                        currentDay = day;
+                        currentDaySum = 0;
+                    }
+                    currentDaySum += amount;
+                    expense30Sum += amount;
+                    expense30Count++;
+                }
+
+                if (day >= from7) {
+                    expense7Count++;
+                } else if (day >= weeksFrom && day <= weeksTo) {
+                    weekCount[(DateCodec.startOfWeek(day) - firstWeek) / 7]++;
+                }
+            }
+
+            if (currentDay != Integer.MIN_VALUE) dailySpending.add((double) currentDaySum);
+        }
+    }
+
+    // 1 truy vấn: giao dịch 12 tháng gần nhất của user dạng cột, rồi 1 vòng lặp tích lũy mọi cửa sổ
+    private SpendingStats loadSpendingStats(int userId) {
+        int today = DateCodec.today();
+        return new SpendingStats(userId, transactionDAO.getColumns(userId, DateCodec.plusMonths(today, -12)), today);
+    }
+
+    // Chỉ số (trong sums) của tối đa limit nhóm có trung bình cao nhất, bỏ nhóm không có giao dịch
+    private static List<Integer> topByAverage(long[] sums, int[] counts, int limit) {
+        List<Integer> keys = new ArrayList<>();
+        for (int key = 0; key < sums.length; key++) {
+            if (counts[key] > 0) keys.add(key);
+        }
+        Collections.sort(keys, (a, b) -> Double.compare((double) sums[b] / counts[b], (double) sums[a] / counts[a]));
+        return keys.size() > limit ? new ArrayList<>(keys.subList(0, limit)) : keys;
+    }
+
+    // Trung bình các tuần có giao dịch (giá trị > 0)
+    private static double averageOfPresent(int[] values) {
+        long sum = 0;
+        int count = 0;
+        for (int value : values) {
+            if (value > 0) {
+                sum += value;
+                count++;
+            }
+        }
+        return count > 0 ? (double) sum / count : 0;
     }
 
     /**
      * 🔍 PATTERN ANALYSIS: Phân tích mẫu chi tiêu
      */
-    public List<SmartInsight> analyzeSpendingPatterns(BudgetPlan budget) {
+    public List<SmartInsight> analyzeSpendingPatterns(int userId, BudgetPlan budget) {
+        return analyzeSpendingPatterns(budget, loadSpendingStats(userId));
+    }
+
+    private List<SmartInsight> analyzeSpendingPatterns(BudgetPlan budget, SpendingStats stats) {
         List<SmartInsight> insights = new ArrayList<>();
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
 
         try {
             // 1. Weekday vs Weekend Pattern
-            SmartInsight weekdayPattern = analyzeWeekdayPattern(db);
+            SmartInsight weekdayPattern = analyzeWeekdayPattern(stats);
             if (weekdayPattern != null) insights.add(weekdayPattern);
 
+            checkInterrupted();
             // 2. Monthly Spending Cycle
-            SmartInsight monthlyPattern = analyzeMonthlySpendingCycle(db);
+            SmartInsight monthlyPattern = analyzeMonthlySpendingCycle(stats);
             if (monthlyPattern != null) insights.add(monthlyPattern);
 
+            checkInterrupted();
             // 3. Category Concentration Risk
             SmartInsight concentrationRisk = analyzeCategoryConcentration(budget);
             if (concentrationRisk != null) insights.add(concentrationRisk);
 
+            checkInterrupted();
             // 4. Spending Velocity Analysis
-            SmartInsight velocityAnalysis = analyzeSpendingVelocity(db);
+            SmartInsight velocityAnalysis = analyzeSpendingVelocity(stats);
             if (velocityAnalysis != null) insights.add(velocityAnalysis);
 
+            checkInterrupted();
             // 5. Seasonal Pattern Analysis
-            SmartInsight seasonalPattern = analyzeSeasonalPatterns(db);
+            SmartInsight seasonalPattern = analyzeSeasonalPatterns(stats);
             if (seasonalPattern != null) insights.add(seasonalPattern);
 
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             Log.e(TAG, "Error analyzing spending patterns: " + e.getMessage());
-        } finally {
-            if (db != null && db.isOpen()) {
-                db.close();
-            }
         }
 
         return insights;
     }
 
-    private SmartInsight analyzeWeekdayPattern(SQLiteDatabase db) {
-        String query = "SELECT " +
-                "CASE CAST(strftime('%w', " + DatabaseHelper.COLUMN_DATE + ") AS INTEGER) " +
-                "WHEN 0 THEN 'Sunday' WHEN 1 THEN 'Monday' WHEN 2 THEN 'Tuesday' " +
-                "WHEN 3 THEN 'Wednesday' WHEN 4 THEN 'Thursday' WHEN 5 THEN 'Friday' " +
-                "WHEN 6 THEN 'Saturday' END as day_of_week, " +
-                "AVG(" + DatabaseHelper.COLUMN_AMOUNT + ") as avg_spending " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "AND " + DatabaseHelper.COLUMN_DATE + " >= date('now', '-90 days') " +
-                "GROUP BY strftime('%w', " + DatabaseHelper.COLUMN_DATE + ") " +
-                "ORDER BY avg_spending DESC";
-
-        Cursor cursor = db.rawQuery(query, null);
-
-        if (cursor.moveToFirst()) {
-            String highestDay = cursor.getString(0);
-            double highestAmount = cursor.getDouble(1);
-
-            cursor.moveToLast();
-            String lowestDay = cursor.getString(0);
-            double lowestAmount = cursor.getDouble(1);
+    private SmartInsight analyzeWeekdayPattern(SpendingStats stats) {
+        // Trung bình mỗi giao dịch chi theo thứ, 90 ngày
+        int highest = -1, lowest = -1;
+        for (int weekday = 0; weekday < 7; weekday++) {
+            if (stats.weekdayCount[weekday] == 0) continue;
+            double average = (double) stats.weekdaySum[weekday] / stats.weekdayCount[weekday];
+            if (highest < 0 || average > (double) stats.weekdaySum[highest] / stats.weekdayCount[highest]) highest = weekday;
+            if (lowest < 0 || average < (double) stats.weekdaySum[lowest] / stats.weekdayCount[lowest]) lowest = weekday;
+        }
+
+        if (highest >= 0) {
+            String highestDay = WEEKDAY_NAMES[highest];
+            double highestAmount = (double) stats.weekdaySum[highest] / stats.weekdayCount[highest];
+            String lowestDay = WEEKDAY_NAMES[lowest];
+            double lowestAmount = (double) stats.weekdaySum[lowest] / stats.weekdayCount[lowest];
 
             double difference = highestAmount - lowestAmount;
 
@@ -108,33 +357,16 @@ public class BudgetAnalytics {
                 insight.setValue(difference);
                 insight.setActionable(true);
                 insight.setSuggestion("Hãy lập kế hoạch chi tiêu cụ thể cho " + highestDay + " để kiểm soát tốt hơn.");
-                cursor.close();
                 return insight;
             }
         }
 
-        cursor.close();
         return null;
     }
 
-    private SmartInsight analyzeMonthlySpendingCycle(SQLiteDatabase db) {
-        String query = "SELECT " +
-                "CAST(strftime('%d', " + DatabaseHelper.COLUMN_DATE + ") AS INTEGER) as day_of_month, " +
-                "AVG(" + DatabaseHelper.COLUMN_AMOUNT + ") as avg_spending " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "AND " + DatabaseHelper.COLUMN_DATE + " >= date('now', '-6 months') " +
-                "GROUP BY strftime('%d', " + DatabaseHelper.COLUMN_DATE + ") " +
-                "ORDER BY avg_spending DESC " +
-                "LIMIT 5";
-
-        Cursor cursor = db.rawQuery(query, null);
-        List<Integer> highSpendingDays = new ArrayList<>();
-
-        while (cursor.moveToNext()) {
-            highSpendingDays.add(cursor.getInt(0));
-        }
-        cursor.close();
+    private SmartInsight analyzeMonthlySpendingCycle(SpendingStats stats) {
+        // 5 ngày trong tháng có trung bình chi cao nhất, 6 tháng
+        List<Integer> highSpendingDays = topByAverage(stats.dayOfMonthSum, stats.dayOfMonthCount, 5);
 
         if (!highSpendingDays.isEmpty()) {
             SmartInsight insight = new SmartInsight();
@@ -180,23 +412,8 @@ public class BudgetAnalytics {
         return null;
     }
 
-    private SmartInsight analyzeSpendingVelocity(SQLiteDatabase db) {
-        String query = "SELECT " +
-                "DATE(" + DatabaseHelper.COLUMN_DATE + ") as spending_date, " +
-                "SUM(" + DatabaseHelper.COLUMN_AMOUNT + ") as daily_total " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "AND " + DatabaseHelper.COLUMN_DATE + " >= date('now', '-30 days') " +
-                "GROUP BY DATE(" + DatabaseHelper.COLUMN_DATE + ") " +
-                "ORDER BY spending_date";
-
-        Cursor cursor = db.rawQuery(query, null);
-        List<Double> dailySpending = new ArrayList<>();
-
-        while (cursor.moveToNext()) {
-            dailySpending.add(cursor.getDouble(1));
-        }
-        cursor.close();
+    private SmartInsight analyzeSpendingVelocity(SpendingStats stats) {
+        List<Double> dailySpending = stats.dailySpending;
 
         if (dailySpending.size() >= 7) {
             // Calculate velocity (acceleration/deceleration in spending)
@@ -226,27 +443,15 @@ public class BudgetAnalytics {
         return null;
     }
 
-    private SmartInsight analyzeSeasonalPatterns(SQLiteDatabase db) {
-        String query = "SELECT " +
-                "CAST(strftime('%m', " + DatabaseHelper.COLUMN_DATE + ") AS INTEGER) as month, " +
-                "AVG(" + DatabaseHelper.COLUMN_AMOUNT + ") as avg_spending " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "AND " + DatabaseHelper.COLUMN_DATE + " >= date('now', '-12 months') " +
-                "GROUP BY strftime('%m', " + DatabaseHelper.COLUMN_DATE + ") " +
-                "ORDER BY avg_spending DESC " +
-                "LIMIT 3";
-
-        Cursor cursor = db.rawQuery(query, null);
+    private SmartInsight analyzeSeasonalPatterns(SpendingStats stats) {
+        // 3 tháng có trung bình chi cao nhất, 12 tháng
         List<String> highSpendingMonths = new ArrayList<>();
         String[] monthNames = {"", "Tháng 1", "Tháng 2", "Tháng 3", "Tháng 4", "Tháng 5", "Tháng 6",
                 "Tháng 7", "Tháng 8", "Tháng 9", "Tháng 10", "Tháng 11", "Tháng 12"};
 
-        while (cursor.moveToNext()) {
-            int month = cursor.getInt(0);
+        for (int month : topByAverage(stats.monthSum, stats.monthCount, 3)) {
             highSpendingMonths.add(monthNames[month]);
         }
-        cursor.close();
 
         if (!highSpendingMonths.isEmpty()) {
             SmartInsight insight = new SmartInsight();
@@ -265,48 +470,50 @@ public class BudgetAnalytics {
     /**
      * 📈 VARIANCE ANALYSIS: Phân tích độ lệch ngân sách
      */
-    public List<SmartInsight> analyzeVarianceTrends() {
+    public List<SmartInsight> analyzeVarianceTrends(int userId) {
         List<SmartInsight> insights = new ArrayList<>();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
 
         try {
             // Analyze budget vs actual spending variance over time
+            // 🧾 Thực chi của từng dòng ngân sách đọc từ budget_progress (không JOIN transactions)
             String query = "SELECT " +
-                    "strftime('%Y-%m', b." + DatabaseHelper.COLUMN_BUDGET_START_DATE + ") as budget_month, " +
-                    "b." + DatabaseHelper.COLUMN_BUDGET_AMOUNT + " as budgeted, " +
-                    "COALESCE(SUM(t." + DatabaseHelper.COLUMN_AMOUNT + "), 0) as actual " +
-                    "FROM " + DatabaseHelper.TABLE_BUDGETS + " b " +
-                    "LEFT JOIN " + DatabaseHelper.TABLE_TRANSACTIONS + " t ON " +
-                    "t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = b." + DatabaseHelper.COLUMN_CATEGORY_ID + " " +
-                    "AND t." + DatabaseHelper.COLUMN_DATE + " BETWEEN b." + DatabaseHelper.COLUMN_BUDGET_START_DATE + " AND b." + DatabaseHelper.COLUMN_BUDGET_END_DATE + " " +
-                    "WHERE b." + DatabaseHelper.COLUMN_BUDGET_START_DATE + " >= date('now', '-6 months') " +
-                    "GROUP BY budget_month, b." + DatabaseHelper.COLUMN_ID + " " +
+                    "strftime('%Y-%m', bp." + DatabaseHelper.COLUMN_START_DAY + " + 2440587.5) as budget_month, " +
+                    "bi." + DatabaseHelper.COLUMN_BUDGET_AMOUNT + " as budgeted, " +
+                    "COALESCE(pr." + DatabaseHelper.COLUMN_SPENT + ", 0) as actual " +
+                    "FROM " + DatabaseHelper.TABLE_BUDGET_ITEMS + " bi " +
+                    "JOIN " + DatabaseHelper.TABLE_BUDGET_PLANS + " bp ON bp." + DatabaseHelper.COLUMN_ID + " = bi." + DatabaseHelper.COLUMN_PLAN_ID + " " +
+                    "LEFT JOIN " + DatabaseHelper.TABLE_BUDGET_PROGRESS + " pr ON pr." + DatabaseHelper.COLUMN_ITEM_ID + " = bi." + DatabaseHelper.COLUMN_ID + " " +
+                    "WHERE bp." + DatabaseHelper.COLUMN_USER_ID + " = ? " +
+                    "AND bp." + DatabaseHelper.COLUMN_START_DAY + " >= " + DatabaseHelper.epochDayOf("date('now', '-6 months')") + " " +
                     "ORDER BY budget_month DESC";
 
-            Cursor cursor = db.rawQuery(query, null);
+            Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(userId)});
             List<Double> variances = new ArrayList<>();
 
-            while (cursor.moveToNext()) {
-                double budgeted = cursor.getDouble(1);
-                double actual = cursor.getDouble(2);
-                if (budgeted > 0) {
-                    double variance = ((actual - budgeted) / budgeted) * 100;
-                    variances.add(variance);
+            try {
+                while (cursor.moveToNext()) {
+                    checkInterrupted();
+                    double budgeted = cursor.getDouble(1);
+                    double actual = cursor.getDouble(2);
+                    if (budgeted > 0) {
+                        double variance = ((actual - budgeted) / budgeted) * 100;
+                        variances.add(variance);
+                    }
                 }
+            } finally {
+                cursor.close();
             }
-            cursor.close();
 
             if (variances.size() >= 3) {
                 SmartInsight varianceTrend = analyzeVarianceTrend(variances);
                 if (varianceTrend != null) insights.add(varianceTrend);
             }
 
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             Log.e(TAG, "Error analyzing variance trends: " + e.getMessage());
-        } finally {
-            if (db != null && db.isOpen()) {
-                db.close();
-            }
         }
 
         return insights;
@@ -355,35 +562,15 @@ public class BudgetAnalytics {
     /**
      * 🔮 CASH FLOW FORECASTING: Dự báo dòng tiền
      */
-    public SmartInsight forecastCashFlow(int daysAhead) {
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
+    public SmartInsight forecastCashFlow(int userId, int daysAhead) {
+        return forecastCashFlow(daysAhead, loadSpendingStats(userId));
+    }
 
+    private SmartInsight forecastCashFlow(int daysAhead, SpendingStats stats) {
         try {
-            // Get average daily spending for the last 30 days
-            String spendingQuery = "SELECT AVG(" + DatabaseHelper.COLUMN_AMOUNT + ") as avg_daily_spending " +
-                    "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                    "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                    "AND " + DatabaseHelper.COLUMN_DATE + " >= date('now', '-30 days')";
-
-            Cursor spendingCursor = db.rawQuery(spendingQuery, null);
-            double avgDailySpending = 0;
-            if (spendingCursor.moveToFirst()) {
-                avgDailySpending = spendingCursor.getDouble(0);
-            }
-            spendingCursor.close();
-
-            // Get average daily income
-            String incomeQuery = "SELECT AVG(" + DatabaseHelper.COLUMN_AMOUNT + ") as avg_daily_income " +
-                    "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                    "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'income' " +
-                    "AND " + DatabaseHelper.COLUMN_DATE + " >= date('now', '-30 days')";
-
-            Cursor incomeCursor = db.rawQuery(incomeQuery, null);
-            double avgDailyIncome = 0;
-            if (incomeCursor.moveToFirst()) {
-                avgDailyIncome = incomeCursor.getDouble(0);
-            }
-            incomeCursor.close();
+            // Average spending / income per transaction for the last 30 days
+            double avgDailySpending = stats.expense30Count > 0 ? (double) stats.expense30Sum / stats.expense30Count : 0;
+            double avgDailyIncome = stats.income30Count > 0 ? (double) stats.income30Sum / stats.income30Count : 0;
 
             // Calculate net cash flow forecast
             double netDailyCashFlow = avgDailyIncome - avgDailySpending;
@@ -412,10 +599,6 @@ public class BudgetAnalytics {
         } catch (Exception e) {
             Log.e(TAG, "Error forecasting cash flow: " + e.getMessage());
             return null;
-        } finally {
-            if (db != null && db.isOpen()) {
-                db.close();
-            }
         }
     }
 
@@ -429,6 +612,7 @@ public class BudgetAnalytics {
 
         // 1. Over-allocated categories
         for (BudgetPlan.CategoryBudget category : budget.getCategories()) {
+            checkInterrupted();
             if (category.getPercentageUsed() < 50) {
                 SmartInsight suggestion = new SmartInsight();
                 suggestion.setType(SmartInsight.Type.OPTIMIZATION);
@@ -460,6 +644,7 @@ public class BudgetAnalytics {
 
         // 3. High-risk categories optimization
         for (BudgetPlan.CategoryBudget category : budget.getCategories()) {
+            checkInterrupted();
             if (category.getPercentageUsed() > 85) {
                 SmartInsight riskOptimization = new SmartInsight();
                 riskOptimization.setType(SmartInsight.Type.WARNING);
@@ -491,6 +676,7 @@ public class BudgetAnalytics {
         // High spending categories (>80% used)
         int highRiskCategories = 0;
         for (BudgetPlan.CategoryBudget category : budget.getCategories()) {
+            checkInterrupted();
             if (category.getPercentageUsed() > 80) {
                 highRiskCategories++;
                 riskFactors.add(category.getName() + " (" + String.format("%.1f%%", category.getPercentageUsed()) + ")");
@@ -535,122 +721,71 @@ public class BudgetAnalytics {
     /**
      * 🎯 ANOMALY DETECTION: Phát hiện giao dịch bất thường
      */
-    public List<SmartInsight> detectAnomalies() {
+    public List<SmartInsight> detectAnomalies(int userId) {
+        return detectAnomalies(loadSpendingStats(userId));
+    }
+
+    private List<SmartInsight> detectAnomalies(SpendingStats stats) {
         List<SmartInsight> anomalies = new ArrayList<>();
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
 
         try {
+            // 🚨 Giao dịch lớn / danh mục tăng đột biến đã được đánh dấu lúc ghi (category_stats + triggers)
+            List<AnomalyDAO.Anomaly> flagged = anomalyDAO.getAnomalies(stats.userId, stats.today - 7);
+
             // 1. Unusual large transactions
-            SmartInsight largeTransactionAnomaly = detectLargeTransactions(db);
+            SmartInsight largeTransactionAnomaly = detectLargeTransactions(flagged);
             if (largeTransactionAnomaly != null) anomalies.add(largeTransactionAnomaly);
 
+            checkInterrupted();
             // 2. Unusual spending frequency
-            SmartInsight frequencyAnomaly = detectFrequencyAnomalies(db);
+            SmartInsight frequencyAnomaly = detectFrequencyAnomalies(stats);
             if (frequencyAnomaly != null) anomalies.add(frequencyAnomaly);
 
+            checkInterrupted();
             // 3. Category spending spikes
-            List<SmartInsight> categorySpikes = detectCategorySpikes(db);
+            List<SmartInsight> categorySpikes = detectCategorySpikes(flagged);
             anomalies.addAll(categorySpikes);
 
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             Log.e(TAG, "Error detecting anomalies: " + e.getMessage());
-        } finally {
-            if (db != null && db.isOpen()) {
-                db.close();
-            }
         }
 
         return anomalies;
     }
 
-    private SmartInsight detectLargeTransactions(SQLiteDatabase db) {
-        // Calculate average transaction amount over the last 90 days
-        String avgQuery = "SELECT AVG(" + DatabaseHelper.COLUMN_AMOUNT + ") as avg_amount, " +
-                "(AVG(" + DatabaseHelper.COLUMN_AMOUNT + ") + 2.5 * " +
-                "(SELECT MAX(amount_variance) FROM (" +
-                "SELECT (" + DatabaseHelper.COLUMN_AMOUNT + " - AVG(" + DatabaseHelper.COLUMN_AMOUNT + ") OVER()) as amount_variance " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "AND " + DatabaseHelper.COLUMN_DATE + " >= date('now', '-90 days')))) as threshold " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "AND " + DatabaseHelper.COLUMN_DATE + " >= date('now', '-90 days')";
-
-        Cursor avgCursor = db.rawQuery(avgQuery, null);
-        double threshold = 0;
-        double avgAmount = 0;
-
-        if (avgCursor.moveToFirst()) {
-            avgAmount = avgCursor.getDouble(0);
-            threshold = avgCursor.getDouble(1);
+    private SmartInsight detectLargeTransactions(List<AnomalyDAO.Anomaly> flagged) {
+        // Flagged at write time: amount > category mean + 3 standard deviations (last 7 days)
+        int anomalyCount = 0;
+        AnomalyDAO.Anomaly largest = null;
+        for (AnomalyDAO.Anomaly anomaly : flagged) {
+            if (!anomaly.isLarge()) continue;
+            anomalyCount++;
+            if (largest == null || anomaly.observed > largest.observed) largest = anomaly;
         }
-        avgCursor.close();
 
-        if (threshold > 0) {
-            // Find transactions above threshold in the last 7 days
-            String anomalyQuery = "SELECT COUNT(*) as anomaly_count, MAX(" + DatabaseHelper.COLUMN_AMOUNT + ") as max_amount " +
-                    "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                    "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                    "AND " + DatabaseHelper.COLUMN_AMOUNT + " > ? " +
-                    "AND " + DatabaseHelper.COLUMN_DATE + " >= date('now', '-7 days')";
-
-            Cursor anomalyCursor = db.rawQuery(anomalyQuery, new String[]{String.valueOf(threshold)});
-
-            if (anomalyCursor.moveToFirst()) {
-                int anomalyCount = anomalyCursor.getInt(0);
-                double maxAmount = anomalyCursor.getDouble(1);
-
-                if (anomalyCount > 0) {
-                    SmartInsight insight = new SmartInsight();
-                    insight.setType(SmartInsight.Type.PATTERN); // Fixed: Change ANOMALY to PATTERN
-                    insight.setTitle("Giao dịch bất thường");
-                    insight.setMessage(String.format("Phát hiện %d giao dịch lớn bất thường trong 7 ngày qua. " +
-                                    "Giao dịch lớn nhất: %.0f đ (trung bình bình thường: %.0f đ).",
-                            anomalyCount, maxAmount, avgAmount));
-                    insight.setImpact(anomalyCount > 3 ? SmartInsight.Impact.HIGH : SmartInsight.Impact.MEDIUM);
-                    insight.setValue(maxAmount);
-                    insight.setActionable(true);
-                    insight.setSuggestion("Kiểm tra lại các giao dịch này để đảm bảo tính chính xác.");
-                    anomalyCursor.close();
-                    return insight;
-                }
-            }
-            anomalyCursor.close();
+        if (anomalyCount > 0) {
+            SmartInsight insight = new SmartInsight();
+            insight.setType(SmartInsight.Type.PATTERN); // Fixed: Change ANOMALY to PATTERN
+            insight.setTitle("Giao dịch bất thường");
+            insight.setMessage(String.format("Phát hiện %d giao dịch lớn bất thường trong 7 ngày qua. " +
+                            "Giao dịch lớn nhất: %.0f đ (trung bình bình thường: %.0f đ).",
+                    anomalyCount, (double) largest.observed, largest.baseline));
+            insight.setImpact(anomalyCount > 3 ? SmartInsight.Impact.HIGH : SmartInsight.Impact.MEDIUM);
+            insight.setValue((double) largest.observed);
+            insight.setActionable(true);
+            insight.setSuggestion("Kiểm tra lại các giao dịch này để đảm bảo tính chính xác.");
+            return insight;
         }
 
         return null;
     }
 
-    private SmartInsight detectFrequencyAnomalies(SQLiteDatabase db) {
+    private SmartInsight detectFrequencyAnomalies(SpendingStats stats) {
         // Compare transaction frequency: last week vs average of previous weeks
-        String currentWeekQuery = "SELECT COUNT(*) as current_count " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "AND " + DatabaseHelper.COLUMN_DATE + " >= date('now', '-7 days')";
-
-        String avgWeekQuery = "SELECT AVG(weekly_count) as avg_count " +
-                "FROM (SELECT COUNT(*) as weekly_count " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "AND " + DatabaseHelper.COLUMN_DATE + " BETWEEN date('now', '-35 days') AND date('now', '-8 days') " +
-                "GROUP BY strftime('%W', " + DatabaseHelper.COLUMN_DATE + "))";
-
-        Cursor currentCursor = db.rawQuery(currentWeekQuery, null);
-        Cursor avgCursor = db.rawQuery(avgWeekQuery, null);
-
-        int currentCount = 0;
-        double avgCount = 0;
-
-        if (currentCursor.moveToFirst()) {
-            currentCount = currentCursor.getInt(0);
-        }
-
-        if (avgCursor.moveToFirst()) {
-            avgCount = avgCursor.getDouble(0);
-        }
-
-        currentCursor.close();
-        avgCursor.close();
+        int currentCount = stats.expense7Count;
+        double avgCount = averageOfPresent(stats.weekCount);
 
         if (avgCount > 0) {
             double frequencyChange = ((currentCount - avgCount) / avgCount) * 100;
@@ -675,54 +810,29 @@ public class BudgetAnalytics {
         return null;
     }
 
-    private List<SmartInsight> detectCategorySpikes(SQLiteDatabase db) {
+    private List<SmartInsight> detectCategorySpikes(List<AnomalyDAO.Anomaly> flagged) {
         List<SmartInsight> spikes = new ArrayList<>();
 
-        // Get categories with unusual spending spikes
-        String spikeQuery = "SELECT " +
-                "c." + DatabaseHelper.COLUMN_NAME + " as category_name, " +
-                "current_week.current_spending, " +
-                "avg_weeks.avg_spending " +
-                "FROM " + DatabaseHelper.TABLE_CATEGORIES + " c " +
-                "LEFT JOIN (SELECT " + DatabaseHelper.COLUMN_CATEGORY_ID + ", SUM(" + DatabaseHelper.COLUMN_AMOUNT + ") as current_spending " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "AND " + DatabaseHelper.COLUMN_DATE + " >= date('now', '-7 days') " +
-                "GROUP BY " + DatabaseHelper.COLUMN_CATEGORY_ID + ") current_week " +
-                "ON c." + DatabaseHelper.COLUMN_ID + " = current_week." + DatabaseHelper.COLUMN_CATEGORY_ID + " " +
-                "LEFT JOIN (SELECT " + DatabaseHelper.COLUMN_CATEGORY_ID + ", AVG(weekly_spending) as avg_spending " +
-                "FROM (SELECT " + DatabaseHelper.COLUMN_CATEGORY_ID + ", SUM(" + DatabaseHelper.COLUMN_AMOUNT + ") as weekly_spending " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "AND " + DatabaseHelper.COLUMN_DATE + " BETWEEN date('now', '-35 days') AND date('now', '-8 days') " +
-                "GROUP BY " + DatabaseHelper.COLUMN_CATEGORY_ID + ", strftime('%W', " + DatabaseHelper.COLUMN_DATE + ")) " +
-                "GROUP BY " + DatabaseHelper.COLUMN_CATEGORY_ID + ") avg_weeks " +
-                "ON c." + DatabaseHelper.COLUMN_ID + " = avg_weeks." + DatabaseHelper.COLUMN_CATEGORY_ID + " " +
-                "WHERE current_week.current_spending > 0 AND avg_weeks.avg_spending > 0";
-
-        Cursor cursor = db.rawQuery(spikeQuery, null);
-
-        while (cursor.moveToNext()) {
-            String categoryName = cursor.getString(0);
-            double currentSpending = cursor.getDouble(1);
-            double avgSpending = cursor.getDouble(2);
-
-            double spikePercentage = ((currentSpending - avgSpending) / avgSpending) * 100;
-
-            if (spikePercentage > 100) { // 100% increase is significant
-                SmartInsight spike = new SmartInsight();
-                spike.setType(SmartInsight.Type.PATTERN); // Fixed: Change ANOMALY to PATTERN
-                spike.setTitle("Tăng đột biến chi tiêu " + categoryName);
-                spike.setMessage(String.format("Chi tiêu %s tuần này tăng %.1f%% (%.0f đ vs %.0f đ bình thường).",
-                        categoryName, spikePercentage, currentSpending, avgSpending));
-                spike.setImpact(spikePercentage > 200 ? SmartInsight.Impact.HIGH : SmartInsight.Impact.MEDIUM);
-                spike.setValue(spikePercentage);
-                spike.setActionable(true);
-                spike.setSuggestion("Xem xét lại các khoản chi trong mục này để hiểu nguyên nhân.");
-                spikes.add(spike);
-            }
+        // Flagged at write time: weekly spending crossed 2x the category's weekly EWMA (newest first, 1 per category)
+        Set<String> seen = new HashSet<>();
+        for (AnomalyDAO.Anomaly anomaly : flagged) {
+            if (!anomaly.isSpike() || anomaly.baseline <= 0) continue;
+            if (!seen.add(anomaly.userId + ":" + anomaly.categoryId)) continue;
+
+            String categoryName = anomaly.categoryName;
+            double spikePercentage = ((anomaly.observed - anomaly.baseline) / anomaly.baseline) * 100;
+
+            SmartInsight spike = new SmartInsight();
+            spike.setType(SmartInsight.Type.PATTERN); // Fixed: Change ANOMALY to PATTERN
+            spike.setTitle("Tăng đột biến chi tiêu " + categoryName);
+            spike.setMessage(String.format("Chi tiêu %s tuần này tăng %.1f%% (%.0f đ vs %.0f đ bình thường).",
+                    categoryName, spikePercentage, (double) anomaly.observed, anomaly.baseline));
+            spike.setImpact(spikePercentage > 200 ? SmartInsight.Impact.HIGH : SmartInsight.Impact.MEDIUM);
+            spike.setValue(spikePercentage);
+            spike.setActionable(true);
+            spike.setSuggestion("Xem xét lại các khoản chi trong mục này để hiểu nguyên nhân.");
+            spikes.add(spike);
         }
-        cursor.close();
 
         return spikes;
     }
@@ -731,45 +841,111 @@ public class BudgetAnalytics {
      * 📊 COMPREHENSIVE ANALYSIS: Phân tích tổng hợp
      */
     public BudgetAnalysisReport generateComprehensiveReport(BudgetPlan budget) {
+        return generateComprehensiveReport(budget, null);
+    }
+
+    /**
+     * Như trên, listener nhận từng phần ngay khi phần đó xong (main thread) để danh sách gợi ý hiện dần.
+     * Chặn tới khi đủ mọi phần hoặc hết hạn - gọi từ thread nền (không phải ANALYZER_POOL).
+     */
+    public BudgetAnalysisReport generateComprehensiveReport(BudgetPlan budget, ReportListener listener) {
         BudgetAnalysisReport report = new BudgetAnalysisReport();
+        long start = System.currentTimeMillis();
+        int userId = userIdOf(budget);
+        int planId = budget != null ? budget.getId() : 0;
 
         try {
-            // 1. Pattern Analysis
-            List<SmartInsight> patterns = analyzeSpendingPatterns(budget);
-            report.setPatternInsights(patterns);
-
-            // 2. Variance Analysis
-            List<SmartInsight> variances = analyzeVarianceTrends();
-            report.setVarianceInsights(variances);
-
-            // 3. Cash Flow Forecast
-            SmartInsight cashFlowForecast = forecastCashFlow(30);
-            if (cashFlowForecast != null) {
-                report.setCashFlowForecast(cashFlowForecast);
+            // 🧠 Phần có watermark đầu vào chưa đổi lấy từ bảng insights, chỉ phần có đầu vào đã đổi được tính lại
+            Map<Section, String> watermarks = watermarksOf(userId, budget);
+            Map<Section, List<SmartInsight>> stored = new EnumMap<>(Section.class);
+            for (Section section : Section.values()) {
+                List<SmartInsight> insights = insightDAO.getIfCurrent(userId, planId, section.name(), watermarks.get(section));
+                if (insights != null) stored.put(section, insights);
             }
 
-            // 4. Risk Assessment
-            SmartInsight riskAssessment = assessBudgetRisks(budget);
-            if (riskAssessment != null) {
-                report.setRiskAssessment(riskAssessment);
+            // 📊 1 truy vấn giao dịch của user cho pattern / forecast / anomaly - chỉ khi 1 trong các phần đó phải tính lại
+            SectionTasks statsTask = new SectionTasks();
+            CompletableFuture<SpendingStats> stats = stored.containsKey(Section.PATTERNS) && stored.containsKey(Section.FORECAST)
+                    && stored.containsKey(Section.ANOMALIES) ? null
+                    : statsTask.submit(() -> loadSpendingStats(userId));
+
+            // 🧵 Các phần độc lập chạy song song, mỗi phần giữ việc của mình trên pool để hủy khi quá hạn
+            Map<Section, CompletableFuture<List<SmartInsight>>> sections = new EnumMap<>(Section.class);
+            Map<Section, SectionTasks> tasks = new EnumMap<>(Section.class);
+            for (Section section : Section.values()) {
+                List<SmartInsight> insights = stored.get(section);
+                if (insights != null) {
+                    sections.put(section, CompletableFuture.completedFuture(insights));
+                    continue;
+                }
+
+                // Lưu ngay khi tính xong; phần quá hạn bị hủy (interrupt) nên không lưu kết quả dở dang
+                String watermark = watermarks.get(section);
+                SectionTasks sectionTasks = new SectionTasks();
+                tasks.put(section, sectionTasks);
+                CompletableFuture<List<SmartInsight>> saved = analyze(section, budget, userId, stats, sectionTasks)
+                        .thenApply(result -> insightDAO.save(userId, planId, section.name(), watermark, result));
+
+                // Báo cáo chờ future riêng: hết hạn thì hoàn tất nó bằng danh sách rỗng, không đụng tới việc lưu
+                CompletableFuture<List<SmartInsight>> reported = new CompletableFuture<>();
+                saved.whenComplete((value, error) -> {
+                    if (error != null) {
+                        reported.completeExceptionally(error);
+                    } else {
+                        reported.complete(value);
+                    }
+                });
+                sections.put(section, reported);
             }
 
-            // 5. Optimization Suggestions
-            List<SmartInsight> optimizations = suggestBudgetOptimizations(budget);
-            report.setOptimizationSuggestions(optimizations);
+            // Ghép từng phần vào báo cáo + báo listener ngay khi xong (phần lỗi / hết hạn = rỗng)
+            Map<Section, CompletableFuture<Void>> assembled = new EnumMap<>(Section.class);
+            for (Map.Entry<Section, CompletableFuture<List<SmartInsight>>> entry : sections.entrySet()) {
+                Section section = entry.getKey();
+                assembled.put(section, entry.getValue().handle((insights, error) -> {
+                    if (error != null && !isCancellation(error)) {
+                        Log.e(TAG, "Error analyzing " + section + ": " + error.getMessage());
+                    }
+                    List<SmartInsight> result = insights != null ? insights : new ArrayList<>();
+                    setSection(report, section, result);
+                    notifySection(listener, section, result);
+                    return null;
+                }));
+            }
 
-            // 6. Anomaly Detection
-            List<SmartInsight> anomalies = detectAnomalies();
-            report.setAnomalyInsights(anomalies);
+            // ⏱️ Mỗi phần có hạn riêng tính từ lúc bắt đầu - quá hạn thì bỏ qua phần đó, không chờ phần chậm nhất
+            for (Map.Entry<Section, CompletableFuture<List<SmartInsight>>> entry : sections.entrySet()) {
+                Section section = entry.getKey();
+                try {
+                    long remaining = start + section.timeoutMs - System.currentTimeMillis();
+                    entry.getValue().get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (entry.getValue().complete(new ArrayList<>())) {
+                        Log.w(TAG, "⚠️ " + section + " exceeded " + section.timeoutMs + " ms, cancelled");
+                    }
+                    SectionTasks sectionTasks = tasks.get(section);
+                    if (sectionTasks != null) sectionTasks.cancel();
+                } catch (ExecutionException | CancellationException e) {
+                    // Đã log trong handle()
+                }
+                assembled.get(section).join();
+            }
+
+            // Mọi phần cần stats đã xong hoặc đã hủy - stats chưa xong thì không còn ai chờ
+            if (stats != null && !stats.isDone()) statsTask.cancel();
 
             // 7. Overall Health Score
-            int healthScore = calculateBudgetHealthScore(budget, patterns, variances, riskAssessment);
+            int healthScore = calculateBudgetHealthScore(budget, report.getPatternInsights(),
+                    report.getVarianceInsights(), report.getRiskAssessment());
             report.setOverallHealthScore(healthScore);
 
             // 8. Summary and Recommendations
             report.setSummary(generateExecutiveSummary(report));
             report.setTopRecommendations(generateTopRecommendations(report));
 
+            Log.d(TAG, "✅ Report generated in " + (System.currentTimeMillis() - start) + " ms ("
+                    + stored.size() + "/" + Section.values().length + " sections unchanged)");
+
         } catch (Exception e) {
             Log.e(TAG, "Error generating comprehensive report: " + e.getMessage());
         }
@@ -777,6 +953,104 @@ public class BudgetAnalytics {
         return report;
     }
 
+    // stats chỉ null khi PATTERNS / FORECAST / ANOMALIES đều không phải tính lại
+    private CompletableFuture<List<SmartInsight>> analyze(Section section, BudgetPlan budget, int userId,
+                                                          CompletableFuture<SpendingStats> stats, SectionTasks tasks) {
+        switch (section) {
+            case PATTERNS:
+                return stats.thenCompose(s -> tasks.submit(() -> analyzeSpendingPatterns(budget, s)));
+            case VARIANCE:
+                return tasks.submit(() -> analyzeVarianceTrends(userId));
+            case FORECAST:
+                return stats.thenCompose(s -> tasks.submit(() -> listOf(forecastCashFlow(30, s))));
+            case RISK:
+                return tasks.submit(() -> listOf(assessBudgetRisks(budget)));
+            case OPTIMIZATIONS:
+                return tasks.submit(() -> suggestBudgetOptimizations(budget));
+            default:
+                return stats.thenCompose(s -> tasks.submit(() -> detectAnomalies(s)));
+        }
+    }
+
+    // Phần bị hủy do quá hạn không phải lỗi
+    private static boolean isCancellation(Throwable error) {
+        return error instanceof CancellationException
+                || (error instanceof CompletionException && error.getCause() instanceof CancellationException);
+    }
+
+    /**
+     * 🧠 Watermark đầu vào của từng phần: version giao dịch trong cửa sổ ngày mà phần đó đọc + hôm nay (cửa sổ tính
+     * theo hôm nay), kèm số liệu kế hoạch / version các bảng khác mà phần đó đọc. null = không đọc được, luôn tính lại.
+     */
+    private Map<Section, String> watermarksOf(int userId, BudgetPlan budget) {
+        int today = DateCodec.today();
+        Map<String, Long> versions = dbHelper.getInvalidationTracker().getVersions();
+        String plan = fingerprintOf(budget);
+
+        Map<Section, String> watermarks = new EnumMap<>(Section.class);
+        watermarks.put(Section.PATTERNS, windowOf(userId, DateCodec.plusMonths(today, -12), today, plan));
+        watermarks.put(Section.FORECAST, windowOf(userId, today - 30, today, ""));
+        watermarks.put(Section.RISK, plan);
+        watermarks.put(Section.OPTIMIZATIONS, plan);
+        if (versions != null) {
+            // Kế hoạch bắt đầu trong 6 tháng (date('now') là UTC nên lùi thêm 1 ngày) + chi tiêu từ ngày bắt đầu của chúng
+            watermarks.put(Section.VARIANCE, windowOf(userId, DateCodec.plusMonths(today, -6) - 1, today,
+                    "plans=" + versions.get(DatabaseHelper.TABLE_BUDGET_PLANS) + ",items=" + versions.get(DatabaseHelper.TABLE_BUDGET_ITEMS)));
+            // Cờ 7 ngày + tần suất các tuần 35..8 ngày trước; tên danh mục nằm trong nội dung gợi ý
+            watermarks.put(Section.ANOMALIES, windowOf(userId, today - 35, today,
+                    "categories=" + versions.get(DatabaseHelper.TABLE_CATEGORIES)));
+        }
+        return watermarks;
+    }
+
+    // "tx=42@20381|..." - null nếu không đọc được version theo ngày
+    private String windowOf(int userId, int fromDay, int today, String inputs) {
+        long version = insightDAO.getDayVersion(userId, fromDay);
+        return version < 0 ? null : "tx=" + version + "@" + today + "|" + inputs;
+    }
+
+    private static List<SmartInsight> listOf(SmartInsight insight) {
+        List<SmartInsight> insights = new ArrayList<>(1);
+        if (insight != null) insights.add(insight);
+        return insights;
+    }
+
+    private static void setSection(BudgetAnalysisReport report, Section section, List<SmartInsight> insights) {
+        switch (section) {
+            case PATTERNS:
+                report.setPatternInsights(insights);
+                break;
+            case VARIANCE:
+                report.setVarianceInsights(insights);
+                break;
+            case FORECAST:
+                if (!insights.isEmpty()) report.setCashFlowForecast(insights.get(0));
+                break;
+            case RISK:
+                if (!insights.isEmpty()) report.setRiskAssessment(insights.get(0));
+                break;
+            case OPTIMIZATIONS:
+                report.setOptimizationSuggestions(insights);
+                break;
+            case ANOMALIES:
+                report.setAnomalyInsights(insights);
+                break;
+        }
+    }
+
+    private void notifySection(ReportListener listener, Section section, List<SmartInsight> insights) {
+        if (listener == null) return;
+
+        List<SmartInsight> result = Collections.unmodifiableList(insights);
+        mainHandler.post(() -> {
+            try {
+                listener.onSectionReady(section, result);
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Listener error: " + e.getMessage());
+            }
+        });
+    }
+
     private int calculateBudgetHealthScore(BudgetPlan budget, List<SmartInsight> patterns,
                                            List<SmartInsight> variances, SmartInsight riskAssessment) {
         int score = 100; // Start with perfect score
@@ -892,9 +1166,15 @@ public class BudgetAnalytics {
      * 📈 PERFORMANCE METRICS: Các chỉ số hiệu suất
      */
     public Map<String, Double> calculatePerformanceMetrics(BudgetPlan budget) {
-        Map<String, Double> metrics = new HashMap<>();
+        if (budget == null) return new HashMap<>();
 
-        if (budget == null) return metrics;
+        // 🗃️ Chỉ số ít key nên lưu cả xuống database (dùng lại sau khi mở lại app); trả bản sao vì map trong cache dùng chung
+        return new HashMap<>(resultCache.get(userIdOf(budget), "budget_metrics", fingerprintOf(budget), ANALYTICS_TABLES,
+                ResultCache.DOUBLE_MAP, () -> computePerformanceMetrics(budget)));
+    }
+
+    private Map<String, Double> computePerformanceMetrics(BudgetPlan budget) {
+        Map<String, Double> metrics = new HashMap<>();
 
         // 1. Budget Adherence Rate
         double totalAllocated = budget.getTotalAllocated();
@@ -920,12 +1200,35 @@ public class BudgetAnalytics {
         metrics.put("efficiency_score", efficiencyScore);
 
         // 5. Spending Consistency Score
-        double consistencyScore = calculateSpendingConsistency();
+        double consistencyScore = calculateSpendingConsistency(userIdOf(budget));
         metrics.put("consistency_score", consistencyScore);
 
         return metrics;
     }
 
+    // Chủ của kế hoạch - mọi truy vấn của báo cáo lọc theo user này (-1: không có dữ liệu nào)
+    static int userIdOf(BudgetPlan budget) {
+        try {
+            return budget != null ? Integer.parseInt(budget.getUserId()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Kết quả tính trên chính object được truyền vào (số tiền có thể đang sửa, chưa lưu) nên key gồm cả số liệu của kế hoạch
+    static String fingerprintOf(BudgetPlan budget) {
+        if (budget == null) return "none";
+
+        StringBuilder key = new StringBuilder().append(budget.getId())
+                .append(':').append(budget.getStartDate()).append('-').append(budget.getEndDate());
+        for (BudgetPlan.CategoryBudget category : budget.getCategories()) {
+            key.append(';').append(category.getCategoryId())
+                    .append('=').append(category.getAllocatedAmount())
+                    .append('/').append(category.getSpentAmount());
+        }
+        return key.toString();
+    }
+
     private double calculateHerfindahlIndex(BudgetPlan budget) {
         double totalAllocated = budget.getTotalAllocated();
         if (totalAllocated <= 0) return 0;
@@ -955,27 +1258,12 @@ public class BudgetAnalytics {
         return (double) efficientCategories / totalCategories * 100;
     }
 
-    private double calculateSpendingConsistency() {
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
+    private double calculateSpendingConsistency(int userId) {
         double consistencyScore = 0;
 
         try {
-            String query = "SELECT " +
-                    "DATE(" + DatabaseHelper.COLUMN_DATE + ") as spending_date, " +
-                    "SUM(" + DatabaseHelper.COLUMN_AMOUNT + ") as daily_spending " +
-                    "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                    "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                    "AND " + DatabaseHelper.COLUMN_DATE + " >= date('now', '-30 days') " +
-                    "GROUP BY DATE(" + DatabaseHelper.COLUMN_DATE + ") " +
-                    "ORDER BY spending_date";
-
-            Cursor cursor = db.rawQuery(query, null);
-            List<Double> dailyAmounts = new ArrayList<>();
-
-            while (cursor.moveToNext()) {
-                dailyAmounts.add(cursor.getDouble(1));
-            }
-            cursor.close();
+            // Tổng chi từng ngày (ngày có giao dịch) trong 30 ngày
+            List<Double> dailyAmounts = loadSpendingStats(userId).dailySpending;
 
             if (dailyAmounts.size() >= 7) {
                 double average = calculateAverage(dailyAmounts);
@@ -990,10 +1278,6 @@ public class BudgetAnalytics {
 
         } catch (Exception e) {
             Log.e(TAG, "Error calculating spending consistency: " + e.getMessage());
-        } finally {
-            if (db != null && db.isOpen()) {
-                db.close();
-            }
         }
 
         return consistencyScore;
@@ -1005,34 +1289,28 @@ public class BudgetAnalytics {
     public SmartInsight predictBudgetPerformance(BudgetPlan budget, int monthsAhead) {
         if (budget == null) return null;
 
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
         SmartInsight prediction = null;
 
         try {
             // Analyze historical spending trends for each category
             Map<String, Double> categoryTrends = new HashMap<>();
 
+            // 1 câu GROUP BY (danh mục, tháng) cho cả kế hoạch thay vì 1 câu mỗi danh mục
+            List<Long> categoryIds = new ArrayList<>();
             for (BudgetPlan.CategoryBudget category : budget.getCategories()) {
-                String trendQuery = "SELECT " +
-                        "strftime('%Y-%m', " + DatabaseHelper.COLUMN_DATE + ") as month, " +
-                        "SUM(" + DatabaseHelper.COLUMN_AMOUNT + ") as monthly_spending " +
-                        "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                        "WHERE " + DatabaseHelper.COLUMN_CATEGORY_ID + " = ? " +
-                        "AND " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                        "AND " + DatabaseHelper.COLUMN_DATE + " >= date('now', '-6 months') " +
-                        "GROUP BY strftime('%Y-%m', " + DatabaseHelper.COLUMN_DATE + ") " +
-                        "ORDER BY month";
-
-                // Fixed: Need to get category ID from CategoryBudget
-                // Since CategoryBudget doesn't have getCategoryId method in your model,
-                // we'll need to assume there's a way to get it or modify this logic
-                Cursor cursor = db.rawQuery(trendQuery, new String[]{"1"}); // Placeholder - needs actual category ID
-                List<Double> monthlySpending = new ArrayList<>();
+                categoryIds.add((long) category.getCategoryId());
+            }
+            Map<Long, LinkedHashMap<String, Long>> monthlyByCategory = transactionDAO.getMonthlyExpenseByCategories(
+                    userIdOf(budget), categoryIds, DateCodec.plusMonths(DateCodec.today(), -6));
 
-                while (cursor.moveToNext()) {
-                    monthlySpending.add(cursor.getDouble(1));
+            for (BudgetPlan.CategoryBudget category : budget.getCategories()) {
+                LinkedHashMap<String, Long> months = monthlyByCategory.get((long) category.getCategoryId());
+                List<Double> monthlySpending = new ArrayList<>();
+                if (months != null) {
+                    for (long total : months.values()) {
+                        monthlySpending.add((double) total);
+                    }
                 }
-                cursor.close();
 
                 if (monthlySpending.size() >= 3) {
                     double trend = calculateLinearTrend(monthlySpending);
@@ -1045,10 +1323,6 @@ public class BudgetAnalytics {
 
         } catch (Exception e) {
             Log.e(TAG, "Error predicting budget performance: " + e.getMessage());
-        } finally {
-            if (db != null && db.isOpen()) {
-                db.close();
-            }
         }
 
         return prediction;
@@ -1151,17 +1425,4 @@ public class BudgetAnalytics {
         }
         return Math.sqrt(sum / values.size());
     }
-
-    private double calculateMedian(List<Double> values) {
-        if (values.isEmpty()) return 0;
-
-        Collections.sort(values);
-        int size = values.size();
-
-        if (size % 2 == 0) {
-            return (values.get(size / 2 - 1) + values.get(size / 2)) / 2.0;
-        } else {
-            return values.get(size / 2);
-        }
-    }
 }
\ No newline at end of file
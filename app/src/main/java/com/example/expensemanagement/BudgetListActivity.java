@@ -22,6 +22,7 @@
 //import java.util.stream.Collectors;
 //
 //import models.Budget;
+import models.DateCodec;
 //import adapters.BudgetAdapter;
 //
 //public class BudgetListActivity extends AppCompatActivity implements BudgetAdapter.OnItemClickListener {
@@ -321,7 +322,6 @@
 //    }
 //}
 
-
 package com.example.expensemanagement;
 
 import android.content.Intent;
@@ -345,10 +345,8 @@ import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.TimeUnit;
@@ -357,6 +355,7 @@ import java.util.stream.Collectors;
 import models.Budget;
 import adapters.BudgetAdapter;
 import database.DatabaseHelper;
+import database.InvalidationTracker;
 
 public class BudgetListActivity extends AppCompatActivity implements BudgetAdapter.OnItemClickListener {
 
@@ -376,6 +375,7 @@ public class BudgetListActivity extends AppCompatActivity implements BudgetAdapt
     private List<Budget> filteredBudgets;
     private String currentFilter = "all";
     private DatabaseHelper databaseHelper;
+    private InvalidationTracker.Observer dataObserver;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -383,7 +383,10 @@ public class BudgetListActivity extends AppCompatActivity implements BudgetAdapt
         setContentView(R.layout.activity_budget_list);
 
         // Initialize database helper
-        databaseHelper = new DatabaseHelper(this);
+        databaseHelper = DatabaseHelper.getInstance(this);
+        // 🔄 Danh sách đọc budget_plans + budget_items + đã chi (budget_progress theo transactions)
+        dataObserver = databaseHelper.getInvalidationTracker().observe(DatabaseHelper.TABLE_BUDGET_PLANS,
+                DatabaseHelper.TABLE_BUDGET_ITEMS, DatabaseHelper.TABLE_TRANSACTIONS);
 
         initViews();
         setupRecyclerView();
@@ -459,7 +462,6 @@ public class BudgetListActivity extends AppCompatActivity implements BudgetAdapt
         btnFilterActive.setOnClickListener(v -> setFilter("active"));
         btnFilterEnded.setOnClickListener(v -> setFilter("ended"));
 
-
         // Swipe to refresh
         swipeRefreshLayout.setOnRefreshListener(this::refreshData);
 
@@ -471,49 +473,47 @@ public class BudgetListActivity extends AppCompatActivity implements BudgetAdapt
 
     private void loadBudgetData() {
         allBudgets.clear();
+        dataObserver.markLoaded();
 
         try {
             android.database.sqlite.SQLiteDatabase db = databaseHelper.getReadableDatabase();
 
-            // Enhanced query to get more complete budget information
-            String budgetQuery = "SELECT budget_name, " +
-                    "MIN(start_date) as start_date, " +
-                    "MAX(end_date) as end_date, " +
-                    "SUM(amount) as total_amount, " +
-                    "GROUP_CONCAT(DISTINCT category_id) as category_ids, " +
-                    "MIN(_id) as budget_id, " +
-                    "period " +
-                    "FROM budgets " +
-                    "GROUP BY budget_name " +
-                    "ORDER BY MIN(created_at) DESC";
-
-            android.database.Cursor budgetCursor = db.rawQuery(budgetQuery, null);
+            // 🧾 1 lần đọc: header từ budget_plans, tổng tiền + số danh mục từ budget_items,
+            // đã chi từ budget_progress (triggers giữ đồng bộ) - join theo id, không gom theo tên
+            String budgetQuery = "SELECT bp." + DatabaseHelper.COLUMN_ID + " as budget_id, " +
+                    "bp." + DatabaseHelper.COLUMN_BUDGET_NAME + ", " +
+                    "bp." + DatabaseHelper.COLUMN_BUDGET_START_DATE + ", " +
+                    "bp." + DatabaseHelper.COLUMN_BUDGET_END_DATE + ", " +
+                    "bp." + DatabaseHelper.COLUMN_BUDGET_PERIOD + ", " +
+                    "COALESCE(SUM(bi." + DatabaseHelper.COLUMN_BUDGET_AMOUNT + "), 0) as total_amount, " +
+                    "COALESCE(SUM(pr." + DatabaseHelper.COLUMN_SPENT + "), 0) as spent_amount, " +
+                    "COUNT(DISTINCT bi." + DatabaseHelper.COLUMN_CATEGORY_ID + ") as categories_count " +
+                    "FROM " + DatabaseHelper.TABLE_BUDGET_PLANS + " bp " +
+                    "LEFT JOIN " + DatabaseHelper.TABLE_BUDGET_ITEMS + " bi ON bi." + DatabaseHelper.COLUMN_PLAN_ID + " = bp." + DatabaseHelper.COLUMN_ID + " " +
+                    "LEFT JOIN " + DatabaseHelper.TABLE_BUDGET_PROGRESS + " pr ON pr." + DatabaseHelper.COLUMN_ITEM_ID + " = bi." + DatabaseHelper.COLUMN_ID + " " +
+                    "WHERE bp." + DatabaseHelper.COLUMN_USER_ID + " = ? " +
+                    "GROUP BY bp." + DatabaseHelper.COLUMN_ID + " " +
+                    "ORDER BY bp." + DatabaseHelper.COLUMN_CREATED_AT + " DESC";
+
+            android.database.Cursor budgetCursor = db.rawQuery(budgetQuery, new String[]{getCurrentUserId()});
 
             if (budgetCursor != null && budgetCursor.moveToFirst()) {
                 do {
                     String budgetId = budgetCursor.getString(budgetCursor.getColumnIndexOrThrow("budget_id"));
                     String budgetName = budgetCursor.getString(budgetCursor.getColumnIndexOrThrow("budget_name"));
-                    double totalAmount = budgetCursor.getDouble(budgetCursor.getColumnIndexOrThrow("total_amount"));
+                    long totalAmount = budgetCursor.getLong(budgetCursor.getColumnIndexOrThrow("total_amount"));
+                    long spentAmount = budgetCursor.getLong(budgetCursor.getColumnIndexOrThrow("spent_amount"));
                     String startDate = budgetCursor.getString(budgetCursor.getColumnIndexOrThrow("start_date"));
                     String endDate = budgetCursor.getString(budgetCursor.getColumnIndexOrThrow("end_date"));
-                    String categoryIds = budgetCursor.getString(budgetCursor.getColumnIndexOrThrow("category_ids"));
+                    int categoriesCount = budgetCursor.getInt(budgetCursor.getColumnIndexOrThrow("categories_count"));
                     String period = budgetCursor.getString(budgetCursor.getColumnIndexOrThrow("period"));
 
-                    // Convert categoryIds string to List<Integer>
-                    java.util.List<Integer> categoryIdsList = parseCategoryIds(categoryIds);
-
-                    // Calculate spent amount for budget within its date range
-                    double spentAmount = calculateSpentAmountForCategories(db, categoryIdsList, startDate, endDate);
-
                     // Calculate status based on dates
                     String status = calculateBudgetStatus(startDate, endDate);
 
                     // Get budget icon
                     String icon = getBudgetIcon(budgetName);
 
-                    // Calculate categories count
-                    int categoriesCount = categoryIdsList.size();
-
                     String remainingDays = calculateRemainingDays(startDate, endDate);
 
                     // Calculate health score
@@ -549,8 +549,6 @@ public class BudgetListActivity extends AppCompatActivity implements BudgetAdapt
                 budgetCursor.close();
             }
 
-            db.close();
-
         } catch (Exception e) {
             e.printStackTrace();
             android.widget.Toast.makeText(this, "Lỗi khi tải dữ liệu ngân sách: " + e.getMessage(),
@@ -561,115 +559,22 @@ public class BudgetListActivity extends AppCompatActivity implements BudgetAdapt
         updateUI();
     }
 
-    // Helper method để convert String categoryIds thành List<Integer>
-    private List<Integer> parseCategoryIds(String categoryIds) {
-        List<Integer> categoryIdsList = new ArrayList<>();
-
-        if (categoryIds != null && !categoryIds.trim().isEmpty()) {
-            try {
-                String[] idArray = categoryIds.split(",");
-                for (String id : idArray) {
-                    categoryIdsList.add(Integer.parseInt(id.trim()));
-                }
-            } catch (NumberFormatException e) {
-                android.util.Log.e("BudgetList", "Error parsing category IDs: " + e.getMessage());
-            }
-        }
-
-        return categoryIdsList;
-    }
-
-    private double calculateSpentAmountForCategories(SQLiteDatabase db, List<Integer> categoryIds, String startDate, String endDate) {
-        if (categoryIds == null || categoryIds.isEmpty()) {
-            return 0.0;
-        }
-
-        double totalSpent = 0.0;
-
-        try {
-            // Debug: In ra thông tin để kiểm tra
-            android.util.Log.d("BudgetList", "=== Calculating Spent Amount ===");
-            android.util.Log.d("BudgetList", "Category IDs: " + categoryIds);
-            android.util.Log.d("BudgetList", "Date range: " + startDate + " to " + endDate);
-
-            // Chuyển đổi format ngày từ DD/MM/YYYY sang YYYY-MM-DD để so sánh
-            String startDateFormatted = convertDateForComparison(startDate);
-            String endDateFormatted = convertDateForComparison(endDate);
-
-            android.util.Log.d("BudgetList", "Formatted date range: " + startDateFormatted + " to " + endDateFormatted);
-
-            // Tính riêng từng category để dễ debug
-            for (Integer categoryId : categoryIds) {
-                String query = "SELECT COALESCE(SUM(amount), 0) as category_spent " +
-                        "FROM transactions " +
-                        "WHERE type = 'expense' " +
-                        "AND category_id = ? " +
-                        "AND date BETWEEN ? AND ?";
-
-                Cursor cursor = db.rawQuery(query, new String[]{
-                        String.valueOf(categoryId),
-                        startDateFormatted,
-                        endDateFormatted
-                });
-
-                if (cursor != null && cursor.moveToFirst()) {
-                    double categorySpent = cursor.getDouble(0);
-                    totalSpent += categorySpent;
-
-                    android.util.Log.d("BudgetList", "Category " + categoryId + " spent: " + categorySpent);
-                    cursor.close();
-                }
-            }
-
-            android.util.Log.d("BudgetList", "Total spent: " + totalSpent);
-            android.util.Log.d("BudgetList", "=== End Calculation ===");
-
-            return totalSpent;
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            android.util.Log.e("BudgetList", "Error calculating spent: " + e.getMessage());
-            return 0.0;
-        }
-    }
-
-    // Helper method để chuyển đổi format ngày
-    private String convertDateForComparison(String dateString) {
-        try {
-            // Nếu ngày đã ở format YYYY-MM-DD thì return luôn
-            if (dateString.matches("\\d{4}-\\d{2}-\\d{2}")) {
-                return dateString;
-            }
-
-            // Chuyển từ DD/MM/YYYY sang YYYY-MM-DD
-            SimpleDateFormat inputFormat = new SimpleDateFormat("dd/MM/yyyy");
-            SimpleDateFormat outputFormat = new SimpleDateFormat("yyyy-MM-dd");
-            Date date = inputFormat.parse(dateString);
-            return outputFormat.format(date);
-
-        } catch (Exception e) {
-            android.util.Log.e("BudgetList", "Error converting date format: " + e.getMessage());
-            return dateString; // Return original if conversion fails
-        }
-    }
     // Kiểm tra method calculateBudgetStatus()
     private String calculateBudgetStatus(String startDate, String endDate) {
-        try {
-            SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
-            Date start = sdf.parse(startDate);
-            Date end = sdf.parse(endDate);
-            Date today = new Date();
-
-            if (today.before(start)) {
-                return "Sắp diễn ra";
-            } else if (today.after(end)) {
-                return "Đã kết thúc"; // Hoặc "Hết hạn"
-            } else {
-                return "Đang hoạt động";
-            }
-        } catch (Exception e) {
+        int start = DateCodec.parse(startDate);
+        int end = DateCodec.parse(endDate);
+        if (start == DateCodec.INVALID || end == DateCodec.INVALID) {
             return "Không xác định";
         }
+
+        int today = DateCodec.today();
+        if (today < start) {
+            return "Sắp diễn ra";
+        } else if (today > end) {
+            return "Đã kết thúc"; // Hoặc "Hết hạn"
+        } else {
+            return "Đang hoạt động";
+        }
     }
 
     private String getBudgetIcon(String budgetName) {
@@ -701,13 +606,14 @@ public class BudgetListActivity extends AppCompatActivity implements BudgetAdapt
             double spentPercentage = (spentAmount / totalAmount) * 100;
 
             // Calculate time progress
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-            Date start = sdf.parse(startDate);
-            Date end = sdf.parse(endDate);
-            Date now = new Date();
+            int start = DateCodec.parse(startDate);
+            int end = DateCodec.parse(endDate);
+            if (start == DateCodec.INVALID || end == DateCodec.INVALID || end <= start) {
+                return "Tốt";
+            }
 
-            long totalDuration = end.getTime() - start.getTime();
-            long elapsed = now.getTime() - start.getTime();
+            int totalDuration = end - start;
+            int elapsed = DateCodec.today() - start;
             double timeProgress = (double) elapsed / totalDuration * 100;
 
             // Health score logic
@@ -724,14 +630,7 @@ public class BudgetListActivity extends AppCompatActivity implements BudgetAdapt
     }
 
     private String formatDate(String dateString) {
-        try {
-            SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-            SimpleDateFormat outputFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
-            Date date = inputFormat.parse(dateString);
-            return outputFormat.format(date);
-        } catch (Exception e) {
-            return dateString;
-        }
+        return DateCodec.toDisplayDate(dateString);
     }
 
     private void refreshData() {
@@ -813,21 +712,16 @@ public class BudgetListActivity extends AppCompatActivity implements BudgetAdapt
 
     // Thêm vào Budget constructor hoặc method riêng
     private String calculateRemainingDays(String startDate, String endDate) {
-        try {
-            SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
-            Date end = sdf.parse(endDate);
-            Date today = new Date();
-
-            if (today.after(end)) {
-                return "Đã kết thúc";
-            } else {
-                long diffInMillis = end.getTime() - today.getTime();
-                long daysRemaining = diffInMillis / (24 * 60 * 60 * 1000);
-                return daysRemaining + " ngày còn lại";
-            }
-        } catch (Exception e) {
+        int end = DateCodec.parse(endDate);
+        if (end == DateCodec.INVALID) {
             return "Không xác định";
         }
+
+        int daysRemaining = end - DateCodec.today();
+        if (daysRemaining < 0) {
+            return "Đã kết thúc";
+        }
+        return daysRemaining + " ngày còn lại";
     }
 
     private void updateUI() {
@@ -922,22 +816,16 @@ public class BudgetListActivity extends AppCompatActivity implements BudgetAdapt
     @Override
     protected void onResume() {
         super.onResume();
-        // Refresh data when returning to this activity
-        loadBudgetData();
+        // 🔄 Refresh data when returning to this activity - chỉ khi ngân sách / giao dịch đã đổi
+        if (dataObserver.hasChanged()) {
+            loadBudgetData();
+        }
     }
 
     public void onBackClick(View view) {
         onBackPressed();
     }
 
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (databaseHelper != null) {
-            databaseHelper.close();
-        }
-    }
-
     @Override
     public void onItemClick(Budget budget) {
         // Get current user ID (you might need to implement this method)
@@ -985,33 +873,33 @@ public class BudgetListActivity extends AppCompatActivity implements BudgetAdapt
         }
 
         // Otherwise, query database to get actual start and end dates
-        return getDatesFromDatabase(budget.getName());
+        return getDatesFromDatabase(budget.getId());
     }
 
     // NEW METHOD: Get actual start and end dates from database
-    private String[] getDatesFromDatabase(String budgetName) {
+    private String[] getDatesFromDatabase(String budgetId) {
         String[] dates = new String[2];
 
         try {
             android.database.sqlite.SQLiteDatabase db = databaseHelper.getReadableDatabase();
 
-            String query = "SELECT MIN(" + database.DatabaseHelper.COLUMN_BUDGET_START_DATE + ") as start_date, " +
-                    "MAX(" + database.DatabaseHelper.COLUMN_BUDGET_END_DATE + ") as end_date " +
-                    "FROM " + database.DatabaseHelper.TABLE_BUDGETS + " " +
-                    "WHERE " + database.DatabaseHelper.COLUMN_BUDGET_NAME + " = ?";
+            String query = "SELECT " + database.DatabaseHelper.COLUMN_BUDGET_START_DATE + ", " +
+                    database.DatabaseHelper.COLUMN_BUDGET_END_DATE + " " +
+                    "FROM " + database.DatabaseHelper.TABLE_BUDGET_PLANS + " " +
+                    "WHERE " + database.DatabaseHelper.COLUMN_ID + " = ? AND " + database.DatabaseHelper.COLUMN_USER_ID + " = ?";
 
-            android.database.Cursor cursor = db.rawQuery(query, new String[]{budgetName});
+            android.database.Cursor cursor = db.rawQuery(query, new String[]{budgetId, getCurrentUserId()});
 
             if (cursor != null && cursor.moveToFirst()) {
                 dates[0] = cursor.getString(0); // start_date
                 dates[1] = cursor.getString(1); // end_date
 
-                android.util.Log.d("BudgetList", "🔍 Found dates for budget " + budgetName + ": " + dates[0] + " to " + dates[1]);
+                android.util.Log.d("BudgetList", "🔍 Found dates for budget " + budgetId + ": " + dates[0] + " to " + dates[1]);
             } else {
                 // Default dates if not found
                 dates[0] = "2025-01-01";
                 dates[1] = "2025-12-31";
-                android.util.Log.w("BudgetList", "⚠️ No dates found for budget " + budgetName + ", using defaults");
+                android.util.Log.w("BudgetList", "⚠️ No dates found for budget " + budgetId + ", using defaults");
             }
 
             if (cursor != null) {
@@ -1048,31 +936,17 @@ public class BudgetListActivity extends AppCompatActivity implements BudgetAdapt
             return userIdFromIntent.trim();
         }
 
-        // Method 3: Try to find any user from database (fallback)
-        try {
-            android.database.sqlite.SQLiteDatabase db = databaseHelper.getReadableDatabase();
-            String query = "SELECT DISTINCT " + database.DatabaseHelper.COLUMN_USER_ID + " " +
-                    "FROM " + database.DatabaseHelper.TABLE_BUDGETS + " " +
-                    "LIMIT 1";
-
-            android.database.Cursor cursor = db.rawQuery(query, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                String fallbackUserId = cursor.getString(0);
-                cursor.close();
-
-                android.util.Log.d("BudgetList", "🔍 Using fallback user ID: " + fallbackUserId);
-                // Save to SharedPreferences
-                prefs.edit().putString("user_id", fallbackUserId).apply();
-                return fallbackUserId;
-            }
-            if (cursor != null) cursor.close();
-
-        } catch (Exception e) {
-            android.util.Log.e("BudgetList", "Error getting fallback user ID: " + e.getMessage());
+        // Method 3: User đang đăng nhập (LoginActivity) - không lấy user bất kỳ trong budget_plans,
+        // nếu không danh sách sẽ hiện ngân sách của tài khoản khác trên cùng máy
+        int loggedInUserId = getSharedPreferences("MoneyMasterPrefs", MODE_PRIVATE).getInt("userId", -1);
+        if (loggedInUserId != -1) {
+            android.util.Log.d("BudgetList", "🔍 Got user ID from login: " + loggedInUserId);
+            prefs.edit().putString("user_id", String.valueOf(loggedInUserId)).apply();
+            return String.valueOf(loggedInUserId);
         }
 
-        // Method 4: Default user ID (should not happen in production)
-        android.util.Log.w("BudgetList", "⚠️ Using default user ID '2'");
-        return "2"; // Based on your database, user_id = 2 exists
+        // Chưa đăng nhập: không khớp user nào
+        android.util.Log.w("BudgetList", "⚠️ No logged-in user, showing no budgets");
+        return "-1";
     }
 }
\ No newline at end of file
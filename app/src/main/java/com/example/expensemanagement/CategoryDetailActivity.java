@@ -85,7 +85,7 @@ public class CategoryDetailActivity extends AppCompatActivity {
         }
 
         // Initialize components
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
         transactions = new ArrayList<>();
         currencyFormatter = NumberFormat.getCurrencyInstance(new Locale("vi", "VN"));
         dateFormatter = new SimpleDateFormat("dd/MM/yyyy HH:mm", new Locale("vi", "VN"));
@@ -195,11 +195,15 @@ public class CategoryDetailActivity extends AppCompatActivity {
     private void loadBudgetInfo() {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
 
-        String query = "SELECT b.*, c." + DatabaseHelper.COLUMN_NAME + " as category_name, " +
+        String query = "SELECT bi.*, bp." + DatabaseHelper.COLUMN_BUDGET_NAME + ", " +
+                "bp." + DatabaseHelper.COLUMN_BUDGET_START_DATE + ", bp." + DatabaseHelper.COLUMN_BUDGET_END_DATE + ", " +
+                "c." + DatabaseHelper.COLUMN_NAME + " as category_name, " +
                 "c." + DatabaseHelper.COLUMN_CATEGORY_ICON + ", c." + DatabaseHelper.COLUMN_CATEGORY_COLOR + " " +
-                "FROM " + DatabaseHelper.TABLE_BUDGETS + " b " +
-                "JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON b." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID + " " +
-                "WHERE c." + DatabaseHelper.COLUMN_NAME + " = ? AND b." + DatabaseHelper.COLUMN_USER_ID + " = ?";
+                "FROM " + DatabaseHelper.TABLE_BUDGET_ITEMS + " bi " +
+                "JOIN " + DatabaseHelper.TABLE_BUDGET_PLANS + " bp ON bp." + DatabaseHelper.COLUMN_ID + " = bi." + DatabaseHelper.COLUMN_PLAN_ID + " " +
+                "JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON bi." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID + " " +
+                "WHERE c." + DatabaseHelper.COLUMN_NAME + " = ? AND bp." + DatabaseHelper.COLUMN_USER_ID + " = ? " +
+                "ORDER BY bp." + DatabaseHelper.COLUMN_START_DAY + " DESC";
 
         Cursor cursor = db.rawQuery(query, new String[]{categoryName, userId});
 
@@ -218,7 +222,7 @@ public class CategoryDetailActivity extends AppCompatActivity {
                 "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " t " +
                 "JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID + " " +
                 "WHERE c." + DatabaseHelper.COLUMN_NAME + " = ? AND t." + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                "ORDER BY t." + DatabaseHelper.COLUMN_DATE + " DESC";
+                "ORDER BY t." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " DESC";
 
         Cursor cursor = db.rawQuery(query, new String[]{categoryName, userId});
 
@@ -234,7 +238,7 @@ public class CategoryDetailActivity extends AppCompatActivity {
 
             if (idIndex >= 0) transaction.setId(cursor.getLong(idIndex));
             if (noteIndex >= 0) transaction.setNote(cursor.getString(noteIndex)); // FIX 3: Sử dụng setNote() thay vì setDescription()
-            if (amountIndex >= 0) transaction.setAmount(cursor.getDouble(amountIndex));
+            if (amountIndex >= 0) transaction.setAmount(cursor.getLong(amountIndex));
             if (typeIndex >= 0) transaction.setType(cursor.getString(typeIndex));
             if (dateIndex >= 0) transaction.setDate(cursor.getString(dateIndex));
 
@@ -261,7 +265,7 @@ public class CategoryDetailActivity extends AppCompatActivity {
         }
 
         // Calculate totals
-        double totalSpent = 0;
+        long totalSpent = 0;
         for (Transaction transaction : transactions) {
             if ("expense".equals(transaction.getType())) {
                 totalSpent += transaction.getAmount();
@@ -278,7 +282,7 @@ public class CategoryDetailActivity extends AppCompatActivity {
         }
 
         if (tvAveragePerTransaction != null && !transactions.isEmpty()) {
-            double average = totalSpent / transactions.size();
+            double average = (double) totalSpent / transactions.size();
             tvAveragePerTransaction.setText("TB: " + currencyFormatter.format(average));
         }
 
@@ -289,7 +293,7 @@ public class CategoryDetailActivity extends AppCompatActivity {
             showTransactions();
         }
 
-        transactionAdapter.notifyDataSetChanged();
+        transactionAdapter.updateTransactions(transactions);
 
         Log.d(TAG, "✅ UI updated successfully");
     }
@@ -360,12 +364,4 @@ public class CategoryDetailActivity extends AppCompatActivity {
             loadCategoryData();
         }
     }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (dbHelper != null) {
-            dbHelper.close();
-        }
-    }
 }
\ No newline at end of file
@@ -22,10 +22,13 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.tabs.TabLayout;
+import database.CategoryDAO;
 import database.DatabaseHelper;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 📂 CHUYÊN SÂU: Category Management System - Complete Version
@@ -54,6 +57,8 @@ public class CategoryManagementActivity extends AppCompatActivity {
 
     // Data
     private DatabaseHelper dbHelper;
+    private CategoryDAO categoryDAO;
+    private Map<Long, CategoryDAO.Usage> categoryUsage = new HashMap<>();
     private CategoryAdapter categoryAdapter;
     private List<Category> categories;
     private List<Category> filteredCategories;
@@ -179,7 +184,8 @@ public class CategoryManagementActivity extends AppCompatActivity {
      * Setup data structures
      */
     private void setupData() {
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
+        categoryDAO = new CategoryDAO(dbHelper);
         categories = new ArrayList<>();
         filteredCategories = new ArrayList<>();
     }
@@ -225,6 +231,9 @@ public class CategoryManagementActivity extends AppCompatActivity {
             Toast.makeText(this, "Lỗi tải danh mục: " + e.getMessage(), Toast.LENGTH_SHORT).show();
         }
 
+        // 1 câu GROUP BY cho mọi danh mục thay vì 1 câu COUNT mỗi danh mục / mỗi lần bind item
+        categoryUsage = categoryDAO.getUsageByCategory(getUserIdAsInt());
+
         filterCategories();
         updateStats();
     }
@@ -282,27 +291,19 @@ public class CategoryManagementActivity extends AppCompatActivity {
     }
 
     /**
-     * Check if category has transactions
+     * Check if category has transactions (from usage loaded with the category list)
      */
     private boolean hasTransactions(int categoryId) {
-        try {
-            SQLiteDatabase db = dbHelper.getReadableDatabase();
-            String query = "SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_TRANSACTIONS +
-                    " WHERE " + DatabaseHelper.COLUMN_CATEGORY_ID + " = ? AND " +
-                    DatabaseHelper.COLUMN_USER_ID + " = ?";
-
-            Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(categoryId), currentUserId});
-
-            boolean hasTransactions = false;
-            if (cursor.moveToFirst()) {
-                hasTransactions = cursor.getInt(0) > 0;
-            }
-            cursor.close();
+        CategoryDAO.Usage usage = categoryUsage.get((long) categoryId);
+        return usage != null && usage.transactionCount > 0;
+    }
 
-            return hasTransactions;
-        } catch (Exception e) {
-            Log.e(TAG, "Error checking transactions: " + e.getMessage());
-            return false;
+    private int getUserIdAsInt() {
+        try {
+            return Integer.parseInt(currentUserId);
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid user ID: " + currentUserId);
+            return -1;
         }
     }
 
@@ -483,6 +484,8 @@ public class CategoryManagementActivity extends AppCompatActivity {
             int rowsUpdated = db.update(DatabaseHelper.TABLE_CATEGORIES, values, whereClause, whereArgs);
 
             if (rowsUpdated > 0) {
+                // 🗄️ Tên đã bỏ dấu trong FTS của phần đã archive (trigger chỉ cập nhật database chính)
+                dbHelper.getArchive().renameCategory(categoryId, name);
                 Toast.makeText(this, "✅ Đã cập nhật danh mục: " + name, Toast.LENGTH_SHORT).show();
                 loadCategories();
                 Log.d(TAG, "Category updated successfully: " + name);
@@ -506,7 +509,7 @@ public class CategoryManagementActivity extends AppCompatActivity {
         }
 
         // Check if category has transactions
-        if (hasTransactions(category.getId())) {
+        if (categoryDAO.getUsage(getUserIdAsInt(), category.getId()).transactionCount > 0) {
             new AlertDialog.Builder(this)
                     .setTitle("⚠️ Xác nhận xóa")
                     .setMessage("Danh mục này đã có giao dịch. Việc xóa sẽ ảnh hưởng đến báo cáo. Bạn có chắc chắn?")
@@ -827,24 +830,9 @@ public class CategoryManagementActivity extends AppCompatActivity {
     private CategoryStats getCategoryStats(int categoryId) {
         CategoryStats stats = new CategoryStats();
 
-        try {
-            SQLiteDatabase db = dbHelper.getReadableDatabase();
-            String query = "SELECT COUNT(*) as count, COALESCE(SUM(" + DatabaseHelper.COLUMN_AMOUNT + "), 0) as total " +
-                    "FROM " + DatabaseHelper.TABLE_TRANSACTIONS +
-                    " WHERE " + DatabaseHelper.COLUMN_CATEGORY_ID + " = ? AND " +
-                    DatabaseHelper.COLUMN_USER_ID + " = ?";
-
-            Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(categoryId), currentUserId});
-
-            if (cursor.moveToFirst()) {
-                stats.transactionCount = cursor.getInt(0);
-                stats.totalAmount = cursor.getDouble(1);
-            }
-            cursor.close();
-
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting category stats: " + e.getMessage());
-        }
+        CategoryDAO.Usage usage = categoryDAO.getUsage(getUserIdAsInt(), categoryId);
+        stats.transactionCount = usage.transactionCount;
+        stats.totalAmount = usage.totalAmount;
 
         return stats;
     }
@@ -2,8 +2,6 @@
 package com.example.expensemanagement;
 
 import android.content.Intent;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
@@ -17,13 +15,13 @@ import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
 import database.DatabaseHelper;
+import database.TransactionDAO;
+import models.DateCodec;
 import models.Transaction;
 import adapters.TransactionAdapter;
 
@@ -42,6 +40,7 @@ public class CategoryTransactionActivity extends AppCompatActivity {
 
     // Data
     private DatabaseHelper dbHelper;
+    private TransactionDAO transactionDAO;
     private List<Transaction> transactions;
     private TransactionAdapter transactionAdapter;
     private NumberFormat currencyFormatter;
@@ -90,7 +89,8 @@ public class CategoryTransactionActivity extends AppCompatActivity {
     }
 
     private void initializeComponents() {
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
+        transactionDAO = new TransactionDAO(dbHelper);
         transactions = new ArrayList<>();
         currencyFormatter = NumberFormat.getCurrencyInstance(new Locale("vi", "VN"));
 
@@ -149,90 +149,29 @@ public class CategoryTransactionActivity extends AppCompatActivity {
 
         new Thread(() -> {
             try {
-                SQLiteDatabase db = dbHelper.getReadableDatabase();
-
-                // Convert date format for query
-                String dbStartDate = convertToDbDate(startDate);
-                String dbEndDate = convertToDbDate(endDate);
+                // 📅 Ngày ngân sách có thể là dd/MM/yyyy - so sánh trên date_epoch_day
+                int startDay = DateCodec.parse(startDate);
+                int endDay = DateCodec.parse(endDate);
 
                 Log.d(TAG, "Querying transactions:");
                 Log.d(TAG, "  Category ID: " + categoryId);
                 Log.d(TAG, "  User ID: " + userId);
-                Log.d(TAG, "  Date range: " + dbStartDate + " to " + dbEndDate);
-
-                // Query transactions for this category within date range
-                String query = "SELECT " +
-                        DatabaseHelper.COLUMN_ID + ", " +
-                        DatabaseHelper.COLUMN_TYPE + ", " +
-                        DatabaseHelper.COLUMN_AMOUNT + ", " +
-                        DatabaseHelper.COLUMN_DATE + ", " +
-                        DatabaseHelper.COLUMN_NOTE + ", " +
-                        DatabaseHelper.COLUMN_PAYMENT_METHOD + " " +
-                        "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                        "WHERE " + DatabaseHelper.COLUMN_CATEGORY_ID + " = ? " +
-                        "AND " + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                        "AND " + DatabaseHelper.COLUMN_DATE + " BETWEEN ? AND ? " +
-                        "ORDER BY " + DatabaseHelper.COLUMN_DATE + " DESC, " +
-                        DatabaseHelper.COLUMN_ID + " DESC";
-
-                String[] args = {
-                        String.valueOf(categoryId),
-                        userId,
-                        dbStartDate,
-                        dbEndDate
-                };
-
-                Cursor cursor = db.rawQuery(query, args);
-                List<Transaction> tempTransactions = new ArrayList<>();
-
-                if (cursor != null) {
-                    Log.d(TAG, "Found " + cursor.getCount() + " transactions");
-
-                    while (cursor.moveToNext()) {
-                        Transaction transaction = new Transaction();
-
-                        // Sửa: Cast int thành Long cho setId
-                        transaction.setId(Long.valueOf(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID))));
-
-                        transaction.setType(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_TYPE)));
-                        transaction.setAmount(cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_AMOUNT)));
-                        transaction.setDate(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_DATE)));
-                        transaction.setNote(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_NOTE)));
-                        transaction.setPaymentMethod(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_PAYMENT_METHOD)));
-
-                        // Sửa: Cast int thành Long cho setCategoryId
-                        transaction.setCategoryId(Long.valueOf(categoryId));
-
-                        transaction.setCategoryName(categoryName);
-
-                        // Sửa: Cast String thành Long cho setUserId (nếu userId là số)
-                        // Nếu userId là String thuần túy, bạn cần kiểm tra Transaction model
-                        try {
-                            transaction.setUserId(Long.valueOf(userId));
-                        } catch (NumberFormatException e) {
-                            // Nếu userId không phải là số, bạn cần sửa Transaction model
-                            // hoặc xử lý khác
-                            Log.e(TAG, "UserId is not a number: " + userId);
-                            // Có thể skip transaction này hoặc set giá trị default
-                            continue;
-                        }
-
-                        tempTransactions.add(transaction);
-
-                        Log.d(TAG, String.format("Transaction: %s %.0f on %s - %s",
-                                transaction.getType(), transaction.getAmount(),
-                                transaction.getDate(), transaction.getNote()));
-                    }
-                    cursor.close();
-                }
+                Log.d(TAG, "  Date range: " + startDate + " to " + endDate);
 
-                db.close();
+                List<Transaction> tempTransactions = transactionDAO.getTransactionsByCategory(
+                        Integer.parseInt(userId), categoryId, startDay, endDay);
+                Log.d(TAG, "Found " + tempTransactions.size() + " transactions");
+
+                for (Transaction transaction : tempTransactions) {
+                    transaction.setCategoryName(categoryName);
+                    transaction.setUserId(Long.valueOf(userId));
+                }
 
                 // Update UI on main thread
                 runOnUiThread(() -> {
                     transactions.clear();
                     transactions.addAll(tempTransactions);
-                    transactionAdapter.notifyDataSetChanged();
+                    transactionAdapter.updateTransactions(transactions);
                     updateSummaryInfo();
                     updateUIVisibility();
 
@@ -260,8 +199,8 @@ public class CategoryTransactionActivity extends AppCompatActivity {
     private void updateSummaryInfo() {
         // Calculate totals from loaded transactions
         int totalCount = transactions.size();
-        double totalExpense = 0;
-        double totalIncome = 0;
+        long totalExpense = 0;
+        long totalIncome = 0;
 
         for (Transaction transaction : transactions) {
             if ("expense".equals(transaction.getType())) {
@@ -314,37 +253,12 @@ public class CategoryTransactionActivity extends AppCompatActivity {
         Toast.makeText(this, "Đang cập nhật dữ liệu...", Toast.LENGTH_SHORT).show();
     }
 
-    private String convertToDbDate(String displayDate) {
-        try {
-            // If already in YYYY-MM-DD format, return as is
-            if (displayDate.matches("\\d{4}-\\d{2}-\\d{2}")) {
-                return displayDate;
-            }
-
-            // Convert from DD/MM/YYYY to YYYY-MM-DD
-            SimpleDateFormat displayFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
-            SimpleDateFormat dbFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-            Date date = displayFormat.parse(displayDate);
-            return dbFormat.format(date);
-        } catch (Exception e) {
-            Log.e(TAG, "Error converting date: " + displayDate, e);
-            return displayDate; // Return original if conversion fails
-        }
-    }
-
     private String formatDateRange(String start, String end) {
-        try {
-            SimpleDateFormat inputFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
-            SimpleDateFormat outputFormat = new SimpleDateFormat("dd/MM", Locale.getDefault());
-
-            if (start != null && end != null) {
-                Date startDate = inputFormat.parse(start);
-                Date endDate = inputFormat.parse(end);
-
-                return outputFormat.format(startDate) + " - " + outputFormat.format(endDate);
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error formatting date range", e);
+        int startDay = DateCodec.parse(start);
+        int endDay = DateCodec.parse(end);
+        if (startDay != DateCodec.INVALID && endDay != DateCodec.INVALID) {
+            // "dd/MM/yyyy" -> "dd/MM"
+            return DateCodec.formatDisplay(startDay).substring(0, 5) + " - " + DateCodec.formatDisplay(endDay).substring(0, 5);
         }
 
         return (start != null ? start : "?") + " - " + (end != null ? end : "?");
@@ -359,9 +273,6 @@ public class CategoryTransactionActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (dbHelper != null) {
-            dbHelper.close();
-        }
         Log.d(TAG, "CategoryTransactionActivity destroyed");
     }
 }
\ No newline at end of file
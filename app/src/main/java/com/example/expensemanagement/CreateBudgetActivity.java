@@ -2,7 +2,6 @@ package com.example.expensemanagement;
 
 import android.app.DatePickerDialog;
 import android.content.ContentValues;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
 import android.text.Editable;
@@ -15,8 +14,12 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import database.BalanceDAO;
+import database.CategoryDAO;
 import database.DatabaseHelper;
 import models.BudgetPlan;
+import models.DateCodec;
+import models.Money;
 import adapters.CreateBudgetAdapter;
 import android.content.SharedPreferences;
 
@@ -43,6 +46,8 @@ public class CreateBudgetActivity extends AppCompatActivity {
     private LinearLayout llEmptyCategories;
 
     private DatabaseHelper dbHelper;
+    private BalanceDAO balanceDAO;
+    private CategoryDAO categoryDAO;
     private CreateBudgetAdapter adapter;
     private List<BudgetPlan.CategoryBudget> categoryBudgets;
     private List<BudgetPlan.CategoryBudget> availableCategories;
@@ -139,7 +144,9 @@ public class CreateBudgetActivity extends AppCompatActivity {
         rvCategoryBudgets = findViewById(R.id.rv_category_budgets);
         llEmptyCategories = findViewById(R.id.ll_empty_categories);
 
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
+        balanceDAO = new BalanceDAO(dbHelper);
+        categoryDAO = new CategoryDAO(dbHelper);
         categoryBudgets = new ArrayList<>();
         availableCategories = new ArrayList<>();
 
@@ -159,35 +166,8 @@ public class CreateBudgetActivity extends AppCompatActivity {
     private void calculateCurrentBalance() {
         executor.execute(() -> {
             try {
-                SQLiteDatabase db = dbHelper.getReadableDatabase();
-
-                // ✅ SỬA: Sử dụng currentUserId thay vì hardcode "1"
-                String incomeQuery = "SELECT COALESCE(SUM(" + DatabaseHelper.COLUMN_AMOUNT + "), 0) " +
-                        "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                        "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'income' " +
-                        "AND " + DatabaseHelper.COLUMN_USER_ID + " = ?";
-
-                Cursor incomeCursor = db.rawQuery(incomeQuery, new String[]{currentUserId});
-                double totalIncome = 0;
-                if (incomeCursor.moveToFirst()) {
-                    totalIncome = incomeCursor.getDouble(0);
-                }
-                incomeCursor.close();
-
-                // ✅ SỬA: Sử dụng currentUserId thay vì hardcode "1"
-                String expenseQuery = "SELECT COALESCE(SUM(" + DatabaseHelper.COLUMN_AMOUNT + "), 0) " +
-                        "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                        "WHERE " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                        "AND " + DatabaseHelper.COLUMN_USER_ID + " = ?";
-
-                Cursor expenseCursor = db.rawQuery(expenseQuery, new String[]{currentUserId});
-                double totalExpense = 0;
-                if (expenseCursor.moveToFirst()) {
-                    totalExpense = expenseCursor.getDouble(0);
-                }
-                expenseCursor.close();
-
-                currentBalance = totalIncome - totalExpense;
+                // 💰 Đọc từ sổ cái user_balances thay vì 2 câu SUM trên transactions
+                currentBalance = balanceDAO.getBalance(Integer.parseInt(currentUserId));
 
                 runOnUiThread(() -> {
                     Log.d(TAG, "💰 Current balance for user " + currentUserId + ": " +
@@ -215,44 +195,16 @@ public class CreateBudgetActivity extends AppCompatActivity {
 
     private void loadAvailableCategories() {
         availableCategories.clear();
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        String query = "SELECT * FROM " + DatabaseHelper.TABLE_CATEGORIES +
-                " WHERE " + DatabaseHelper.COLUMN_CATEGORY_TYPE + " = 'expense'" +
-                " ORDER BY " + DatabaseHelper.COLUMN_NAME;
-
-        Cursor cursor = db.rawQuery(query, null);
-
-        if (cursor.moveToFirst()) {
-            do {
-                int idIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_ID);
-                int nameIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_NAME);
-                int iconIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_CATEGORY_ICON);
-                int colorIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_CATEGORY_COLOR);
-
-                if (idIndex >= 0 && nameIndex >= 0) {
-                    BudgetPlan.CategoryBudget categoryBudget = new BudgetPlan.CategoryBudget();
-                    categoryBudget.setCategoryId(cursor.getInt(idIndex));
-                    categoryBudget.setCategoryName(cursor.getString(nameIndex));
-
-                    if (iconIndex >= 0) {
-                        categoryBudget.setCategoryIcon(cursor.getString(iconIndex));
-                    } else {
-                        categoryBudget.setCategoryIcon("📂");
-                    }
 
-                    if (colorIndex >= 0) {
-                        categoryBudget.setCategoryColor(cursor.getString(colorIndex));
-                    } else {
-                        categoryBudget.setCategoryColor("#2196F3");
-                    }
-
-                    categoryBudget.setAllocatedAmount(0);
-                    availableCategories.add(categoryBudget);
-                }
-            } while (cursor.moveToNext());
+        for (models.Category category : categoryDAO.getCategoriesByType("expense")) {
+            BudgetPlan.CategoryBudget categoryBudget = new BudgetPlan.CategoryBudget();
+            categoryBudget.setCategoryId(category.getId().intValue());
+            categoryBudget.setCategoryName(category.getName());
+            categoryBudget.setCategoryIcon(category.getIcon() != null ? category.getIcon() : "📂");
+            categoryBudget.setCategoryColor(category.getColor() != null ? category.getColor() : "#2196F3");
+            categoryBudget.setAllocatedAmount(0);
+            availableCategories.add(categoryBudget);
         }
-
-        cursor.close();
     }
 
     private void setupEventListeners() {
@@ -625,20 +577,34 @@ public class CreateBudgetActivity extends AppCompatActivity {
         db.beginTransaction();
 
         try {
+            // 🧾 1 dòng budget_plans cho ngân sách + 1 dòng budget_items cho mỗi danh mục
+            int startDay = DateCodec.fromDate(startDate);
+            int endDay = DateCodec.fromDate(endDate);
+
+            ContentValues planValues = new ContentValues();
+            planValues.put(DatabaseHelper.COLUMN_BUDGET_NAME, budgetName);
+            planValues.put(DatabaseHelper.COLUMN_BUDGET_PERIOD, period);
+            planValues.put(DatabaseHelper.COLUMN_BUDGET_START_DATE, DateCodec.formatDisplay(startDay));
+            planValues.put(DatabaseHelper.COLUMN_BUDGET_END_DATE, DateCodec.formatDisplay(endDay));
+            planValues.put(DatabaseHelper.COLUMN_START_DAY, startDay);
+            planValues.put(DatabaseHelper.COLUMN_END_DAY, endDay);
+
+            // ✅ STRICT: Sử dụng currentUserId (đã validate)
+            planValues.put(DatabaseHelper.COLUMN_USER_ID, currentUserId);
+
+            long planId = db.insert(DatabaseHelper.TABLE_BUDGET_PLANS, null, planValues);
+            if (planId == -1) {
+                throw new Exception("Lỗi khi lưu ngân sách: " + budgetName);
+            }
+
             for (BudgetPlan.CategoryBudget category : categoryBudgets) {
                 if (category.getAllocatedAmount() > 0) {
                     ContentValues values = new ContentValues();
+                    values.put(DatabaseHelper.COLUMN_PLAN_ID, planId);
                     values.put(DatabaseHelper.COLUMN_CATEGORY_ID, category.getCategoryId());
-                    values.put(DatabaseHelper.COLUMN_BUDGET_AMOUNT, category.getAllocatedAmount());
-                    values.put(DatabaseHelper.COLUMN_BUDGET_PERIOD, period);
-                    values.put(DatabaseHelper.COLUMN_BUDGET_START_DATE, dateFormatter.format(startDate));
-                    values.put(DatabaseHelper.COLUMN_BUDGET_END_DATE, dateFormatter.format(endDate));
-                    values.put(DatabaseHelper.COLUMN_BUDGET_NAME, budgetName);
-
-                    // ✅ STRICT: Sử dụng currentUserId (đã validate)
-                    values.put(DatabaseHelper.COLUMN_USER_ID, currentUserId);
+                    values.put(DatabaseHelper.COLUMN_BUDGET_AMOUNT, Money.toMinorUnits(category.getAllocatedAmount()));
 
-                    long result = db.insert(DatabaseHelper.TABLE_BUDGETS, null, values);
+                    long result = db.insert(DatabaseHelper.TABLE_BUDGET_ITEMS, null, values);
 
                     if (result == -1) {
                         throw new Exception("Lỗi khi lưu danh mục: " + category.getCategoryName());
@@ -4,6 +4,7 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatDelegate;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
@@ -18,8 +19,6 @@ import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
@@ -49,12 +48,20 @@ import java.util.List;
 import java.util.Locale;
 
 import database.DatabaseHelper;
+import database.InvalidationTracker;
+import models.DashboardSummary;
+import models.DateCodec;
+import viewmodels.DashboardViewModel;
 
 public class DashboardActivity extends AppCompatActivity {
 
     // Database
     private DatabaseHelper dbHelper;
     private SQLiteDatabase database;
+    private DashboardViewModel dashboardViewModel;
+
+    // 🔄 Chỉ load lại khi bảng Dashboard đọc đã đổi
+    private InvalidationTracker.Observer dataObserver;
 
     // Shared Preferences
     private SharedPreferences sharedPreferences;
@@ -146,6 +153,7 @@ public class DashboardActivity extends AppCompatActivity {
 
         initializeComponents();
         setupDatabase();
+        setupViewModel();
         setupFormatters();
         setupEventListeners();
         setupBackPressHandler();
@@ -181,7 +189,10 @@ public class DashboardActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        refreshData();
+        // 🔄 Quay lại mà không có gì được ghi thì giữ nguyên số liệu đang hiển thị
+        if (dataObserver == null || dataObserver.hasChanged()) {
+            refreshData();
+        }
         if (bottomNavigation != null) {
             bottomNavigation.setSelectedItemId(R.id.nav_dashboard);
         }
@@ -193,12 +204,6 @@ public class DashboardActivity extends AppCompatActivity {
 
         Log.d("Dashboard", "🔄 onDestroy - Cleaning up resources");
 
-        // Close database connection
-        if (database != null && database.isOpen()) {
-            database.close();
-            Log.d("Dashboard", "✅ Database closed successfully");
-        }
-
         // Dismiss popup if showing
         if (profilePopup != null && profilePopup.isShowing()) {
             profilePopup.dismiss();
@@ -355,8 +360,10 @@ public class DashboardActivity extends AppCompatActivity {
 
     private void setupDatabase() {
         try {
-            dbHelper = new DatabaseHelper(this);
+            dbHelper = DatabaseHelper.getInstance(this);
             database = dbHelper.getReadableDatabase(); // ✅ Mở database 1 lần
+            dataObserver = dbHelper.getInvalidationTracker().observe(
+                    DatabaseHelper.TABLE_USERS, DatabaseHelper.TABLE_TRANSACTIONS, DatabaseHelper.TABLE_CATEGORIES);
 
             Log.d("Dashboard", "✅ Database opened successfully");
 
@@ -377,6 +384,25 @@ public class DashboardActivity extends AppCompatActivity {
         }
     }
 
+    private void setupViewModel() {
+        dashboardViewModel = new ViewModelProvider(this).get(DashboardViewModel.class);
+
+        dashboardViewModel.getSummary().observe(this, this::applyDashboardSummary);
+
+        dashboardViewModel.getError().observe(this, message -> {
+            if (message == null) return;
+            Log.e("Dashboard", "❌ Error loading financial data: " + message);
+            setDefaultFinancialValues();
+            showToast("Lỗi tải dữ liệu: " + message);
+        });
+
+        dashboardViewModel.getLoading().observe(this, isLoading -> {
+            if (swipeRefreshLayout != null && !Boolean.TRUE.equals(isLoading)) {
+                swipeRefreshLayout.setRefreshing(false);
+            }
+        });
+    }
+
     private void setupFormatters() {
         currencyFormat = new DecimalFormat("#,###,### đ");
         dateFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
@@ -545,31 +571,9 @@ public class DashboardActivity extends AppCompatActivity {
                 return;
             }
 
-            // ✅ Reset values trước khi load
-            resetFinancialValues();
-
-            // ✅ Verify user exists TRƯỚC KHI load data
-            if (!verifyUserExists(userId)) {
-                Log.e("Dashboard", "❌ User does not exist in database!");
-                showToast("Lỗi: Tài khoản không tồn tại");
-                navigateToLogin();
-                return;
-            }
-
-            // Load data với error handling
-            boolean dataLoaded = loadCurrentMonthDataSafe(userId);
-            if (dataLoaded) {
-                loadPreviousMonthDataSafe(userId);
-                calculateFinancialMetrics();
-                updateFinancialUI();
-                loadRecentTransactionsFixed(userId);
-                checkNotificationsFixed(userId);
-
-                Log.d("Dashboard", "✅ Successfully loaded all financial data");
-            } else {
-                Log.w("Dashboard", "⚠️ Failed to load data, using defaults");
-                setDefaultFinancialValues();
-            }
+            // ⚡ Verify user + toàn bộ số liệu được load bằng 1 truy vấn trên background thread
+            if (dataObserver != null) dataObserver.markLoaded();
+            dashboardViewModel.loadSummary(userId);
 
         } catch (Exception e) {
             Log.e("Dashboard", "❌ Error loading financial data: " + e.getMessage());
@@ -579,6 +583,44 @@ public class DashboardActivity extends AppCompatActivity {
         }
     }
 
+    // ⚡ Nhận kết quả từ DashboardViewModel (main thread)
+    private void applyDashboardSummary(DashboardSummary summary) {
+        if (summary == null) return;
+
+        if (!summary.isUserExists()) {
+            Log.e("Dashboard", "❌ User does not exist in database!");
+            showToast("Lỗi: Tài khoản không tồn tại");
+            navigateToLogin();
+            return;
+        }
+
+        // ✅ Reset values trước khi gán
+        resetFinancialValues();
+
+        // Số dư tích lũy
+        totalIncome = summary.getTotalIncome();
+        totalExpense = summary.getTotalExpense();
+        totalBalance = summary.getTotalBalance();
+
+        previousMonthIncome = summary.getPreviousMonthIncome();
+        previousMonthExpense = summary.getPreviousMonthExpense();
+        previousMonthBalance = summary.getPreviousMonthBalance();
+        transactionCount = summary.getRecentTransactionCount();
+
+        calculateFinancialMetrics();
+        updateFinancialUI();
+
+        if (tvTransactionsSummary != null) {
+            tvTransactionsSummary.setText(summary.getTotalTransactionCount() + " tổng số giao dịch");
+        }
+
+        if (notificationBadge != null) {
+            notificationBadge.setVisibility(summary.getUnreadNotificationCount() > 0 ? View.VISIBLE : View.GONE);
+        }
+
+        Log.d("Dashboard", "✅ Successfully loaded all financial data");
+    }
+
     // ✅ 4. THÊM HELPER METHODS
     private int getUserIdFromUsername(String username) {
         if (username == null || username.isEmpty()) {
@@ -778,17 +820,12 @@ public class DashboardActivity extends AppCompatActivity {
         Log.d("Dashboard", "=== Loading Current Month Data ===");
 
         try {
-            // Sử dụng format ngày chuẩn SQLite
-            SimpleDateFormat dbDateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+            // 📅 Khoảng ngày so với cột date_epoch_day (số nguyên)
+            int today = DateCodec.today();
 
             // Get current month dates
-            Calendar calendar = Calendar.getInstance();
-            calendar.set(Calendar.DAY_OF_MONTH, 1);
-            String monthStart = dbDateFormat.format(calendar.getTime());
-
-            calendar.add(Calendar.MONTH, 1);
-            calendar.add(Calendar.DAY_OF_MONTH, -1);
-            String monthEnd = dbDateFormat.format(calendar.getTime());
+            String monthStart = String.valueOf(DateCodec.startOfMonth(today));
+            String monthEnd = String.valueOf(DateCodec.endOfMonth(today));
 
             Log.d("Dashboard", "Query date range: " + monthStart + " to " + monthEnd);
 
@@ -797,7 +834,7 @@ public class DashboardActivity extends AppCompatActivity {
                     DatabaseHelper.TABLE_TRANSACTIONS +
                     " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
                     DatabaseHelper.COLUMN_TYPE + " = 'income' AND " +
-                    "date(" + DatabaseHelper.COLUMN_DATE + ") BETWEEN date(?) AND date(?)";
+                    DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " BETWEEN ? AND ?";
 
             Log.d("Dashboard", "Executing income query: " + incomeQuery);
             Log.d("Dashboard", "Query params: userId=" + userId + ", start=" + monthStart + ", end=" + monthEnd);
@@ -819,7 +856,7 @@ public class DashboardActivity extends AppCompatActivity {
                     DatabaseHelper.TABLE_TRANSACTIONS +
                     " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
                     DatabaseHelper.COLUMN_TYPE + " = 'expense' AND " +
-                    "date(" + DatabaseHelper.COLUMN_DATE + ") BETWEEN date(?) AND date(?)";
+                    DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " BETWEEN ? AND ?";
 
             Log.d("Dashboard", "Executing expense query: " + expenseQuery);
 
@@ -840,13 +877,11 @@ public class DashboardActivity extends AppCompatActivity {
             Log.d("Dashboard", "✅ Calculated balance: " + totalBalance);
 
             // ✅ Count transactions in last 7 days
-            Calendar recentDate = Calendar.getInstance();
-            recentDate.add(Calendar.DAY_OF_MONTH, -7);
-            String recentDateStr = dbDateFormat.format(recentDate.getTime());
+            String recentDateStr = String.valueOf(today - 7);
 
             String countQuery = "SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_TRANSACTIONS +
                     " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
-                    "date(" + DatabaseHelper.COLUMN_DATE + ") >= date(?)";
+                    DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " >= ?";
 
             Cursor countCursor = database.rawQuery(countQuery, new String[]{
                     String.valueOf(userId), recentDateStr
@@ -869,17 +904,10 @@ public class DashboardActivity extends AppCompatActivity {
         Log.d("Dashboard", "=== Loading Previous Month Data ===");
 
         try {
-            SimpleDateFormat dbDateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-
             // Get previous month dates
-            Calendar calendar = Calendar.getInstance();
-            calendar.add(Calendar.MONTH, -1);
-            calendar.set(Calendar.DAY_OF_MONTH, 1);
-            String prevMonthStart = dbDateFormat.format(calendar.getTime());
-
-            calendar.add(Calendar.MONTH, 1);
-            calendar.add(Calendar.DAY_OF_MONTH, -1);
-            String prevMonthEnd = dbDateFormat.format(calendar.getTime());
+            int prevMonth = DateCodec.plusMonths(DateCodec.startOfMonth(DateCodec.today()), -1);
+            String prevMonthStart = String.valueOf(prevMonth);
+            String prevMonthEnd = String.valueOf(DateCodec.endOfMonth(prevMonth));
 
             Log.d("Dashboard", "Previous month range: " + prevMonthStart + " to " + prevMonthEnd);
 
@@ -888,7 +916,7 @@ public class DashboardActivity extends AppCompatActivity {
                     DatabaseHelper.TABLE_TRANSACTIONS +
                     " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
                     DatabaseHelper.COLUMN_TYPE + " = 'income' AND " +
-                    "date(" + DatabaseHelper.COLUMN_DATE + ") BETWEEN date(?) AND date(?)";
+                    DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " BETWEEN ? AND ?";
 
             Cursor incomeCursor = database.rawQuery(incomeQuery, new String[]{
                     String.valueOf(userId), prevMonthStart, prevMonthEnd
@@ -905,7 +933,7 @@ public class DashboardActivity extends AppCompatActivity {
                     DatabaseHelper.TABLE_TRANSACTIONS +
                     " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
                     DatabaseHelper.COLUMN_TYPE + " = 'expense' AND " +
-                    "date(" + DatabaseHelper.COLUMN_DATE + ") BETWEEN date(?) AND date(?)";
+                    DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " BETWEEN ? AND ?";
 
             Cursor expenseCursor = database.rawQuery(expenseQuery, new String[]{
                     String.valueOf(userId), prevMonthStart, prevMonthEnd
@@ -1020,7 +1048,7 @@ private void loadRecentTransactionsFixed(int userId) {
                     DatabaseHelper.COLUMN_CREATED_AT + " FROM " +
                     DatabaseHelper.TABLE_TRANSACTIONS +
                     " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                    "ORDER BY " + DatabaseHelper.COLUMN_DATE + " DESC LIMIT 5";
+                    "ORDER BY " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " DESC LIMIT 5";
 
             Cursor cursor = database.rawQuery(debugQuery, new String[]{String.valueOf(userId)});
 
@@ -1134,6 +1162,10 @@ private void loadRecentTransactionsFixed(int userId) {
         runOnUiThread(() -> {
             updateFinancialUI();
 
+            if (swipeRefreshLayout != null) {
+                swipeRefreshLayout.setRefreshing(false);
+            }
+
             if (layoutEmptyTransactions != null) {
                 layoutEmptyTransactions.setVisibility(View.VISIBLE);
             }
@@ -1143,24 +1175,19 @@ private void loadRecentTransactionsFixed(int userId) {
         });
     }
     private void loadCurrentMonthData(int userId) {
-        // ✅ FIX: Sử dụng format ngày chuẩn cho query
-        SimpleDateFormat dbDateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+        // 📅 Khoảng ngày so với cột date_epoch_day (số nguyên)
+        int today = DateCodec.today();
 
         // Get current month start and end dates
-        Calendar calendar = Calendar.getInstance();
-        calendar.set(Calendar.DAY_OF_MONTH, 1);
-        String monthStart = dbDateFormat.format(calendar.getTime());
-
-        calendar.add(Calendar.MONTH, 1);
-        calendar.add(Calendar.DAY_OF_MONTH, -1);
-        String monthEnd = dbDateFormat.format(calendar.getTime());
+        String monthStart = String.valueOf(DateCodec.startOfMonth(today));
+        String monthEnd = String.valueOf(DateCodec.endOfMonth(today));
 
         // Query income với format ngày đúng
         String incomeQuery = "SELECT SUM(" + DatabaseHelper.COLUMN_AMOUNT + ") FROM " +
                 DatabaseHelper.TABLE_TRANSACTIONS +
                 " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
                 DatabaseHelper.COLUMN_TYPE + " = 'income' AND " +
-                "date(" + DatabaseHelper.COLUMN_DATE + ") BETWEEN date(?) AND date(?)";
+                DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " BETWEEN ? AND ?";
 
         Cursor incomeCursor = database.rawQuery(incomeQuery, new String[]{
                 String.valueOf(userId), monthStart, monthEnd
@@ -1176,7 +1203,7 @@ private void loadRecentTransactionsFixed(int userId) {
                 DatabaseHelper.TABLE_TRANSACTIONS +
                 " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
                 DatabaseHelper.COLUMN_TYPE + " = 'expense' AND " +
-                "date(" + DatabaseHelper.COLUMN_DATE + ") BETWEEN date(?) AND date(?)";
+                DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " BETWEEN ? AND ?";
 
         Cursor expenseCursor = database.rawQuery(expenseQuery, new String[]{
                 String.valueOf(userId), monthStart, monthEnd
@@ -1191,13 +1218,11 @@ private void loadRecentTransactionsFixed(int userId) {
         totalBalance = totalIncome - totalExpense;
 
         // Count recent transactions (last 7 days)
-        Calendar recentDate = Calendar.getInstance();
-        recentDate.add(Calendar.DAY_OF_MONTH, -7);
-        String recentDateStr = dbDateFormat.format(recentDate.getTime());
+        String recentDateStr = String.valueOf(today - 7);
 
         String countQuery = "SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_TRANSACTIONS +
                 " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
-                "date(" + DatabaseHelper.COLUMN_DATE + ") >= date(?)";
+                DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " >= ?";
 
         Cursor countCursor = database.rawQuery(countQuery, new String[]{
                 String.valueOf(userId), recentDateStr
@@ -1212,24 +1237,17 @@ private void loadRecentTransactionsFixed(int userId) {
     }
 
     private void loadPreviousMonthData(int userId) {
-        SimpleDateFormat dbDateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-
         // Get previous month dates
-        Calendar calendar = Calendar.getInstance();
-        calendar.add(Calendar.MONTH, -1);
-        calendar.set(Calendar.DAY_OF_MONTH, 1);
-        String prevMonthStart = dbDateFormat.format(calendar.getTime());
-
-        calendar.add(Calendar.MONTH, 1);
-        calendar.add(Calendar.DAY_OF_MONTH, -1);
-        String prevMonthEnd = dbDateFormat.format(calendar.getTime());
+        int prevMonth = DateCodec.plusMonths(DateCodec.startOfMonth(DateCodec.today()), -1);
+        String prevMonthStart = String.valueOf(prevMonth);
+        String prevMonthEnd = String.valueOf(DateCodec.endOfMonth(prevMonth));
 
         // Query previous month income
         String incomeQuery = "SELECT SUM(" + DatabaseHelper.COLUMN_AMOUNT + ") FROM " +
                 DatabaseHelper.TABLE_TRANSACTIONS +
                 " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
                 DatabaseHelper.COLUMN_TYPE + " = 'income' AND " +
-                "date(" + DatabaseHelper.COLUMN_DATE + ") BETWEEN date(?) AND date(?)";
+                DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " BETWEEN ? AND ?";
 
         Cursor incomeCursor = database.rawQuery(incomeQuery, new String[]{
                 String.valueOf(userId), prevMonthStart, prevMonthEnd
@@ -1245,7 +1263,7 @@ private void loadRecentTransactionsFixed(int userId) {
                 DatabaseHelper.TABLE_TRANSACTIONS +
                 " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
                 DatabaseHelper.COLUMN_TYPE + " = 'expense' AND " +
-                "date(" + DatabaseHelper.COLUMN_DATE + ") BETWEEN date(?) AND date(?)";
+                DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " BETWEEN ? AND ?";
 
         Cursor expenseCursor = database.rawQuery(expenseQuery, new String[]{
                 String.valueOf(userId), prevMonthStart, prevMonthEnd
@@ -1543,14 +1561,8 @@ private int calculateHealthScore() {
             swipeRefreshLayout.setRefreshing(true);
         }
 
-        // Simulate network delay
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-            loadFinancialData();
-            if (swipeRefreshLayout != null) {
-                swipeRefreshLayout.setRefreshing(false);
-            }
-            showToast("Dữ liệu đã được cập nhật");
-        }, 1000);
+        // ⚡ Load bất đồng bộ qua ViewModel - refresh indicator tắt khi có kết quả
+        loadFinancialData();
     }
 
     private void toggleBalanceVisibility() {
@@ -1895,8 +1907,6 @@ private int calculateHealthScore() {
         int currentUserId = sharedPreferences.getInt(KEY_USER_ID, -1);
         String currentUsername = sharedPreferences.getString(KEY_USERNAME, "unknown");
         android.util.Log.d("Dashboard", "Current logged in - UserID: " + currentUserId + ", Username: " + currentUsername);
-
-        db.close();
     }
 
     private void debugDashboardState() {
@@ -1,5 +1,6 @@
 package com.example.expensemanagement;
 
+import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -11,12 +12,22 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import database.BalanceDAO;
+import database.DatabaseHelper;
+import database.QueryStats;
+
 public class DebugServiceActivity extends AppCompatActivity {
 
     private static final String TAG = "DebugServiceActivity";
 
     private ServiceManager serviceManager;
     private TextView tvStatus;
+    private TextView tvQueryStats;
     private Button btnStart, btnStop, btnToggle, btnCheck, btnTest;
     private ScrollView scrollView;
     private Handler handler;
@@ -94,6 +105,38 @@ public class DebugServiceActivity extends AppCompatActivity {
         btnForceStop.setOnClickListener(v -> forceStop());
         mainLayout.addView(btnForceStop);
 
+        // 💰 Đối soát sổ cái số dư
+        Button btnVerifyBalance = new Button(this);
+        btnVerifyBalance.setText("Verify Balance Ledger");
+        btnVerifyBalance.setOnClickListener(v -> verifyBalanceLedger());
+        mainLayout.addView(btnVerifyBalance);
+
+        // ⏱️ Độ trễ truy vấn
+        Button btnQueryStats = new Button(this);
+        btnQueryStats.setText("Query Latency Stats");
+        btnQueryStats.setOnClickListener(v -> showQueryStats());
+        mainLayout.addView(btnQueryStats);
+
+        Button btnExportQueryStats = new Button(this);
+        btnExportQueryStats.setText("Export Query Stats (JSON)");
+        btnExportQueryStats.setOnClickListener(v -> exportQueryStats());
+        mainLayout.addView(btnExportQueryStats);
+
+        Button btnResetQueryStats = new Button(this);
+        btnResetQueryStats.setText("Reset Query Stats");
+        btnResetQueryStats.setOnClickListener(v -> {
+            QueryStats.reset();
+            showQueryStats();
+        });
+        mainLayout.addView(btnResetQueryStats);
+
+        tvQueryStats = new TextView(this);
+        tvQueryStats.setTextSize(11);
+        tvQueryStats.setTypeface(android.graphics.Typeface.MONOSPACE);
+        tvQueryStats.setPadding(20, 20, 20, 20);
+        tvQueryStats.setTextIsSelectable(true);
+        mainLayout.addView(tvQueryStats);
+
         scrollView.addView(mainLayout);
         setContentView(scrollView);
 
@@ -206,6 +249,52 @@ public class DebugServiceActivity extends AppCompatActivity {
         }
     }
 
+    private void verifyBalanceLedger() {
+        Log.d(TAG, "Verify balance ledger requested");
+        int userId = getSharedPreferences("MoneyMasterPrefs", MODE_PRIVATE).getInt("userId", -1);
+        if (userId == -1) {
+            Toast.makeText(this, "No logged in user", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        // Đối soát cần quét toàn bộ giao dịch của user nên chạy ngoài main thread
+        new Thread(() -> {
+            BalanceDAO balanceDAO = new BalanceDAO(DatabaseHelper.getInstance(this));
+            boolean consistent = balanceDAO.verifyBalance(userId);
+            double balance = balanceDAO.getBalance(userId);
+
+            runOnUiThread(() -> {
+                String message = consistent
+                        ? "Ledger OK - balance: " + balance
+                        : "Ledger rebuilt - balance: " + balance;
+                Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+            });
+        }).start();
+    }
+
+    private void showQueryStats() {
+        tvQueryStats.setText(QueryStats.summary(20));
+    }
+
+    private void exportQueryStats() {
+        String json = QueryStats.toJson();
+
+        // Lưu 1 bản trong thư mục của app (adb pull được) rồi mở share sheet
+        File file = new File(getExternalFilesDir(null), "query_stats.json");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+            Log.d(TAG, "✅ Query stats exported to " + file.getAbsolutePath());
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Error writing query stats: " + e.getMessage());
+        }
+
+        Intent share = new Intent(Intent.ACTION_SEND);
+        share.setType("application/json");
+        share.putExtra(Intent.EXTRA_SUBJECT, "MoneyMaster query stats");
+        share.putExtra(Intent.EXTRA_TEXT, json);
+        startActivity(Intent.createChooser(share, "Export query stats"));
+    }
+
     private void updateStatus() {
         try {
             String statusText = serviceManager.getServiceStatus();
@@ -53,7 +53,7 @@ public class ExpenseBackgroundService extends Service {
             Log.d(TAG, "Initializing service components...");
 
             // Khởi tạo components
-            dbHelper = new DatabaseHelper(this);
+            dbHelper = DatabaseHelper.getInstance(this);
             database = dbHelper.getReadableDatabase();
             sharedPreferences = getSharedPreferences("MoneyMasterPrefs", MODE_PRIVATE);
             currencyFormat = new DecimalFormat("#,###,### đ");
@@ -128,11 +128,6 @@ public class ExpenseBackgroundService extends Service {
                 handler.removeCallbacks(checkRunnable);
                 Log.d(TAG, "✅ Handler callbacks removed");
             }
-
-            if (database != null && database.isOpen()) {
-                database.close();
-                Log.d(TAG, "✅ Database closed");
-            }
         } catch (Exception e) {
             Log.e(TAG, "❌ Error in onDestroy: " + e.getMessage());
             e.printStackTrace();
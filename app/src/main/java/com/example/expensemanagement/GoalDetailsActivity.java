@@ -34,13 +34,18 @@ import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 import database.DatabaseHelper;
+import database.GoalDAO;
+import database.TransactionSearchDAO;
 import models.Goal;
 import models.Transaction;
 
 public class GoalDetailsActivity extends AppCompatActivity {
     private static final String TAG = "GoalDetailsActivity";
+    private static final int FALLBACK_LIMIT = 50;
 
     private DatabaseHelper dbHelper;
+    private GoalDAO goalDAO;
+    private TransactionSearchDAO searchDAO;
     private int goalId, currentUserId;
     private Goal currentGoal;
 
@@ -107,7 +112,9 @@ public class GoalDetailsActivity extends AppCompatActivity {
     }
 
     private void initDatabase() {
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
+        goalDAO = new GoalDAO(dbHelper);
+        searchDAO = new TransactionSearchDAO(dbHelper);
     }
 
     private void setupRecyclerView() {
@@ -117,35 +124,15 @@ public class GoalDetailsActivity extends AppCompatActivity {
     }
 
     private void loadGoalDetails() {
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-
         try {
-            Cursor cursor = db.query(
-                    DatabaseHelper.TABLE_GOALS,
-                    null,
-                    DatabaseHelper.COLUMN_ID + " = ? AND " + DatabaseHelper.COLUMN_USER_ID + " = ?",
-                    new String[]{String.valueOf(goalId), String.valueOf(currentUserId)},
-                    null, null, null
-            );
-
-            if (cursor.moveToFirst()) {
-                currentGoal = new Goal();
-                currentGoal.setId(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID)));
-                // ✅ FIXED: Use COLUMN_NAME instead of COLUMN_GOAL_NAME
-                currentGoal.setName(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_NAME)));
-                currentGoal.setTargetAmount(cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_TARGET_AMOUNT)));
-                currentGoal.setCurrentAmount(cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_CURRENT_AMOUNT)));
-                currentGoal.setDeadline(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_DEADLINE)));
-                currentGoal.setIcon(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_ICON)));
-                currentGoal.setStatus(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_STATUS)));
-                currentGoal.setUserId(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USER_ID)));
+            currentGoal = goalDAO.getGoal(goalId, currentUserId);
 
+            if (currentGoal != null) {
                 updateUI();
             } else {
                 Toast.makeText(this, "❌ Không tìm thấy mục tiêu", Toast.LENGTH_SHORT).show();
                 finish();
             }
-            cursor.close();
 
         } catch (Exception e) {
             Log.e(TAG, "Error loading goal details: " + e.getMessage());
@@ -358,25 +345,24 @@ public class GoalDetailsActivity extends AppCompatActivity {
         if (note == null) note = "";
         if (paymentMethod == null) paymentMethod = "";
 
-        String noteLower = note.toLowerCase().trim();
-        String goalLower = goalName.toLowerCase().trim();
-        String paymentLower = paymentMethod.toLowerCase().trim();
+        // 🔍 So khớp không dấu - cùng quy tắc với chỉ mục FTS
+        String noteLower = DatabaseHelper.foldDiacritics(note).trim();
+        String goalLower = DatabaseHelper.foldDiacritics(goalName).trim();
+        String paymentLower = DatabaseHelper.foldDiacritics(paymentMethod).trim();
 
         // Check if contains "tiết kiệm" (in note or payment method)
-        boolean hasSavings = noteLower.contains("tiết kiệm") ||
-                noteLower.contains("tiet kiem") ||
-                paymentLower.contains("tiết kiệm") ||
+        boolean hasSavings = noteLower.contains("tiet kiem") ||
                 paymentLower.contains("tiet kiem");
 
         // Check if contains goal name
         boolean hasGoalName = noteLower.contains(goalLower);
 
         // Also check for common savings phrases with goal name
-        boolean hasSavingsPhrase = noteLower.contains("tiết kiệm cho " + goalLower) ||
-                noteLower.contains("tiết kiệm để " + goalLower) ||
-                noteLower.contains("cho mục tiêu " + goalLower) ||
-                noteLower.contains("để mua " + goalLower) ||
-                noteLower.contains("dành cho " + goalLower);
+        boolean hasSavingsPhrase = noteLower.contains("tiet kiem cho " + goalLower) ||
+                noteLower.contains("tiet kiem de " + goalLower) ||
+                noteLower.contains("cho muc tieu " + goalLower) ||
+                noteLower.contains("de mua " + goalLower) ||
+                noteLower.contains("danh cho " + goalLower);
 
         // ✅ MAIN LOGIC: Must have BOTH "tiết kiệm" AND goal name, OR specific saving phrases
         boolean isRelated = (hasSavings && hasGoalName) || hasSavingsPhrase;
@@ -406,7 +392,7 @@ public class GoalDetailsActivity extends AppCompatActivity {
                     "LEFT JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID + " " +
                     "WHERE gt." + DatabaseHelper.COLUMN_GOAL_ID + " = ? " +
                     "AND t." + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                    "ORDER BY t." + DatabaseHelper.COLUMN_DATE + " DESC, t." + DatabaseHelper.COLUMN_CREATED_AT + " DESC";
+                    "ORDER BY t." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " DESC, t." + DatabaseHelper.COLUMN_CREATED_AT + " DESC";
 
             Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(goalId), String.valueOf(currentUserId)});
 
@@ -418,9 +404,9 @@ public class GoalDetailsActivity extends AppCompatActivity {
                 // Use the goal_amount if available, otherwise use transaction amount
                 int goalAmountIndex = cursor.getColumnIndex("goal_amount");
                 if (goalAmountIndex != -1 && !cursor.isNull(goalAmountIndex)) {
-                    transaction.setAmount(cursor.getDouble(goalAmountIndex));
+                    transaction.setAmount(cursor.getLong(goalAmountIndex));
                 } else {
-                    transaction.setAmount(cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_AMOUNT)));
+                    transaction.setAmount(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_AMOUNT)));
                 }
 
                 // Use goal_note if available, otherwise use transaction note
@@ -497,11 +483,11 @@ public class GoalDetailsActivity extends AppCompatActivity {
         }
     }
 
-    // ✅ IMPROVED: Strict fallback method - only "tiết kiệm" AND goal name
+    // 🔍 Fallback: tìm qua chỉ mục FTS - "tiết kiệm" (note/payment method) AND tên mục tiêu trong note
     private void loadTransactionHistoryFallback(List<Transaction> transactions, SQLiteDatabase db) {
         if (currentGoal == null) return;
 
-        Log.d(TAG, "Using strict fallback method for goal: " + currentGoal.getName());
+        Log.d(TAG, "Using FTS fallback method for goal: " + currentGoal.getName());
 
         // Avoid duplicates by tracking existing IDs
         List<Long> existingIds = new ArrayList<>();
@@ -509,113 +495,17 @@ public class GoalDetailsActivity extends AppCompatActivity {
             existingIds.add(t.getId());
         }
 
-        // ✅ STRATEGY 1: Exact match - note contains both "tiết kiệm" AND goal name
-        String goalNamePattern = "%" + currentGoal.getName().toLowerCase() + "%";
-        String savingsPattern = "%tiết kiệm%";
-
-        String query1 = "SELECT t.*, c." + DatabaseHelper.COLUMN_NAME + " as category_name " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " t " +
-                "LEFT JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID + " " +
-                "WHERE t." + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                "AND LOWER(t." + DatabaseHelper.COLUMN_NOTE + ") LIKE ? " +
-                "AND LOWER(t." + DatabaseHelper.COLUMN_NOTE + ") LIKE ? " +
-                "ORDER BY t." + DatabaseHelper.COLUMN_DATE + " DESC";
-
-        Cursor cursor1 = db.rawQuery(query1, new String[]{
-                String.valueOf(currentUserId),
-                savingsPattern,
-                goalNamePattern
-        });
-
-        int strategy1Count = 0;
-        while (cursor1.moveToNext()) {
-            Transaction transaction = createTransactionFromCursor(cursor1);
-            if (!existingIds.contains(transaction.getId())) {
-                transactions.add(transaction);
-                existingIds.add(transaction.getId());
-                strategy1Count++;
-                Log.d(TAG, "Strategy 1 match: " + transaction.getNote());
-            }
-        }
-        cursor1.close();
-        Log.d(TAG, "Strategy 1 found " + strategy1Count + " transactions");
-
-        // ✅ STRATEGY 2: Payment method "Tiết kiệm" AND note contains goal name
-        String query2 = "SELECT t.*, c." + DatabaseHelper.COLUMN_NAME + " as category_name " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " t " +
-                "LEFT JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID + " " +
-                "WHERE t." + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                "AND LOWER(t." + DatabaseHelper.COLUMN_PAYMENT_METHOD + ") LIKE ? " +
-                "AND LOWER(t." + DatabaseHelper.COLUMN_NOTE + ") LIKE ? " +
-                "ORDER BY t." + DatabaseHelper.COLUMN_DATE + " DESC";
-
-        Cursor cursor2 = db.rawQuery(query2, new String[]{
-                String.valueOf(currentUserId),
-                savingsPattern,
-                goalNamePattern
-        });
-
-        int strategy2Count = 0;
-        while (cursor2.moveToNext()) {
-            Transaction transaction = createTransactionFromCursor(cursor2);
+        int fallbackCount = 0;
+        for (Transaction transaction : searchDAO.findGoalSavings(currentUserId, currentGoal.getName(), FALLBACK_LIMIT)) {
             if (!existingIds.contains(transaction.getId())) {
                 transactions.add(transaction);
                 existingIds.add(transaction.getId());
-                strategy2Count++;
-                Log.d(TAG, "Strategy 2 match: " + transaction.getNote());
+                fallbackCount++;
+                Log.d(TAG, "FTS match: " + transaction.getNote());
             }
         }
-        cursor2.close();
-        Log.d(TAG, "Strategy 2 found " + strategy2Count + " transactions");
-
-        // ✅ STRATEGY 3: Alternative "tiết kiệm" spellings with goal name
-        String[] altSavingsPatterns = {"%tiet kiem%", "%tiết%kiệm%", "%tiet%kiem%"};
-
-        for (String altPattern : altSavingsPatterns) {
-            String query3 = "SELECT t.*, c." + DatabaseHelper.COLUMN_NAME + " as category_name " +
-                    "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " t " +
-                    "LEFT JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID + " " +
-                    "WHERE t." + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                    "AND (LOWER(t." + DatabaseHelper.COLUMN_NOTE + ") LIKE ? " +
-                    "OR LOWER(t." + DatabaseHelper.COLUMN_PAYMENT_METHOD + ") LIKE ?) " +
-                    "AND LOWER(t." + DatabaseHelper.COLUMN_NOTE + ") LIKE ? " +
-                    "ORDER BY t." + DatabaseHelper.COLUMN_DATE + " DESC " +
-                    "LIMIT 10";
-
-            Cursor cursor3 = db.rawQuery(query3, new String[]{
-                    String.valueOf(currentUserId),
-                    altPattern,
-                    altPattern,
-                    goalNamePattern
-            });
-
-            while (cursor3.moveToNext()) {
-                Transaction transaction = createTransactionFromCursor(cursor3);
-                if (!existingIds.contains(transaction.getId())) {
-                    transactions.add(transaction);
-                    existingIds.add(transaction.getId());
-                    Log.d(TAG, "Strategy 3 match (" + altPattern + "): " + transaction.getNote());
-                }
-            }
-            cursor3.close();
-        }
-
-        Log.d(TAG, "Total fallback transactions found: " + (transactions.size() - existingIds.size() + transactions.size()) + " for goal: " + currentGoal.getName());
-    }
-
-    private Transaction createTransactionFromCursor(Cursor cursor) {
-        Transaction transaction = new Transaction();
-        transaction.setId((long) cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID)));
-        transaction.setType(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_TYPE)));
-        transaction.setAmount(cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_AMOUNT)));
-        transaction.setNote(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_NOTE)));
-        transaction.setDate(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_DATE)));
-        transaction.setPaymentMethod(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_PAYMENT_METHOD)));
-
-        String categoryName = cursor.getString(cursor.getColumnIndex("category_name"));
-        transaction.setCategoryName(categoryName != null ? categoryName : "");
 
-        return transaction;
+        Log.d(TAG, "Total fallback transactions found: " + fallbackCount + " for goal: " + currentGoal.getName());
     }
 
     private void setupListeners() {
@@ -4,8 +4,6 @@
 package com.example.expensemanagement;
 
 import android.content.Intent;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
@@ -33,12 +31,15 @@ import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 import database.DatabaseHelper;
+import database.GoalDAO;
 import models.Goal;
+import models.Money;
 
 public class GoalsActivity extends AppCompatActivity {
     private static final String TAG = "GoalsActivity";
 
     private DatabaseHelper dbHelper;
+    private GoalDAO goalDAO;
     private RecyclerView recyclerViewGoals;
     private GoalsAdapter goalsAdapter;
     private TabLayout tabLayout;
@@ -94,7 +95,8 @@ public class GoalsActivity extends AppCompatActivity {
     }
 
     private void initDatabase() {
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
+        goalDAO = new GoalDAO(dbHelper);
     }
 
     private void setupTabs() {
@@ -125,51 +127,14 @@ public class GoalsActivity extends AppCompatActivity {
     }
 
     private void loadGoalsStats() {
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-
         try {
-            // Count total goals
-            Cursor totalCursor = db.rawQuery(
-                    "SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_GOALS +
-                            " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ?",
-                    new String[]{String.valueOf(currentUserId)}
-            );
-            int totalCount = 0;
-            if (totalCursor.moveToFirst()) {
-                totalCount = totalCursor.getInt(0);
-            }
-            totalCursor.close();
-
-            // Count active goals
-            Cursor activeCursor = db.rawQuery(
-                    "SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_GOALS +
-                            " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
-                            DatabaseHelper.COLUMN_GOAL_STATUS + " = 'active'",
-                    new String[]{String.valueOf(currentUserId)}
-            );
-            int activeCount = 0;
-            if (activeCursor.moveToFirst()) {
-                activeCount = activeCursor.getInt(0);
-            }
-            activeCursor.close();
-
-            // Count completed goals
-            Cursor completedCursor = db.rawQuery(
-                    "SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_GOALS +
-                            " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
-                            DatabaseHelper.COLUMN_GOAL_STATUS + " = 'completed'",
-                    new String[]{String.valueOf(currentUserId)}
-            );
-            int completedCount = 0;
-            if (completedCursor.moveToFirst()) {
-                completedCount = completedCursor.getInt(0);
-            }
-            completedCursor.close();
+            // 1 câu GROUP BY theo status thay vì 3 câu COUNT
+            GoalDAO.StatusCounts counts = goalDAO.getStatusCounts(currentUserId);
 
             // Update UI
-            tvTotalGoals.setText(String.valueOf(totalCount));
-            tvActiveGoals.setText(String.valueOf(activeCount));
-            tvCompletedGoals.setText(String.valueOf(completedCount));
+            tvTotalGoals.setText(String.valueOf(counts.total));
+            tvActiveGoals.setText(String.valueOf(counts.active));
+            tvCompletedGoals.setText(String.valueOf(counts.completed));
 
         } catch (Exception e) {
             Log.e(TAG, "Error loading goals stats: " + e.getMessage());
@@ -177,44 +142,8 @@ public class GoalsActivity extends AppCompatActivity {
     }
 
     private void loadGoals(String filter) {
-        List<Goal> goals = new ArrayList<>();
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-
         try {
-            String selection = DatabaseHelper.COLUMN_USER_ID + " = ?";
-            String[] selectionArgs = {String.valueOf(currentUserId)};
-
-            // Add filter condition
-            if (!filter.equals("all")) {
-                selection += " AND " + DatabaseHelper.COLUMN_GOAL_STATUS + " = ?";
-                selectionArgs = new String[]{String.valueOf(currentUserId), filter};
-            }
-
-            Cursor cursor = db.query(
-                    DatabaseHelper.TABLE_GOALS,
-                    null,
-                    selection,
-                    selectionArgs,
-                    null,
-                    null,
-                    DatabaseHelper.COLUMN_CREATED_AT + " DESC"
-            );
-
-            while (cursor.moveToNext()) {
-                Goal goal = new Goal();
-                goal.setId(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID)));
-                // ✅ FIXED: Use COLUMN_NAME instead of COLUMN_GOAL_NAME
-                goal.setName(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_NAME)));
-                goal.setTargetAmount(cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_TARGET_AMOUNT)));
-                goal.setCurrentAmount(cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_CURRENT_AMOUNT)));
-                goal.setDeadline(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_DEADLINE)));
-                goal.setIcon(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_ICON)));
-                goal.setStatus(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_GOAL_STATUS)));
-                goal.setUserId(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USER_ID)));
-
-                goals.add(goal);
-            }
-            cursor.close();
+            List<Goal> goals = goalDAO.getGoals(currentUserId, filter.equals("all") ? null : filter);
 
             // Update adapter
             goalsAdapter.updateGoals(goals);
@@ -375,12 +304,12 @@ public class GoalsActivity extends AppCompatActivity {
                 tvIcon.setText(goal.getIcon() != null ? goal.getIcon() : "🎯");
 
                 // Format amounts
-                String amountText = String.format("%.0f / %.0f đ",
-                        goal.getCurrentAmount(), goal.getTargetAmount());
+                String amountText = String.format("%s / %s đ",
+                        Money.ofMinor(goal.getCurrentAmount()).format(), Money.ofMinor(goal.getTargetAmount()).format());
                 tvAmount.setText(amountText);
 
                 // Calculate progress
-                int progress = (int) ((goal.getCurrentAmount() * 100) / goal.getTargetAmount());
+                int progress = goal.getProgressPercentage();
                 progressBar.setProgress(Math.min(progress, 100));
                 tvProgress.setText(progress + "%");
 
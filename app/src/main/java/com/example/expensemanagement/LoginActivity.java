@@ -102,7 +102,7 @@ public class LoginActivity extends AppCompatActivity {
     }
 
     private void initializeComponents() {
-        DatabaseHelper dbHelper = new DatabaseHelper(this);
+        DatabaseHelper dbHelper = DatabaseHelper.getInstance(this);
         userDAO = new UserDAO(dbHelper);
         sharedPreferences = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
     }
@@ -1,9 +1,16 @@
 package com.example.expensemanagement;
 
 import android.app.Application;
+import android.widget.Toast;
+
+import database.DatabaseHelper;
+import database.TransactionWriteQueue;
 
 public class MainApplication extends Application {
 
+    // Số tháng giữ trong bảng transactions chính, phần cũ hơn chuyển sang archive
+    public static final String KEY_ARCHIVE_HOT_MONTHS = "archive_hot_months";
+
     private AppStateManager appStateManager;
 
     @Override
@@ -12,6 +19,23 @@ public class MainApplication extends Application {
 
         appStateManager = AppStateManager.getInstance(this);
         registerActivityLifecycleCallbacks(appStateManager);
+
+        // ✅ Application sở hữu database dùng chung cho toàn app
+        DatabaseHelper dbHelper = DatabaseHelper.getInstance(this);
+
+        // 🗄️ Chuyển giao dịch cũ sang archive: WorkManager chạy định kỳ khi máy rảnh + đang sạc, không chạy lúc mở app
+        TransactionArchiveWorker.schedule(this);
+
+        // 🧾 Giao dịch ghi nền bị lỗi thì màn hình nhập đã đóng - báo ở mức app
+        dbHelper.getWriteQueue().addListener(writes -> {
+            int failed = 0;
+            for (TransactionWriteQueue.Write write : writes) {
+                if (!write.isCommitted()) failed++;
+            }
+            if (failed > 0) {
+                Toast.makeText(this, "❌ Không thể lưu " + failed + " giao dịch. Vui lòng thử lại.", Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
     @Override
@@ -21,5 +45,7 @@ public class MainApplication extends Application {
         if (appStateManager != null) {
             unregisterActivityLifecycleCallbacks(appStateManager);
         }
+
+        DatabaseHelper.closeInstance();
     }
 }
\ No newline at end of file
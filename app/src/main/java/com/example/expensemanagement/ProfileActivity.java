@@ -16,11 +16,13 @@ import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.textfield.TextInputEditText;
 
 import database.DatabaseHelper;
+import database.TransactionDAO;
 
 public class ProfileActivity extends AppCompatActivity {
 
     private DatabaseHelper dbHelper;
     private SQLiteDatabase database;
+    private TransactionDAO transactionDAO;
     private SharedPreferences sharedPreferences;
     private static final String PREFS_NAME = "MoneyMasterPrefs";
     private static final String KEY_USERNAME = "username";
@@ -66,8 +68,9 @@ public class ProfileActivity extends AppCompatActivity {
     }
 
     private void setupDatabase() {
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
         database = dbHelper.getReadableDatabase();
+        transactionDAO = new TransactionDAO(dbHelper);
     }
 
     private void setupToolbar() {
@@ -126,16 +129,10 @@ public class ProfileActivity extends AppCompatActivity {
 
     private void loadTransactionStats(int userId) {
         try {
-            String query = "SELECT COUNT(*) FROM transactions WHERE user_id = ?";
-            Cursor cursor = database.rawQuery(query, new String[]{String.valueOf(userId)});
-
-            if (cursor.moveToFirst()) {
-                int totalTransactions = cursor.getInt(0);
-                if (tvTotalTransactions != null) {
-                    tvTotalTransactions.setText("Tổng giao dịch: " + totalTransactions);
-                }
+            int totalTransactions = transactionDAO.getTransactionCount(userId);
+            if (tvTotalTransactions != null) {
+                tvTotalTransactions.setText("Tổng giao dịch: " + totalTransactions);
             }
-            cursor.close();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -160,12 +157,4 @@ public class ProfileActivity extends AppCompatActivity {
         onBackPressed();
         return true;
     }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (database != null && database.isOpen()) {
-            database.close();
-        }
-    }
 }
\ No newline at end of file
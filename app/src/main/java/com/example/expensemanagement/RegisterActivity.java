@@ -65,7 +65,7 @@ public class RegisterActivity extends AppCompatActivity {
     }
 
     private void initializeComponents() {
-        DatabaseHelper dbHelper = new DatabaseHelper(this);
+        DatabaseHelper dbHelper = DatabaseHelper.getInstance(this);
         userDAO = new UserDAO(dbHelper);
     }
 
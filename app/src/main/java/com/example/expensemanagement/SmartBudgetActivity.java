@@ -27,18 +27,23 @@ import com.github.mikephil.charting.data.PieData;
 import com.github.mikephil.charting.data.PieDataSet;
 import com.github.mikephil.charting.data.PieEntry;
 
+import database.BudgetDAO;
 import database.DatabaseHelper;
+import database.InsightDAO;
+import database.InvalidationTracker;
 import models.BudgetPlan;
+import models.DateCodec;
+import models.Money;
 import models.SmartInsight;
 import adapters.BudgetCategoryAdapter;
 import adapters.SmartInsightAdapter;
 
 import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -48,6 +53,17 @@ public class SmartBudgetActivity extends AppCompatActivity {
     private static final String PREFS_NAME = "ExpenseManagementPrefs";
     private static final String KEY_USER_ID = "user_id";
 
+    // 🧠 Nguồn gợi ý trong bảng insights theo thứ tự hiển thị: trạng thái ngân sách (màn hình này) + các phần báo cáo.
+    // RISK / OPTIMIZATIONS trùng với gợi ý vượt ngân sách / tiết kiệm / sức khỏe nên không hiển thị.
+    private static final String SOURCE_BUDGET_STATUS = "budget_status";
+    private static final String[] INSIGHT_SOURCES = {
+            SOURCE_BUDGET_STATUS,
+            BudgetAnalytics.Section.PATTERNS.name(),
+            BudgetAnalytics.Section.VARIANCE.name(),
+            BudgetAnalytics.Section.FORECAST.name(),
+            BudgetAnalytics.Section.ANOMALIES.name()
+    };
+
     // Request codes for activities
     private static final int REQUEST_CREATE_BUDGET = 1001;
     private static final int REQUEST_ADJUST_BUDGET = 1002;
@@ -56,10 +72,16 @@ public class SmartBudgetActivity extends AppCompatActivity {
 
     // Core Data
     private DatabaseHelper dbHelper;
+    private BudgetDAO budgetDAO;
+    private BudgetAnalytics budgetAnalytics;
+    private InsightDAO insightDAO;
+    private InvalidationTracker.Observer dataObserver;
     private String currentUserId;
     private BudgetPlan currentBudget;
     private List<BudgetPlan.CategoryBudget> budgetCategories;
     private List<SmartInsight> smartInsights;
+    // Gợi ý đang hiển thị theo nguồn (main thread) - smartInsights dựng lại từ đây theo INSIGHT_SOURCES
+    private final Map<String, List<SmartInsight>> insightsBySource = new HashMap<>();
 
     // UI Components - Header
     private TextView tvUserGreeting;
@@ -160,7 +182,13 @@ public class SmartBudgetActivity extends AppCompatActivity {
         Log.d(TAG, "🚀 Initializing enhanced components...");
 
         // Core setup
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
+        budgetDAO = new BudgetDAO(dbHelper);
+        budgetAnalytics = new BudgetAnalytics(dbHelper);
+        insightDAO = new InsightDAO(dbHelper);
+        // 🔄 Ngân sách + đã chi (budget_progress theo transactions) + tên/icon danh mục
+        dataObserver = dbHelper.getInvalidationTracker().observe(DatabaseHelper.TABLE_BUDGET_PLANS,
+                DatabaseHelper.TABLE_BUDGET_ITEMS, DatabaseHelper.TABLE_TRANSACTIONS, DatabaseHelper.TABLE_CATEGORIES);
         executor = Executors.newFixedThreadPool(3);
         mainHandler = new Handler(Looper.getMainLooper());
         currencyFormatter = NumberFormat.getCurrencyInstance(new Locale("vi", "VN"));
@@ -413,6 +441,7 @@ public class SmartBudgetActivity extends AppCompatActivity {
         if (swipeRefreshLayout != null) {
             swipeRefreshLayout.setRefreshing(true);
         }
+        dataObserver.markLoaded();
 
         executor.execute(() -> {
             try {
@@ -422,9 +451,24 @@ public class SmartBudgetActivity extends AppCompatActivity {
                 if (currentBudget != null) {
                     Log.d(TAG, "✅ Found budget: " + currentBudget.getName());
                     loadCategoriesData();
-                    generateSmartInsights();
                     calculateTimeRemaining();
-                    mainHandler.post(this::displayBudgetData);
+
+                    // 🧠 Mở ngay với gợi ý đã lưu của mọi nguồn, gợi ý trạng thái ngân sách chỉ tính lại khi kế hoạch đổi
+                    BudgetPlan budget = currentBudget;
+                    Map<String, List<SmartInsight>> cached = insightDAO.getInsights(BudgetAnalytics.userIdOf(budget), budget.getId());
+                    cached.put(SOURCE_BUDGET_STATUS, loadBudgetStatusInsights(budget));
+                    mainHandler.post(() -> {
+                        if (budget != currentBudget || isFinishing()) return;
+                        insightsBySource.clear();
+                        insightsBySource.putAll(cached);
+                        rebuildInsights();
+                        displayBudgetData();
+                    });
+
+                    // 🧠 Phân tích chuyên sâu chạy song song - phần có đầu vào chưa đổi lấy lại từ bảng insights,
+                    // từng phần thay gợi ý đã lưu của nó ngay khi xong
+                    budgetAnalytics.generateComprehensiveReport(budget,
+                            (section, insights) -> showSectionInsights(budget, section.name(), insights));
                 } else {
                     Log.d(TAG, "❌ No budget found for period: " + selectedPeriod);
                     mainHandler.post(this::showEmptyState);
@@ -493,23 +537,8 @@ public class SmartBudgetActivity extends AppCompatActivity {
     private void updateCategoryBudget(BudgetPlan.CategoryBudget category, double newAmount, int position) {
         executor.execute(() -> {
             try {
-                SQLiteDatabase db = dbHelper.getWritableDatabase();
-
-                android.content.ContentValues values = new android.content.ContentValues();
-                values.put(DatabaseHelper.COLUMN_BUDGET_AMOUNT, newAmount);
-
-                String whereClause = DatabaseHelper.COLUMN_CATEGORY_ID + " = ? AND " +
-                        DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
-                        DatabaseHelper.COLUMN_BUDGET_PERIOD + " = ?";
-                String[] whereArgs = {
-                        String.valueOf(category.getCategoryId()),
-                        currentUserId,
-                        mapDisplayToPeriod(getCurrentPeriod())
-                };
-
-                int updated = db.update(DatabaseHelper.TABLE_BUDGETS, values, whereClause, whereArgs);
-
-                if (updated > 0) {
+                // Cập nhật đúng dòng budget_items của kế hoạch đang xem (khóa theo id)
+                if (budgetDAO.updateItemAmount(category.getId(), Money.toMinorUnits(newAmount))) {
                     category.setAllocatedAmount(newAmount);
 
                     mainHandler.post(() -> {
@@ -585,25 +614,6 @@ public class SmartBudgetActivity extends AppCompatActivity {
         startActivity(intent);
     }
 
-    // NEW METHOD: Convert date format for database queries
-    private String convertToDbDate(String displayDate) {
-        try {
-            // If already in YYYY-MM-DD format, return as is
-            if (displayDate.matches("\\d{4}-\\d{2}-\\d{2}")) {
-                return displayDate;
-            }
-
-            // Convert from DD/MM/YYYY to YYYY-MM-DD
-            SimpleDateFormat displayFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
-            SimpleDateFormat dbFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-            Date date = displayFormat.parse(displayDate);
-            return dbFormat.format(date);
-        } catch (Exception e) {
-            Log.e(TAG, "Error converting date: " + displayDate, e);
-            return displayDate; // Return original if conversion fails
-        }
-    }
-
 
     private void openNotifications() {
         Intent intent = new Intent(this, NotificationsActivity.class);
@@ -1085,6 +1095,7 @@ public class SmartBudgetActivity extends AppCompatActivity {
         currentBudget = null;
         budgetCategories.clear();
         smartInsights.clear();
+        insightsBySource.clear();
 
         // Force reload user ID
         currentUserId = getCurrentUserId();
@@ -1176,7 +1187,7 @@ public class SmartBudgetActivity extends AppCompatActivity {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         try {
             String query = "SELECT DISTINCT " + DatabaseHelper.COLUMN_USER_ID + " " +
-                    "FROM " + DatabaseHelper.TABLE_BUDGETS + " " +
+                    "FROM " + DatabaseHelper.TABLE_BUDGET_PLANS + " " +
                     "LIMIT 1";
 
             Cursor cursor = db.rawQuery(query, null);
@@ -1214,31 +1225,18 @@ public class SmartBudgetActivity extends AppCompatActivity {
     }
 
     private BudgetPlan loadBudgetFromDatabase(String period) {
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Log.d(TAG, "🔍 DEBUG: Loading specific budget: " + selectedBudgetName + " for user: " + currentUserId);
+        Log.d(TAG, "🔍 DEBUG: Loading specific budget: " + selectedBudgetId + " (" + selectedBudgetName + ") for user: " + currentUserId);
 
         try {
-            // Load specific budget by name instead of period
-            String budgetQuery = "SELECT " + DatabaseHelper.COLUMN_BUDGET_NAME + ", " +
-                    DatabaseHelper.COLUMN_BUDGET_PERIOD + ", " +
-                    "MIN(" + DatabaseHelper.COLUMN_BUDGET_START_DATE + ") as start_date, " +
-                    "MAX(" + DatabaseHelper.COLUMN_BUDGET_END_DATE + ") as end_date " +
-                    "FROM " + DatabaseHelper.TABLE_BUDGETS + " " +
-                    "WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                    "AND " + DatabaseHelper.COLUMN_BUDGET_NAME + " = ? " +
-                    "GROUP BY " + DatabaseHelper.COLUMN_BUDGET_NAME + " " +
-                    "LIMIT 1";
+            // Load specific budget plan by id (fallback: kế hoạch mới nhất cùng tên)
+            int userId = Integer.parseInt(currentUserId);
+            BudgetPlan budget = selectedBudgetId != null
+                    ? budgetDAO.getPlan(userId, Long.parseLong(selectedBudgetId))
+                    : budgetDAO.getLatestPlanByName(userId, selectedBudgetName);
 
-            Cursor budgetCursor = db.rawQuery(budgetQuery, new String[]{currentUserId, selectedBudgetName});
-            Log.d(TAG, "🔍 DEBUG: Budget query executed. Results: " + budgetCursor.getCount());
-
-            BudgetPlan budget = null;
-            if (budgetCursor.moveToFirst()) {
-                budget = createBudgetFromCursor(budgetCursor, currentUserId);
+            if (budget != null) {
                 Log.d(TAG, "✅ DEBUG: Found budget: " + budget.getName());
             }
-            budgetCursor.close();
-
             return budget;
 
         } catch (Exception e) {
@@ -1254,7 +1252,7 @@ public class SmartBudgetActivity extends AppCompatActivity {
                     DatabaseHelper.COLUMN_BUDGET_PERIOD + ", " +
                     DatabaseHelper.COLUMN_BUDGET_START_DATE + ", " +
                     DatabaseHelper.COLUMN_BUDGET_END_DATE + " " +
-                    "FROM " + DatabaseHelper.TABLE_BUDGETS + " " +
+                    "FROM " + DatabaseHelper.TABLE_BUDGET_PLANS + " " +
                     "ORDER BY " + DatabaseHelper.COLUMN_CREATED_AT + " DESC";
 
             Cursor debugCursor = db.rawQuery(debugQuery, null);
@@ -1293,7 +1291,7 @@ public class SmartBudgetActivity extends AppCompatActivity {
                 "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
                 "WHERE " + DatabaseHelper.COLUMN_CATEGORY_ID + " = ? " +
                 "AND " + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                "ORDER BY " + DatabaseHelper.COLUMN_DATE + " DESC";
+                "ORDER BY " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " DESC";
 
         Cursor debugCursor = db.rawQuery(debugQuery, new String[]{String.valueOf(categoryId), userId});
 
@@ -1317,67 +1315,26 @@ public class SmartBudgetActivity extends AppCompatActivity {
 
 
     private void loadCategoriesData() {
-        if (currentBudget == null || selectedBudgetName == null) {
-            Log.w(TAG, "❌ Cannot load categories: currentBudget or selectedBudgetName is null");
+        if (currentBudget == null) {
+            Log.w(TAG, "❌ Cannot load categories: currentBudget is null");
             return;
         }
 
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
         budgetCategories.clear();
-
         Log.d(TAG, "🔍 DEBUG: Loading categories for budget: " + selectedBudgetName);
 
         try {
             // Load ONLY categories that belong to this specific budget
-            String budgetQuery = "SELECT b." + DatabaseHelper.COLUMN_CATEGORY_ID + ", " +
-                    "b." + DatabaseHelper.COLUMN_BUDGET_AMOUNT + ", " +
-                    "b." + DatabaseHelper.COLUMN_BUDGET_START_DATE + ", " +
-                    "b." + DatabaseHelper.COLUMN_BUDGET_END_DATE + ", " +
-                    "c." + DatabaseHelper.COLUMN_NAME + " as category_name, " +
-                    "c." + DatabaseHelper.COLUMN_CATEGORY_ICON + ", " +
-                    "c." + DatabaseHelper.COLUMN_CATEGORY_COLOR + " " +
-                    "FROM " + DatabaseHelper.TABLE_BUDGETS + " b " +
-                    "JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON b." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID + " " +
-                    "WHERE b." + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                    "AND b." + DatabaseHelper.COLUMN_BUDGET_NAME + " = ?";
-
-            String[] budgetArgs = {currentUserId, selectedBudgetName};
-            Log.d(TAG, "🔍 DEBUG: Category query args: user=" + currentUserId + ", budget=" + selectedBudgetName);
-
-            Cursor budgetCursor = db.rawQuery(budgetQuery, budgetArgs);
-            Log.d(TAG, "🔍 DEBUG: Budget categories found: " + budgetCursor.getCount());
+            // 🧾 Đã chi + số giao dịch đọc từ budget_progress trong cùng câu truy vấn
+            List<BudgetPlan.CategoryBudget> items = budgetDAO.getItems(currentBudget.getId());
+            Log.d(TAG, "🔍 DEBUG: Budget categories found: " + items.size());
 
             double totalAllocated = 0;
             double totalSpent = 0;
 
-            while (budgetCursor.moveToNext()) {
-                BudgetPlan.CategoryBudget category = new BudgetPlan.CategoryBudget();
-
-                // Get basic category info
-                int categoryId = getColumnValue(budgetCursor, DatabaseHelper.COLUMN_CATEGORY_ID, 0);
-                String name = getColumnValue(budgetCursor, "category_name", "");
-                String icon = getColumnValue(budgetCursor, DatabaseHelper.COLUMN_CATEGORY_ICON, "");
-                String color = getColumnValue(budgetCursor, DatabaseHelper.COLUMN_CATEGORY_COLOR, "");
-                double allocated = getColumnValue(budgetCursor, DatabaseHelper.COLUMN_BUDGET_AMOUNT, 0.0);
-                String startDate = getColumnValue(budgetCursor, DatabaseHelper.COLUMN_BUDGET_START_DATE, "");
-                String endDate = getColumnValue(budgetCursor, DatabaseHelper.COLUMN_BUDGET_END_DATE, "");
-
-                Log.d(TAG, String.format("🔍 Processing category: %s (id=%d) for period %s to %s",
-                        name, categoryId, startDate, endDate));
-
-                // Get spent amount for this specific category, user, and date range
-                double spent = getSpentAmountForCategoryInDateRange(db, categoryId, currentUserId, startDate, endDate);
-
-                // Get transaction count for this specific date range
-                int recentTransactionCount = getRecentTransactionCountForCategoryInDateRange(db, categoryId, currentUserId, startDate, endDate);
-
-                category.setCategoryId(categoryId);
-                category.setName(name);
-                category.setIcon(icon);
-                category.setColor(color);
-                category.setAllocatedAmount(allocated);
-                category.setSpentAmount(spent);
-                category.setTransactionCount(recentTransactionCount);
+            for (BudgetPlan.CategoryBudget category : items) {
+                double allocated = category.getAllocatedAmount();
+                double spent = category.getSpentAmount();
 
                 double percentageUsed = allocated > 0 ? (spent / allocated) * 100 : 0;
                 category.setPercentageUsed(percentageUsed);
@@ -1389,9 +1346,8 @@ public class SmartBudgetActivity extends AppCompatActivity {
                 totalSpent += spent;
 
                 Log.d(TAG, String.format("✅ DEBUG: Category: %s, allocated=%.0f, spent=%.0f, transactions=%d",
-                        name, allocated, spent, recentTransactionCount));
+                        category.getName(), allocated, spent, category.getTransactionCount()));
             }
-            budgetCursor.close();
 
             currentBudget.setTotalAllocated(totalAllocated);
             currentBudget.setTotalSpent(totalSpent);
@@ -1405,63 +1361,6 @@ public class SmartBudgetActivity extends AppCompatActivity {
         }
     }
 
-    // NEW METHOD: Get spent amount for specific date range
-    private double getSpentAmountForCategoryInDateRange(SQLiteDatabase db, int categoryId, String userId, String startDate, String endDate) {
-        String dbStartDate = convertToDbDate(startDate);
-        String dbEndDate = convertToDbDate(endDate);
-
-        String spentQuery = "SELECT COALESCE(SUM(" + DatabaseHelper.COLUMN_AMOUNT + "), 0) as spent " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "WHERE " + DatabaseHelper.COLUMN_CATEGORY_ID + " = ? " +
-                "AND " + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                "AND " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "AND " + DatabaseHelper.COLUMN_DATE + " BETWEEN ? AND ?";
-
-        String[] spentArgs = {String.valueOf(categoryId), userId, dbStartDate, dbEndDate};
-
-        Log.d(TAG, String.format("🔍 Spent query for category %d (user %s): %s to %s",
-                categoryId, userId, dbStartDate, dbEndDate));
-
-        Cursor spentCursor = db.rawQuery(spentQuery, spentArgs);
-        double spent = 0;
-        if (spentCursor.moveToFirst()) {
-            spent = spentCursor.getDouble(0);
-        }
-        spentCursor.close();
-
-        Log.d(TAG, String.format("💰 Category %d spent for user %s in date range: %.0f", categoryId, userId, spent));
-        return spent;
-    }
-
-    // NEW METHOD: Get transaction count for specific date range
-    private int getRecentTransactionCountForCategoryInDateRange(SQLiteDatabase db, int categoryId, String userId, String startDate, String endDate) {
-        String dbStartDate = convertToDbDate(startDate);
-        String dbEndDate = convertToDbDate(endDate);
-
-        String countQuery = "SELECT COUNT(*) as transaction_count " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "WHERE " + DatabaseHelper.COLUMN_CATEGORY_ID + " = ? " +
-                "AND " + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                "AND " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "AND " + DatabaseHelper.COLUMN_DATE + " BETWEEN ? AND ?";
-
-        String[] countArgs = {String.valueOf(categoryId), userId, dbStartDate, dbEndDate};
-
-        Log.d(TAG, String.format("🔍 Transaction count query: categoryId=%d, userId=%s, dateRange=%s to %s",
-                categoryId, userId, dbStartDate, dbEndDate));
-
-        Cursor countCursor = db.rawQuery(countQuery, countArgs);
-        int count = 0;
-        if (countCursor.moveToFirst()) {
-            count = countCursor.getInt(0);
-        }
-        countCursor.close();
-
-        Log.d(TAG, String.format("📊 Category %d transaction count for user %s in date range: %d", categoryId, userId, count));
-        return count;
-    }
-
-
     private void debugAllTransactions(SQLiteDatabase db) {
         String query = "SELECT " + DatabaseHelper.COLUMN_ID + ", " +
                 DatabaseHelper.COLUMN_USER_ID + ", " +
@@ -1470,7 +1369,7 @@ public class SmartBudgetActivity extends AppCompatActivity {
                 DatabaseHelper.COLUMN_AMOUNT + ", " +
                 DatabaseHelper.COLUMN_DATE + " " +
                 "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "ORDER BY " + DatabaseHelper.COLUMN_DATE + " DESC LIMIT 10";
+                "ORDER BY " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " DESC LIMIT 10";
 
         Cursor cursor = db.rawQuery(query, null);
         Log.d(TAG, "🔍 DEBUG: All transactions in database (top 10):");
@@ -1491,64 +1390,6 @@ public class SmartBudgetActivity extends AppCompatActivity {
         cursor.close();
     }
 
-    private double getSpentAmountForCategory(SQLiteDatabase db, int categoryId, String userId, String startDate, String endDate) {
-        String spentQuery = "SELECT COALESCE(SUM(" + DatabaseHelper.COLUMN_AMOUNT + "), 0) as spent " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "WHERE " + DatabaseHelper.COLUMN_CATEGORY_ID + " = ? " +
-                "AND " + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                "AND " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "AND " + DatabaseHelper.COLUMN_DATE + " BETWEEN ? AND ?";
-
-        String[] spentArgs = {String.valueOf(categoryId), userId, startDate, endDate};
-
-        Log.d(TAG, String.format("🔍 Spent query for category %d (user %s): %s to %s",
-                categoryId, userId, startDate, endDate));
-
-        Cursor spentCursor = db.rawQuery(spentQuery, spentArgs);
-        double spent = 0;
-        if (spentCursor.moveToFirst()) {
-            spent = spentCursor.getDouble(0);
-        }
-        spentCursor.close();
-
-        Log.d(TAG, String.format("💰 Category %d spent for user %s: %.0f", categoryId, userId, spent));
-        return spent;
-    }
-
-    private int getRecentTransactionCountForCategory(SQLiteDatabase db, int categoryId, String userId, String startDate, String endDate) {
-        String countQuery = "SELECT COUNT(*) as transaction_count " +
-                "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " " +
-                "WHERE " + DatabaseHelper.COLUMN_CATEGORY_ID + " = ? " +
-                "AND " + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                "AND " + DatabaseHelper.COLUMN_TYPE + " = 'expense' " +
-                "AND " + DatabaseHelper.COLUMN_DATE + " BETWEEN ? AND ?";
-
-        String[] countArgs = {String.valueOf(categoryId), userId, startDate, endDate};
-
-        Log.d(TAG, String.format("🔍 Transaction count query: categoryId=%d, userId=%s, startDate=%s, endDate=%s",
-                categoryId, userId, startDate, endDate));
-
-        // Debug: In ra câu query để kiểm tra
-        Log.d(TAG, "🔍 Query: " + countQuery);
-        Log.d(TAG, "🔍 Args: " + java.util.Arrays.toString(countArgs));
-
-        Cursor countCursor = db.rawQuery(countQuery, countArgs);
-        int count = 0;
-        if (countCursor.moveToFirst()) {
-            count = countCursor.getInt(0);
-        }
-        countCursor.close();
-
-        Log.d(TAG, String.format("📊 Category %d transaction count for user %s: %d", categoryId, userId, count));
-        return count;
-    }
-
-
-    private int getTransactionCountForCategory(SQLiteDatabase db, int categoryId, String startDate, String endDate) {
-        // This method should also include user_id for proper filtering
-        return getRecentTransactionCountForCategory(db, categoryId, currentUserId, startDate, endDate);
-    }
-
     private void setupActionBar() {
         if (getSupportActionBar() != null) {
             String title = selectedBudgetName != null ?
@@ -1620,11 +1461,11 @@ public class SmartBudgetActivity extends AppCompatActivity {
                     "FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " t " +
                     "JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID + " " +
                     "WHERE t." + DatabaseHelper.COLUMN_USER_ID + " = ? " +
-                    "AND t." + DatabaseHelper.COLUMN_DATE + " BETWEEN ? AND ? " +
+                    "AND t." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " BETWEEN ? AND ? " +
                     "GROUP BY t." + DatabaseHelper.COLUMN_CATEGORY_ID + ", c." + DatabaseHelper.COLUMN_NAME + " " +
                     "ORDER BY total_expense DESC";
 
-            Cursor cursor = db.rawQuery(query, new String[]{userId, startDate, endDate});
+            Cursor cursor = db.rawQuery(query, new String[]{userId, DateCodec.toEpochDayArg(startDate), DateCodec.toEpochDayArg(endDate)});
 
             while (cursor.moveToNext()) {
                 TransactionSummary summary = new TransactionSummary();
@@ -1658,39 +1499,73 @@ public class SmartBudgetActivity extends AppCompatActivity {
         }
     }
 
+    // Chỉ phụ thuộc số liệu kế hoạch + hôm nay (số ngày còn lại) - dùng lại gợi ý đã lưu khi cả 2 chưa đổi (thread nền)
+    private List<SmartInsight> loadBudgetStatusInsights(BudgetPlan budget) {
+        int userId = BudgetAnalytics.userIdOf(budget);
+        String watermark = BudgetAnalytics.fingerprintOf(budget) + "@" + DateCodec.today();
 
-    private <T> T getColumnValue(Cursor cursor, String columnName, T defaultValue) {
-        try {
-            int columnIndex = cursor.getColumnIndex(columnName);
-            if (columnIndex >= 0) {
-                if (defaultValue instanceof Integer) {
-                    return (T) Integer.valueOf(cursor.getInt(columnIndex));
-                } else if (defaultValue instanceof Double) {
-                    return (T) Double.valueOf(cursor.getDouble(columnIndex));
-                } else if (defaultValue instanceof String) {
-                    return (T) cursor.getString(columnIndex);
-                }
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "Error getting column value for: " + columnName + ", using default: " + defaultValue);
+        List<SmartInsight> insights = insightDAO.getIfCurrent(userId, budget.getId(), SOURCE_BUDGET_STATUS, watermark);
+        if (insights == null) {
+            insights = insightDAO.save(userId, budget.getId(), SOURCE_BUDGET_STATUS, watermark, generateSmartInsights());
         }
-        return defaultValue;
+        return insights;
     }
 
-    private void generateSmartInsights() {
-        smartInsights.clear();
+    private List<SmartInsight> generateSmartInsights() {
+        List<SmartInsight> insights = new ArrayList<>();
 
         if (currentBudget == null || budgetCategories.isEmpty()) {
-            return;
+            return insights;
+        }
+
+        generateOverspendingInsights(insights);
+        generateSavingOpportunities(insights);
+        generateBudgetHealthInsights(insights);
+        generateTimeBasedInsights(insights);
+        return insights;
+    }
+
+    // Thay gợi ý của 1 nguồn bằng kết quả mới (main thread), bỏ qua nếu ngân sách đã được tải lại
+    private void showSectionInsights(BudgetPlan budget, String source, List<SmartInsight> insights) {
+        if (budget != currentBudget || isFinishing()) return;
+
+        insightsBySource.put(source, insights);
+        rebuildInsights();
+        insightAdapter.notifyDataSetChanged();
+    }
+
+    // smartInsights = gợi ý chưa ẩn của các nguồn theo INSIGHT_SOURCES
+    private void rebuildInsights() {
+        smartInsights.clear();
+        for (String source : INSIGHT_SOURCES) {
+            List<SmartInsight> insights = insightsBySource.get(source);
+            if (insights == null) continue;
+
+            for (SmartInsight insight : insights) {
+                if (!insight.isDismissed()) smartInsights.add(insight);
+            }
+        }
+    }
+
+    // 🙈 Ẩn gợi ý - lưu xuống bảng insights nên vẫn ẩn sau khi tính lại / mở lại app
+    private void dismissInsight(SmartInsight insight) {
+        int position = -1;
+        for (int i = 0; i < smartInsights.size(); i++) {
+            if (smartInsights.get(i) == insight) {
+                position = i;
+                break;
+            }
         }
+        if (position < 0) return;
 
-        generateOverspendingInsights();
-        generateSavingOpportunities();
-        generateBudgetHealthInsights();
-        generateTimeBasedInsights();
+        insightAdapter.dismissInsight(position);
+        int insightId = insight.getId();
+        if (insightId > 0) {
+            executor.execute(() -> insightDAO.dismiss(insightId));
+        }
     }
 
-    private void generateOverspendingInsights() {
+    private void generateOverspendingInsights(List<SmartInsight> insights) {
         for (BudgetPlan.CategoryBudget category : budgetCategories) {
             if (category.getPercentageUsed() > 100) {
                 SmartInsight insight = new SmartInsight();
@@ -1701,12 +1576,12 @@ public class SmartBudgetActivity extends AppCompatActivity {
                 insight.setType(SmartInsight.Type.WARNING);
                 insight.setImpact(SmartInsight.Impact.HIGH);
                 insight.setSuggestion("Hạn chế chi tiêu hoặc điều chỉnh ngân sách cho danh mục này");
-                smartInsights.add(insight);
+                insights.add(insight);
             }
         }
     }
 
-    private void generateSavingOpportunities() {
+    private void generateSavingOpportunities(List<SmartInsight> insights) {
         for (BudgetPlan.CategoryBudget category : budgetCategories) {
             if (category.getPercentageUsed() < 50 && category.getAllocatedAmount() > 500000) {
                 SmartInsight insight = new SmartInsight();
@@ -1717,12 +1592,12 @@ public class SmartBudgetActivity extends AppCompatActivity {
                 insight.setType(SmartInsight.Type.OPTIMIZATION);
                 insight.setImpact(SmartInsight.Impact.MEDIUM);
                 insight.setSuggestion("Xem xét giảm ngân sách cho danh mục này");
-                smartInsights.add(insight);
+                insights.add(insight);
             }
         }
     }
 
-    private void generateBudgetHealthInsights() {
+    private void generateBudgetHealthInsights(List<SmartInsight> insights) {
         double overallUsage = currentBudget.getTotalAllocated() > 0 ?
                 (currentBudget.getTotalSpent() / currentBudget.getTotalAllocated()) * 100 : 0;
 
@@ -1746,10 +1621,10 @@ public class SmartBudgetActivity extends AppCompatActivity {
             healthInsight.setImpact(SmartInsight.Impact.HIGH);
         }
 
-        smartInsights.add(healthInsight);
+        insights.add(healthInsight);
     }
 
-    private void generateTimeBasedInsights() {
+    private void generateTimeBasedInsights(List<SmartInsight> insights) {
         int daysRemaining = calculateDaysRemaining();
 
         if (daysRemaining <= 0) {
@@ -1759,7 +1634,7 @@ public class SmartBudgetActivity extends AppCompatActivity {
             timeInsight.setType(SmartInsight.Type.INFO);
             timeInsight.setImpact(SmartInsight.Impact.HIGH);
             timeInsight.setSuggestion("Tạo ngân sách cho kỳ tiếp theo");
-            smartInsights.add(timeInsight);
+            insights.add(timeInsight);
         } else if (daysRemaining <= 3) {
             SmartInsight timeInsight = new SmartInsight();
             timeInsight.setTitle("⏰ Sắp hết kỳ ngân sách");
@@ -1767,7 +1642,7 @@ public class SmartBudgetActivity extends AppCompatActivity {
             timeInsight.setType(SmartInsight.Type.WARNING);
             timeInsight.setImpact(SmartInsight.Impact.MEDIUM);
             timeInsight.setSuggestion("Chuẩn bị ngân sách cho kỳ tiếp theo");
-            smartInsights.add(timeInsight);
+            insights.add(timeInsight);
         }
     }
 
@@ -1779,6 +1654,7 @@ public class SmartBudgetActivity extends AppCompatActivity {
                 .setMessage(insight.getMessage() + "\n\nĐề xuất: " + insight.getSuggestion())
                 .setPositiveButton("Đóng", null)
                 .setNeutralButton("Thực hiện", (dialog, which) -> executeInsightAction(insight))
+                .setNegativeButton("Ẩn", (dialog, which) -> dismissInsight(insight))
                 .show();
     }
 
@@ -1877,23 +1753,6 @@ public class SmartBudgetActivity extends AppCompatActivity {
         finish();
     }
 
-    public BudgetPlan createBudgetFromCursor(Cursor cursor, String userId) {
-        BudgetPlan budget = new BudgetPlan();
-
-        int nameIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_BUDGET_NAME);
-        int periodIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_BUDGET_PERIOD);
-        int startDateIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_BUDGET_START_DATE);
-        int endDateIndex = cursor.getColumnIndex(DatabaseHelper.COLUMN_BUDGET_END_DATE);
-
-        if (nameIndex >= 0) budget.setName(cursor.getString(nameIndex));
-        if (periodIndex >= 0) budget.setPeriod(cursor.getString(periodIndex));
-        if (startDateIndex >= 0) budget.setStartDate(cursor.getString(startDateIndex));
-        if (endDateIndex >= 0) budget.setEndDate(cursor.getString(endDateIndex));
-
-        budget.setUserId(userId);
-        return budget;
-    }
-
     public void updateSpinnerToMatchPeriod(String period) {
         runOnUiThread(() -> {
             int position = -1;
@@ -1958,21 +1817,10 @@ public class SmartBudgetActivity extends AppCompatActivity {
         updateUserGreeting();
 
         // Refresh data if user ID is available
-        if (currentUserId != null && !currentUserId.isEmpty()) {
-            // Only reload if we've been away for more than 30 seconds
-            // This prevents excessive reloading when quickly switching between activities
-            long lastResumeTime = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-                    .getLong("last_resume_time", 0);
-            long currentTime = System.currentTimeMillis();
-
-            if (currentTime - lastResumeTime > 30000) { // 30 seconds
-                loadBudgetData();
-            }
-
-            getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-                    .edit()
-                    .putLong("last_resume_time", currentTime)
-                    .apply();
+        // 🔄 Chỉ load lại khi ngân sách / giao dịch / danh mục đã đổi từ lần load trước
+        // (thay cho ngưỡng 30 giây: không bỏ sót thay đổi, không load lại khi không có gì đổi)
+        if (currentUserId != null && !currentUserId.isEmpty() && dataObserver.hasChanged()) {
+            loadBudgetData();
         }
     }
 
@@ -1988,9 +1836,6 @@ public class SmartBudgetActivity extends AppCompatActivity {
         Log.d(TAG, "Activity destroyed - cleaning up resources");
 
         // Cleanup resources
-        if (dbHelper != null) {
-            dbHelper.close();
-        }
 
         if (executor != null && !executor.isShutdown()) {
             executor.shutdown();
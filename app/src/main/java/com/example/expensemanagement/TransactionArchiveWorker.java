@@ -0,0 +1,73 @@
+package com.example.expensemanagement;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+import database.DatabaseHelper;
+import database.TransactionArchive;
+
+/**
+ * 🗄️ Lượt chuyển giao dịch cũ sang archive - WorkManager chạy 1 lần/ngày khi máy rảnh và đang sạc,
+ * không chạy ở mỗi lần mở app.
+ */
+public class TransactionArchiveWorker extends Worker {
+
+    private static final String TAG = "TransactionArchiveWorker";
+    private static final String WORK_NAME = "transaction-archive";
+
+    // Lần chạy gần nhất (epoch millis) - WorkManager có thể chạy sớm trong khoảng flex / sau khi khởi động lại máy
+    private static final String KEY_ARCHIVE_LAST_RUN = "archive_last_run";
+    private static final long RUN_INTERVAL_HOURS = 24;
+    private static final long MIN_RUN_SPACING_MS = TimeUnit.HOURS.toMillis(12);
+
+    public TransactionArchiveWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Lên lịch lượt archive định kỳ; đã có lịch thì giữ nguyên (gọi ở mỗi lần mở app vẫn an toàn)
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                TransactionArchiveWorker.class, RUN_INTERVAL_HOURS, TimeUnit.HOURS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        SharedPreferences prefs = context.getSharedPreferences("MoneyMasterPrefs", Context.MODE_PRIVATE);
+
+        long now = System.currentTimeMillis();
+        long lastRun = prefs.getLong(KEY_ARCHIVE_LAST_RUN, 0);
+        if (now - lastRun < MIN_RUN_SPACING_MS && now >= lastRun) {
+            Log.d(TAG, "⚠️ Archive ran recently, skipping");
+            return Result.success();
+        }
+
+        int hotMonths = prefs.getInt(MainApplication.KEY_ARCHIVE_HOT_MONTHS, TransactionArchive.DEFAULT_HOT_MONTHS);
+        int moved = DatabaseHelper.getInstance(context).getArchive().archiveOlderThan(hotMonths);
+        prefs.edit().putLong(KEY_ARCHIVE_LAST_RUN, now).apply();
+
+        Log.d(TAG, "✅ Archive pass done, moved " + moved + " transactions");
+        return Result.success();
+    }
+}
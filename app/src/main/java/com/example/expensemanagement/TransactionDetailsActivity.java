@@ -1,8 +1,6 @@
 package com.example.expensemanagement;
 
 import android.content.Intent;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
 import android.view.MenuItem;
 import android.widget.TextView;
@@ -16,6 +14,7 @@ import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 
 import database.DatabaseHelper;
+import database.TransactionDAO;
 import models.Transaction;
 
 import java.text.DecimalFormat;
@@ -28,6 +27,7 @@ public class TransactionDetailsActivity extends AppCompatActivity {
 
     // Database
     private DatabaseHelper dbHelper;
+    private TransactionDAO transactionDAO;
 
     // Views
     private MaterialToolbar toolbar;
@@ -93,7 +93,8 @@ public class TransactionDetailsActivity extends AppCompatActivity {
     }
 
     private void setupDatabase() {
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
+        transactionDAO = new TransactionDAO(dbHelper);
     }
 
     private void setupClickListeners() {
@@ -102,33 +103,10 @@ public class TransactionDetailsActivity extends AppCompatActivity {
     }
 
     private void loadTransactionDetails() {
-        SQLiteDatabase db = null;
-        Cursor cursor = null;
-
         try {
-            db = dbHelper.getReadableDatabase();
-            String query = "SELECT " +
-                    "t." + DatabaseHelper.COLUMN_ID + ", " +
-                    "t." + DatabaseHelper.COLUMN_TYPE + ", " +
-                    "t." + DatabaseHelper.COLUMN_AMOUNT + ", " +
-                    "t." + DatabaseHelper.COLUMN_CATEGORY_ID + ", " +
-                    "t." + DatabaseHelper.COLUMN_NOTE + ", " +
-                    "t." + DatabaseHelper.COLUMN_DATE + ", " +
-                    "t." + DatabaseHelper.COLUMN_PAYMENT_METHOD + ", " +
-                    "t." + DatabaseHelper.COLUMN_CREATED_AT + ", " +
-                    "c." + DatabaseHelper.COLUMN_CATEGORY_NAME + ", " +
-                    "c." + DatabaseHelper.COLUMN_CATEGORY_ICON + ", " +
-                    "c." + DatabaseHelper.COLUMN_CATEGORY_COLOR + ", " +
-                    "c." + DatabaseHelper.COLUMN_CATEGORY_TYPE +
-                    " FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " t" +
-                    " INNER JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c" +
-                    " ON t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID +
-                    " WHERE t." + DatabaseHelper.COLUMN_ID + " = ?";
-
-            cursor = db.rawQuery(query, new String[]{String.valueOf(transactionId)});
-
-            if (cursor.moveToFirst()) {
-                transaction = createTransactionFromCursor(cursor);
+            transaction = transactionDAO.getTransaction(transactionId);
+
+            if (transaction != null) {
                 displayTransactionDetails();
             } else {
                 Toast.makeText(this, "Không tìm thấy giao dịch", Toast.LENGTH_SHORT).show();
@@ -139,33 +117,9 @@ public class TransactionDetailsActivity extends AppCompatActivity {
             e.printStackTrace();
             Toast.makeText(this, "Lỗi khi tải chi tiết giao dịch", Toast.LENGTH_SHORT).show();
             finish();
-        } finally {
-            if (cursor != null) cursor.close();
-            if (db != null) db.close();
         }
     }
 
-    private Transaction createTransactionFromCursor(Cursor cursor) {
-        Transaction transaction = new Transaction();
-
-        transaction.setId(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID)));
-        transaction.setType(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_TYPE)));
-        transaction.setAmount(cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_AMOUNT)));
-        transaction.setCategoryId(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CATEGORY_ID)));
-        transaction.setNote(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_NOTE)));
-        transaction.setDate(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_DATE)));
-        transaction.setPaymentMethod(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_PAYMENT_METHOD)));
-        transaction.setCreatedAt(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CREATED_AT)));
-
-        // Category information
-        transaction.setCategoryName(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CATEGORY_NAME)));
-        transaction.setCategoryIcon(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CATEGORY_ICON)));
-        transaction.setCategoryColor(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CATEGORY_COLOR)));
-        transaction.setCategoryType(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CATEGORY_TYPE)));
-
-        return transaction;
-    }
-
     private void displayTransactionDetails() {
         if (transaction == null) return;
 
@@ -269,12 +223,9 @@ public class TransactionDetailsActivity extends AppCompatActivity {
     private void deleteTransaction() {
         if (transaction == null) return;
 
-        SQLiteDatabase db = null;
         try {
-            db = dbHelper.getWritableDatabase();
-            int result = db.delete(DatabaseHelper.TABLE_TRANSACTIONS,
-                    DatabaseHelper.COLUMN_ID + "=?",
-                    new String[]{String.valueOf(transaction.getId())});
+            // Kể cả giao dịch đã chuyển sang archive
+            int result = transactionDAO.deleteTransaction(transaction.getId());
 
             if (result > 0) {
                 Toast.makeText(this, "Đã xóa giao dịch", Toast.LENGTH_SHORT).show();
@@ -286,8 +237,6 @@ public class TransactionDetailsActivity extends AppCompatActivity {
         } catch (Exception e) {
             e.printStackTrace();
             Toast.makeText(this, "Lỗi khi xóa giao dịch", Toast.LENGTH_SHORT).show();
-        } finally {
-            if (db != null) db.close();
         }
     }
 
@@ -308,12 +257,4 @@ public class TransactionDetailsActivity extends AppCompatActivity {
             loadTransactionDetails();
         }
     }
-
-    @Override
-    protected void onDestroy() {
-        if (dbHelper != null) {
-            dbHelper.close();
-        }
-        super.onDestroy();
-    }
 }
\ No newline at end of file
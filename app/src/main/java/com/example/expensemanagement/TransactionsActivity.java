@@ -6,6 +6,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.View;
@@ -39,22 +40,51 @@ import com.google.android.material.tabs.TabLayout;
 import com.google.android.material.textfield.TextInputEditText;
 
 import database.DatabaseHelper;
+import database.TransactionDAO;
+import database.TransactionPageDAO;
+import database.TransactionQuery;
+import database.TransactionSearchDAO;
 import adapters.TransactionAdapter;
 import models.Transaction;
 import models.Category;
 
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class TransactionsActivity extends AppCompatActivity {
 
     // Database
     private DatabaseHelper dbHelper;
+    private TransactionSearchDAO searchDAO;
+    private TransactionPageDAO pageDAO;
+    private TransactionDAO transactionDAO;
+
+    // 📄 Keyset paging - chỉ giữ 1 cửa sổ tối đa MAX_PAGES_IN_MEMORY trang trong danh sách
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_PAGES_IN_MEMORY = 5;
+    private static final int PREFETCH_DISTANCE = 15;
+    private final ArrayDeque<Integer> windowPageSizes = new ArrayDeque<>();
+    private boolean hasMoreAfter = false;
+    private boolean hasMoreBefore = false;
+    private boolean isLoadingPage = false;
+
+    // 🧵 Trang keyset, tìm FTS và tổng chạy tuần tự trên 1 luồng nền; kết quả của bộ lọc cũ (currentQuery đã đổi) bị bỏ
+    private final ExecutorService queryExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // 🔍 Search - kết quả FTS được tải theo trang, debounce theo thao tác gõ phím
+    private static final int SEARCH_PAGE_SIZE = 50;
+    private static final long SEARCH_DEBOUNCE_MS = 250;
+    private boolean hasMoreSearchResults = false;
+    private final Runnable searchRunnable = this::applyFilters;
 
     // Views
     private MaterialToolbar toolbar;
@@ -70,7 +100,7 @@ public class TransactionsActivity extends AppCompatActivity {
     // RecyclerView
     private RecyclerView recyclerViewTransactions;
     private TransactionAdapter adapter;
-    private List<Transaction> transactionList;
+    private LinearLayoutManager layoutManager;
     private List<Transaction> filteredTransactionList;
     private LinearLayout layoutEmpty, layoutLoading;
     private ImageView ivEmptyIcon;
@@ -83,6 +113,7 @@ public class TransactionsActivity extends AppCompatActivity {
     private boolean isCustomDateRange = false;
     private List<Long> selectedCategoryIds = new ArrayList<>();
     private String searchQuery = "";
+    private TransactionQuery currentQuery;
     private boolean isSearchVisible = false;
     private boolean isFabMenuOpen = false;
 
@@ -112,7 +143,6 @@ public class TransactionsActivity extends AppCompatActivity {
         // Load initial data with animation
         showLoading(true);
         loadTransactions();
-        calculateTotals();
     }
 
     private void initializeFormatters() {
@@ -159,14 +189,17 @@ public class TransactionsActivity extends AppCompatActivity {
     }
 
     private void setupDatabase() {
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
+        searchDAO = new TransactionSearchDAO(dbHelper);
+        pageDAO = new TransactionPageDAO(dbHelper);
+        transactionDAO = new TransactionDAO(dbHelper);
     }
 
     private void setupRecyclerView() {
-        transactionList = new ArrayList<>();
         filteredTransactionList = new ArrayList<>();
-        adapter = new TransactionAdapter(filteredTransactionList);
-        recyclerViewTransactions.setLayoutManager(new LinearLayoutManager(this));
+        adapter = new TransactionAdapter();
+        layoutManager = new LinearLayoutManager(this);
+        recyclerViewTransactions.setLayoutManager(layoutManager);
         recyclerViewTransactions.setAdapter(adapter);
 
         // Set up click listeners
@@ -185,6 +218,28 @@ public class TransactionsActivity extends AppCompatActivity {
         // Add item decoration for spacing
         int spacingInPixels = getResources().getDimensionPixelSize(R.dimen.item_spacing);
         recyclerViewTransactions.addItemDecoration(new SpaceItemDecoration(spacingInPixels));
+
+        // 📄 Gần tới cuối/đầu cửa sổ -> tải trước trang kế tiếp/trang trước
+        recyclerViewTransactions.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (isLoadingPage) {
+                    return;
+                } else if (dy > 0 && hasMoreSearchResults && !recyclerView.canScrollVertically(1)) {
+                    isLoadingPage = true;
+                    recyclerView.post(() -> loadMoreSearchResults());
+                } else if (dy > 0 && hasMoreAfter
+                        && layoutManager.findLastVisibleItemPosition() >= filteredTransactionList.size() - PREFETCH_DISTANCE) {
+                    // Không sửa adapter ngay trong scroll callback
+                    isLoadingPage = true;
+                    recyclerView.post(() -> loadNextPage());
+                } else if (dy < 0 && hasMoreBefore
+                        && layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+                    isLoadingPage = true;
+                    recyclerView.post(() -> loadPreviousPage());
+                }
+            }
+        });
     }
 
     private void setupTabs() {
@@ -229,7 +284,8 @@ public class TransactionsActivity extends AppCompatActivity {
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
                 searchQuery = s.toString().trim();
-                applyFilters();
+                animationHandler.removeCallbacks(searchRunnable);
+                animationHandler.postDelayed(searchRunnable, SEARCH_DEBOUNCE_MS);
             }
 
             @Override
@@ -514,135 +570,171 @@ public class TransactionsActivity extends AppCompatActivity {
         Log.d("TransactionsActivity", "=== Starting loadTransactions ===");
         showLoading(true);
 
-        animationHandler.postDelayed(() -> {
-            transactionList.clear();
-            Log.d("TransactionsActivity", "Cleared transaction list");
-
-            SQLiteDatabase db = null;
-            Cursor cursor = null;
+        // Ẩn loading khi trang đầu tiên về (applyFilters)
+        animationHandler.postDelayed(this::applyFilters, 300);
+    }
 
+    private void applyFilters() {
+        animationHandler.removeCallbacks(searchRunnable);
+        filteredTransactionList.clear();
+        windowPageSizes.clear();
+        hasMoreSearchResults = false;
+        hasMoreAfter = false;
+        hasMoreBefore = false;
+        currentQuery = buildQuery();
+        // Chặn tải trang của bộ lọc cũ cho tới khi trang đầu tiên về
+        isLoadingPage = true;
+
+        TransactionQuery query = currentQuery;
+        queryExecutor.execute(() -> {
+            List<Transaction> page;
             try {
-                db = dbHelper.getReadableDatabase();
-                Log.d("TransactionsActivity", "Database opened successfully");
-
-                // Lấy userId từ SharedPreferences
-                SharedPreferences sharedPreferences = getSharedPreferences("MoneyMasterPrefs", MODE_PRIVATE);
-                int userId = sharedPreferences.getInt("userId", -1);
-
-                Log.d("TransactionsActivity", "Loading transactions for userId: " + userId);
-
-                String dateCondition = getDateCondition();
-                Log.d("TransactionsActivity", "Date condition: " + dateCondition);
-
-                String query = "SELECT " +
-                        "t." + DatabaseHelper.COLUMN_ID + ", " +
-                        "t." + DatabaseHelper.COLUMN_TYPE + ", " +
-                        "t." + DatabaseHelper.COLUMN_AMOUNT + ", " +
-                        "t." + DatabaseHelper.COLUMN_CATEGORY_ID + ", " +
-                        "t." + DatabaseHelper.COLUMN_NOTE + ", " +
-                        "t." + DatabaseHelper.COLUMN_DATE + ", " +
-                        "t." + DatabaseHelper.COLUMN_PAYMENT_METHOD + ", " +
-                        "t." + DatabaseHelper.COLUMN_CREATED_AT + ", " +
-                        "c." + DatabaseHelper.COLUMN_CATEGORY_NAME + ", " +
-                        "c." + DatabaseHelper.COLUMN_CATEGORY_ICON + ", " +
-                        "c." + DatabaseHelper.COLUMN_CATEGORY_COLOR +
-                        " FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " t" +
-                        " INNER JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c" +
-                        " ON t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID +
-                        " WHERE " + dateCondition + " AND t." + DatabaseHelper.COLUMN_USER_ID + " = ?" +
-                        " ORDER BY t." + DatabaseHelper.COLUMN_DATE + " DESC, " +
-                        "t." + DatabaseHelper.COLUMN_CREATED_AT + " DESC";
-
-                Log.d("TransactionsActivity", "Executing query: " + query);
-                Log.d("TransactionsActivity", "Query params: userId=" + userId);
-
-                cursor = db.rawQuery(query, new String[]{String.valueOf(userId)});
-
-                Log.d("TransactionsActivity", "Query executed, cursor count: " + cursor.getCount());
-
-                if (cursor.moveToFirst()) {
-                    Log.d("TransactionsActivity", "Processing cursor results...");
-                    int count = 0;
-                    do {
-                        try {
-                            Transaction transaction = createTransactionFromCursor(cursor);
-                            transactionList.add(transaction);
-                            count++;
-                            Log.d("TransactionsActivity", "Added transaction #" + count +
-                                    ": " + transaction.getCategoryName() +
-                                    ", Amount: " + transaction.getAmount() +
-                                    ", Date: " + transaction.getDate());
-                        } catch (Exception e) {
-                            Log.e("TransactionsActivity", "Error creating transaction from cursor at position " + cursor.getPosition(), e);
-                        }
-                    } while (cursor.moveToNext());
-                    Log.d("TransactionsActivity", "Finished processing cursor, added " + count + " transactions");
-                } else {
-                    Log.w("TransactionsActivity", "Cursor is empty - no results from query");
-
-                    // Debug: Kiểm tra lại với query đơn giản hơn
-                    Cursor debugCursor = db.rawQuery("SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_TRANSACTIONS +
-                                    " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ?",
-                            new String[]{String.valueOf(userId)});
-                    if (debugCursor.moveToFirst()) {
-                        int totalCount = debugCursor.getInt(0);
-                        Log.d("TransactionsActivity", "Debug: Total transactions for userId " + userId + ": " + totalCount);
-                    }
-                    debugCursor.close();
+                // 🔍 Tìm qua chỉ mục FTS thay vì duyệt toàn bộ danh sách; 📄 không có từ khóa -> trang keyset đầu tiên
+                page = query.hasText() ? searchTransactions(query, 0) : loadPage(query, null, true);
+            } catch (Exception e) {
+                Log.e("TransactionsActivity", "❌ Error loading transactions: " + e.getMessage());
+                page = new ArrayList<>();
+            }
 
-                    // Debug: Kiểm tra ngày
-                    Log.d("TransactionsActivity", "Current period: " + currentPeriod);
-                    Log.d("TransactionsActivity", "Is custom date range: " + isCustomDateRange);
-                    if (isCustomDateRange) {
-                        Log.d("TransactionsActivity", "Custom date range: " + customStartDate + " to " + customEndDate);
-                    }
-                }
+            List<Transaction> result = page;
+            mainHandler.post(() -> {
+                if (isStale(query)) return;
 
-            } catch (Exception e) {
-                Log.e("TransactionsActivity", "Exception in loadTransactions", e);
-                Toast.makeText(this, "Lỗi khi tải dữ liệu giao dịch: " + e.getMessage(), Toast.LENGTH_LONG).show();
-            } finally {
-                if (cursor != null) {
-                    cursor.close();
-                    Log.d("TransactionsActivity", "Cursor closed");
-                }
-                if (db != null) {
-                    db.close();
-                    Log.d("TransactionsActivity", "Database closed");
+                filteredTransactionList.addAll(result);
+                if (query.hasText()) {
+                    hasMoreSearchResults = result.size() == SEARCH_PAGE_SIZE;
+                } else {
+                    windowPageSizes.addLast(result.size());
+                    hasMoreAfter = result.size() == PAGE_SIZE;
                 }
-            }
+                isLoadingPage = false;
+                showLoading(false);
+            });
+        });
 
-            Log.d("TransactionsActivity", "Final transaction list size: " + transactionList.size());
+        calculateTotals(query);
+    }
 
-            applyFilters();
-            Log.d("TransactionsActivity", "Applied filters");
+    // Kết quả nền thuộc bộ lọc đã bị thay (hoặc màn hình đã đóng) -> bỏ, không đụng cờ isLoadingPage của lần tải mới
+    private boolean isStale(TransactionQuery query) {
+        return query != currentQuery || isFinishing() || isDestroyed();
+    }
 
-            calculateTotals();
-            Log.d("TransactionsActivity", "Calculated totals");
+    // 📄 Nối trang cũ hơn vào cuối cửa sổ, bỏ trang đầu nếu vượt quá MAX_PAGES_IN_MEMORY
+    private void loadNextPage() {
+        if (!hasMoreAfter || filteredTransactionList.isEmpty()) {
+            isLoadingPage = false;
+            return;
+        }
 
-            showLoading(false);
-            Log.d("TransactionsActivity", "=== Finished loadTransactions ===");
-        }, 300);
+        TransactionQuery query = currentQuery;
+        TransactionPageDAO.PageKey key = TransactionPageDAO.PageKey.of(filteredTransactionList.get(filteredTransactionList.size() - 1));
+        queryExecutor.execute(() -> {
+            List<Transaction> page = loadPageOrEmpty(query, key, true);
+            mainHandler.post(() -> {
+                if (isStale(query)) return;
+
+                hasMoreAfter = page.size() == PAGE_SIZE;
+                if (!page.isEmpty()) {
+                    filteredTransactionList.addAll(page);
+                    windowPageSizes.addLast(page.size());
+
+                    if (windowPageSizes.size() > MAX_PAGES_IN_MEMORY) {
+                        int dropped = windowPageSizes.removeFirst();
+                        filteredTransactionList.subList(0, dropped).clear();
+                        hasMoreBefore = true;
+                    }
+                    submitTransactions();
+                }
+                isLoadingPage = false;
+            });
+        });
     }
 
-    private void applyFilters() {
-        filteredTransactionList.clear();
+    // 📄 Chèn lại trang mới hơn vào đầu cửa sổ khi cuộn ngược lên, bỏ trang cuối nếu vượt giới hạn
+    private void loadPreviousPage() {
+        if (!hasMoreBefore || filteredTransactionList.isEmpty()) {
+            isLoadingPage = false;
+            return;
+        }
 
-        for (Transaction transaction : transactionList) {
-            boolean matchesCategory = selectedCategoryIds.isEmpty() ||
-                    selectedCategoryIds.contains(transaction.getCategoryId());
+        TransactionQuery query = currentQuery;
+        TransactionPageDAO.PageKey key = TransactionPageDAO.PageKey.of(filteredTransactionList.get(0));
+        queryExecutor.execute(() -> {
+            List<Transaction> page = loadPageOrEmpty(query, key, false);
+            mainHandler.post(() -> {
+                if (isStale(query)) return;
+
+                hasMoreBefore = page.size() == PAGE_SIZE;
+                if (!page.isEmpty()) {
+                    filteredTransactionList.addAll(0, page);
+                    windowPageSizes.addFirst(page.size());
+
+                    if (windowPageSizes.size() > MAX_PAGES_IN_MEMORY) {
+                        int dropped = windowPageSizes.removeLast();
+                        int start = filteredTransactionList.size() - dropped;
+                        filteredTransactionList.subList(start, filteredTransactionList.size()).clear();
+                        hasMoreAfter = true;
+                    }
+                    submitTransactions();
+                }
+                isLoadingPage = false;
+            });
+        });
+    }
 
-            boolean matchesSearch = searchQuery.isEmpty() ||
-                    transaction.getCategoryName().toLowerCase().contains(searchQuery.toLowerCase()) ||
-                    (transaction.getNote() != null &&
-                            transaction.getNote().toLowerCase().contains(searchQuery.toLowerCase()));
+    // 📄 1 trang theo bộ lọc query (chạy trên queryExecutor): after = true -> cũ hơn key, false -> mới hơn key
+    private List<Transaction> loadPage(TransactionQuery query, TransactionPageDAO.PageKey key, boolean after) {
+        if (after) {
+            return pageDAO.loadPageAfter(query, key, PAGE_SIZE);
+        }
+        return pageDAO.loadPageBefore(query, key, PAGE_SIZE);
+    }
 
-            if (matchesCategory && matchesSearch) {
-                filteredTransactionList.add(transaction);
-            }
+    // Lỗi đọc trang -> coi như hết trang thay vì để isLoadingPage kẹt ở true
+    private List<Transaction> loadPageOrEmpty(TransactionQuery query, TransactionPageDAO.PageKey key, boolean after) {
+        try {
+            return loadPage(query, key, after);
+        } catch (Exception e) {
+            Log.e("TransactionsActivity", "❌ Error loading page: " + e.getMessage());
+            return new ArrayList<>();
         }
+    }
 
-        updateUI();
+    private int getCurrentUserId() {
+        SharedPreferences sharedPreferences = getSharedPreferences("MoneyMasterPrefs", MODE_PRIVATE);
+        return sharedPreferences.getInt("userId", -1);
+    }
+
+    private void loadMoreSearchResults() {
+        TransactionQuery query = currentQuery;
+        int offset = filteredTransactionList.size();
+        queryExecutor.execute(() -> {
+            List<Transaction> page;
+            try {
+                page = searchTransactions(query, offset);
+            } catch (Exception e) {
+                Log.e("TransactionsActivity", "❌ Error searching transactions: " + e.getMessage());
+                page = new ArrayList<>();
+            }
+
+            List<Transaction> result = page;
+            mainHandler.post(() -> {
+                if (isStale(query)) return;
+
+                hasMoreSearchResults = result.size() == SEARCH_PAGE_SIZE;
+                if (!result.isEmpty()) {
+                    filteredTransactionList.addAll(result);
+                    submitTransactions();
+                }
+                isLoadingPage = false;
+            });
+        });
+    }
+
+    // 🔍 1 trang kết quả FTS trong khoảng thời gian + danh mục đang lọc (chạy trên queryExecutor)
+    private List<Transaction> searchTransactions(TransactionQuery query, int offset) {
+        return searchDAO.search(query, SEARCH_PAGE_SIZE, offset);
     }
 
     private List<Category> loadCategories() {
@@ -671,60 +763,23 @@ public class TransactionsActivity extends AppCompatActivity {
             e.printStackTrace();
         } finally {
             if (cursor != null) cursor.close();
-            if (db != null) db.close();
         }
 
         return categories;
     }
 
-    private Transaction createTransactionFromCursor(Cursor cursor) {
-        Transaction transaction = new Transaction();
-
-        transaction.setId(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID)));
-        transaction.setType(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_TYPE)));
-        transaction.setAmount(cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_AMOUNT)));
-        transaction.setCategoryId(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CATEGORY_ID)));
-        transaction.setNote(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_NOTE)));
-        transaction.setDate(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_DATE)));
-        transaction.setPaymentMethod(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_PAYMENT_METHOD)));
-        transaction.setCreatedAt(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CREATED_AT)));
-
-        // Category information
-        transaction.setCategoryName(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CATEGORY_NAME)));
-        transaction.setCategoryIcon(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CATEGORY_ICON)));
-        transaction.setCategoryColor(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CATEGORY_COLOR)));
-
-        return transaction;
-    }
-
-    private String getDateCondition() {
-        SimpleDateFormat dbDateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        String today = dbDateFormat.format(new Date());
+    // 🧱 Bộ lọc hiện tại (kỳ / khoảng ngày tùy chọn, danh mục, từ khóa) - toàn bộ chạy trong SQL
+    private TransactionQuery buildQuery() {
+        TransactionQuery.Builder builder = TransactionQuery.forUser(getCurrentUserId())
+                .categories(selectedCategoryIds)
+                .text(searchQuery);
 
         if (isCustomDateRange && customStartDate != null && customEndDate != null) {
-            return "DATE(t." + DatabaseHelper.COLUMN_DATE + ") BETWEEN DATE('" +
-                    customStartDate + "') AND DATE('" + customEndDate + "')";
-        }
-
-        switch (currentPeriod) {
-            case "today":
-                return "DATE(t." + DatabaseHelper.COLUMN_DATE + ") = DATE('" + today + "')";
-            case "week":
-                // Get date 7 days ago
-                Calendar weekAgo = Calendar.getInstance();
-                weekAgo.add(Calendar.DAY_OF_MONTH, -7);
-                String weekAgoStr = dbDateFormat.format(weekAgo.getTime());
-                return "DATE(t." + DatabaseHelper.COLUMN_DATE + ") >= DATE('" + weekAgoStr + "')";
-            case "month":
-                // Get current month start
-                Calendar monthStart = Calendar.getInstance();
-                monthStart.set(Calendar.DAY_OF_MONTH, 1);
-                String monthStartStr = dbDateFormat.format(monthStart.getTime());
-                return "DATE(t." + DatabaseHelper.COLUMN_DATE + ") >= DATE('" + monthStartStr + "')";
-            case "all":
-            default:
-                return "1=1"; // All transactions
+            builder.dateRange(customStartDate, customEndDate);
+        } else {
+            builder.period(currentPeriod);
         }
+        return builder.build();
     }
 
     @Override
@@ -762,35 +817,46 @@ public class TransactionsActivity extends AppCompatActivity {
             recyclerViewTransactions.setVisibility(View.VISIBLE);
         }
 
-        adapter.notifyDataSetChanged();
+        submitTransactions();
+    }
+
+    // ListAdapter diff trên background - luôn submit bản sao của cửa sổ hiện tại
+    private void submitTransactions() {
+        adapter.submitList(new ArrayList<>(filteredTransactionList));
     }
 
     private void startEmptyStateAnimation() {
         ivEmptyIcon.startAnimation(AnimationUtils.loadAnimation(this, R.anim.fade_in));
     }
 
-    private void calculateTotals() {
-        double totalIncome = 0;
-        double totalExpense = 0;
-
-        for (Transaction transaction : filteredTransactionList) {
-            if ("income".equals(transaction.getType())) {
-                totalIncome += transaction.getAmount();
-            } else if ("expense".equals(transaction.getType())) {
-                totalExpense += transaction.getAmount();
+    private void calculateTotals(TransactionQuery query) {
+        // 📄 Tổng tính trong SQL theo cùng bộ lọc - danh sách chỉ còn giữ 1 cửa sổ trang
+        queryExecutor.execute(() -> {
+            try {
+                long[] totals = pageDAO.getTotals(query);
+                mainHandler.post(() -> {
+                    if (!isStale(query)) showTotals(totals);
+                });
+            } catch (Exception e) {
+                Log.e("TransactionsActivity", "❌ Error calculating totals: " + e.getMessage());
             }
-        }
+        });
+    }
+
+    private void showTotals(long[] totals) {
+        long totalIncome = totals[0];
+        long totalExpense = totals[1];
 
         // Update UI with formatted amounts
         updateTotalDisplay(tvTotalIncome, totalIncome, true);
         updateTotalDisplay(tvTotalExpense, totalExpense, false);
 
         // Calculate and display net balance
-        double netBalance = totalIncome - totalExpense;
+        long netBalance = totalIncome - totalExpense;
         updateNetBalanceDisplay(netBalance);
     }
 
-    private void updateTotalDisplay(TextView textView, double amount, boolean isIncome) {
+    private void updateTotalDisplay(TextView textView, long amount, boolean isIncome) {
         String formattedAmount = currencyFormatter.format(amount) + "₫";
         textView.setText(formattedAmount);
 
@@ -798,7 +864,7 @@ public class TransactionsActivity extends AppCompatActivity {
         textView.startAnimation(AnimationUtils.loadAnimation(this, R.anim.number_change));
     }
 
-    private void updateNetBalanceDisplay(double netBalance) {
+    private void updateNetBalanceDisplay(long netBalance) {
         String formattedBalance = currencyFormatter.format(Math.abs(netBalance)) + "₫";
         if (netBalance >= 0) {
             tvNetBalance.setText("+" + formattedBalance);
@@ -867,12 +933,9 @@ public class TransactionsActivity extends AppCompatActivity {
     }
 
     private void performDeleteTransaction(Transaction transaction) {
-        SQLiteDatabase db = null;
         try {
-            db = dbHelper.getWritableDatabase();
-            int result = db.delete(DatabaseHelper.TABLE_TRANSACTIONS,
-                    DatabaseHelper.COLUMN_ID + "=?",
-                    new String[]{String.valueOf(transaction.getId())});
+            // Danh sách có thể gồm giao dịch đã archive (all_transactions) - DAO xóa được cả 2 nơi
+            int result = transactionDAO.deleteTransaction(transaction.getId());
 
             if (result > 0) {
                 Toast.makeText(this, "Đã xóa giao dịch", Toast.LENGTH_SHORT).show();
@@ -883,8 +946,6 @@ public class TransactionsActivity extends AppCompatActivity {
         } catch (Exception e) {
             e.printStackTrace();
             Toast.makeText(this, "Lỗi khi xóa giao dịch", Toast.LENGTH_SHORT).show();
-        } finally {
-            if (db != null) db.close();
         }
     }
 
@@ -897,9 +958,10 @@ public class TransactionsActivity extends AppCompatActivity {
 
     @Override
     protected void onDestroy() {
-        if (dbHelper != null) {
-            dbHelper.close();
-        }
+        // Cả lần tải đang chờ (loadTransactions) - executor đã dừng thì không được gửi thêm việc
+        animationHandler.removeCallbacksAndMessages(null);
+        mainHandler.removeCallbacksAndMessages(null);
+        queryExecutor.shutdownNow();
         super.onDestroy();
     }
 
@@ -972,7 +1034,6 @@ public class TransactionsActivity extends AppCompatActivity {
             Log.d("TransactionsActivity", "Found " + count + " transactions for current userId " + userId);
         }
         cursor.close();
-        db.close();
     }
 
 
@@ -0,0 +1,90 @@
+package database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 🚨 Đọc giao dịch bất thường đã được triggers đánh dấu lúc ghi (transaction_anomalies).
+ * Ngưỡng và thống kê nền (category_stats) nằm trong DatabaseHelper; ở đây chỉ đọc theo user + khoảng ngày.
+ */
+public class AnomalyDAO {
+    private static final String TAG = "AnomalyDAO";
+
+    /**
+     * 1 giao dịch bị đánh dấu
+     */
+    public static final class Anomaly {
+        public final long transactionId;
+        // DatabaseHelper.ANOMALY_LARGE / ANOMALY_SPIKE
+        public final String kind;
+        public final int userId;
+        public final int categoryId;
+        public final String categoryName;
+        public final int day;
+        // large: số tiền giao dịch; spike: tổng chi của tuần lúc vượt ngưỡng (minor units)
+        public final long observed;
+        // large: trung bình 1 giao dịch; spike: EWMA chi theo tuần (minor units)
+        public final double baseline;
+
+        Anomaly(Cursor cursor) {
+            this.transactionId = cursor.getLong(0);
+            this.kind = cursor.getString(1);
+            this.userId = cursor.getInt(2);
+            this.categoryId = cursor.getInt(3);
+            this.categoryName = cursor.isNull(4) ? "" : cursor.getString(4);
+            this.day = cursor.getInt(5);
+            this.observed = cursor.getLong(6);
+            this.baseline = cursor.getDouble(7);
+        }
+
+        public boolean isLarge() {
+            return DatabaseHelper.ANOMALY_LARGE.equals(kind);
+        }
+
+        public boolean isSpike() {
+            return DatabaseHelper.ANOMALY_SPIKE.equals(kind);
+        }
+    }
+
+    private final DatabaseHelper dbHelper;
+
+    public AnomalyDAO(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Các cờ của user từ ngày fromDay (epoch day) trở đi, mới nhất trước (idx_transaction_anomalies_user_day)
+     */
+    public List<Anomaly> getAnomalies(int userId, int fromDay) {
+        List<Anomaly> anomalies = new ArrayList<>();
+        Cursor cursor = null;
+
+        String query = "SELECT a." + DatabaseHelper.COLUMN_TRANSACTION_ID + ", a." + DatabaseHelper.COLUMN_ANOMALY_KIND + ", " +
+                "a." + DatabaseHelper.COLUMN_USER_ID + ", a." + DatabaseHelper.COLUMN_CATEGORY_ID + ", " +
+                "c." + DatabaseHelper.COLUMN_CATEGORY_NAME + ", a." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + ", " +
+                "a." + DatabaseHelper.COLUMN_OBSERVED + ", a." + DatabaseHelper.COLUMN_BASELINE +
+                " FROM " + DatabaseHelper.TABLE_TRANSACTION_ANOMALIES + " a" +
+                " LEFT JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON c." + DatabaseHelper.COLUMN_ID + " = a." + DatabaseHelper.COLUMN_CATEGORY_ID +
+                " WHERE a." + DatabaseHelper.COLUMN_USER_ID + " = ? AND a." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " >= ?" +
+                " ORDER BY a." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " DESC, a." + DatabaseHelper.COLUMN_TRANSACTION_ID + " DESC";
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery(query, new String[]{String.valueOf(userId), String.valueOf(fromDay)});
+
+            while (cursor.moveToNext()) {
+                anomalies.add(new Anomaly(cursor));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading anomalies: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return anomalies;
+    }
+}
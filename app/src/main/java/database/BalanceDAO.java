@@ -0,0 +1,86 @@
+package database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * 💰 Đọc số dư từ sổ cái user_balances (O(1) theo primary key).
+ * Sổ cái được triggers trên transactions giữ đồng bộ; verifyBalance() dùng để đối soát khi cần
+ * (đối soát với transactions + archived_rollups, xem TransactionArchive).
+ */
+public class BalanceDAO {
+    private static final String TAG = "BalanceDAO";
+
+    private final DatabaseHelper dbHelper;
+
+    public BalanceDAO(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Số dư hiện tại của user (thu - chi)
+     */
+    public long getBalance(int userId) {
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_BALANCE + " FROM " + DatabaseHelper.TABLE_USER_BALANCES +
+                            " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ?",
+                    new String[]{String.valueOf(userId)});
+
+            // User chưa có giao dịch nào thì chưa có dòng trong sổ cái
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error reading balance: " + e.getMessage());
+            return 0;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Đối soát sổ cái với SUM trên transactions, tự tính lại nếu lệch.
+     *
+     * @return true nếu sổ cái đã khớp (không phải tính lại)
+     */
+    public boolean verifyBalance(int userId) {
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            // Giao dịch đã chuyển sang archive được tính qua archived_rollups
+            String where = DatabaseHelper.COLUMN_USER_ID + " = " + userId;
+            cursor = db.rawQuery("SELECT " +
+                            "COALESCE(SUM(CASE WHEN " + DatabaseHelper.COLUMN_TYPE + " = 'income' THEN " + DatabaseHelper.COLUMN_AMOUNT +
+                            " ELSE -" + DatabaseHelper.COLUMN_AMOUNT + " END), 0) FROM (SELECT " +
+                            DatabaseHelper.COLUMN_USER_ID + ", " + DatabaseHelper.COLUMN_TYPE + ", " + DatabaseHelper.COLUMN_AMOUNT +
+                            " FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + where +
+                            dbHelper.archivedRollupsUnion(db, DatabaseHelper.COLUMN_TYPE + ", " + DatabaseHelper.COLUMN_ROLLUP_TOTAL, where) + ")",
+                    null);
+
+            long expected = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+            cursor.close();
+            cursor = null;
+
+            long ledger = getBalance(userId);
+            // Số nguyên nên so sánh chính xác
+            if (expected == ledger) {
+                Log.d(TAG, "✅ Balance verified for user " + userId + ": " + ledger);
+                return true;
+            }
+
+            Log.w(TAG, "⚠️ Balance mismatch for user " + userId + " - ledger: " + ledger + ", expected: " + expected);
+            dbHelper.rebuildUserBalance(db, userId);
+            return false;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error verifying balance: " + e.getMessage());
+            return false;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+}
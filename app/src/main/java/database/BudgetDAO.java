@@ -0,0 +1,153 @@
+package database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import models.BudgetPlan;
+
+/**
+ * 🧾 Truy vấn ngân sách: header budget_plans + danh mục budget_items kèm đã chi từ budget_progress.
+ * Items của 1 plan đọc trong 1 câu (idx_budget_items_plan_category + primary key của budget_progress),
+ * không tính lại SUM trên transactions cho từng danh mục.
+ */
+public class BudgetDAO {
+    private static final String TAG = "BudgetDAO";
+
+    // Cột SELECT cố định (alias bp = budget_plans) - readPlan() đọc theo vị trí
+    private static final String PLAN_COLUMNS = "bp." + DatabaseHelper.COLUMN_ID + ", " +
+            "bp." + DatabaseHelper.COLUMN_BUDGET_NAME + ", " +
+            "bp." + DatabaseHelper.COLUMN_BUDGET_PERIOD + ", " +
+            "bp." + DatabaseHelper.COLUMN_BUDGET_START_DATE + ", " +
+            "bp." + DatabaseHelper.COLUMN_BUDGET_END_DATE + ", " +
+            "bp." + DatabaseHelper.COLUMN_USER_ID;
+
+    // Alias bi = budget_items, c = categories, p = budget_progress - readItem() đọc theo vị trí
+    private static final String ITEM_COLUMNS = "bi." + DatabaseHelper.COLUMN_ID + ", " +
+            "bi." + DatabaseHelper.COLUMN_CATEGORY_ID + ", " +
+            "bi." + DatabaseHelper.COLUMN_BUDGET_AMOUNT + ", " +
+            "c." + DatabaseHelper.COLUMN_CATEGORY_NAME + ", " +
+            "c." + DatabaseHelper.COLUMN_CATEGORY_ICON + ", " +
+            "c." + DatabaseHelper.COLUMN_CATEGORY_COLOR + ", " +
+            "c." + DatabaseHelper.COLUMN_CATEGORY_TYPE + ", " +
+            "COALESCE(p." + DatabaseHelper.COLUMN_SPENT + ", 0), " +
+            "COALESCE(p." + DatabaseHelper.COLUMN_TX_COUNT + ", 0)";
+
+    private final DatabaseHelper dbHelper;
+
+    public BudgetDAO(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    static BudgetPlan readPlan(Cursor cursor) {
+        BudgetPlan plan = new BudgetPlan();
+        plan.setId(cursor.getInt(0));
+        plan.setName(cursor.getString(1));
+        plan.setPeriod(cursor.getString(2));
+        plan.setStartDate(cursor.getString(3));
+        plan.setEndDate(cursor.getString(4));
+        plan.setUserId(cursor.getString(5));
+        return plan;
+    }
+
+    static BudgetPlan.CategoryBudget readItem(Cursor cursor) {
+        BudgetPlan.CategoryBudget item = new BudgetPlan.CategoryBudget();
+        item.setId(cursor.getInt(0));
+        item.setCategoryId(cursor.getInt(1));
+        item.setAllocatedAmount(cursor.getLong(2));
+        item.setCategoryName(cursor.isNull(3) ? "" : cursor.getString(3));
+        item.setCategoryIcon(cursor.getString(4));
+        item.setCategoryColor(cursor.getString(5));
+        item.setCategoryType(cursor.getString(6));
+        item.setSpentAmount(cursor.getLong(7));
+        item.setTransactionCount(cursor.getInt(8));
+        return item;
+    }
+
+    /**
+     * Kế hoạch ngân sách theo id (chỉ khi thuộc user), null nếu không có. Chưa nạp danh mục (xem getItems()).
+     */
+    public BudgetPlan getPlan(int userId, long planId) {
+        return queryPlan("SELECT " + PLAN_COLUMNS + " FROM " + DatabaseHelper.TABLE_BUDGET_PLANS + " bp" +
+                        " WHERE bp." + DatabaseHelper.COLUMN_USER_ID + " = ? AND bp." + DatabaseHelper.COLUMN_ID + " = ?",
+                new String[]{String.valueOf(userId), String.valueOf(planId)});
+    }
+
+    /**
+     * Kế hoạch mới nhất có tên này của user (created_at chỉ tới giây nên so thêm id), null nếu không có
+     */
+    public BudgetPlan getLatestPlanByName(int userId, String name) {
+        return queryPlan("SELECT " + PLAN_COLUMNS + " FROM " + DatabaseHelper.TABLE_BUDGET_PLANS + " bp" +
+                        " WHERE bp." + DatabaseHelper.COLUMN_USER_ID + " = ? AND bp." + DatabaseHelper.COLUMN_BUDGET_NAME + " = ?" +
+                        " ORDER BY bp." + DatabaseHelper.COLUMN_CREATED_AT + " DESC, bp." + DatabaseHelper.COLUMN_ID + " DESC LIMIT 1",
+                new String[]{String.valueOf(userId), name});
+    }
+
+    private BudgetPlan queryPlan(String query, String[] args) {
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery(query, args);
+            return cursor.moveToFirst() ? readPlan(cursor) : null;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading budget plan: " + e.getMessage());
+            return null;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Danh mục của 1 kế hoạch kèm đã chi + số giao dịch (budget_progress), 1 câu cho cả kế hoạch
+     */
+    public List<BudgetPlan.CategoryBudget> getItems(long planId) {
+        List<BudgetPlan.CategoryBudget> items = new ArrayList<>();
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT " + ITEM_COLUMNS +
+                            " FROM " + DatabaseHelper.TABLE_BUDGET_ITEMS + " bi" +
+                            " JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON c." + DatabaseHelper.COLUMN_ID + " = bi." + DatabaseHelper.COLUMN_CATEGORY_ID +
+                            " LEFT JOIN " + DatabaseHelper.TABLE_BUDGET_PROGRESS + " p ON p." + DatabaseHelper.COLUMN_ITEM_ID + " = bi." + DatabaseHelper.COLUMN_ID +
+                            " WHERE bi." + DatabaseHelper.COLUMN_PLAN_ID + " = ?",
+                    new String[]{String.valueOf(planId)});
+
+            while (cursor.moveToNext()) {
+                items.add(readItem(cursor));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading items of plan " + planId + ": " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return items;
+    }
+
+    /**
+     * Đổi số tiền của 1 budget item (minor units); budget_progress không đổi vì danh mục/khoảng ngày giữ nguyên
+     *
+     * @return true nếu có dòng được cập nhật
+     */
+    public boolean updateItemAmount(long itemId, long amount) {
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COLUMN_BUDGET_AMOUNT, amount);
+
+            return db.update(DatabaseHelper.TABLE_BUDGET_ITEMS, values,
+                    DatabaseHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(itemId)}) > 0;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error updating budget item " + itemId + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
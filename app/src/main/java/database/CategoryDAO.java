@@ -1,4 +1,200 @@
 package database;
 
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import models.Category;
+
+/**
+ * 📂 Truy vấn danh mục + thống kê sử dụng danh mục theo user.
+ * Danh sách theo loại đi qua idx_categories_type_name, thống kê đi qua idx_transactions_user_category_day.
+ */
 public class CategoryDAO {
+    private static final String TAG = "CategoryDAO";
+
+    // Cột SELECT cố định - read() đọc theo vị trí, không tra getColumnIndex mỗi dòng
+    private static final String SELECT_COLUMNS = DatabaseHelper.COLUMN_ID + ", " +
+            DatabaseHelper.COLUMN_CATEGORY_NAME + ", " +
+            DatabaseHelper.COLUMN_CATEGORY_TYPE + ", " +
+            DatabaseHelper.COLUMN_CATEGORY_ICON + ", " +
+            DatabaseHelper.COLUMN_CATEGORY_COLOR + ", " +
+            DatabaseHelper.COLUMN_CREATED_AT;
+
+    private final DatabaseHelper dbHelper;
+
+    public CategoryDAO(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Số giao dịch + tổng tiền của 1 danh mục
+     */
+    public static final class Usage {
+        public final int transactionCount;
+        public final long totalAmount;
+
+        Usage(int transactionCount, long totalAmount) {
+            this.transactionCount = transactionCount;
+            this.totalAmount = totalAmount;
+        }
+    }
+
+    public static final Usage NO_USAGE = new Usage(0, 0);
+
+    static Category read(Cursor cursor) {
+        Category category = new Category(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                cursor.getString(3), cursor.getString(4));
+        category.setCreatedAt(cursor.getString(5));
+        return category;
+    }
+
+    /**
+     * Danh mục theo loại ("income" / "expense"), sắp theo tên
+     */
+    public List<Category> getCategoriesByType(String type) {
+        List<Category> categories = new ArrayList<>();
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT " + SELECT_COLUMNS + " FROM " + DatabaseHelper.TABLE_CATEGORIES +
+                            " WHERE " + DatabaseHelper.COLUMN_CATEGORY_TYPE + " = ?" +
+                            " ORDER BY " + DatabaseHelper.COLUMN_CATEGORY_NAME,
+                    new String[]{type});
+
+            while (cursor.moveToNext()) {
+                categories.add(read(cursor));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading " + type + " categories: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return categories;
+    }
+
+    /**
+     * Danh mục theo id, null nếu không có
+     */
+    public Category getCategory(long categoryId) {
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT " + SELECT_COLUMNS + " FROM " + DatabaseHelper.TABLE_CATEGORIES +
+                            " WHERE " + DatabaseHelper.COLUMN_ID + " = ?",
+                    new String[]{String.valueOf(categoryId)});
+
+            return cursor.moveToFirst() ? read(cursor) : null;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading category " + categoryId + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Id danh mục theo (tên, loại), tạo mới nếu chưa có.
+     * Gọi được bên trong transaction đang mở trên connection ghi.
+     *
+     * @return id danh mục, -1 nếu lỗi
+     */
+    public long getOrCreateCategoryId(String name, String type, String icon, String color) {
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_ID + " FROM " + DatabaseHelper.TABLE_CATEGORIES +
+                            " WHERE " + DatabaseHelper.COLUMN_CATEGORY_TYPE + " = ? AND " + DatabaseHelper.COLUMN_CATEGORY_NAME + " = ?" +
+                            " LIMIT 1",
+                    new String[]{type, name});
+
+            if (cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COLUMN_CATEGORY_NAME, name);
+            values.put(DatabaseHelper.COLUMN_CATEGORY_TYPE, type);
+            values.put(DatabaseHelper.COLUMN_CATEGORY_ICON, icon);
+            values.put(DatabaseHelper.COLUMN_CATEGORY_COLOR, color);
+
+            long categoryId = db.insert(DatabaseHelper.TABLE_CATEGORIES, null, values);
+            Log.d(TAG, "✅ Created category " + name + " (" + type + "): " + categoryId);
+            return categoryId;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error finding/creating category " + name + ": " + e.getMessage());
+            return -1;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Số giao dịch + tổng tiền của user cho mọi danh mục đã dùng, 1 câu GROUP BY thay vì 1 câu mỗi danh mục.
+     * Danh mục chưa có giao dịch không có trong map (dùng NO_USAGE).
+     */
+    public Map<Long, Usage> getUsageByCategory(int userId) {
+        Map<Long, Usage> usage = new HashMap<>();
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_CATEGORY_ID + ", SUM(tx_count), COALESCE(SUM(total), 0) " +
+                            "FROM (" + usageSource(DatabaseHelper.COLUMN_USER_ID + " = ?") + ")" +
+                            " GROUP BY " + DatabaseHelper.COLUMN_CATEGORY_ID,
+                    new String[]{String.valueOf(userId), String.valueOf(userId)});
+
+            while (cursor.moveToNext()) {
+                usage.put(cursor.getLong(0), new Usage(cursor.getInt(1), cursor.getLong(2)));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading category usage: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return usage;
+    }
+
+    /**
+     * Số giao dịch + tổng tiền của user cho 1 danh mục
+     */
+    public Usage getUsage(int userId, long categoryId) {
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT COALESCE(SUM(tx_count), 0), COALESCE(SUM(total), 0) " +
+                            "FROM (" + usageSource(DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_CATEGORY_ID + " = ?") + ")",
+                    new String[]{String.valueOf(userId), String.valueOf(categoryId), String.valueOf(userId), String.valueOf(categoryId)});
+
+            return cursor.moveToFirst() ? new Usage(cursor.getInt(0), cursor.getLong(1)) : NO_USAGE;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading usage of category " + categoryId + ": " + e.getMessage());
+            return NO_USAGE;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    // (category_id, total, tx_count) của transactions + archived_rollups (giao dịch đã archive) thỏa `where`
+    private static String usageSource(String where) {
+        return "SELECT " + DatabaseHelper.COLUMN_CATEGORY_ID + ", " + DatabaseHelper.COLUMN_AMOUNT + " AS total, 1 AS tx_count" +
+                " FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + where +
+                " UNION ALL SELECT " + DatabaseHelper.COLUMN_CATEGORY_ID + ", " + DatabaseHelper.COLUMN_ROLLUP_TOTAL + ", " +
+                DatabaseHelper.COLUMN_ROLLUP_TX_COUNT + " FROM " + DatabaseHelper.TABLE_ARCHIVED_ROLLUPS + " WHERE " + where;
+    }
 }
@@ -0,0 +1,105 @@
+package database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import models.DateCodec;
+
+/**
+ * 📈 Chuỗi thu/chi theo ngày cho các biểu đồ.
+ *
+ * Cả chuỗi được lấy bằng 1 truy vấn GROUP BY date_epoch_day, những ngày không có giao dịch
+ * được điền 0 ở phía Java - thay vì 1 truy vấn cho mỗi ngày/mỗi cột biểu đồ.
+ */
+public class DailySeriesDAO {
+    private static final String TAG = "DailySeriesDAO";
+
+    private final DatabaseHelper dbHelper;
+
+    public DailySeriesDAO(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Thu/chi từng ngày trong [startDate, endDate] (yyyy-MM-dd), đã điền đủ các ngày trống.
+     *
+     * @return TreeMap sắp xếp theo ngày: date -> {income, expense}
+     */
+    public TreeMap<String, long[]> getDailyTotals(int userId, String startDate, String endDate) {
+        int startDay = DateCodec.parse(startDate);
+        int endDay = DateCodec.parse(endDate);
+        if (startDay == DateCodec.INVALID || endDay == DateCodec.INVALID) {
+            Log.e(TAG, "❌ Invalid date range: " + startDate + " - " + endDate);
+            return new TreeMap<>();
+        }
+
+        TreeMap<String, long[]> series = createEmptySeries(startDay, endDay);
+        if (series.isEmpty()) {
+            return series;
+        }
+
+        // Giao dịch đã archive chỉ còn tổng theo ngày trong archived_day_totals
+        String range = " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " +
+                DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " BETWEEN ? AND ?";
+        String query = "SELECT " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + ", " +
+                "COALESCE(SUM(CASE WHEN " + DatabaseHelper.COLUMN_TYPE + " = 'income' THEN total END), 0) as income, " +
+                "COALESCE(SUM(CASE WHEN " + DatabaseHelper.COLUMN_TYPE + " = 'expense' THEN total END), 0) as expense " +
+                "FROM (SELECT " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + ", " + DatabaseHelper.COLUMN_TYPE + ", " +
+                DatabaseHelper.COLUMN_AMOUNT + " as total FROM " + DatabaseHelper.TABLE_TRANSACTIONS + range +
+                " UNION ALL SELECT " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + ", " + DatabaseHelper.COLUMN_TYPE + ", " +
+                DatabaseHelper.COLUMN_ROLLUP_TOTAL + " FROM " + DatabaseHelper.TABLE_ARCHIVED_DAY_TOTALS + range + ") " +
+                "GROUP BY " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY;
+
+        String[] args = {String.valueOf(userId), String.valueOf(startDay), String.valueOf(endDay),
+                String.valueOf(userId), String.valueOf(startDay), String.valueOf(endDay)};
+
+        Cursor cursor = null;
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery(query, args);
+
+            while (cursor.moveToNext()) {
+                long[] day = series.get(DateCodec.format(cursor.getInt(0)));
+                if (day != null) {
+                    day[0] = cursor.getLong(1);
+                    day[1] = cursor.getLong(2);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading daily series: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return series;
+    }
+
+    /**
+     * Cộng dồn chuỗi ngày trong [startDate, endDate]
+     *
+     * @return {income, expense}
+     */
+    public static long[] sumRange(TreeMap<String, long[]> series, String startDate, String endDate) {
+        long income = 0, expense = 0;
+        if (startDate.compareTo(endDate) <= 0) {
+            for (Map.Entry<String, long[]> entry : series.subMap(startDate, true, endDate, true).entrySet()) {
+                income += entry.getValue()[0];
+                expense += entry.getValue()[1];
+            }
+        }
+        return new long[]{income, expense};
+    }
+
+    // Tạo sẵn mọi ngày trong khoảng với giá trị 0 (gap-filling)
+    private TreeMap<String, long[]> createEmptySeries(int startDay, int endDay) {
+        TreeMap<String, long[]> series = new TreeMap<>();
+        for (int day = startDay; day <= endDay; day++) {
+            series.put(DateCodec.format(day), new long[2]);
+        }
+        return series;
+    }
+}
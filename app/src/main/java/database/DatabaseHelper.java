@@ -6,11 +6,18 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
 import android.util.Log;
 
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
 public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "MoneyMasterPro.db";
-    private static final int DATABASE_VERSION = 7; // ✅ Tăng version để add cột mới
+    private static final int DATABASE_VERSION = 21; // ✅ v21: transaction_day_versions + insights
 
     // Common columns
     public static final String COLUMN_ID = "_id";
@@ -34,6 +41,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_CATEGORY_ID = "category_id";
     public static final String COLUMN_NOTE = "note";
     public static final String COLUMN_DATE = "date";
+    public static final String COLUMN_DATE_EPOCH_DAY = "date_epoch_day"; // số ngày kể từ 1970-01-01, xem models.DateCodec
     public static final String COLUMN_PAYMENT_METHOD = "payment_method";
     public static final String COLUMN_USER_ID = "user_id";
 
@@ -44,7 +52,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_CATEGORY_ICON = "icon";
     public static final String COLUMN_CATEGORY_COLOR = "color";
 
-    // Budget table
+    // Budget table (trước v15: mỗi dòng = 1 danh mục, ngân sách = các dòng cùng budget_name)
     public static final String TABLE_BUDGETS = "budgets";
     public static final String COLUMN_BUDGET_AMOUNT = "amount";
     public static final String COLUMN_BUDGET_PERIOD = "period";
@@ -52,6 +60,13 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_BUDGET_END_DATE = "end_date";
     public static final String COLUMN_BUDGET_NAME = "budget_name"; // ✅ FIX: Thêm cột thiếu
 
+    // 🧾 Budget plans (header: user, tên, kỳ, khoảng ngày) + budget items (1 dòng / danh mục, khóa theo plan_id)
+    public static final String TABLE_BUDGET_PLANS = "budget_plans";
+    public static final String TABLE_BUDGET_ITEMS = "budget_items";
+    public static final String COLUMN_PLAN_ID = "plan_id";
+    public static final String COLUMN_START_DAY = "start_day"; // epoch day của start_date
+    public static final String COLUMN_END_DAY = "end_day";     // epoch day của end_date
+
     // Goal table
     public static final String TABLE_GOALS = "goals";
     public static final String COLUMN_GOAL_NAME = "name";
@@ -89,23 +104,25 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String CREATE_TABLE_TRANSACTIONS = "CREATE TABLE " + TABLE_TRANSACTIONS + " ("
             + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
             + COLUMN_TYPE + " TEXT NOT NULL CHECK(" + COLUMN_TYPE + " IN ('income', 'expense')), "
-            + COLUMN_AMOUNT + " REAL NOT NULL CHECK(" + COLUMN_AMOUNT + " > 0), "
+            + COLUMN_AMOUNT + " INTEGER NOT NULL CHECK(" + COLUMN_AMOUNT + " > 0), "
             + COLUMN_CATEGORY_ID + " INTEGER NOT NULL, "
             + COLUMN_USER_ID + " INTEGER NOT NULL, "
             + COLUMN_NOTE + " TEXT, "
             + COLUMN_DATE + " DATE NOT NULL, "
+            + COLUMN_DATE_EPOCH_DAY + " INTEGER, "
             + COLUMN_PAYMENT_METHOD + " TEXT DEFAULT 'Tiền mặt', "
             + COLUMN_CREATED_AT + " DATETIME DEFAULT CURRENT_TIMESTAMP, "
             + "FOREIGN KEY(" + COLUMN_CATEGORY_ID + ") REFERENCES " + TABLE_CATEGORIES + "(" + COLUMN_ID + ") ON DELETE RESTRICT, "
             + "FOREIGN KEY(" + COLUMN_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_ID + ") ON DELETE CASCADE);";
 
     // ✅ FIX: Thêm COLUMN_BUDGET_NAME vào bảng budgets
+    // Chỉ còn dùng cho bước nâng cấp v12 (bảng được chuyển sang budget_plans/budget_items ở v15)
     private static final String CREATE_TABLE_BUDGETS = "CREATE TABLE " + TABLE_BUDGETS + " ("
             + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
             + COLUMN_CATEGORY_ID + " INTEGER NOT NULL, "
             + COLUMN_USER_ID + " INTEGER NOT NULL, "
             + COLUMN_BUDGET_NAME + " TEXT NOT NULL, " // ✅ FIX: Thêm cột budget_name
-            + COLUMN_BUDGET_AMOUNT + " REAL NOT NULL CHECK(" + COLUMN_BUDGET_AMOUNT + " > 0), "
+            + COLUMN_BUDGET_AMOUNT + " INTEGER NOT NULL CHECK(" + COLUMN_BUDGET_AMOUNT + " > 0), "
             + COLUMN_BUDGET_PERIOD + " TEXT NOT NULL CHECK(" + COLUMN_BUDGET_PERIOD + " IN ('weekly', 'monthly', 'yearly')), "
             + COLUMN_BUDGET_START_DATE + " DATE, "
             + COLUMN_BUDGET_END_DATE + " DATE, "
@@ -116,8 +133,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String CREATE_TABLE_GOALS = "CREATE TABLE " + TABLE_GOALS + " ("
             + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
             + COLUMN_NAME + " TEXT NOT NULL, "  // ✅ FIX: Sử dụng COLUMN_NAME thay vì COLUMN_GOAL_NAME
-            + COLUMN_GOAL_TARGET_AMOUNT + " REAL NOT NULL CHECK(" + COLUMN_GOAL_TARGET_AMOUNT + " > 0), "
-            + COLUMN_GOAL_CURRENT_AMOUNT + " REAL NOT NULL DEFAULT 0 CHECK(" + COLUMN_GOAL_CURRENT_AMOUNT + " >= 0), "
+            + COLUMN_GOAL_TARGET_AMOUNT + " INTEGER NOT NULL CHECK(" + COLUMN_GOAL_TARGET_AMOUNT + " > 0), "
+            + COLUMN_GOAL_CURRENT_AMOUNT + " INTEGER NOT NULL DEFAULT 0 CHECK(" + COLUMN_GOAL_CURRENT_AMOUNT + " >= 0), "
             + COLUMN_GOAL_DEADLINE + " DATE NOT NULL, "
             + COLUMN_GOAL_ICON + " TEXT, "
             + COLUMN_GOAL_STATUS + " TEXT DEFAULT 'active' CHECK(" + COLUMN_GOAL_STATUS + " IN ('active', 'completed', 'paused')), "
@@ -131,15 +148,876 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
             + COLUMN_GOAL_ID + " INTEGER NOT NULL, "
             + COLUMN_TRANSACTION_ID + " INTEGER NOT NULL, "
-            + COLUMN_GOAL_TRANSACTION_AMOUNT + " REAL NOT NULL CHECK(" + COLUMN_GOAL_TRANSACTION_AMOUNT + " > 0), "
+            + COLUMN_GOAL_TRANSACTION_AMOUNT + " INTEGER NOT NULL CHECK(" + COLUMN_GOAL_TRANSACTION_AMOUNT + " > 0), "
             + COLUMN_GOAL_TRANSACTION_NOTE + " TEXT, "
             + COLUMN_CREATED_AT + " DATETIME DEFAULT CURRENT_TIMESTAMP, "
             + "FOREIGN KEY(" + COLUMN_GOAL_ID + ") REFERENCES " + TABLE_GOALS + "(" + COLUMN_ID + ") ON DELETE CASCADE, "
             + "FOREIGN KEY(" + COLUMN_TRANSACTION_ID + ") REFERENCES " + TABLE_TRANSACTIONS + "(" + COLUMN_ID + ") ON DELETE CASCADE, "
             + "UNIQUE(" + COLUMN_GOAL_ID + ", " + COLUMN_TRANSACTION_ID + "));";
 
-    public DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    // ⚡ Danh sách mục tiêu theo user (+ lọc status, sắp theo created_at) và đếm theo status - xem GoalDAO
+    private static final String CREATE_INDEX_GOALS_USER_STATUS = "CREATE INDEX IF NOT EXISTS idx_goals_user_status "
+            + "ON " + TABLE_GOALS + "(" + COLUMN_USER_ID + ", " + COLUMN_GOAL_STATUS + ", " + COLUMN_CREATED_AT + ")";
+
+    // Danh mục theo loại sắp theo tên + tìm theo (tên, loại) - xem CategoryDAO
+    private static final String CREATE_INDEX_CATEGORIES_TYPE_NAME = "CREATE INDEX IF NOT EXISTS idx_categories_type_name "
+            + "ON " + TABLE_CATEGORIES + "(" + COLUMN_CATEGORY_TYPE + ", " + COLUMN_CATEGORY_NAME + ")";
+
+    // ⚡ Indexes - các truy vấn tổng hợp luôn lọc theo user_id trước, sau đó type/category và khoảng ngày.
+    // Khoảng ngày lọc trên date_epoch_day nên range scan và ORDER BY đều là so sánh số nguyên.
+    public static final String INDEX_TRANSACTIONS_USER_TYPE_DAY = "idx_transactions_user_type_day";
+    public static final String INDEX_TRANSACTIONS_USER_CATEGORY_DAY = "idx_transactions_user_category_day";
+    public static final String INDEX_TRANSACTIONS_USER_DAY = "idx_transactions_user_day";
+
+    // Index cũ trên cột chuỗi date (trước v13)
+    private static final String[] LEGACY_DATE_INDEXES = {
+            "idx_transactions_user_type_date", "idx_transactions_user_category_date", "idx_transactions_user_date"
+    };
+
+    private static final String CREATE_INDEX_TRANSACTIONS_USER_TYPE_DAY = "CREATE INDEX IF NOT EXISTS "
+            + INDEX_TRANSACTIONS_USER_TYPE_DAY + " ON " + TABLE_TRANSACTIONS + " ("
+            + COLUMN_USER_ID + ", " + COLUMN_TYPE + ", " + COLUMN_DATE_EPOCH_DAY + ");";
+
+    private static final String CREATE_INDEX_TRANSACTIONS_USER_CATEGORY_DAY = "CREATE INDEX IF NOT EXISTS "
+            + INDEX_TRANSACTIONS_USER_CATEGORY_DAY + " ON " + TABLE_TRANSACTIONS + " ("
+            + COLUMN_USER_ID + ", " + COLUMN_CATEGORY_ID + ", " + COLUMN_DATE_EPOCH_DAY + ");";
+
+    // Dùng cho danh sách giao dịch (ORDER BY date_epoch_day DESC) và đếm theo khoảng ngày không lọc type
+    private static final String CREATE_INDEX_TRANSACTIONS_USER_DAY = "CREATE INDEX IF NOT EXISTS "
+            + INDEX_TRANSACTIONS_USER_DAY + " ON " + TABLE_TRANSACTIONS + " ("
+            + COLUMN_USER_ID + ", " + COLUMN_DATE_EPOCH_DAY + ", " + COLUMN_CREATED_AT + ");";
+
+    // 📅 date_epoch_day suy ra từ date bằng triggers: nơi ghi chỉ set date vẫn đúng,
+    // nơi đã tự điền (DateCodec) thì trigger insert bỏ qua
+    private static final String CREATE_TRIGGER_EPOCH_DAY_INSERT = "CREATE TRIGGER IF NOT EXISTS trg_transactions_epoch_day_insert "
+            + "AFTER INSERT ON " + TABLE_TRANSACTIONS + " WHEN NEW." + COLUMN_DATE_EPOCH_DAY + " IS NULL BEGIN "
+            + "UPDATE " + TABLE_TRANSACTIONS + " SET " + COLUMN_DATE_EPOCH_DAY + " = " + epochDayOf("NEW." + COLUMN_DATE)
+            + " WHERE " + COLUMN_ID + " = NEW." + COLUMN_ID + "; END;";
+
+    private static final String CREATE_TRIGGER_EPOCH_DAY_UPDATE = "CREATE TRIGGER IF NOT EXISTS trg_transactions_epoch_day_update "
+            + "AFTER UPDATE OF " + COLUMN_DATE + " ON " + TABLE_TRANSACTIONS + " BEGIN "
+            + "UPDATE " + TABLE_TRANSACTIONS + " SET " + COLUMN_DATE_EPOCH_DAY + " = " + epochDayOf("NEW." + COLUMN_DATE)
+            + " WHERE " + COLUMN_ID + " = NEW." + COLUMN_ID + "; END;";
+
+    /**
+     * Biểu thức SQL: ngày "yyyy-MM-dd" -> epoch day (julianday('1970-01-01') = 2440587.5), khớp với DateCodec.parse()
+     */
+    public static String epochDayOf(String dateExpression) {
+        return "CAST(julianday(" + dateExpression + ") - 2440587.5 AS INTEGER)";
+    }
+
+    // 📊 Monthly rollups - tổng tiền + số giao dịch theo (user, tháng, danh mục, loại).
+    // Được cập nhật bởi triggers trên bảng transactions nên luôn khớp với dữ liệu gốc.
+    public static final String TABLE_MONTHLY_ROLLUPS = "monthly_rollups";
+    public static final String COLUMN_YEAR_MONTH = "year_month"; // "yyyy-MM"
+    public static final String COLUMN_ROLLUP_TOTAL = "total";
+    public static final String COLUMN_ROLLUP_TX_COUNT = "tx_count";
+
+    private static final String CREATE_TABLE_MONTHLY_ROLLUPS = "CREATE TABLE IF NOT EXISTS " + TABLE_MONTHLY_ROLLUPS + " ("
+            + COLUMN_USER_ID + " INTEGER NOT NULL, "
+            + COLUMN_YEAR_MONTH + " TEXT NOT NULL, "
+            + COLUMN_CATEGORY_ID + " INTEGER NOT NULL, "
+            + COLUMN_TYPE + " TEXT NOT NULL, "
+            + COLUMN_ROLLUP_TOTAL + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_ROLLUP_TX_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+            + "PRIMARY KEY(" + COLUMN_USER_ID + ", " + COLUMN_YEAR_MONTH + ", " + COLUMN_CATEGORY_ID + ", " + COLUMN_TYPE + ")"
+            + ") WITHOUT ROWID;";
+
+    // 🗄️ Archived rollups - cùng khóa với monthly_rollups, chỉ cộng các giao dịch đã chuyển sang file archive
+    // (xem TransactionArchive). Các hàm tính lại cộng thêm bảng này nên tổng hợp không đổi sau khi archive.
+    public static final String TABLE_ARCHIVED_ROLLUPS = "archived_rollups";
+
+    private static final String CREATE_TABLE_ARCHIVED_ROLLUPS = "CREATE TABLE IF NOT EXISTS " + TABLE_ARCHIVED_ROLLUPS + " ("
+            + COLUMN_USER_ID + " INTEGER NOT NULL, "
+            + COLUMN_YEAR_MONTH + " TEXT NOT NULL, "
+            + COLUMN_CATEGORY_ID + " INTEGER NOT NULL, "
+            + COLUMN_TYPE + " TEXT NOT NULL, "
+            + COLUMN_ROLLUP_TOTAL + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_ROLLUP_TX_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+            + "PRIMARY KEY(" + COLUMN_USER_ID + ", " + COLUMN_YEAR_MONTH + ", " + COLUMN_CATEGORY_ID + ", " + COLUMN_TYPE + ")"
+            + ") WITHOUT ROWID;";
+
+    // 🗄️ Archived day totals - như archived_rollups nhưng theo ngày, cho các khoảng ngày lẻ tháng (budget_progress,
+    // chuỗi theo ngày, phần lẻ của MonthlyRollupDAO). sum_squares (tổng bình phương số tiền) để tính lại phương sai
+    // của category_stats mà không cần đọc từng dòng trong file archive.
+    public static final String TABLE_ARCHIVED_DAY_TOTALS = "archived_day_totals";
+    public static final String COLUMN_SUM_SQUARES = "sum_squares";
+
+    private static final String CREATE_TABLE_ARCHIVED_DAY_TOTALS = "CREATE TABLE IF NOT EXISTS " + TABLE_ARCHIVED_DAY_TOTALS + " ("
+            + COLUMN_USER_ID + " INTEGER NOT NULL, "
+            + COLUMN_DATE_EPOCH_DAY + " INTEGER NOT NULL, "
+            + COLUMN_CATEGORY_ID + " INTEGER NOT NULL, "
+            + COLUMN_TYPE + " TEXT NOT NULL, "
+            + COLUMN_ROLLUP_TOTAL + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_ROLLUP_TX_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_SUM_SQUARES + " REAL NOT NULL DEFAULT 0, "
+            + "PRIMARY KEY(" + COLUMN_USER_ID + ", " + COLUMN_DATE_EPOCH_DAY + ", " + COLUMN_CATEGORY_ID + ", " + COLUMN_TYPE + ")"
+            + ") WITHOUT ROWID;";
+
+    // 🗄️ Id giao dịch TransactionArchive đang chuyển sang (hoặc đưa về từ) file archive - chỉ có dòng bên trong transaction
+    // của lượt chuyển. Triggers cộng/trừ tổng hợp bỏ qua các id này thay vì bị DROP/CREATE lại, nên lệnh ghi khác chạy
+    // song song vẫn được tính.
+    public static final String TABLE_ARCHIVE_MOVES = "archive_moves";
+
+    private static final String CREATE_TABLE_ARCHIVE_MOVES = "CREATE TABLE IF NOT EXISTS " + TABLE_ARCHIVE_MOVES + " ("
+            + COLUMN_ID + " INTEGER PRIMARY KEY);";
+
+    private static String notArchiveMoveOf(String row) {
+        return "NOT EXISTS (SELECT 1 FROM " + TABLE_ARCHIVE_MOVES + " WHERE " + COLUMN_ID + " = " + row + "." + COLUMN_ID + ")";
+    }
+
+    // Tháng của 1 giao dịch: "yyyy-MM-dd" -> "yyyy-MM"
+    private static String yearMonthOf(String row) {
+        return "substr(" + row + "." + COLUMN_DATE + ", 1, 7)";
+    }
+
+    // Khóa của dòng rollup ứng với NEW/OLD
+    private static String rollupKeyOf(String row) {
+        return COLUMN_USER_ID + " = " + row + "." + COLUMN_USER_ID
+                + " AND " + COLUMN_YEAR_MONTH + " = " + yearMonthOf(row)
+                + " AND " + COLUMN_CATEGORY_ID + " = " + row + "." + COLUMN_CATEGORY_ID
+                + " AND " + COLUMN_TYPE + " = " + row + "." + COLUMN_TYPE;
+    }
+
+    // SQLite trên API 24 chưa có UPSERT nên dùng INSERT OR IGNORE + UPDATE
+    private static String rollupAddOf(String row) {
+        return "INSERT OR IGNORE INTO " + TABLE_MONTHLY_ROLLUPS + " ("
+                + COLUMN_USER_ID + ", " + COLUMN_YEAR_MONTH + ", " + COLUMN_CATEGORY_ID + ", " + COLUMN_TYPE + ", "
+                + COLUMN_ROLLUP_TOTAL + ", " + COLUMN_ROLLUP_TX_COUNT + ") VALUES ("
+                + row + "." + COLUMN_USER_ID + ", " + yearMonthOf(row) + ", "
+                + row + "." + COLUMN_CATEGORY_ID + ", " + row + "." + COLUMN_TYPE + ", 0, 0); "
+                + "UPDATE " + TABLE_MONTHLY_ROLLUPS + " SET "
+                + COLUMN_ROLLUP_TOTAL + " = " + COLUMN_ROLLUP_TOTAL + " + " + row + "." + COLUMN_AMOUNT + ", "
+                + COLUMN_ROLLUP_TX_COUNT + " = " + COLUMN_ROLLUP_TX_COUNT + " + 1 "
+                + "WHERE " + rollupKeyOf(row) + "; ";
+    }
+
+    private static String rollupRemoveOf(String row) {
+        return "UPDATE " + TABLE_MONTHLY_ROLLUPS + " SET "
+                + COLUMN_ROLLUP_TOTAL + " = " + COLUMN_ROLLUP_TOTAL + " - " + row + "." + COLUMN_AMOUNT + ", "
+                + COLUMN_ROLLUP_TX_COUNT + " = " + COLUMN_ROLLUP_TX_COUNT + " - 1 "
+                + "WHERE " + rollupKeyOf(row) + "; "
+                + "DELETE FROM " + TABLE_MONTHLY_ROLLUPS + " WHERE " + rollupKeyOf(row)
+                + " AND " + COLUMN_ROLLUP_TX_COUNT + " <= 0; ";
+    }
+
+    private static final String CREATE_TRIGGER_ROLLUP_INSERT = "CREATE TRIGGER IF NOT EXISTS trg_transactions_rollup_insert "
+            + "AFTER INSERT ON " + TABLE_TRANSACTIONS + " WHEN " + notArchiveMoveOf("NEW") + " BEGIN "
+            + rollupAddOf("NEW")
+            + "END;";
+
+    private static final String CREATE_TRIGGER_ROLLUP_DELETE = "CREATE TRIGGER IF NOT EXISTS trg_transactions_rollup_delete "
+            + "AFTER DELETE ON " + TABLE_TRANSACTIONS + " WHEN " + notArchiveMoveOf("OLD") + " BEGIN "
+            + rollupRemoveOf("OLD")
+            + "END;";
+
+    private static final String CREATE_TRIGGER_ROLLUP_UPDATE = "CREATE TRIGGER IF NOT EXISTS trg_transactions_rollup_update "
+            + "AFTER UPDATE OF " + COLUMN_AMOUNT + ", " + COLUMN_DATE + ", " + COLUMN_CATEGORY_ID + ", "
+            + COLUMN_TYPE + ", " + COLUMN_USER_ID + " ON " + TABLE_TRANSACTIONS + " BEGIN "
+            + rollupRemoveOf("OLD")
+            + rollupAddOf("NEW")
+            + "END;";
+
+    // 💰 User balances - sổ cái số dư theo user, cập nhật bởi triggers trong cùng transaction với thao tác ghi
+    public static final String TABLE_USER_BALANCES = "user_balances";
+    public static final String COLUMN_BALANCE = "balance";
+    public static final String COLUMN_TOTAL_INCOME = "total_income";
+    public static final String COLUMN_TOTAL_EXPENSE = "total_expense";
+
+    private static final String CREATE_TABLE_USER_BALANCES = "CREATE TABLE IF NOT EXISTS " + TABLE_USER_BALANCES + " ("
+            + COLUMN_USER_ID + " INTEGER PRIMARY KEY, "
+            + COLUMN_TOTAL_INCOME + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_TOTAL_EXPENSE + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_BALANCE + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_UPDATED_AT + " DATETIME DEFAULT CURRENT_TIMESTAMP);";
+
+    // Cộng (sign = "+") hoặc trừ (sign = "-") 1 giao dịch NEW/OLD vào sổ cái
+    private static String balanceApplyOf(String row, String sign) {
+        return "INSERT OR IGNORE INTO " + TABLE_USER_BALANCES + " (" + COLUMN_USER_ID + ") VALUES (" + row + "." + COLUMN_USER_ID + "); "
+                + "UPDATE " + TABLE_USER_BALANCES + " SET "
+                + COLUMN_TOTAL_INCOME + " = " + COLUMN_TOTAL_INCOME + " " + sign
+                + " (CASE WHEN " + row + "." + COLUMN_TYPE + " = 'income' THEN " + row + "." + COLUMN_AMOUNT + " ELSE 0 END), "
+                + COLUMN_TOTAL_EXPENSE + " = " + COLUMN_TOTAL_EXPENSE + " " + sign
+                + " (CASE WHEN " + row + "." + COLUMN_TYPE + " = 'expense' THEN " + row + "." + COLUMN_AMOUNT + " ELSE 0 END), "
+                + COLUMN_BALANCE + " = " + COLUMN_BALANCE + " " + sign
+                + " (CASE WHEN " + row + "." + COLUMN_TYPE + " = 'income' THEN " + row + "." + COLUMN_AMOUNT
+                + " ELSE -" + row + "." + COLUMN_AMOUNT + " END), "
+                + COLUMN_UPDATED_AT + " = CURRENT_TIMESTAMP "
+                + "WHERE " + COLUMN_USER_ID + " = " + row + "." + COLUMN_USER_ID + "; ";
+    }
+
+    private static final String CREATE_TRIGGER_BALANCE_INSERT = "CREATE TRIGGER IF NOT EXISTS trg_transactions_balance_insert "
+            + "AFTER INSERT ON " + TABLE_TRANSACTIONS + " WHEN " + notArchiveMoveOf("NEW") + " BEGIN "
+            + balanceApplyOf("NEW", "+")
+            + "END;";
+
+    private static final String CREATE_TRIGGER_BALANCE_DELETE = "CREATE TRIGGER IF NOT EXISTS trg_transactions_balance_delete "
+            + "AFTER DELETE ON " + TABLE_TRANSACTIONS + " WHEN " + notArchiveMoveOf("OLD") + " BEGIN "
+            + balanceApplyOf("OLD", "-")
+            + "END;";
+
+    private static final String CREATE_TRIGGER_BALANCE_UPDATE = "CREATE TRIGGER IF NOT EXISTS trg_transactions_balance_update "
+            + "AFTER UPDATE OF " + COLUMN_AMOUNT + ", " + COLUMN_TYPE + ", " + COLUMN_USER_ID + " ON " + TABLE_TRANSACTIONS + " BEGIN "
+            + balanceApplyOf("OLD", "-")
+            + balanceApplyOf("NEW", "+")
+            + "END;";
+
+    private static final String CREATE_TABLE_BUDGET_PLANS = "CREATE TABLE IF NOT EXISTS " + TABLE_BUDGET_PLANS + " ("
+            + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COLUMN_USER_ID + " INTEGER NOT NULL, "
+            + COLUMN_BUDGET_NAME + " TEXT NOT NULL, "
+            + COLUMN_BUDGET_PERIOD + " TEXT NOT NULL CHECK(" + COLUMN_BUDGET_PERIOD + " IN ('weekly', 'monthly', 'yearly')), "
+            + COLUMN_BUDGET_START_DATE + " DATE, "
+            + COLUMN_BUDGET_END_DATE + " DATE, "
+            + COLUMN_START_DAY + " INTEGER, "
+            + COLUMN_END_DAY + " INTEGER, "
+            + COLUMN_CREATED_AT + " DATETIME DEFAULT CURRENT_TIMESTAMP, "
+            + "FOREIGN KEY(" + COLUMN_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_ID + ") ON DELETE CASCADE);";
+
+    private static final String CREATE_TABLE_BUDGET_ITEMS = "CREATE TABLE IF NOT EXISTS " + TABLE_BUDGET_ITEMS + " ("
+            + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COLUMN_PLAN_ID + " INTEGER NOT NULL, "
+            + COLUMN_CATEGORY_ID + " INTEGER NOT NULL, "
+            + COLUMN_BUDGET_AMOUNT + " INTEGER NOT NULL CHECK(" + COLUMN_BUDGET_AMOUNT + " > 0), "
+            + COLUMN_CREATED_AT + " DATETIME DEFAULT CURRENT_TIMESTAMP, "
+            + "FOREIGN KEY(" + COLUMN_PLAN_ID + ") REFERENCES " + TABLE_BUDGET_PLANS + "(" + COLUMN_ID + ") ON DELETE CASCADE, "
+            + "FOREIGN KEY(" + COLUMN_CATEGORY_ID + ") REFERENCES " + TABLE_CATEGORIES + "(" + COLUMN_ID + ") ON DELETE CASCADE);";
+
+    // Danh sách ngân sách của user + tìm ngân sách chứa 1 ngày (triggers budget_progress)
+    private static final String CREATE_INDEX_BUDGET_PLANS_USER_DAYS = "CREATE INDEX IF NOT EXISTS idx_budget_plans_user_days "
+            + "ON " + TABLE_BUDGET_PLANS + "(" + COLUMN_USER_ID + ", " + COLUMN_START_DAY + ", " + COLUMN_END_DAY + ")";
+
+    private static final String CREATE_INDEX_BUDGET_ITEMS_PLAN_CATEGORY = "CREATE INDEX IF NOT EXISTS idx_budget_items_plan_category "
+            + "ON " + TABLE_BUDGET_ITEMS + "(" + COLUMN_PLAN_ID + ", " + COLUMN_CATEGORY_ID + ")";
+
+    /**
+     * Biểu thức SQL: ngày ngân sách ("dd/MM/yyyy" hoặc "yyyy-MM-dd") -> epoch day, khớp với DateCodec.parse()
+     */
+    public static String budgetDayOf(String dateExpression) {
+        return epochDayOf("CASE WHEN substr(" + dateExpression + ", 3, 1) = '/' THEN "
+                + "substr(" + dateExpression + ", 7, 4) || '-' || substr(" + dateExpression + ", 4, 2) || '-' || substr(" + dateExpression + ", 1, 2) "
+                + "ELSE " + dateExpression + " END");
+    }
+
+    // 📅 start_day/end_day điền từ start_date/end_date nếu nơi ghi không tự điền, và khi đổi ngày
+    private static final String FILL_PLAN_DAYS = "UPDATE " + TABLE_BUDGET_PLANS + " SET "
+            + COLUMN_START_DAY + " = " + budgetDayOf("NEW." + COLUMN_BUDGET_START_DATE) + ", "
+            + COLUMN_END_DAY + " = " + budgetDayOf("NEW." + COLUMN_BUDGET_END_DATE) + " "
+            + "WHERE " + COLUMN_ID + " = NEW." + COLUMN_ID + "; ";
+
+    private static final String CREATE_TRIGGER_PLAN_DAYS_INSERT = "CREATE TRIGGER IF NOT EXISTS trg_budget_plans_days_insert "
+            + "AFTER INSERT ON " + TABLE_BUDGET_PLANS + " "
+            + "WHEN NEW." + COLUMN_START_DAY + " IS NULL OR NEW." + COLUMN_END_DAY + " IS NULL BEGIN "
+            + FILL_PLAN_DAYS
+            + "END;";
+
+    private static final String CREATE_TRIGGER_PLAN_DAYS_UPDATE = "CREATE TRIGGER IF NOT EXISTS trg_budget_plans_days_update "
+            + "AFTER UPDATE OF " + COLUMN_BUDGET_START_DATE + ", " + COLUMN_BUDGET_END_DATE + " ON " + TABLE_BUDGET_PLANS + " BEGIN "
+            + FILL_PLAN_DAYS
+            + "END;";
+
+    // Xóa plan -> xóa items (foreign_keys không bật nên không dựa vào ON DELETE CASCADE)
+    private static final String CREATE_TRIGGER_PLAN_DELETE = "CREATE TRIGGER IF NOT EXISTS trg_budget_plans_delete "
+            + "AFTER DELETE ON " + TABLE_BUDGET_PLANS + " BEGIN "
+            + "DELETE FROM " + TABLE_BUDGET_ITEMS + " WHERE " + COLUMN_PLAN_ID + " = OLD." + COLUMN_ID + "; "
+            + "END;";
+
+    // 🧾 Budget progress - đã chi + số giao dịch chi tiêu của từng budget item (1 danh mục trong khoảng ngày của plan).
+    // Triggers trên transactions cộng/trừ vào các item có plan chứa ngày giao dịch,
+    // triggers trên budget_plans/budget_items tính lại khi item được tạo hoặc đổi danh mục/khoảng ngày.
+    public static final String TABLE_BUDGET_PROGRESS = "budget_progress";
+    public static final String COLUMN_ITEM_ID = "item_id";
+    public static final String COLUMN_SPENT = "spent";
+    public static final String COLUMN_TX_COUNT = "tx_count";
+
+    private static final String CREATE_TABLE_BUDGET_PROGRESS = "CREATE TABLE IF NOT EXISTS " + TABLE_BUDGET_PROGRESS + " ("
+            + COLUMN_ITEM_ID + " INTEGER PRIMARY KEY, "
+            + COLUMN_SPENT + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_TX_COUNT + " INTEGER NOT NULL DEFAULT 0);";
+
+    // Tính dòng budget_progress từ transactions (+ archived_day_totals nếu `archived`) cho các item thỏa `where`
+    // (alias budget_items = i, budget_plans = p)
+    private static String selectBudgetProgressInto(String where, boolean archived) {
+        String sameItem = " WHERE t." + COLUMN_USER_ID + " = p." + COLUMN_USER_ID
+                + " AND t." + COLUMN_CATEGORY_ID + " = i." + COLUMN_CATEGORY_ID
+                + " AND t." + COLUMN_TYPE + " = 'expense'"
+                + " AND t." + COLUMN_DATE_EPOCH_DAY + " BETWEEN p." + COLUMN_START_DAY + " AND p." + COLUMN_END_DAY;
+        String spentOf = "FROM " + TABLE_TRANSACTIONS + " t" + sameItem;
+        String archivedOf = "FROM " + TABLE_ARCHIVED_DAY_TOTALS + " t" + sameItem;
+
+        return "INSERT OR REPLACE INTO " + TABLE_BUDGET_PROGRESS + " ("
+                + COLUMN_ITEM_ID + ", " + COLUMN_SPENT + ", " + COLUMN_TX_COUNT + ") "
+                + "SELECT i." + COLUMN_ID + ", "
+                + "(SELECT COALESCE(SUM(t." + COLUMN_AMOUNT + "), 0) " + spentOf + ")"
+                + (archived ? " + (SELECT COALESCE(SUM(t." + COLUMN_ROLLUP_TOTAL + "), 0) " + archivedOf + ")" : "") + ", "
+                + "(SELECT COUNT(*) " + spentOf + ")"
+                + (archived ? " + (SELECT COALESCE(SUM(t." + COLUMN_ROLLUP_TX_COUNT + "), 0) " + archivedOf + ")" : "") + " "
+                + "FROM " + TABLE_BUDGET_ITEMS + " i JOIN " + TABLE_BUDGET_PLANS + " p ON p." + COLUMN_ID + " = i." + COLUMN_PLAN_ID
+                + (where != null ? " WHERE " + where : "");
+    }
+
+    // Cộng (sign = "+") hoặc trừ (sign = "-") 1 giao dịch NEW/OLD vào các item chứa nó.
+    // Ngày lấy từ date (không phải date_epoch_day) vì trigger điền date_epoch_day có thể chạy sau.
+    private static String budgetProgressApplyOf(String row, String sign) {
+        String day = epochDayOf(row + "." + COLUMN_DATE);
+        return "UPDATE " + TABLE_BUDGET_PROGRESS + " SET "
+                + COLUMN_SPENT + " = " + COLUMN_SPENT + " " + sign + " " + row + "." + COLUMN_AMOUNT + ", "
+                + COLUMN_TX_COUNT + " = " + COLUMN_TX_COUNT + " " + sign + " 1 "
+                + "WHERE " + row + "." + COLUMN_TYPE + " = 'expense' "
+                + "AND " + COLUMN_ITEM_ID + " IN (SELECT i." + COLUMN_ID + " FROM " + TABLE_BUDGET_PLANS + " p "
+                + "JOIN " + TABLE_BUDGET_ITEMS + " i ON i." + COLUMN_PLAN_ID + " = p." + COLUMN_ID + " "
+                + "WHERE p." + COLUMN_USER_ID + " = " + row + "." + COLUMN_USER_ID + " "
+                + "AND p." + COLUMN_START_DAY + " <= " + day + " AND p." + COLUMN_END_DAY + " >= " + day + " "
+                + "AND i." + COLUMN_CATEGORY_ID + " = " + row + "." + COLUMN_CATEGORY_ID + "); ";
+    }
+
+    private static final String CREATE_TRIGGER_BUDGET_PROGRESS_TX_INSERT = "CREATE TRIGGER IF NOT EXISTS trg_transactions_budget_progress_insert "
+            + "AFTER INSERT ON " + TABLE_TRANSACTIONS + " WHEN " + notArchiveMoveOf("NEW") + " BEGIN "
+            + budgetProgressApplyOf("NEW", "+")
+            + "END;";
+
+    private static final String CREATE_TRIGGER_BUDGET_PROGRESS_TX_DELETE = "CREATE TRIGGER IF NOT EXISTS trg_transactions_budget_progress_delete "
+            + "AFTER DELETE ON " + TABLE_TRANSACTIONS + " WHEN " + notArchiveMoveOf("OLD") + " BEGIN "
+            + budgetProgressApplyOf("OLD", "-")
+            + "END;";
+
+    private static final String CREATE_TRIGGER_BUDGET_PROGRESS_TX_UPDATE = "CREATE TRIGGER IF NOT EXISTS trg_transactions_budget_progress_update "
+            + "AFTER UPDATE OF " + COLUMN_AMOUNT + ", " + COLUMN_DATE + ", " + COLUMN_CATEGORY_ID + ", "
+            + COLUMN_TYPE + ", " + COLUMN_USER_ID + " ON " + TABLE_TRANSACTIONS + " BEGIN "
+            + budgetProgressApplyOf("OLD", "-")
+            + budgetProgressApplyOf("NEW", "+")
+            + "END;";
+
+    private static final String CREATE_TRIGGER_BUDGET_PROGRESS_ITEM_INSERT = "CREATE TRIGGER IF NOT EXISTS trg_budget_items_progress_insert "
+            + "AFTER INSERT ON " + TABLE_BUDGET_ITEMS + " BEGIN "
+            + selectBudgetProgressInto("i." + COLUMN_ID + " = NEW." + COLUMN_ID, true) + "; "
+            + "END;";
+
+    private static final String CREATE_TRIGGER_BUDGET_PROGRESS_ITEM_UPDATE = "CREATE TRIGGER IF NOT EXISTS trg_budget_items_progress_update "
+            + "AFTER UPDATE OF " + COLUMN_PLAN_ID + ", " + COLUMN_CATEGORY_ID + " ON " + TABLE_BUDGET_ITEMS + " BEGIN "
+            + selectBudgetProgressInto("i." + COLUMN_ID + " = NEW." + COLUMN_ID, true) + "; "
+            + "END;";
+
+    private static final String CREATE_TRIGGER_BUDGET_PROGRESS_ITEM_DELETE = "CREATE TRIGGER IF NOT EXISTS trg_budget_items_progress_delete "
+            + "AFTER DELETE ON " + TABLE_BUDGET_ITEMS + " BEGIN "
+            + "DELETE FROM " + TABLE_BUDGET_PROGRESS + " WHERE " + COLUMN_ITEM_ID + " = OLD." + COLUMN_ID + "; "
+            + "END;";
+
+    // Đổi khoảng ngày / user của plan -> tính lại mọi item của plan
+    private static final String CREATE_TRIGGER_BUDGET_PROGRESS_PLAN_UPDATE = "CREATE TRIGGER IF NOT EXISTS trg_budget_plans_progress_update "
+            + "AFTER UPDATE OF " + COLUMN_START_DAY + ", " + COLUMN_END_DAY + ", " + COLUMN_USER_ID + " ON " + TABLE_BUDGET_PLANS + " BEGIN "
+            + selectBudgetProgressInto("i." + COLUMN_PLAN_ID + " = NEW." + COLUMN_ID, true) + "; "
+            + "END;";
+
+    // 🚨 Thống kê online theo (user, danh mục chi) - triggers cập nhật O(1) mỗi lần ghi giao dịch:
+    // - Welford (tx_count, mean, m2): trung bình + phương sai số tiền 1 giao dịch, trừ ngược được khi xóa
+    // - EWMA tổng chi theo tuần (tuần bắt đầu Thứ Hai): week_spent cộng dồn tuần mới nhất, sang tuần mới thì
+    //   gộp tuần cũ vào weekly_ewma. Tuần không có giao dịch không được gộp.
+    public static final String TABLE_CATEGORY_STATS = "category_stats";
+    public static final String COLUMN_MEAN = "mean";
+    public static final String COLUMN_M2 = "m2";
+    public static final String COLUMN_WEEK_START = "week_start";
+    public static final String COLUMN_WEEK_SPENT = "week_spent";
+    public static final String COLUMN_WEEKLY_EWMA = "weekly_ewma";
+    public static final String COLUMN_WEEKS_SEEN = "weeks_seen";
+
+    // Giao dịch bất thường phát hiện lúc insert: 'large' = số tiền vượt xa trung bình danh mục,
+    // 'spike' = lần đầu chi trong tuần của danh mục vượt ngưỡng so với EWMA các tuần trước
+    public static final String TABLE_TRANSACTION_ANOMALIES = "transaction_anomalies";
+    public static final String COLUMN_ANOMALY_KIND = "kind";
+    public static final String COLUMN_OBSERVED = "observed";
+    public static final String COLUMN_BASELINE = "baseline";
+    public static final String ANOMALY_LARGE = "large";
+    public static final String ANOMALY_SPIKE = "spike";
+
+    // Giao dịch lớn: > mean + LARGE_Z độ lệch chuẩn, khi danh mục đã có ít nhất LARGE_MIN_SAMPLES giao dịch
+    static final int LARGE_MIN_SAMPLES = 10;
+    static final int LARGE_Z = 3;
+    // Tăng đột biến: chi tuần này > SPIKE_RATIO lần EWMA, khi đã gộp ít nhất SPIKE_MIN_WEEKS tuần
+    static final int SPIKE_MIN_WEEKS = 2;
+    static final int SPIKE_RATIO = 2;
+    static final double WEEKLY_EWMA_ALPHA = 0.3;
+
+    private static final String CREATE_TABLE_CATEGORY_STATS = "CREATE TABLE IF NOT EXISTS " + TABLE_CATEGORY_STATS + " ("
+            + COLUMN_USER_ID + " INTEGER NOT NULL, "
+            + COLUMN_CATEGORY_ID + " INTEGER NOT NULL, "
+            + COLUMN_TX_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_MEAN + " REAL NOT NULL DEFAULT 0, "
+            + COLUMN_M2 + " REAL NOT NULL DEFAULT 0, "
+            + COLUMN_WEEK_START + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_WEEK_SPENT + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_WEEKLY_EWMA + " REAL NOT NULL DEFAULT 0, "
+            + COLUMN_WEEKS_SEEN + " INTEGER NOT NULL DEFAULT 0, "
+            + "PRIMARY KEY (" + COLUMN_USER_ID + ", " + COLUMN_CATEGORY_ID + ")) WITHOUT ROWID;";
+
+    private static final String CREATE_TABLE_TRANSACTION_ANOMALIES = "CREATE TABLE IF NOT EXISTS " + TABLE_TRANSACTION_ANOMALIES + " ("
+            + COLUMN_TRANSACTION_ID + " INTEGER NOT NULL, "
+            + COLUMN_ANOMALY_KIND + " TEXT NOT NULL, "
+            + COLUMN_USER_ID + " INTEGER NOT NULL, "
+            + COLUMN_CATEGORY_ID + " INTEGER NOT NULL, "
+            + COLUMN_DATE_EPOCH_DAY + " INTEGER NOT NULL, "
+            + COLUMN_OBSERVED + " INTEGER NOT NULL, "
+            + COLUMN_BASELINE + " REAL NOT NULL, "
+            + "PRIMARY KEY (" + COLUMN_TRANSACTION_ID + ", " + COLUMN_ANOMALY_KIND + "));";
+
+    private static final String CREATE_INDEX_TRANSACTION_ANOMALIES_USER_DAY = "CREATE INDEX IF NOT EXISTS idx_transaction_anomalies_user_day ON "
+            + TABLE_TRANSACTION_ANOMALIES + " (" + COLUMN_USER_ID + ", " + COLUMN_DATE_EPOCH_DAY + ");";
+
+    // Epoch day của Thứ Hai đầu tuần chứa `day` (epoch day 0 là Thứ Năm)
+    static String weekStartOf(String day) {
+        return "(" + day + " - (" + day + " + 3) % 7)";
+    }
+
+    private static String categoryStatsRowOf(String row) {
+        return COLUMN_USER_ID + " = " + row + "." + COLUMN_USER_ID + " AND " + COLUMN_CATEGORY_ID + " = " + row + "." + COLUMN_CATEGORY_ID
+                + " AND " + row + "." + COLUMN_TYPE + " = 'expense'";
+    }
+
+    // Cộng 1 giao dịch chi NEW/OLD vào thống kê. Mọi biểu thức SET đọc giá trị cũ của dòng.
+    private static String categoryStatsAddOf(String row) {
+        String x = row + "." + COLUMN_AMOUNT;
+        String week = weekStartOf(epochDayOf(row + "." + COLUMN_DATE));
+        String delta = "(" + x + " - " + COLUMN_MEAN + ")";
+        String newMean = "(" + COLUMN_MEAN + " + " + delta + " / (" + COLUMN_TX_COUNT + " + 1.0))";
+        String foldWeek = week + " > " + COLUMN_WEEK_START + " AND " + COLUMN_WEEK_SPENT + " > 0";
+
+        return "INSERT OR IGNORE INTO " + TABLE_CATEGORY_STATS + " (" + COLUMN_USER_ID + ", " + COLUMN_CATEGORY_ID + ") "
+                + "SELECT " + row + "." + COLUMN_USER_ID + ", " + row + "." + COLUMN_CATEGORY_ID
+                + " WHERE " + row + "." + COLUMN_TYPE + " = 'expense'; "
+                + "UPDATE " + TABLE_CATEGORY_STATS + " SET "
+                + COLUMN_TX_COUNT + " = " + COLUMN_TX_COUNT + " + 1, "
+                + COLUMN_MEAN + " = " + newMean + ", "
+                + COLUMN_M2 + " = " + COLUMN_M2 + " + " + delta + " * (" + x + " - " + newMean + "), "
+                + COLUMN_WEEKLY_EWMA + " = CASE WHEN " + foldWeek + " THEN (CASE WHEN " + COLUMN_WEEKS_SEEN + " = 0 THEN " + COLUMN_WEEK_SPENT
+                + " ELSE " + COLUMN_WEEKLY_EWMA + " + " + WEEKLY_EWMA_ALPHA + " * (" + COLUMN_WEEK_SPENT + " - " + COLUMN_WEEKLY_EWMA + ") END)"
+                + " ELSE " + COLUMN_WEEKLY_EWMA + " END, "
+                + COLUMN_WEEKS_SEEN + " = " + COLUMN_WEEKS_SEEN + " + (CASE WHEN " + foldWeek + " THEN 1 ELSE 0 END), "
+                + COLUMN_WEEK_SPENT + " = CASE WHEN " + week + " > " + COLUMN_WEEK_START + " THEN " + x
+                + " WHEN " + week + " = " + COLUMN_WEEK_START + " THEN " + COLUMN_WEEK_SPENT + " + " + x
+                + " ELSE " + COLUMN_WEEK_SPENT + " END, "
+                + COLUMN_WEEK_START + " = MAX(" + COLUMN_WEEK_START + ", " + week + ") "
+                + "WHERE " + categoryStatsRowOf(row) + "; ";
+    }
+
+    // Trừ 1 giao dịch chi OLD khỏi thống kê (Welford ngược). Tuần cũ đã gộp vào EWMA thì giữ nguyên.
+    private static String categoryStatsRemoveOf(String row) {
+        String x = row + "." + COLUMN_AMOUNT;
+        String week = weekStartOf(epochDayOf(row + "." + COLUMN_DATE));
+        String newMean = "((" + COLUMN_MEAN + " * " + COLUMN_TX_COUNT + " - " + x + ") / (" + COLUMN_TX_COUNT + " - 1.0))";
+
+        return "UPDATE " + TABLE_CATEGORY_STATS + " SET "
+                + COLUMN_TX_COUNT + " = MAX(" + COLUMN_TX_COUNT + " - 1, 0), "
+                + COLUMN_MEAN + " = CASE WHEN " + COLUMN_TX_COUNT + " <= 1 THEN 0 ELSE " + newMean + " END, "
+                + COLUMN_M2 + " = CASE WHEN " + COLUMN_TX_COUNT + " <= 1 THEN 0 ELSE MAX(0, " + COLUMN_M2
+                + " - (" + x + " - " + COLUMN_MEAN + ") * (" + x + " - " + newMean + ")) END, "
+                + COLUMN_WEEK_SPENT + " = " + COLUMN_WEEK_SPENT + " - (CASE WHEN " + week + " = " + COLUMN_WEEK_START
+                + " THEN " + x + " ELSE 0 END) "
+                + "WHERE " + categoryStatsRowOf(row) + "; ";
+    }
+
+    private static String insertAnomalyOf(String kind, String observed, String baseline) {
+        return "INSERT OR IGNORE INTO " + TABLE_TRANSACTION_ANOMALIES + " ("
+                + COLUMN_TRANSACTION_ID + ", " + COLUMN_ANOMALY_KIND + ", " + COLUMN_USER_ID + ", " + COLUMN_CATEGORY_ID + ", "
+                + COLUMN_DATE_EPOCH_DAY + ", " + COLUMN_OBSERVED + ", " + COLUMN_BASELINE + ") "
+                + "SELECT NEW." + COLUMN_ID + ", '" + kind + "', NEW." + COLUMN_USER_ID + ", NEW." + COLUMN_CATEGORY_ID + ", "
+                + epochDayOf("NEW." + COLUMN_DATE) + ", " + observed + ", " + baseline
+                + " FROM " + TABLE_CATEGORY_STATS + " WHERE " + categoryStatsRowOf("NEW");
+    }
+
+    // So với thống kê trước khi cộng giao dịch: (x - mean)^2 > Z^2 * variance, variance = m2 / (n - 1)
+    private static final String FLAG_LARGE_TRANSACTION = insertAnomalyOf(ANOMALY_LARGE, "NEW." + COLUMN_AMOUNT, COLUMN_MEAN)
+            + " AND " + COLUMN_TX_COUNT + " >= " + LARGE_MIN_SAMPLES
+            + " AND NEW." + COLUMN_AMOUNT + " > " + COLUMN_MEAN
+            + " AND (NEW." + COLUMN_AMOUNT + " - " + COLUMN_MEAN + ") * (NEW." + COLUMN_AMOUNT + " - " + COLUMN_MEAN + ") > "
+            + (LARGE_Z * LARGE_Z) + " * " + COLUMN_M2 + " / (" + COLUMN_TX_COUNT + " - 1); ";
+
+    // Sau khi cộng: chỉ giao dịch làm tổng tuần (mới nhất) vượt ngưỡng lần đầu mới được đánh dấu
+    private static final String FLAG_CATEGORY_SPIKE = insertAnomalyOf(ANOMALY_SPIKE, COLUMN_WEEK_SPENT, COLUMN_WEEKLY_EWMA)
+            + " AND " + COLUMN_WEEK_START + " = " + weekStartOf(epochDayOf("NEW." + COLUMN_DATE))
+            + " AND " + COLUMN_WEEKS_SEEN + " >= " + SPIKE_MIN_WEEKS
+            + " AND " + COLUMN_WEEK_SPENT + " > " + SPIKE_RATIO + " * " + COLUMN_WEEKLY_EWMA
+            + " AND " + COLUMN_WEEK_SPENT + " - NEW." + COLUMN_AMOUNT + " <= " + SPIKE_RATIO + " * " + COLUMN_WEEKLY_EWMA + "; ";
+
+    private static final String CREATE_TRIGGER_CATEGORY_STATS_INSERT = "CREATE TRIGGER IF NOT EXISTS trg_transactions_category_stats_insert "
+            + "AFTER INSERT ON " + TABLE_TRANSACTIONS + " WHEN NEW." + COLUMN_TYPE + " = 'expense' AND " + notArchiveMoveOf("NEW") + " BEGIN "
+            + FLAG_LARGE_TRANSACTION
+            + categoryStatsAddOf("NEW")
+            + FLAG_CATEGORY_SPIKE
+            + "END;";
+
+    private static final String CREATE_TRIGGER_CATEGORY_STATS_DELETE = "CREATE TRIGGER IF NOT EXISTS trg_transactions_category_stats_delete "
+            + "AFTER DELETE ON " + TABLE_TRANSACTIONS + " WHEN OLD." + COLUMN_TYPE + " = 'expense' AND " + notArchiveMoveOf("OLD") + " BEGIN "
+            + categoryStatsRemoveOf("OLD")
+            + "END;";
+
+    // Sửa giao dịch -> tính lại thống kê, bỏ cờ cũ (không đánh dấu lại)
+    private static final String CREATE_TRIGGER_CATEGORY_STATS_UPDATE = "CREATE TRIGGER IF NOT EXISTS trg_transactions_category_stats_update "
+            + "AFTER UPDATE OF " + COLUMN_AMOUNT + ", " + COLUMN_DATE + ", " + COLUMN_CATEGORY_ID + ", "
+            + COLUMN_TYPE + ", " + COLUMN_USER_ID + " ON " + TABLE_TRANSACTIONS + " BEGIN "
+            + categoryStatsRemoveOf("OLD")
+            + categoryStatsAddOf("NEW")
+            + "DELETE FROM " + TABLE_TRANSACTION_ANOMALIES + " WHERE " + COLUMN_TRANSACTION_ID + " = OLD." + COLUMN_ID + "; "
+            + "END;";
+
+    // Kể cả khi chuyển sang archive - cờ chỉ dùng cho các ngày gần đây
+    private static final String CREATE_TRIGGER_ANOMALIES_TX_DELETE = "CREATE TRIGGER IF NOT EXISTS trg_transactions_anomalies_delete "
+            + "AFTER DELETE ON " + TABLE_TRANSACTIONS + " BEGIN "
+            + "DELETE FROM " + TABLE_TRANSACTION_ANOMALIES + " WHERE " + COLUMN_TRANSACTION_ID + " = OLD." + COLUMN_ID + "; "
+            + "END;";
+
+    // Dòng budgets thêm cột budget_name bằng ALTER TABLE (v7) có thể không có tên
+    private static String legacyBudgetNameOf(String alias) {
+        return "COALESCE(" + alias + "." + COLUMN_BUDGET_NAME + ", 'My Budget')";
+    }
+
+    // 🔄 Version theo bảng - triggers tăng version mỗi lần bảng được ghi (mọi connection, kể cả archive),
+    // InvalidationTracker so version để màn hình chỉ load lại khi dữ liệu đã đổi
+    public static final String TABLE_TABLE_VERSIONS = "table_versions";
+    public static final String COLUMN_TABLE_NAME = "table_name";
+    public static final String COLUMN_VERSION = "version";
+
+    // Bảng gốc được theo dõi - bảng tổng hợp (rollups, sổ cái, budget_progress) chỉ đổi theo các bảng này
+    static final String[] VERSIONED_TABLES = {
+            TABLE_USERS,
+            TABLE_CATEGORIES,
+            TABLE_TRANSACTIONS,
+            TABLE_BUDGET_PLANS,
+            TABLE_BUDGET_ITEMS,
+            TABLE_GOALS
+    };
+
+    private static final String CREATE_TABLE_TABLE_VERSIONS = "CREATE TABLE IF NOT EXISTS " + TABLE_TABLE_VERSIONS + " ("
+            + COLUMN_TABLE_NAME + " TEXT PRIMARY KEY, "
+            + COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 0) WITHOUT ROWID;";
+
+    // event = INSERT / UPDATE / DELETE
+    private static String versionTriggerOf(String table, String event) {
+        return "CREATE TRIGGER IF NOT EXISTS trg_" + table + "_version_" + event.toLowerCase(Locale.ROOT) + " "
+                + "AFTER " + event + " ON " + table + " BEGIN "
+                + "UPDATE " + TABLE_TABLE_VERSIONS + " SET " + COLUMN_VERSION + " = " + COLUMN_VERSION + " + 1 "
+                + "WHERE " + COLUMN_TABLE_NAME + " = '" + table + "'; "
+                + "END;";
+    }
+
+    // 🗃️ Kết quả tính toán đã lưu (ResultCache) - hợp lệ khi data_version khớp version hiện tại của các bảng
+    public static final String TABLE_RESULT_CACHE = "result_cache";
+    public static final String COLUMN_CACHE_KEY = "cache_key";
+    public static final String COLUMN_DATA_VERSION = "data_version";
+    public static final String COLUMN_CACHE_VALUE = "value";
+
+    private static final String CREATE_TABLE_RESULT_CACHE = "CREATE TABLE IF NOT EXISTS " + TABLE_RESULT_CACHE + " ("
+            + COLUMN_CACHE_KEY + " TEXT PRIMARY KEY, "
+            + COLUMN_DATA_VERSION + " TEXT NOT NULL, "
+            + COLUMN_CACHE_VALUE + " TEXT NOT NULL, "
+            + COLUMN_UPDATED_AT + " INTEGER NOT NULL);";
+
+    // 📅 Version theo (user, ngày giao dịch) - triggers tăng version của ngày bị ghi (kể cả khi chuyển sang archive).
+    // SUM(version) trên 1 khoảng ngày chỉ tăng khi có giao dịch trong khoảng đó đổi -> watermark đầu vào của InsightDAO
+    public static final String TABLE_TRANSACTION_DAY_VERSIONS = "transaction_day_versions";
+
+    private static final String CREATE_TABLE_TRANSACTION_DAY_VERSIONS = "CREATE TABLE IF NOT EXISTS " + TABLE_TRANSACTION_DAY_VERSIONS + " ("
+            + COLUMN_USER_ID + " INTEGER NOT NULL, "
+            + COLUMN_DATE_EPOCH_DAY + " INTEGER NOT NULL, "
+            + COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 0, "
+            + "PRIMARY KEY (" + COLUMN_USER_ID + ", " + COLUMN_DATE_EPOCH_DAY + ")) WITHOUT ROWID;";
+
+    private static String dayVersionBumpOf(String row) {
+        String day = epochDayOf(row + "." + COLUMN_DATE);
+        return "INSERT OR IGNORE INTO " + TABLE_TRANSACTION_DAY_VERSIONS + " (" + COLUMN_USER_ID + ", " + COLUMN_DATE_EPOCH_DAY + ") "
+                + "VALUES (" + row + "." + COLUMN_USER_ID + ", " + day + "); "
+                + "UPDATE " + TABLE_TRANSACTION_DAY_VERSIONS + " SET " + COLUMN_VERSION + " = " + COLUMN_VERSION + " + 1 "
+                + "WHERE " + COLUMN_USER_ID + " = " + row + "." + COLUMN_USER_ID + " AND " + COLUMN_DATE_EPOCH_DAY + " = " + day + "; ";
+    }
+
+    private static final String CREATE_TRIGGER_DAY_VERSION_INSERT = "CREATE TRIGGER IF NOT EXISTS trg_transactions_day_version_insert "
+            + "AFTER INSERT ON " + TABLE_TRANSACTIONS + " BEGIN "
+            + dayVersionBumpOf("NEW")
+            + "END;";
+
+    private static final String CREATE_TRIGGER_DAY_VERSION_DELETE = "CREATE TRIGGER IF NOT EXISTS trg_transactions_day_version_delete "
+            + "AFTER DELETE ON " + TABLE_TRANSACTIONS + " BEGIN "
+            + dayVersionBumpOf("OLD")
+            + "END;";
+
+    // Sửa giao dịch -> cả ngày cũ và ngày mới (có thể của user khác)
+    private static final String CREATE_TRIGGER_DAY_VERSION_UPDATE = "CREATE TRIGGER IF NOT EXISTS trg_transactions_day_version_update "
+            + "AFTER UPDATE OF " + COLUMN_AMOUNT + ", " + COLUMN_DATE + ", " + COLUMN_CATEGORY_ID + ", "
+            + COLUMN_TYPE + ", " + COLUMN_USER_ID + " ON " + TABLE_TRANSACTIONS + " BEGIN "
+            + dayVersionBumpOf("OLD")
+            + dayVersionBumpOf("NEW")
+            + "END;";
+
+    // 🧠 Gợi ý (SmartInsight) đã tính theo (user, kế hoạch, nguồn). Nguồn = 1 bộ phân tích (1 phần báo cáo của
+    // BudgetAnalytics hoặc gợi ý trạng thái ngân sách của màn hình). insight_runs giữ watermark đầu vào của lần tính
+    // gần nhất (kể cả khi không ra gợi ý nào) - khác watermark hiện tại thì chỉ nguồn đó được tính lại.
+    // dismissed + created_at giữ theo insight_key qua các lần tính lại.
+    public static final String TABLE_INSIGHTS = "insights";
+    public static final String TABLE_INSIGHT_RUNS = "insight_runs";
+    public static final String COLUMN_INSIGHT_SOURCE = "source";
+    public static final String COLUMN_INSIGHT_KEY = "insight_key";
+    public static final String COLUMN_WATERMARK = "watermark";
+    public static final String COLUMN_INSIGHT_TITLE = "title";
+    public static final String COLUMN_INSIGHT_MESSAGE = "message";
+    public static final String COLUMN_INSIGHT_SUGGESTION = "suggestion";
+    public static final String COLUMN_INSIGHT_IMPACT = "impact";
+    public static final String COLUMN_INSIGHT_VALUE = "value";
+    public static final String COLUMN_INSIGHT_ACTIONABLE = "actionable";
+    public static final String COLUMN_INSIGHT_DISMISSED = "dismissed";
+    public static final String COLUMN_INSIGHT_POSITION = "position";
+
+    // plan_id = 0: gợi ý không gắn với kế hoạch nào. created_at / updated_at: epoch millis
+    private static final String CREATE_TABLE_INSIGHTS = "CREATE TABLE IF NOT EXISTS " + TABLE_INSIGHTS + " ("
+            + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COLUMN_USER_ID + " INTEGER NOT NULL, "
+            + COLUMN_PLAN_ID + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_INSIGHT_SOURCE + " TEXT NOT NULL, "
+            + COLUMN_INSIGHT_KEY + " TEXT NOT NULL, "
+            + COLUMN_INSIGHT_TITLE + " TEXT, "
+            + COLUMN_INSIGHT_MESSAGE + " TEXT, "
+            + COLUMN_INSIGHT_SUGGESTION + " TEXT, "
+            + COLUMN_TYPE + " TEXT, "
+            + COLUMN_INSIGHT_IMPACT + " TEXT, "
+            + COLUMN_INSIGHT_VALUE + " REAL, "
+            + COLUMN_INSIGHT_ACTIONABLE + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_INSIGHT_DISMISSED + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_INSIGHT_POSITION + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_CREATED_AT + " INTEGER NOT NULL, "
+            + COLUMN_UPDATED_AT + " INTEGER NOT NULL, "
+            + "UNIQUE (" + COLUMN_USER_ID + ", " + COLUMN_PLAN_ID + ", " + COLUMN_INSIGHT_SOURCE + ", " + COLUMN_INSIGHT_KEY + "));";
+
+    private static final String CREATE_TABLE_INSIGHT_RUNS = "CREATE TABLE IF NOT EXISTS " + TABLE_INSIGHT_RUNS + " ("
+            + COLUMN_USER_ID + " INTEGER NOT NULL, "
+            + COLUMN_PLAN_ID + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_INSIGHT_SOURCE + " TEXT NOT NULL, "
+            + COLUMN_WATERMARK + " TEXT NOT NULL, "
+            + COLUMN_UPDATED_AT + " INTEGER NOT NULL, "
+            + "PRIMARY KEY (" + COLUMN_USER_ID + ", " + COLUMN_PLAN_ID + ", " + COLUMN_INSIGHT_SOURCE + ")) WITHOUT ROWID;";
+
+    // Triggers cộng/trừ tổng hợp khi thêm/xóa giao dịch - trước v16 không có điều kiện archive_moves nên được tạo lại
+    private static final String[] AGGREGATE_TRIGGERS = {
+            "trg_transactions_rollup_insert",
+            "trg_transactions_rollup_delete",
+            "trg_transactions_balance_insert",
+            "trg_transactions_balance_delete",
+            "trg_transactions_budget_progress_insert",
+            "trg_transactions_budget_progress_delete"
+    };
+
+    // Triggers tính lại budget_progress khi item/plan đổi - trước v16 chưa cộng archived_day_totals
+    private static final String[] BUDGET_PROGRESS_RECOMPUTE_TRIGGERS = {
+            "trg_budget_items_progress_insert",
+            "trg_budget_items_progress_update",
+            "trg_budget_plans_progress_update"
+    };
+
+    // Triggers budget_progress của v14 (trên bảng budgets cũ)
+    private static final String[] LEGACY_BUDGET_PROGRESS_TRIGGERS = {
+            "trg_transactions_budget_progress_insert",
+            "trg_transactions_budget_progress_delete",
+            "trg_transactions_budget_progress_update"
+    };
+
+    // 🔍 Full-text search - chỉ mục FTS4 (docid = transaction _id) trên note, payment method, tên danh mục.
+    // Tokenizer unicode61 bỏ dấu đơn + chữ hoa; chữ 2 dấu (ố, ặ, ữ...) và đ được bỏ dấu sẵn trong triggers
+    // nên "an uong" khớp với "Ăn uống".
+    public static final String TABLE_TRANSACTIONS_FTS = "transactions_fts";
+    public static final String COLUMN_FTS_CATEGORY_NAME = "category_name";
+
+    // Cũng dùng cho transactions_fts trong file archive (TransactionArchive)
+    static final String CREATE_TABLE_TRANSACTIONS_FTS = "CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_TRANSACTIONS_FTS
+            + " USING fts4(" + COLUMN_NOTE + ", " + COLUMN_PAYMENT_METHOD + ", " + COLUMN_FTS_CATEGORY_NAME + ", "
+            + "tokenize=unicode61 \"remove_diacritics=1\");";
+
+    // Các chữ unicode61 (remove_diacritics=1) không tự bỏ dấu -> chữ gốc (cùng vị trí)
+    private static final String FOLD_CHARS =
+            "ầấậẩẫằắặẳẵềếệểễồốộổỗờớợởỡừứựửữđ"
+            + "ẦẤẬẨẪẰẮẶẲẴỀẾỆỂỄỒỐỘỔỖỜỚỢỞỠỪỨỰỬỮĐ";
+    private static final String FOLD_PLAIN =
+            "aaaaaaaaaaeeeeeoooooooooouuuuud"
+            + "aaaaaaaaaaeeeeeoooooooooouuuuud";
+
+    // Parser của SQLite chỉ chịu ~28 REPLACE() lồng nhau trong trigger -> chia thành nhiều câu lệnh
+    private static final int FOLD_CHARS_PER_STATEMENT = 21;
+    private static final int FOLD_STATEMENTS = (FOLD_CHARS.length() + FOLD_CHARS_PER_STATEMENT - 1) / FOLD_CHARS_PER_STATEMENT;
+
+    private static final String[] FTS_COLUMNS = {COLUMN_NOTE, COLUMN_PAYMENT_METHOD, COLUMN_FTS_CATEGORY_NAME};
+
+    /**
+     * 🔍 Bỏ dấu + chữ thường phía Java - cho ra cùng token với nội dung trong transactions_fts
+     */
+    public static String foldDiacritics(String text) {
+        if (text == null) return "";
+
+        return Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "")
+                .replace('đ', 'd')
+                .replace('Đ', 'D')
+                .toLowerCase(Locale.ROOT);
+    }
+
+    // Bước bỏ dấu thứ `step` (mỗi bước tối đa FOLD_CHARS_PER_STATEMENT ký tự)
+    private static String foldStepOf(String expression, int step) {
+        String sql = expression;
+        int end = Math.min(FOLD_CHARS.length(), (step + 1) * FOLD_CHARS_PER_STATEMENT);
+        for (int i = step * FOLD_CHARS_PER_STATEMENT; i < end; i++) {
+            sql = "REPLACE(" + sql + ", '" + FOLD_CHARS.charAt(i) + "', '" + FOLD_PLAIN.charAt(i) + "')";
+        }
+        return sql;
+    }
+
+    // Các bước bỏ dấu còn lại, chạy trên những dòng FTS vừa ghi
+    private static String foldRemainingOf(String[] columns, String where) {
+        StringBuilder sql = new StringBuilder();
+        for (int step = 1; step < FOLD_STATEMENTS; step++) {
+            sql.append("UPDATE ").append(TABLE_TRANSACTIONS_FTS).append(" SET ");
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) sql.append(", ");
+                sql.append(columns[i]).append(" = ").append(foldStepOf(columns[i], step));
+            }
+            sql.append(" WHERE ").append(where).append("; ");
+        }
+        return sql.toString();
+    }
+
+    private static String categoryNameOf(String categoryId) {
+        return "(SELECT " + COLUMN_CATEGORY_NAME + " FROM " + TABLE_CATEGORIES
+                + " WHERE " + COLUMN_ID + " = " + categoryId + ")";
+    }
+
+    private static final String CREATE_TRIGGER_FTS_INSERT = "CREATE TRIGGER IF NOT EXISTS trg_transactions_fts_insert "
+            + "AFTER INSERT ON " + TABLE_TRANSACTIONS + " BEGIN "
+            + "INSERT INTO " + TABLE_TRANSACTIONS_FTS + " (docid, " + COLUMN_NOTE + ", " + COLUMN_PAYMENT_METHOD + ", " + COLUMN_FTS_CATEGORY_NAME + ") "
+            + "VALUES (NEW." + COLUMN_ID + ", "
+            + foldStepOf("COALESCE(NEW." + COLUMN_NOTE + ", '')", 0) + ", "
+            + foldStepOf("COALESCE(NEW." + COLUMN_PAYMENT_METHOD + ", '')", 0) + ", "
+            + foldStepOf("COALESCE(" + categoryNameOf("NEW." + COLUMN_CATEGORY_ID) + ", '')", 0) + "); "
+            + foldRemainingOf(FTS_COLUMNS, "docid = NEW." + COLUMN_ID)
+            + "END;";
+
+    private static final String CREATE_TRIGGER_FTS_DELETE = "CREATE TRIGGER IF NOT EXISTS trg_transactions_fts_delete "
+            + "AFTER DELETE ON " + TABLE_TRANSACTIONS + " BEGIN "
+            + "DELETE FROM " + TABLE_TRANSACTIONS_FTS + " WHERE docid = OLD." + COLUMN_ID + "; "
+            + "END;";
+
+    private static final String CREATE_TRIGGER_FTS_UPDATE = "CREATE TRIGGER IF NOT EXISTS trg_transactions_fts_update "
+            + "AFTER UPDATE OF " + COLUMN_NOTE + ", " + COLUMN_PAYMENT_METHOD + ", " + COLUMN_CATEGORY_ID + " ON " + TABLE_TRANSACTIONS + " BEGIN "
+            + "UPDATE " + TABLE_TRANSACTIONS_FTS + " SET "
+            + COLUMN_NOTE + " = " + foldStepOf("COALESCE(NEW." + COLUMN_NOTE + ", '')", 0) + ", "
+            + COLUMN_PAYMENT_METHOD + " = " + foldStepOf("COALESCE(NEW." + COLUMN_PAYMENT_METHOD + ", '')", 0) + ", "
+            + COLUMN_FTS_CATEGORY_NAME + " = " + foldStepOf("COALESCE(" + categoryNameOf("NEW." + COLUMN_CATEGORY_ID) + ", '')", 0) + " "
+            + "WHERE docid = NEW." + COLUMN_ID + "; "
+            + foldRemainingOf(FTS_COLUMNS, "docid = NEW." + COLUMN_ID)
+            + "END;";
+
+    // Đổi tên danh mục -> cập nhật lại tên đã bỏ dấu của các giao dịch thuộc danh mục đó
+    private static final String FTS_ROWS_OF_CATEGORY = "docid IN (SELECT " + COLUMN_ID + " FROM " + TABLE_TRANSACTIONS
+            + " WHERE " + COLUMN_CATEGORY_ID + " = NEW." + COLUMN_ID + ")";
+
+    private static final String CREATE_TRIGGER_FTS_CATEGORY_RENAME = "CREATE TRIGGER IF NOT EXISTS trg_categories_fts_rename "
+            + "AFTER UPDATE OF " + COLUMN_CATEGORY_NAME + " ON " + TABLE_CATEGORIES + " BEGIN "
+            + "UPDATE " + TABLE_TRANSACTIONS_FTS + " SET " + COLUMN_FTS_CATEGORY_NAME + " = "
+            + foldStepOf("COALESCE(NEW." + COLUMN_CATEGORY_NAME + ", '')", 0) + " "
+            + "WHERE " + FTS_ROWS_OF_CATEGORY + "; "
+            + foldRemainingOf(new String[]{COLUMN_FTS_CATEGORY_NAME}, FTS_ROWS_OF_CATEGORY)
+            + "END;";
+
+    // ✅ 1 instance cho cả process - Activity, Service, ViewModel dùng chung, không tự đóng
+    private static DatabaseHelper instance;
+
+    // 🗄️ Connection riêng có ATTACH file archive, mở khi cần
+    private TransactionArchive archive;
+
+    // 🧾 Hàng đợi ghi giao dịch (write-behind, group commit), tạo khi cần
+    private TransactionWriteQueue writeQueue;
+
+    // 🔄 Đọc table_versions cho các màn hình, tạo khi cần
+    private InvalidationTracker invalidationTracker;
+
+    // 🗃️ Cache kết quả tính toán theo version dữ liệu, tạo khi cần
+    private ResultCache resultCache;
+
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Chỉ MainApplication (chủ sở hữu) được đóng database
+     */
+    public static synchronized void closeInstance() {
+        if (instance != null) {
+            instance.shutdownWriteQueue();
+            instance.close();
+            instance = null;
+            Log.d("DatabaseHelper", "✅ Database closed");
+        }
+    }
+
+    public synchronized TransactionArchive getArchive() {
+        if (archive == null) {
+            archive = new TransactionArchive(this);
+        }
+        return archive;
+    }
+
+    public synchronized InvalidationTracker getInvalidationTracker() {
+        if (invalidationTracker == null) {
+            invalidationTracker = new InvalidationTracker(this);
+        }
+        return invalidationTracker;
+    }
+
+    public synchronized ResultCache getResultCache() {
+        if (resultCache == null) {
+            resultCache = new ResultCache(this);
+        }
+        return resultCache;
+    }
+
+    public synchronized TransactionWriteQueue getWriteQueue() {
+        if (writeQueue == null) {
+            writeQueue = new TransactionWriteQueue(this);
+        }
+        return writeQueue;
+    }
+
+    // Ghi nốt giao dịch đang chờ - không giữ khóa của helper vì thread ghi còn gọi getWritableDatabase()
+    private void shutdownWriteQueue() {
+        TransactionWriteQueue queue;
+        synchronized (this) {
+            queue = writeQueue;
+            writeQueue = null;
+        }
+        if (queue != null) {
+            queue.shutdown();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (archive != null) {
+            archive.close();
+            archive = null;
+        }
+        super.close();
+    }
+
+    private DatabaseHelper(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Helper riêng không qua singleton - name = null là database trong bộ nhớ (instrumented tests của các DAO)
+     */
+    DatabaseHelper(Context context, String name) {
+        // ⏱️ Mọi cursor đi qua QueryStats để đo độ trễ từng câu truy vấn
+        super(context, name, QueryStats.CURSOR_FACTORY, DATABASE_VERSION);
+
+        // ⚡ WAL: các connection đọc trong pool chạy song song với connection ghi duy nhất
+        // (SQLiteDatabase tự xếp hàng các lệnh ghi), nên service kiểm tra nền không chặn UI khi ghi
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -156,8 +1034,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(CREATE_TABLE_TRANSACTIONS);
         Log.d("DatabaseHelper", "✅ Created transactions table");
 
-        db.execSQL(CREATE_TABLE_BUDGETS);
-        Log.d("DatabaseHelper", "✅ Created budgets table");
+        // 🧾 Ngân sách: header + items
+        createBudgetPlans(db);
 
         db.execSQL(CREATE_TABLE_GOALS);
         Log.d("DatabaseHelper", "✅ Created goals table");
@@ -166,6 +1044,42 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(CREATE_TABLE_GOAL_TRANSACTIONS);
         Log.d("DatabaseHelper", "✅ Created goal_transactions table");
 
+        // ⚡ Create indexes
+        createIndexes(db);
+        createLookupIndexes(db);
+
+        // 📅 Triggers điền date_epoch_day
+        createDateEpochDay(db);
+
+        // 📊 Monthly rollups (bảng trống nên không cần backfill)
+        createMonthlyRollups(db);
+
+        // 💰 Sổ cái số dư
+        createUserBalances(db);
+
+        // 🔍 Chỉ mục tìm kiếm
+        createTransactionsFts(db);
+
+        // 🧾 Tiến độ ngân sách
+        createBudgetProgress(db);
+
+        // 🗄️ Tổng hợp của giao dịch đã archive + id đang chuyển
+        db.execSQL(CREATE_TABLE_ARCHIVED_ROLLUPS);
+        db.execSQL(CREATE_TABLE_ARCHIVED_DAY_TOTALS);
+        db.execSQL(CREATE_TABLE_ARCHIVE_MOVES);
+
+        // 🔄 Version theo bảng
+        createTableVersions(db);
+
+        // 🗃️ Kết quả tính toán đã lưu
+        db.execSQL(CREATE_TABLE_RESULT_CACHE);
+
+        // 🚨 Thống kê danh mục + giao dịch bất thường
+        createCategoryStats(db);
+
+        // 🧠 Gợi ý đã tính + version theo ngày
+        createInsights(db);
+
         // Insert default categories
         insertDefaultCategories(db);
         insertGoalCategories(db); // 🎯 Add goal-specific categories
@@ -211,11 +1125,609 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             db.execSQL("DROP TABLE IF EXISTS " + TABLE_TRANSACTIONS);
             db.execSQL("DROP TABLE IF EXISTS " + TABLE_CATEGORIES);
             db.execSQL("DROP TABLE IF EXISTS " + TABLE_USERS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_MONTHLY_ROLLUPS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_USER_BALANCES);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_TRANSACTIONS_FTS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_BUDGET_PROGRESS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_BUDGET_ITEMS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_BUDGET_PLANS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_TABLE_VERSIONS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_RESULT_CACHE);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_CATEGORY_STATS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_TRANSACTION_ANOMALIES);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_TRANSACTION_DAY_VERSIONS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_INSIGHTS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_INSIGHT_RUNS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARCHIVED_ROLLUPS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARCHIVED_DAY_TOTALS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARCHIVE_MOVES);
 
             onCreate(db);
+            return; // onCreate đã tạo schema mới nhất
+        }
+
+        // ⚡ Các bước nâng cấp từ v8 trở đi chạy theo thứ tự tăng dần
+        // v8 (composite index user + khoảng ngày): không làm gì - index hiện tại nằm trên date_epoch_day, cột chỉ có từ v13,
+        // và migrateDateEpochDay() (bước v13 bên dưới) tạo chúng sau khi thêm cột
+
+        if (oldVersion < 9) {
+            // 📊 Bảng tổng hợp theo tháng + triggers + backfill 1 lần
+            try {
+                createMonthlyRollups(db);
+                backfillMonthlyRollups(db);
+            } catch (Exception e) {
+                Log.e("DatabaseHelper", "Error creating monthly rollups: " + e.getMessage());
+            }
+        }
+
+        if (oldVersion < 10) {
+            // 💰 Sổ cái số dư + triggers + tính lại từ transactions
+            try {
+                createUserBalances(db);
+                rebuildUserBalances(db);
+            } catch (Exception e) {
+                Log.e("DatabaseHelper", "Error creating user balances: " + e.getMessage());
+            }
+        }
+
+        if (oldVersion < 11) {
+            // 🔍 Bảng FTS + triggers + đánh chỉ mục các giao dịch hiện có
+            try {
+                createTransactionsFts(db);
+                rebuildTransactionsFts(db);
+            } catch (Exception e) {
+                Log.e("DatabaseHelper", "Error creating transactions_fts: " + e.getMessage());
+            }
+        }
+
+        if (oldVersion < 12) {
+            // 💰 REAL -> INTEGER minor units cho mọi cột số tiền, tính lại rollups/sổ cái bằng số nguyên
+            try {
+                migrateAmountsToMinorUnits(db);
+            } catch (Exception e) {
+                Log.e("DatabaseHelper", "Error migrating amounts to minor units: " + e.getMessage());
+            }
+        }
+
+        if (oldVersion < 13) {
+            // 📅 Cột date_epoch_day + triggers, thay index trên chuỗi date bằng index số nguyên
+            try {
+                migrateDateEpochDay(db);
+            } catch (Exception e) {
+                Log.e("DatabaseHelper", "Error adding date_epoch_day: " + e.getMessage());
+            }
+        }
+
+        if (oldVersion < 15) {
+            // 🧾 budgets -> budget_plans + budget_items; budget_progress (v14) được tạo lại theo budget_items
+            try {
+                migrateBudgetPlans(db);
+            } catch (Exception e) {
+                Log.e("DatabaseHelper", "Error migrating budgets to budget_plans: " + e.getMessage());
+            }
+        }
+
+        if (oldVersion < 16) {
+            // 🗄️ Chưa có giao dịch nào được archive nên chỉ cần bảng trống + triggers tổng hợp có điều kiện archive_moves
+            try {
+                createArchiveTables(db);
+            } catch (Exception e) {
+                Log.e("DatabaseHelper", "Error creating archive tables: " + e.getMessage());
+            }
+        }
+
+        if (oldVersion < 17) {
+            try {
+                createLookupIndexes(db);
+            } catch (Exception e) {
+                Log.e("DatabaseHelper", "Error creating lookup indexes: " + e.getMessage());
+            }
+        }
+
+        if (oldVersion < 18) {
+            // 🔄 Bắt đầu từ version 0 - màn hình đang mở chưa có gì để so nên lần đầu vẫn load
+            try {
+                createTableVersions(db);
+            } catch (Exception e) {
+                Log.e("DatabaseHelper", "Error creating table_versions: " + e.getMessage());
+            }
+        }
+
+        if (oldVersion < 19) {
+            try {
+                db.execSQL(CREATE_TABLE_RESULT_CACHE);
+            } catch (Exception e) {
+                Log.e("DatabaseHelper", "Error creating result_cache: " + e.getMessage());
+            }
+        }
+
+        if (oldVersion < 20) {
+            // 🚨 Thống kê tính lại từ giao dịch hiện có; giao dịch cũ không được đánh dấu bất thường
+            try {
+                createCategoryStats(db);
+                rebuildCategoryStats(db);
+            } catch (Exception e) {
+                Log.e("DatabaseHelper", "Error creating category_stats: " + e.getMessage());
+            }
+        }
+
+        if (oldVersion < 21) {
+            // 📅 Ngày chưa có dòng = version 0; chưa có insight_runs nên lần mở đầu tiên tính mọi nguồn
+            try {
+                createInsights(db);
+            } catch (Exception e) {
+                Log.e("DatabaseHelper", "Error creating insights: " + e.getMessage());
+            }
+        }
+    }
+
+    // ⚡ Tạo các index cho bảng transactions (IF NOT EXISTS nên gọi lại nhiều lần vẫn an toàn)
+    private void createIndexes(SQLiteDatabase db) {
+        db.execSQL(CREATE_INDEX_TRANSACTIONS_USER_TYPE_DAY);
+        db.execSQL(CREATE_INDEX_TRANSACTIONS_USER_CATEGORY_DAY);
+        db.execSQL(CREATE_INDEX_TRANSACTIONS_USER_DAY);
+        db.execSQL("ANALYZE " + TABLE_TRANSACTIONS);
+        Log.d("DatabaseHelper", "✅ Created transaction indexes");
+    }
+
+    // ⚡ Index cho goals / categories
+    private void createLookupIndexes(SQLiteDatabase db) {
+        db.execSQL(CREATE_INDEX_GOALS_USER_STATUS);
+        db.execSQL(CREATE_INDEX_CATEGORIES_TYPE_NAME);
+        Log.d("DatabaseHelper", "✅ Created goal/category indexes");
+    }
+
+    // 🔄 Bảng table_versions + 1 dòng và 3 triggers (insert/update/delete) cho mỗi bảng được theo dõi
+    private void createTableVersions(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_TABLE_VERSIONS);
+        for (String table : VERSIONED_TABLES) {
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_TABLE_VERSIONS + " (" + COLUMN_TABLE_NAME + ") VALUES (?)",
+                    new Object[]{table});
+            db.execSQL(versionTriggerOf(table, "INSERT"));
+            db.execSQL(versionTriggerOf(table, "UPDATE"));
+            db.execSQL(versionTriggerOf(table, "DELETE"));
+        }
+        Log.d("DatabaseHelper", "✅ Created table_versions and triggers");
+    }
+
+    // 📅 Triggers giữ date_epoch_day khớp với date
+    private void createDateEpochDay(SQLiteDatabase db) {
+        db.execSQL(CREATE_TRIGGER_EPOCH_DAY_INSERT);
+        db.execSQL(CREATE_TRIGGER_EPOCH_DAY_UPDATE);
+        Log.d("DatabaseHelper", "✅ Created date_epoch_day triggers");
+    }
+
+    // 📅 Thêm + điền date_epoch_day cho dữ liệu cũ, đổi index chuỗi date sang index số nguyên
+    private void migrateDateEpochDay(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            // Nâng cấp từ < v12 đã dựng lại transactions theo schema hiện tại nên có thể đã có cột
+            if (!columnsOf(db, TABLE_TRANSACTIONS).contains(COLUMN_DATE_EPOCH_DAY)) {
+                db.execSQL("ALTER TABLE " + TABLE_TRANSACTIONS + " ADD COLUMN " + COLUMN_DATE_EPOCH_DAY + " INTEGER");
+            }
+            db.execSQL("UPDATE " + TABLE_TRANSACTIONS + " SET " + COLUMN_DATE_EPOCH_DAY + " = " + epochDayOf(COLUMN_DATE));
+
+            for (String index : LEGACY_DATE_INDEXES) {
+                db.execSQL("DROP INDEX IF EXISTS " + index);
+            }
+            createIndexes(db);
+            createDateEpochDay(db);
+
+            db.setTransactionSuccessful();
+            Log.d("DatabaseHelper", "✅ Added date_epoch_day to transactions");
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // 📊 Tạo bảng monthly_rollups + triggers đồng bộ với transactions
+    private void createMonthlyRollups(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_MONTHLY_ROLLUPS);
+        db.execSQL(CREATE_TRIGGER_ROLLUP_INSERT);
+        db.execSQL(CREATE_TRIGGER_ROLLUP_DELETE);
+        db.execSQL(CREATE_TRIGGER_ROLLUP_UPDATE);
+        Log.d("DatabaseHelper", "✅ Created monthly_rollups table and triggers");
+    }
+
+    // 📊 Tính lại toàn bộ monthly_rollups từ transactions (dùng khi migrate hoặc khi cần sửa lệch)
+    public void backfillMonthlyRollups(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_MONTHLY_ROLLUPS);
+            db.execSQL("INSERT INTO " + TABLE_MONTHLY_ROLLUPS + " ("
+                    + COLUMN_USER_ID + ", " + COLUMN_YEAR_MONTH + ", " + COLUMN_CATEGORY_ID + ", " + COLUMN_TYPE + ", "
+                    + COLUMN_ROLLUP_TOTAL + ", " + COLUMN_ROLLUP_TX_COUNT + ") "
+                    + "SELECT " + COLUMN_USER_ID + ", " + COLUMN_YEAR_MONTH + ", " + COLUMN_CATEGORY_ID + ", " + COLUMN_TYPE + ", "
+                    + "SUM(" + COLUMN_ROLLUP_TOTAL + "), SUM(" + COLUMN_ROLLUP_TX_COUNT + ") FROM ("
+                    + "SELECT " + COLUMN_USER_ID + ", substr(" + COLUMN_DATE + ", 1, 7) AS " + COLUMN_YEAR_MONTH + ", "
+                    + COLUMN_CATEGORY_ID + ", " + COLUMN_TYPE + ", "
+                    + COLUMN_AMOUNT + " AS " + COLUMN_ROLLUP_TOTAL + ", 1 AS " + COLUMN_ROLLUP_TX_COUNT + " FROM " + TABLE_TRANSACTIONS
+                    + archivedRollupsUnion(db, COLUMN_YEAR_MONTH + ", " + COLUMN_CATEGORY_ID + ", " + COLUMN_TYPE + ", "
+                    + COLUMN_ROLLUP_TOTAL + ", " + COLUMN_ROLLUP_TX_COUNT, null)
+                    + ") GROUP BY " + COLUMN_USER_ID + ", " + COLUMN_YEAR_MONTH + ", " + COLUMN_CATEGORY_ID + ", " + COLUMN_TYPE);
+            db.setTransactionSuccessful();
+            Log.d("DatabaseHelper", "✅ Backfilled monthly_rollups");
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // 💰 Tạo bảng user_balances + triggers đồng bộ với transactions
+    private void createUserBalances(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_USER_BALANCES);
+        db.execSQL(CREATE_TRIGGER_BALANCE_INSERT);
+        db.execSQL(CREATE_TRIGGER_BALANCE_DELETE);
+        db.execSQL(CREATE_TRIGGER_BALANCE_UPDATE);
+        Log.d("DatabaseHelper", "✅ Created user_balances table and triggers");
+    }
+
+    // 💰 Tính lại toàn bộ sổ cái số dư từ transactions
+    public void rebuildUserBalances(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_USER_BALANCES);
+            db.execSQL(selectBalancesInto(db, null));
+            db.setTransactionSuccessful();
+            Log.d("DatabaseHelper", "✅ Rebuilt user_balances");
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // 💰 Tính lại sổ cái số dư của 1 user
+    public void rebuildUserBalance(SQLiteDatabase db, int userId) {
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_USER_BALANCES + " WHERE " + COLUMN_USER_ID + " = ?",
+                    new Object[]{userId});
+            db.execSQL(selectBalancesInto(db, COLUMN_USER_ID + " = " + userId));
+            db.setTransactionSuccessful();
+            Log.d("DatabaseHelper", "✅ Rebuilt user_balances for user " + userId);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // 🚨 Tạo bảng category_stats + transaction_anomalies + triggers
+    private void createCategoryStats(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_CATEGORY_STATS);
+        db.execSQL(CREATE_TABLE_TRANSACTION_ANOMALIES);
+        db.execSQL(CREATE_INDEX_TRANSACTION_ANOMALIES_USER_DAY);
+        db.execSQL(CREATE_TRIGGER_CATEGORY_STATS_INSERT);
+        db.execSQL(CREATE_TRIGGER_CATEGORY_STATS_DELETE);
+        db.execSQL(CREATE_TRIGGER_CATEGORY_STATS_UPDATE);
+        db.execSQL(CREATE_TRIGGER_ANOMALIES_TX_DELETE);
+        Log.d("DatabaseHelper", "✅ Created category_stats table and triggers");
+    }
+
+    // 🚨 Tính lại category_stats từ transactions (+ archived_day_totals): mean/m2 bằng 2 lượt SQL, EWMA theo tuần gộp phía Java.
+    // Phần đã archive chỉ còn tổng theo ngày nên đóng góp vào m2 tính từ tổng bình phương: Σ(x - mean)² = Σx² - 2·mean·Σx + n·mean²
+    public void rebuildCategoryStats(SQLiteDatabase db) {
+        // (user_id, category_id, date_epoch_day, total, tx_count, sum_squares); sum_squares NULL = 1 giao dịch còn ở transactions
+        String source = "SELECT " + COLUMN_USER_ID + ", " + COLUMN_CATEGORY_ID + ", " + COLUMN_DATE_EPOCH_DAY + ", "
+                + COLUMN_AMOUNT + " AS " + COLUMN_ROLLUP_TOTAL + ", 1 AS " + COLUMN_ROLLUP_TX_COUNT + ", NULL AS " + COLUMN_SUM_SQUARES
+                + " FROM " + TABLE_TRANSACTIONS + " WHERE " + COLUMN_TYPE + " = 'expense'"
+                + (hasArchivedDayTotals(db) ? " UNION ALL SELECT " + COLUMN_USER_ID + ", " + COLUMN_CATEGORY_ID + ", " + COLUMN_DATE_EPOCH_DAY + ", "
+                + COLUMN_ROLLUP_TOTAL + ", " + COLUMN_ROLLUP_TX_COUNT + ", " + COLUMN_SUM_SQUARES
+                + " FROM " + TABLE_ARCHIVED_DAY_TOTALS + " WHERE " + COLUMN_TYPE + " = 'expense'" : "");
+        String week = weekStartOf(COLUMN_DATE_EPOCH_DAY);
+        String deviation = "CASE WHEN s." + COLUMN_SUM_SQUARES + " IS NULL "
+                + "THEN (s." + COLUMN_ROLLUP_TOTAL + " - a.avg_amount) * (s." + COLUMN_ROLLUP_TOTAL + " - a.avg_amount) "
+                + "ELSE s." + COLUMN_SUM_SQUARES + " - 2 * a.avg_amount * s." + COLUMN_ROLLUP_TOTAL
+                + " + s." + COLUMN_ROLLUP_TX_COUNT + " * a.avg_amount * a.avg_amount END";
+
+        db.beginTransaction();
+        android.database.Cursor cursor = null;
+        try {
+            db.execSQL("DELETE FROM " + TABLE_CATEGORY_STATS);
+            db.execSQL("INSERT INTO " + TABLE_CATEGORY_STATS + " (" + COLUMN_USER_ID + ", " + COLUMN_CATEGORY_ID + ", "
+                    + COLUMN_TX_COUNT + ", " + COLUMN_MEAN + ", " + COLUMN_M2 + ") "
+                    + "SELECT s." + COLUMN_USER_ID + ", s." + COLUMN_CATEGORY_ID + ", SUM(s." + COLUMN_ROLLUP_TX_COUNT + "), a.avg_amount, "
+                    + "MAX(0, SUM(" + deviation + ")) "
+                    + "FROM (" + source + ") s JOIN (SELECT " + COLUMN_USER_ID + ", " + COLUMN_CATEGORY_ID + ", "
+                    + "SUM(" + COLUMN_ROLLUP_TOTAL + ") * 1.0 / SUM(" + COLUMN_ROLLUP_TX_COUNT + ") AS avg_amount "
+                    + "FROM (" + source + ") GROUP BY " + COLUMN_USER_ID + ", " + COLUMN_CATEGORY_ID + ") a "
+                    + "ON a." + COLUMN_USER_ID + " = s." + COLUMN_USER_ID + " AND a." + COLUMN_CATEGORY_ID + " = s." + COLUMN_CATEGORY_ID + " "
+                    + "GROUP BY s." + COLUMN_USER_ID + ", s." + COLUMN_CATEGORY_ID);
+
+            cursor = db.rawQuery("SELECT " + COLUMN_USER_ID + ", " + COLUMN_CATEGORY_ID + ", " + week + " AS week, SUM(" + COLUMN_ROLLUP_TOTAL + ")"
+                    + " FROM (" + source + ") GROUP BY " + COLUMN_USER_ID + ", " + COLUMN_CATEGORY_ID + ", week"
+                    + " ORDER BY " + COLUMN_USER_ID + ", " + COLUMN_CATEGORY_ID + ", week", null);
+
+            // Mỗi (user, danh mục): gộp các tuần trước vào EWMA, tuần cuối là tuần hiện tại
+            boolean hasRow = cursor.moveToNext();
+            while (hasRow) {
+                long userId = cursor.getLong(0);
+                long categoryId = cursor.getLong(1);
+                double ewma = 0;
+                int weeksSeen = 0;
+                long weekStart = cursor.getLong(2);
+                long weekSpent = cursor.getLong(3);
+
+                while ((hasRow = cursor.moveToNext()) && cursor.getLong(0) == userId && cursor.getLong(1) == categoryId) {
+                    ewma = weeksSeen == 0 ? weekSpent : ewma + WEEKLY_EWMA_ALPHA * (weekSpent - ewma);
+                    weeksSeen++;
+                    weekStart = cursor.getLong(2);
+                    weekSpent = cursor.getLong(3);
+                }
+
+                db.execSQL("UPDATE " + TABLE_CATEGORY_STATS + " SET " + COLUMN_WEEK_START + " = ?, " + COLUMN_WEEK_SPENT + " = ?, "
+                                + COLUMN_WEEKLY_EWMA + " = ?, " + COLUMN_WEEKS_SEEN + " = ? "
+                                + "WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_CATEGORY_ID + " = ?",
+                        new Object[]{weekStart, weekSpent, ewma, weeksSeen, userId, categoryId});
+            }
+
+            db.setTransactionSuccessful();
+            Log.d("DatabaseHelper", "✅ Rebuilt category_stats");
+        } finally {
+            if (cursor != null) cursor.close();
+            db.endTransaction();
+        }
+    }
+
+    // 🧠 Tạo bảng transaction_day_versions + triggers, insights, insight_runs
+    private void createInsights(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_TRANSACTION_DAY_VERSIONS);
+        db.execSQL(CREATE_TRIGGER_DAY_VERSION_INSERT);
+        db.execSQL(CREATE_TRIGGER_DAY_VERSION_DELETE);
+        db.execSQL(CREATE_TRIGGER_DAY_VERSION_UPDATE);
+        db.execSQL(CREATE_TABLE_INSIGHTS);
+        db.execSQL(CREATE_TABLE_INSIGHT_RUNS);
+        Log.d("DatabaseHelper", "✅ Created insights tables and day version triggers");
+    }
+
+    // 🧾 Tạo bảng budget_plans + budget_items + index + triggers điền start_day/end_day
+    private void createBudgetPlans(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_BUDGET_PLANS);
+        db.execSQL(CREATE_TABLE_BUDGET_ITEMS);
+        db.execSQL(CREATE_INDEX_BUDGET_PLANS_USER_DAYS);
+        db.execSQL(CREATE_INDEX_BUDGET_ITEMS_PLAN_CATEGORY);
+        db.execSQL(CREATE_TRIGGER_PLAN_DAYS_INSERT);
+        db.execSQL(CREATE_TRIGGER_PLAN_DAYS_UPDATE);
+        db.execSQL(CREATE_TRIGGER_PLAN_DELETE);
+        Log.d("DatabaseHelper", "✅ Created budget_plans and budget_items tables");
+    }
+
+    // 🧾 Tạo bảng budget_progress + triggers đồng bộ với transactions/budget_plans/budget_items
+    private void createBudgetProgress(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_BUDGET_PROGRESS);
+        db.execSQL(CREATE_TRIGGER_BUDGET_PROGRESS_TX_INSERT);
+        db.execSQL(CREATE_TRIGGER_BUDGET_PROGRESS_TX_DELETE);
+        db.execSQL(CREATE_TRIGGER_BUDGET_PROGRESS_TX_UPDATE);
+        db.execSQL(CREATE_TRIGGER_BUDGET_PROGRESS_ITEM_INSERT);
+        db.execSQL(CREATE_TRIGGER_BUDGET_PROGRESS_ITEM_UPDATE);
+        db.execSQL(CREATE_TRIGGER_BUDGET_PROGRESS_ITEM_DELETE);
+        db.execSQL(CREATE_TRIGGER_BUDGET_PROGRESS_PLAN_UPDATE);
+        Log.d("DatabaseHelper", "✅ Created budget_progress table and triggers");
+    }
+
+    // 🧾 Gom các dòng budgets cùng (user, budget_name) thành 1 plan, mỗi dòng thành 1 item (giữ _id).
+    // Ngày của plan = ngày sớm nhất / muộn nhất trong nhóm, lưu lại dạng dd/MM/yyyy như CreateBudgetActivity.
+    private void migrateBudgetPlans(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            // budget_progress v14 khóa theo budgets._id và dùng triggers trên budgets -> bỏ, tạo lại bên dưới
+            for (String trigger : LEGACY_BUDGET_PROGRESS_TRIGGERS) {
+                db.execSQL("DROP TRIGGER IF EXISTS " + trigger);
+            }
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_BUDGET_PROGRESS);
+
+            createBudgetPlans(db);
+
+            db.execSQL("INSERT INTO " + TABLE_BUDGET_PLANS + " ("
+                    + COLUMN_USER_ID + ", " + COLUMN_BUDGET_NAME + ", " + COLUMN_BUDGET_PERIOD + ", "
+                    + COLUMN_BUDGET_START_DATE + ", " + COLUMN_BUDGET_END_DATE + ", "
+                    + COLUMN_START_DAY + ", " + COLUMN_END_DAY + ", " + COLUMN_CREATED_AT + ") "
+                    + "SELECT " + COLUMN_USER_ID + ", name, MIN(" + COLUMN_BUDGET_PERIOD + "), "
+                    + "strftime('%d/%m/%Y', MIN(start_day) + 2440587.5), strftime('%d/%m/%Y', MAX(end_day) + 2440587.5), "
+                    + "MIN(start_day), MAX(end_day), MIN(" + COLUMN_CREATED_AT + ") "
+                    + "FROM (SELECT b.*, " + legacyBudgetNameOf("b") + " AS name, "
+                    + budgetDayOf(COLUMN_BUDGET_START_DATE) + " AS start_day, "
+                    + budgetDayOf(COLUMN_BUDGET_END_DATE) + " AS end_day FROM " + TABLE_BUDGETS + " b) "
+                    + "GROUP BY " + COLUMN_USER_ID + ", name");
+
+            db.execSQL("INSERT INTO " + TABLE_BUDGET_ITEMS + " ("
+                    + COLUMN_ID + ", " + COLUMN_PLAN_ID + ", " + COLUMN_CATEGORY_ID + ", " + COLUMN_BUDGET_AMOUNT + ", " + COLUMN_CREATED_AT + ") "
+                    + "SELECT b." + COLUMN_ID + ", p." + COLUMN_ID + ", b." + COLUMN_CATEGORY_ID + ", b." + COLUMN_BUDGET_AMOUNT + ", b." + COLUMN_CREATED_AT + " "
+                    + "FROM " + TABLE_BUDGETS + " b JOIN " + TABLE_BUDGET_PLANS + " p "
+                    + "ON p." + COLUMN_USER_ID + " = b." + COLUMN_USER_ID + " AND p." + COLUMN_BUDGET_NAME + " = " + legacyBudgetNameOf("b"));
+
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_BUDGETS);
+
+            createBudgetProgress(db);
+            rebuildBudgetProgress(db);
+
+            db.setTransactionSuccessful();
+            Log.d("DatabaseHelper", "✅ Migrated budgets to budget_plans + budget_items");
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // 🧾 Tính lại toàn bộ budget_progress từ budget_items + transactions (+ giao dịch đã archive)
+    public void rebuildBudgetProgress(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_BUDGET_PROGRESS);
+            db.execSQL(selectBudgetProgressInto(null, hasArchivedDayTotals(db)));
+            db.setTransactionSuccessful();
+            Log.d("DatabaseHelper", "✅ Rebuilt budget_progress");
+        } finally {
+            db.endTransaction();
         }
     }
 
+    // 🧾 Tính lại tiến độ các item của 1 plan (trigger đã làm việc này khi đổi ngày/danh mục; dùng để đối soát)
+    public void rebuildBudgetProgress(SQLiteDatabase db, long planId) {
+        db.execSQL(selectBudgetProgressInto("i." + COLUMN_PLAN_ID + " = ?", hasArchivedDayTotals(db)), new Object[]{planId});
+        Log.d("DatabaseHelper", "✅ Rebuilt budget_progress for plan " + planId);
+    }
+
+    // 🔍 Tạo bảng transactions_fts + triggers đồng bộ với transactions/categories
+    private void createTransactionsFts(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_TRANSACTIONS_FTS);
+        db.execSQL(CREATE_TRIGGER_FTS_INSERT);
+        db.execSQL(CREATE_TRIGGER_FTS_DELETE);
+        db.execSQL(CREATE_TRIGGER_FTS_UPDATE);
+        db.execSQL(CREATE_TRIGGER_FTS_CATEGORY_RENAME);
+        Log.d("DatabaseHelper", "✅ Created transactions_fts table and triggers");
+    }
+
+    // 🔍 Đánh chỉ mục lại toàn bộ transactions_fts từ transactions
+    public void rebuildTransactionsFts(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_TRANSACTIONS_FTS);
+            db.execSQL("INSERT INTO " + TABLE_TRANSACTIONS_FTS + " (docid, " + COLUMN_NOTE + ", " + COLUMN_PAYMENT_METHOD + ", " + COLUMN_FTS_CATEGORY_NAME + ") "
+                    + "SELECT t." + COLUMN_ID + ", "
+                    + foldStepOf("COALESCE(t." + COLUMN_NOTE + ", '')", 0) + ", "
+                    + foldStepOf("COALESCE(t." + COLUMN_PAYMENT_METHOD + ", '')", 0) + ", "
+                    + foldStepOf("COALESCE(c." + COLUMN_CATEGORY_NAME + ", '')", 0) + " FROM " + TABLE_TRANSACTIONS + " t "
+                    + "LEFT JOIN " + TABLE_CATEGORIES + " c ON t." + COLUMN_CATEGORY_ID + " = c." + COLUMN_ID);
+            for (String statement : foldRemainingOf(FTS_COLUMNS, "1").split("; ")) {
+                db.execSQL(statement);
+            }
+            db.execSQL("INSERT INTO " + TABLE_TRANSACTIONS_FTS + " (" + TABLE_TRANSACTIONS_FTS + ") VALUES ('optimize')");
+            db.setTransactionSuccessful();
+            Log.d("DatabaseHelper", "✅ Rebuilt transactions_fts");
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // 💰 SQLite không đổi được kiểu cột -> tạo bảng mới với cột INTEGER, chép dữ liệu, thay bảng cũ.
+    // Triggers trên transactions mất theo bảng cũ nên được tạo lại; _id giữ nguyên nên docid FTS vẫn khớp.
+    private void migrateAmountsToMinorUnits(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            // Trigger trên categories tham chiếu transactions -> bỏ trước khi thay bảng
+            db.execSQL("DROP TRIGGER IF EXISTS trg_categories_fts_rename");
+
+            rebuildWithMinorUnits(db, TABLE_TRANSACTIONS, CREATE_TABLE_TRANSACTIONS, COLUMN_AMOUNT);
+            rebuildWithMinorUnits(db, TABLE_BUDGETS, CREATE_TABLE_BUDGETS, COLUMN_BUDGET_AMOUNT);
+            rebuildWithMinorUnits(db, TABLE_GOALS, CREATE_TABLE_GOALS, COLUMN_GOAL_TARGET_AMOUNT, COLUMN_GOAL_CURRENT_AMOUNT);
+            rebuildWithMinorUnits(db, TABLE_GOAL_TRANSACTIONS, CREATE_TABLE_GOAL_TRANSACTIONS, COLUMN_GOAL_TRANSACTION_AMOUNT);
+
+            // Bảng dẫn xuất: tạo lại với cột INTEGER rồi tính lại từ transactions
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_MONTHLY_ROLLUPS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_USER_BALANCES);
+
+            createIndexes(db);
+            createMonthlyRollups(db);
+            createUserBalances(db);
+            createTransactionsFts(db);
+
+            backfillMonthlyRollups(db);
+            rebuildUserBalances(db);
+
+            db.setTransactionSuccessful();
+            Log.d("DatabaseHelper", "✅ Migrated amounts to INTEGER minor units");
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Thay bảng bằng bản mới (schema hiện tại), chép các cột chung và làm tròn các cột số tiền
+    private void rebuildWithMinorUnits(SQLiteDatabase db, String table, String createTable, String... amountColumns) {
+        String newTable = table + "_new";
+        db.execSQL(createTable.replaceFirst("CREATE TABLE " + table + " ", "CREATE TABLE " + newTable + " "));
+
+        // Bảng cũ có thể có thứ tự cột khác (cột thêm bằng ALTER TABLE nằm cuối) -> chép theo tên
+        List<String> newColumns = columnsOf(db, newTable);
+        List<String> columns = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (String column : columnsOf(db, table)) {
+            if (!newColumns.contains(column)) continue;
+
+            columns.add(column);
+            values.add(Arrays.asList(amountColumns).contains(column) ? toMinorUnitsSql(column) : column);
+        }
+
+        db.execSQL("INSERT INTO " + newTable + " (" + TextUtils.join(", ", columns) + ") "
+                + "SELECT " + TextUtils.join(", ", values) + " FROM " + table);
+        db.execSQL("DROP TABLE " + table);
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + table);
+        Log.d("DatabaseHelper", "✅ Rebuilt " + table + " with INTEGER amounts");
+    }
+
+    // Làm tròn tới đồng (giống Money.toMinorUnits); số dương nhỏ hơn 0.5 vẫn giữ >= 1 để không vi phạm CHECK > 0
+    private static String toMinorUnitsSql(String column) {
+        return "CASE WHEN " + column + " > 0 THEN MAX(CAST(ROUND(" + column + ") AS INTEGER), 1) ELSE 0 END";
+    }
+
+    private List<String> columnsOf(SQLiteDatabase db, String table) {
+        List<String> columns = new ArrayList<>();
+        android.database.Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns;
+    }
+
+    // where (nếu có) được áp cho cả transactions lẫn archived_rollups
+    private String selectBalancesInto(SQLiteDatabase db, String where) {
+        return "INSERT INTO " + TABLE_USER_BALANCES + " ("
+                + COLUMN_USER_ID + ", " + COLUMN_TOTAL_INCOME + ", " + COLUMN_TOTAL_EXPENSE + ", " + COLUMN_BALANCE + ") "
+                + "SELECT " + COLUMN_USER_ID + ", "
+                + "COALESCE(SUM(CASE WHEN " + COLUMN_TYPE + " = 'income' THEN " + COLUMN_AMOUNT + " END), 0), "
+                + "COALESCE(SUM(CASE WHEN " + COLUMN_TYPE + " = 'expense' THEN " + COLUMN_AMOUNT + " END), 0), "
+                + "COALESCE(SUM(CASE WHEN " + COLUMN_TYPE + " = 'income' THEN " + COLUMN_AMOUNT + " ELSE -" + COLUMN_AMOUNT + " END), 0) "
+                + "FROM (SELECT " + COLUMN_USER_ID + ", " + COLUMN_TYPE + ", " + COLUMN_AMOUNT + " FROM " + TABLE_TRANSACTIONS + " "
+                + (where != null ? "WHERE " + where + " " : "")
+                + archivedRollupsUnion(db, COLUMN_TYPE + ", " + COLUMN_ROLLUP_TOTAL, where)
+                + ") GROUP BY " + COLUMN_USER_ID;
+    }
+
+    // " UNION ALL SELECT user_id, <columns> FROM archived_rollups [WHERE ...]" - rỗng khi đang migrate từ trước v16 (chưa có bảng)
+    String archivedRollupsUnion(SQLiteDatabase db, String columns, String where) {
+        if (columnsOf(db, TABLE_ARCHIVED_ROLLUPS).isEmpty()) {
+            return "";
+        }
+        return " UNION ALL SELECT " + COLUMN_USER_ID + ", " + columns + " FROM " + TABLE_ARCHIVED_ROLLUPS
+                + (where != null ? " WHERE " + where : "");
+    }
+
+    // 🗄️ Bảng tổng hợp của giao dịch đã archive + archive_moves; tạo lại các triggers tổng hợp đã có để bỏ qua dòng
+    // đang chuyển sang/về archive và để budget_progress cộng cả archived_day_totals
+    private void createArchiveTables(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL(CREATE_TABLE_ARCHIVED_ROLLUPS);
+            db.execSQL(CREATE_TABLE_ARCHIVED_DAY_TOTALS);
+            db.execSQL(CREATE_TABLE_ARCHIVE_MOVES);
+
+            for (String trigger : AGGREGATE_TRIGGERS) {
+                db.execSQL("DROP TRIGGER IF EXISTS " + trigger);
+            }
+            for (String trigger : BUDGET_PROGRESS_RECOMPUTE_TRIGGERS) {
+                db.execSQL("DROP TRIGGER IF EXISTS " + trigger);
+            }
+            db.execSQL(CREATE_TRIGGER_ROLLUP_INSERT);
+            db.execSQL(CREATE_TRIGGER_ROLLUP_DELETE);
+            db.execSQL(CREATE_TRIGGER_BALANCE_INSERT);
+            db.execSQL(CREATE_TRIGGER_BALANCE_DELETE);
+            db.execSQL(CREATE_TRIGGER_BUDGET_PROGRESS_TX_INSERT);
+            db.execSQL(CREATE_TRIGGER_BUDGET_PROGRESS_TX_DELETE);
+            db.execSQL(CREATE_TRIGGER_BUDGET_PROGRESS_ITEM_INSERT);
+            db.execSQL(CREATE_TRIGGER_BUDGET_PROGRESS_ITEM_UPDATE);
+            db.execSQL(CREATE_TRIGGER_BUDGET_PROGRESS_PLAN_UPDATE);
+
+            db.setTransactionSuccessful();
+            Log.d("DatabaseHelper", "✅ Created archive tables and guarded aggregate triggers");
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Bảng chưa có khi đang migrate từ trước v16
+    private boolean hasArchivedDayTotals(SQLiteDatabase db) {
+        return !columnsOf(db, TABLE_ARCHIVED_DAY_TOTALS).isEmpty();
+    }
+
     private void insertDefaultCategories(SQLiteDatabase db) {
         Log.d("DatabaseHelper", "📂 Inserting default categories...");
 
@@ -298,7 +1810,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     // 🎯 NEW: Helper method to link goal with transaction
-    public long insertGoalTransaction(SQLiteDatabase db, int goalId, long transactionId, double amount, String note) {
+    public long insertGoalTransaction(SQLiteDatabase db, int goalId, long transactionId, long amount, String note) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_GOAL_ID, goalId);
         values.put(COLUMN_TRANSACTION_ID, transactionId);
@@ -0,0 +1,153 @@
+package database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import models.Goal;
+
+/**
+ * 🎯 Truy vấn mục tiêu tiết kiệm của user (qua idx_goals_user_status).
+ */
+public class GoalDAO {
+    private static final String TAG = "GoalDAO";
+
+    public static final String STATUS_ACTIVE = "active";
+    public static final String STATUS_COMPLETED = "completed";
+    public static final String STATUS_PAUSED = "paused";
+
+    // Cột SELECT cố định - read() đọc theo vị trí, không tra getColumnIndex mỗi dòng
+    private static final String SELECT_COLUMNS = DatabaseHelper.COLUMN_ID + ", " +
+            DatabaseHelper.COLUMN_GOAL_NAME + ", " +
+            DatabaseHelper.COLUMN_GOAL_TARGET_AMOUNT + ", " +
+            DatabaseHelper.COLUMN_GOAL_CURRENT_AMOUNT + ", " +
+            DatabaseHelper.COLUMN_GOAL_DEADLINE + ", " +
+            DatabaseHelper.COLUMN_GOAL_ICON + ", " +
+            DatabaseHelper.COLUMN_GOAL_STATUS + ", " +
+            DatabaseHelper.COLUMN_USER_ID + ", " +
+            DatabaseHelper.COLUMN_CREATED_AT;
+
+    private final DatabaseHelper dbHelper;
+
+    public GoalDAO(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Số mục tiêu theo trạng thái
+     */
+    public static final class StatusCounts {
+        public int total;
+        public int active;
+        public int completed;
+        public int paused;
+    }
+
+    static Goal read(Cursor cursor) {
+        Goal goal = new Goal();
+        goal.setId(cursor.getInt(0));
+        goal.setName(cursor.getString(1));
+        goal.setTargetAmount(cursor.getLong(2));
+        goal.setCurrentAmount(cursor.getLong(3));
+        goal.setDeadline(cursor.getString(4));
+        goal.setIcon(cursor.getString(5));
+        goal.setStatus(cursor.getString(6));
+        goal.setUserId(cursor.getInt(7));
+        goal.setCreatedAt(cursor.getString(8));
+        return goal;
+    }
+
+    /**
+     * Mục tiêu của user, mới nhất trước
+     *
+     * @param status null = mọi trạng thái
+     */
+    public List<Goal> getGoals(int userId, String status) {
+        List<Goal> goals = new ArrayList<>();
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            String query = "SELECT " + SELECT_COLUMNS + " FROM " + DatabaseHelper.TABLE_GOALS +
+                    " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ?";
+            String[] args = {String.valueOf(userId)};
+
+            if (status != null) {
+                query += " AND " + DatabaseHelper.COLUMN_GOAL_STATUS + " = ?";
+                args = new String[]{String.valueOf(userId), status};
+            }
+            cursor = db.rawQuery(query + " ORDER BY " + DatabaseHelper.COLUMN_CREATED_AT + " DESC", args);
+
+            while (cursor.moveToNext()) {
+                goals.add(read(cursor));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading goals: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return goals;
+    }
+
+    /**
+     * Mục tiêu theo id (chỉ khi thuộc user), null nếu không có
+     */
+    public Goal getGoal(int goalId, int userId) {
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT " + SELECT_COLUMNS + " FROM " + DatabaseHelper.TABLE_GOALS +
+                            " WHERE " + DatabaseHelper.COLUMN_ID + " = ? AND " + DatabaseHelper.COLUMN_USER_ID + " = ?",
+                    new String[]{String.valueOf(goalId), String.valueOf(userId)});
+
+            return cursor.moveToFirst() ? read(cursor) : null;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading goal " + goalId + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Đếm mục tiêu theo trạng thái - 1 câu GROUP BY (chỉ đọc index) thay vì 1 câu COUNT mỗi trạng thái
+     */
+    public StatusCounts getStatusCounts(int userId) {
+        StatusCounts counts = new StatusCounts();
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_GOAL_STATUS + ", COUNT(*) FROM " + DatabaseHelper.TABLE_GOALS +
+                            " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ?" +
+                            " GROUP BY " + DatabaseHelper.COLUMN_GOAL_STATUS,
+                    new String[]{String.valueOf(userId)});
+
+            while (cursor.moveToNext()) {
+                String status = cursor.getString(0);
+                int count = cursor.getInt(1);
+                counts.total += count;
+
+                if (STATUS_ACTIVE.equals(status)) {
+                    counts.active = count;
+                } else if (STATUS_COMPLETED.equals(status)) {
+                    counts.completed = count;
+                } else if (STATUS_PAUSED.equals(status)) {
+                    counts.paused = count;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error counting goals: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return counts;
+    }
+}
@@ -0,0 +1,290 @@
+package database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import models.SmartInsight;
+
+/**
+ * 🧠 Gợi ý đã tính (bảng insights), theo (user, kế hoạch, nguồn) + watermark đầu vào của lần tính.
+ *
+ * Nơi tính (BudgetAnalytics, SmartBudgetActivity) tự dựng watermark từ những gì bộ phân tích đọc - thường là
+ * getDayVersion() của khoảng ngày + ngày hôm nay + số liệu kế hoạch. getIfCurrent() trả kết quả cũ khi watermark
+ * chưa đổi, nếu không thì tính rồi save(). Gợi ý đã ẩn (dismiss) vẫn ẩn sau khi tính lại, miễn là cùng tiêu đề.
+ */
+public class InsightDAO {
+    private static final String TAG = "InsightDAO";
+
+    private static final String[] COLUMNS = {
+            DatabaseHelper.COLUMN_ID,
+            DatabaseHelper.COLUMN_INSIGHT_SOURCE,
+            DatabaseHelper.COLUMN_INSIGHT_TITLE,
+            DatabaseHelper.COLUMN_INSIGHT_MESSAGE,
+            DatabaseHelper.COLUMN_INSIGHT_SUGGESTION,
+            DatabaseHelper.COLUMN_TYPE,
+            DatabaseHelper.COLUMN_INSIGHT_IMPACT,
+            DatabaseHelper.COLUMN_INSIGHT_VALUE,
+            DatabaseHelper.COLUMN_INSIGHT_ACTIONABLE,
+            DatabaseHelper.COLUMN_INSIGHT_DISMISSED,
+            DatabaseHelper.COLUMN_CREATED_AT,
+            DatabaseHelper.COLUMN_UPDATED_AT
+    };
+
+    private static final String ORDER = DatabaseHelper.COLUMN_INSIGHT_SOURCE + ", " + DatabaseHelper.COLUMN_INSIGHT_POSITION;
+
+    private final DatabaseHelper dbHelper;
+
+    public InsightDAO(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * 📅 Watermark giao dịch của user từ ngày fromDay (epoch day) trở đi: tăng mỗi lần có giao dịch trong khoảng bị ghi.
+     * -1 nếu lỗi.
+     */
+    public long getDayVersion(int userId, int fromDay) {
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT COALESCE(SUM(" + DatabaseHelper.COLUMN_VERSION + "), 0) FROM " + DatabaseHelper.TABLE_TRANSACTION_DAY_VERSIONS +
+                            " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " >= ?",
+                    new String[]{String.valueOf(userId), String.valueOf(fromDay)});
+
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error reading day versions: " + e.getMessage());
+            return -1;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Gợi ý chưa ẩn của mọi nguồn theo nguồn (thứ tự trong nguồn giữ nguyên) - không kiểm tra watermark,
+     * dùng để mở màn hình ngay trong lúc các nguồn được kiểm tra / tính lại
+     */
+    public Map<String, List<SmartInsight>> getInsights(int userId, int planId) {
+        Map<String, List<SmartInsight>> insights = new LinkedHashMap<>();
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.query(DatabaseHelper.TABLE_INSIGHTS, COLUMNS,
+                    DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_PLAN_ID + " = ? AND " +
+                            DatabaseHelper.COLUMN_INSIGHT_DISMISSED + " = 0",
+                    new String[]{String.valueOf(userId), String.valueOf(planId)}, null, null, ORDER);
+
+            while (cursor.moveToNext()) {
+                String source = cursor.getString(1);
+                List<SmartInsight> list = insights.get(source);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    insights.put(source, list);
+                }
+                list.add(insightOf(cursor));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading insights: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return insights;
+    }
+
+    /**
+     * Gợi ý của 1 nguồn (kể cả đã ẩn) nếu lần tính gần nhất có cùng watermark, null nếu phải tính lại
+     */
+    public List<SmartInsight> getIfCurrent(int userId, int planId, String source, String watermark) {
+        if (watermark == null) return null;
+
+        Cursor cursor = null;
+        String[] args = {String.valueOf(userId), String.valueOf(planId), source};
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_WATERMARK + " FROM " + DatabaseHelper.TABLE_INSIGHT_RUNS +
+                    " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_PLAN_ID + " = ? AND " +
+                    DatabaseHelper.COLUMN_INSIGHT_SOURCE + " = ?", args);
+            boolean current = cursor.moveToFirst() && watermark.equals(cursor.getString(0));
+            cursor.close();
+            cursor = null;
+            if (!current) return null;
+
+            List<SmartInsight> insights = new ArrayList<>();
+            cursor = db.query(DatabaseHelper.TABLE_INSIGHTS, COLUMNS, sourceWhere(), args, null, null, ORDER);
+            while (cursor.moveToNext()) {
+                insights.add(insightOf(cursor));
+            }
+            return insights;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading insights of " + source + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Thay gợi ý của 1 nguồn bằng kết quả vừa tính + ghi watermark (null: không ghi, lần sau tính lại).
+     * Gợi ý trùng tiêu đề với dòng cũ được cập nhật tại chỗ, giữ id + dismissed + createdAt; id được gán vào từng SmartInsight.
+     *
+     * @return chính danh sách insights
+     */
+    public List<SmartInsight> save(int userId, int planId, String source, String watermark, List<SmartInsight> insights) {
+        String[] args = {String.valueOf(userId), String.valueOf(planId), source};
+        long now = System.currentTimeMillis();
+        SQLiteDatabase db = null;
+        Cursor cursor = null;
+        List<SmartInsight> inserted = new ArrayList<>();
+
+        try {
+            db = dbHelper.getWritableDatabase();
+            db.beginTransaction();
+
+            // key -> {id, dismissed, created_at} của lần tính trước
+            Map<String, long[]> previous = new HashMap<>();
+            cursor = db.query(DatabaseHelper.TABLE_INSIGHTS, new String[]{DatabaseHelper.COLUMN_INSIGHT_KEY, DatabaseHelper.COLUMN_ID,
+                            DatabaseHelper.COLUMN_INSIGHT_DISMISSED, DatabaseHelper.COLUMN_CREATED_AT},
+                    sourceWhere(), args, null, null, null);
+            while (cursor.moveToNext()) {
+                previous.put(cursor.getString(0), new long[]{cursor.getLong(1), cursor.getLong(2), cursor.getLong(3)});
+            }
+            cursor.close();
+            cursor = null;
+
+            // Dòng cùng key được cập nhật tại chỗ (giữ id) nên dismiss(id) của danh sách đang hiển thị vẫn trúng dòng
+            Set<String> keys = new HashSet<>();
+            for (int position = 0; position < insights.size(); position++) {
+                SmartInsight insight = insights.get(position);
+                String key = keyOf(insight, keys);
+                long[] old = previous.remove(key);
+
+                ContentValues values = new ContentValues();
+                values.put(DatabaseHelper.COLUMN_INSIGHT_TITLE, insight.getTitle());
+                values.put(DatabaseHelper.COLUMN_INSIGHT_MESSAGE, insight.getMessage());
+                values.put(DatabaseHelper.COLUMN_INSIGHT_SUGGESTION, insight.getSuggestion());
+                values.put(DatabaseHelper.COLUMN_TYPE, insight.getType() != null ? insight.getType().name() : null);
+                values.put(DatabaseHelper.COLUMN_INSIGHT_IMPACT, insight.getImpact() != null ? insight.getImpact().name() : null);
+                values.put(DatabaseHelper.COLUMN_INSIGHT_VALUE, insight.getValue());
+                values.put(DatabaseHelper.COLUMN_INSIGHT_ACTIONABLE, insight.isActionable() ? 1 : 0);
+                values.put(DatabaseHelper.COLUMN_INSIGHT_POSITION, position);
+                values.put(DatabaseHelper.COLUMN_UPDATED_AT, now);
+
+                if (old != null) {
+                    // Không ghi dismissed: giá trị trong bảng là của người dùng
+                    db.update(DatabaseHelper.TABLE_INSIGHTS, values, DatabaseHelper.COLUMN_ID + " = ?",
+                            new String[]{String.valueOf(old[0])});
+                    insight.setId((int) old[0]);
+                    insight.setDismissed(old[1] != 0);
+                    insight.setCreatedAt(new Date(old[2]));
+                } else {
+                    values.put(DatabaseHelper.COLUMN_USER_ID, userId);
+                    values.put(DatabaseHelper.COLUMN_PLAN_ID, planId);
+                    values.put(DatabaseHelper.COLUMN_INSIGHT_SOURCE, source);
+                    values.put(DatabaseHelper.COLUMN_INSIGHT_KEY, key);
+                    values.put(DatabaseHelper.COLUMN_INSIGHT_DISMISSED, insight.isDismissed() ? 1 : 0);
+                    values.put(DatabaseHelper.COLUMN_CREATED_AT, now);
+                    insight.setId((int) db.insertOrThrow(DatabaseHelper.TABLE_INSIGHTS, null, values));
+                    inserted.add(insight);
+                }
+                insight.setUpdatedAt(new Date(now));
+            }
+
+            // Gợi ý không còn trong kết quả mới
+            for (long[] stale : previous.values()) {
+                db.delete(DatabaseHelper.TABLE_INSIGHTS, DatabaseHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(stale[0])});
+            }
+
+            if (watermark != null) {
+                ContentValues run = new ContentValues();
+                run.put(DatabaseHelper.COLUMN_USER_ID, userId);
+                run.put(DatabaseHelper.COLUMN_PLAN_ID, planId);
+                run.put(DatabaseHelper.COLUMN_INSIGHT_SOURCE, source);
+                run.put(DatabaseHelper.COLUMN_WATERMARK, watermark);
+                run.put(DatabaseHelper.COLUMN_UPDATED_AT, now);
+                db.insertWithOnConflict(DatabaseHelper.TABLE_INSIGHT_RUNS, null, run, SQLiteDatabase.CONFLICT_REPLACE);
+            } else {
+                db.delete(DatabaseHelper.TABLE_INSIGHT_RUNS, sourceWhere(), args);
+            }
+
+            db.setTransactionSuccessful();
+            Log.d(TAG, "✅ Saved " + insights.size() + " insights of " + source);
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error saving insights of " + source + ": " + e.getMessage());
+
+            // Transaction rollback -> id của dòng vừa insert không trỏ tới dòng nào; 0 = chưa lưu (dismiss chỉ ẩn trên màn hình)
+            for (SmartInsight insight : inserted) {
+                insight.setId(0);
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+            if (db != null) db.endTransaction();
+        }
+
+        return insights;
+    }
+
+    /**
+     * Ẩn 1 gợi ý - giữ qua các lần tính lại và mở lại app
+     */
+    public boolean dismiss(int insightId) {
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COLUMN_INSIGHT_DISMISSED, 1);
+            values.put(DatabaseHelper.COLUMN_UPDATED_AT, System.currentTimeMillis());
+            return db.update(DatabaseHelper.TABLE_INSIGHTS, values, DatabaseHelper.COLUMN_ID + " = ?",
+                    new String[]{String.valueOf(insightId)}) > 0;
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error dismissing insight " + insightId + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static String sourceWhere() {
+        return DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_PLAN_ID + " = ? AND " +
+                DatabaseHelper.COLUMN_INSIGHT_SOURCE + " = ?";
+    }
+
+    // Tiêu đề là danh tính của gợi ý trong 1 nguồn; trùng tiêu đề thì thêm số thứ tự
+    private static String keyOf(SmartInsight insight, Set<String> used) {
+        String title = insight.getTitle() != null ? insight.getTitle() : "";
+        String key = title;
+        for (int n = 2; !used.add(key); n++) {
+            key = title + "#" + n;
+        }
+        return key;
+    }
+
+    private static SmartInsight insightOf(Cursor cursor) {
+        SmartInsight insight = new SmartInsight();
+        insight.setId(cursor.getInt(0));
+        insight.setTitle(cursor.getString(2));
+        insight.setMessage(cursor.getString(3));
+        insight.setSuggestion(cursor.getString(4));
+        if (!cursor.isNull(5)) insight.setType(SmartInsight.Type.valueOf(cursor.getString(5)));
+        if (!cursor.isNull(6)) insight.setImpact(SmartInsight.Impact.valueOf(cursor.getString(6)));
+        insight.setValue(cursor.isNull(7) ? null : cursor.getDouble(7));
+        insight.setActionable(cursor.getInt(8) != 0);
+        insight.setDismissed(cursor.getInt(9) != 0);
+        insight.setCreatedAt(new Date(cursor.getLong(10)));
+        insight.setUpdatedAt(new Date(cursor.getLong(11)));
+        return insight;
+    }
+}
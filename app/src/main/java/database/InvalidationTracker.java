@@ -0,0 +1,129 @@
+package database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import models.DateCodec;
+
+/**
+ * 🔄 Cho màn hình biết dữ liệu nó hiển thị có đổi từ lần load trước hay không.
+ *
+ * Mỗi bảng trong DatabaseHelper.VERSIONED_TABLES có 1 version trong table_versions, tăng bởi triggers mỗi lần
+ * insert/update/delete - kể cả ghi từ TransactionWriteQueue, connection archive hay câu SQL trực tiếp trong Activity.
+ * Màn hình giữ 1 Observer cho các bảng nó đọc: onResume gọi hasChanged() (1 câu đọc vài dòng theo primary key)
+ * và chỉ chạy lại các truy vấn nặng khi có bảng đổi, quay lại màn hình mà không có gì ghi thì không truy vấn lại.
+ */
+public class InvalidationTracker {
+    private static final String TAG = "InvalidationTracker";
+
+    // Version không đọc được (lỗi) - so sánh luôn khác nên màn hình load lại
+    private static final long UNKNOWN = -1;
+
+    private final DatabaseHelper dbHelper;
+
+    InvalidationTracker(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Version hiện tại của các bảng được theo dõi, null nếu lỗi
+     */
+    public Map<String, Long> getVersions() {
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_TABLE_NAME + ", " + DatabaseHelper.COLUMN_VERSION +
+                    " FROM " + DatabaseHelper.TABLE_TABLE_VERSIONS, null);
+
+            Map<String, Long> versions = new HashMap<>();
+            while (cursor.moveToNext()) {
+                versions.put(cursor.getString(0), cursor.getLong(1));
+            }
+            return versions;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error reading table versions: " + e.getMessage());
+            return null;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Theo dõi các bảng (tên trong DatabaseHelper.VERSIONED_TABLES) mà 1 màn hình đọc
+     */
+    public Observer observe(String... tables) {
+        for (String table : tables) {
+            if (!Arrays.asList(DatabaseHelper.VERSIONED_TABLES).contains(table)) {
+                throw new IllegalArgumentException("Table is not versioned: " + table);
+            }
+        }
+        return new Observer(tables.clone());
+    }
+
+    /**
+     * Version của các bảng tại lần load gần nhất của 1 màn hình.
+     * Số liệu theo ngày / tháng hiện tại cũng cũ đi khi qua ngày mới nên đổi ngày cũng tính là đã đổi.
+     */
+    public final class Observer {
+        private final String[] tables;
+
+        // null = chưa load lần nào hoặc đã invalidate()
+        private long[] loadedVersions;
+        private int loadedDay;
+
+        private Observer(String[] tables) {
+            this.tables = tables;
+        }
+
+        /**
+         * true nếu cần load lại: chưa load, qua ngày mới, hoặc có bảng đổi kể từ markLoaded()
+         */
+        public synchronized boolean hasChanged() {
+            if (loadedVersions == null || loadedDay != DateCodec.today()) {
+                return true;
+            }
+            return !Arrays.equals(loadedVersions, readVersions());
+        }
+
+        /**
+         * Ghi nhận version hiện tại - gọi lúc bắt đầu load để thay đổi xảy ra trong lúc load vẫn được thấy lần sau
+         */
+        public synchronized void markLoaded() {
+            long[] versions = readVersions();
+            loadedVersions = versions;
+            loadedDay = DateCodec.today();
+
+            // Không đọc được version thì coi như chưa load
+            for (long version : versions) {
+                if (version == UNKNOWN) {
+                    loadedVersions = null;
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Buộc lần hasChanged() tiếp theo trả về true (đổi user, đổi bộ lọc...)
+         */
+        public synchronized void invalidate() {
+            loadedVersions = null;
+        }
+
+        private long[] readVersions() {
+            Map<String, Long> current = getVersions();
+            long[] versions = new long[tables.length];
+            for (int i = 0; i < tables.length; i++) {
+                Long version = current != null ? current.get(tables[i]) : null;
+                versions[i] = version != null ? version : UNKNOWN;
+            }
+            return versions;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import models.DateCodec;
+
+/**
+ * 📊 Đọc số liệu tổng hợp từ bảng monthly_rollups.
+ *
+ * Một khoảng ngày bất kỳ được tách thành: các tháng trọn vẹn (đọc từ monthly_rollups)
+ * + phần lẻ đầu/cuối khoảng (đọc từ transactions qua index user/date_epoch_day, cộng archived_day_totals cho giao dịch đã archive).
+ * Kết quả vì vậy chính xác như khi quét transactions, nhưng chỉ tốn O(số danh mục x số tháng).
+ */
+public class MonthlyRollupDAO {
+    private static final String TAG = "MonthlyRollupDAO";
+
+    private final DatabaseHelper dbHelper;
+
+    public MonthlyRollupDAO(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Tổng thu/chi trong khoảng ngày [startDate, endDate] (định dạng yyyy-MM-dd)
+     *
+     * @return {income, expense}
+     */
+    public long[] getIncomeExpense(int userId, String startDate, String endDate) {
+        long income = 0, expense = 0;
+
+        List<String> args = new ArrayList<>();
+        String source = buildSource(userId, startDate, endDate, null,
+                DatabaseHelper.COLUMN_TYPE, args);
+        if (source == null) {
+            return new long[]{0, 0};
+        }
+
+        String query = "SELECT " + DatabaseHelper.COLUMN_TYPE + ", SUM(total) as total FROM (" + source + ") " +
+                "GROUP BY " + DatabaseHelper.COLUMN_TYPE;
+
+        Cursor cursor = null;
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery(query, args.toArray(new String[0]));
+
+            while (cursor.moveToNext()) {
+                String type = cursor.getString(0);
+                long amount = cursor.getLong(1);
+
+                if ("income".equals(type)) {
+                    income = amount;
+                } else if ("expense".equals(type)) {
+                    expense = amount;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error getting income/expense from rollups: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return new long[]{income, expense};
+    }
+
+    /**
+     * Top danh mục chi tiêu trong khoảng ngày.
+     * Cursor gồm các cột: category_name, icon, color, total - caller phải close().
+     */
+    public Cursor getTopExpenseCategories(int userId, String startDate, String endDate, int limit) {
+        List<String> args = new ArrayList<>();
+        String source = buildSource(userId, startDate, endDate, "expense",
+                DatabaseHelper.COLUMN_CATEGORY_ID, args);
+
+        if (source == null) {
+            // Khoảng ngày không hợp lệ - trả về cursor rỗng cùng cấu trúc cột
+            source = "SELECT NULL as " + DatabaseHelper.COLUMN_CATEGORY_ID + ", 0 as total WHERE 0";
+        }
+
+        String query = "SELECT c." + DatabaseHelper.COLUMN_NAME + " as category_name, " +
+                "c." + DatabaseHelper.COLUMN_CATEGORY_ICON + " as icon, " +
+                "c." + DatabaseHelper.COLUMN_CATEGORY_COLOR + " as color, " +
+                "SUM(x.total) as total " +
+                "FROM (" + source + ") x " +
+                "JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON x." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID + " " +
+                "GROUP BY c." + DatabaseHelper.COLUMN_ID + " " +
+                "ORDER BY total DESC " +
+                "LIMIT " + limit;
+
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        return db.rawQuery(query, args.toArray(new String[0]));
+    }
+
+    /**
+     * Tạo subquery UNION ALL trả về (groupColumn, total) cho khoảng ngày.
+     * Trả về null nếu khoảng ngày không hợp lệ.
+     */
+    private String buildSource(int userId, String startDate, String endDate, String type,
+                               String groupColumn, List<String> args) {
+        int start = DateCodec.parse(startDate);
+        int end = DateCodec.parse(endDate);
+        if (start == DateCodec.INVALID || end == DateCodec.INVALID) {
+            Log.e(TAG, "❌ Invalid date range: " + startDate + " - " + endDate);
+            return null;
+        }
+        if (start > end) {
+            return null;
+        }
+
+        // Tháng trọn vẹn đầu tiên / ngày cuối của tháng trọn vẹn cuối cùng
+        int firstFull = DateCodec.dayOfMonth(start) == 1 ? start : DateCodec.endOfMonth(start) + 1;
+        int lastFull = DateCodec.endOfMonth(end) == end ? end : DateCodec.startOfMonth(end) - 1;
+
+        List<String> parts = new ArrayList<>();
+
+        if (firstFull > lastFull) {
+            // Không có tháng trọn vẹn nào - đọc thẳng transactions
+            parts.add(transactionPart(userId, type, groupColumn, start, end, args));
+        } else {
+            if (start < firstFull) {
+                parts.add(transactionPart(userId, type, groupColumn, start, firstFull - 1, args));
+            }
+
+            parts.add(rollupPart(userId, type, groupColumn,
+                    yearMonthOf(firstFull), yearMonthOf(lastFull), args));
+
+            if (end > lastFull) {
+                parts.add(transactionPart(userId, type, groupColumn, lastFull + 1, end, args));
+            }
+        }
+
+        return TextUtils.join(" UNION ALL ", parts);
+    }
+
+    private String rollupPart(int userId, String type, String groupColumn,
+                              String fromMonth, String toMonth, List<String> args) {
+        StringBuilder sql = new StringBuilder("SELECT " + groupColumn + ", " + DatabaseHelper.COLUMN_ROLLUP_TOTAL + " as total FROM " +
+                DatabaseHelper.TABLE_MONTHLY_ROLLUPS + " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND ");
+        args.add(String.valueOf(userId));
+        if (type != null) {
+            sql.append(DatabaseHelper.COLUMN_TYPE).append(" = ? AND ");
+            args.add(type);
+        }
+        sql.append(DatabaseHelper.COLUMN_YEAR_MONTH).append(" BETWEEN ? AND ?");
+        args.add(fromMonth);
+        args.add(toMonth);
+        return sql.toString();
+    }
+
+    // "yyyy-MM" - khóa tháng của monthly_rollups
+    private static String yearMonthOf(int epochDay) {
+        return DateCodec.format(epochDay).substring(0, 7);
+    }
+
+    // Phần lẻ tháng: transactions + archived_day_totals (monthly_rollups vẫn giữ giao dịch đã archive, bảng nóng thì không)
+    private String transactionPart(int userId, String type, String groupColumn,
+                                   int fromDay, int toDay, List<String> args) {
+        return dayPart(DatabaseHelper.TABLE_TRANSACTIONS, DatabaseHelper.COLUMN_AMOUNT, userId, type, groupColumn, fromDay, toDay, args)
+                + " UNION ALL "
+                + dayPart(DatabaseHelper.TABLE_ARCHIVED_DAY_TOTALS, DatabaseHelper.COLUMN_ROLLUP_TOTAL, userId, type, groupColumn, fromDay, toDay, args);
+    }
+
+    private String dayPart(String table, String amountColumn, int userId, String type, String groupColumn,
+                           int fromDay, int toDay, List<String> args) {
+        StringBuilder sql = new StringBuilder("SELECT " + groupColumn + ", " + amountColumn + " as total FROM " +
+                table + " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND ");
+        args.add(String.valueOf(userId));
+        if (type != null) {
+            sql.append(DatabaseHelper.COLUMN_TYPE).append(" = ? AND ");
+            args.add(type);
+        }
+        sql.append(DatabaseHelper.COLUMN_DATE_EPOCH_DAY).append(" BETWEEN ? AND ?");
+        args.add(String.valueOf(fromDay));
+        args.add(String.valueOf(toDay));
+        return sql.toString();
+    }
+}
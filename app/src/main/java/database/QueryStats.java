@@ -0,0 +1,355 @@
+package database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.example.expensemanagement.BuildConfig;
+
+/**
+ * ⏱️ Đo thời gian từng câu truy vấn đọc (rawQuery / query) trên mọi connection của app.
+ *
+ * Gắn vào SQLiteDatabase qua CursorFactory nên không phải sửa các nơi gọi rawQuery: câu lệnh thật sự chạy
+ * ở lần getCount() đầu tiên của SQLiteCursor (fillWindow), cursor bọc lại đo đúng khoảng đó + số dòng trả về.
+ * Mỗi câu SQL giữ 1 histogram độ trễ (bucket lũy thừa 2 theo ms), tag nơi gọi (frame đầu tiên ngoài framework),
+ * và kết quả EXPLAIN QUERY PLAN (chạy 1 lần cho câu mới + khi câu chậm) để đánh dấu full table scan.
+ * EXPLAIN chạy trên 1 thread nền với hàng đợi giới hạn - đầy thì bỏ lượt, lần chạy sau của câu lệnh thử lại.
+ * Mặc định chỉ bật trong bản debug.
+ * Lệnh ghi (execSQL / insert / update) không đi qua CursorFactory nên không được đo ở đây.
+ */
+public final class QueryStats {
+    private static final String TAG = "QueryStats";
+
+    // Bucket i: < 2^i ms (bucket 0 = dưới 1 ms), bucket cuối = còn lại
+    private static final int BUCKETS = 12;
+
+    // Câu SQL ghép literal (IN (...) động, ngày nối chuỗi) có thể sinh nhiều key - vượt giới hạn thì gộp chung
+    private static final int MAX_STATEMENTS = 500;
+    private static final String OVERFLOW_KEY = "(other statements)";
+
+    // EXPLAIN đang chờ tối đa - vượt thì bỏ lượt thay vì chặn thread gọi truy vấn
+    private static final int MAX_PENDING_EXPLAINS = 16;
+
+    private static volatile boolean enabled = BuildConfig.DEBUG;
+    private static volatile long slowQueryMs = 50;
+
+    private static final Map<String, Statement> STATEMENTS = new ConcurrentHashMap<>();
+
+    // Factory mặc định của SQLiteDatabase - dùng cho chính EXPLAIN để không tự đo mình
+    private static final SQLiteDatabase.CursorFactory PLAIN_FACTORY =
+            (db, driver, editTable, query) -> new SQLiteCursor(driver, editTable, query);
+
+    private static final ThreadPoolExecutor EXPLAIN_EXECUTOR = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_PENDING_EXPLAINS), r -> {
+        Thread thread = new Thread(r, "query-stats-explain");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    }, new ThreadPoolExecutor.AbortPolicy());
+
+    public static final SQLiteDatabase.CursorFactory CURSOR_FACTORY =
+            (db, driver, editTable, query) -> enabled
+                    ? new TimedCursor(db, driver, editTable, query)
+                    : new SQLiteCursor(driver, editTable, query);
+
+    private QueryStats() {}
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    public static void setSlowQueryMs(long value) {
+        slowQueryMs = value;
+    }
+
+    public static void reset() {
+        STATEMENTS.clear();
+    }
+
+    /**
+     * Số liệu của 1 câu SQL
+     */
+    public static final class Statement {
+        public final String sql;
+        public final String tag;
+
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long rows;
+        private long slowCount;
+        private final long[] buckets = new long[BUCKETS];
+
+        // Kết quả EXPLAIN QUERY PLAN gần nhất; null = chưa chạy
+        private volatile String plan;
+        private volatile boolean fullScan;
+        // Đã xếp EXPLAIN lần đầu / lần chậm đầu tiên - compareAndSet nên mỗi loại chỉ 1 thread xếp
+        private final AtomicBoolean explainQueued = new AtomicBoolean();
+        private final AtomicBoolean slowExplainQueued = new AtomicBoolean();
+
+        Statement(String sql, String tag) {
+            this.sql = sql;
+            this.tag = tag;
+        }
+
+        synchronized void record(long nanos, int rowCount, boolean slow) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            rows += Math.max(rowCount, 0);
+            if (slow) slowCount++;
+
+            long millis = nanos / 1_000_000;
+            int bucket = millis == 0 ? 0 : 64 - Long.numberOfLeadingZeros(millis);
+            buckets[Math.min(bucket, BUCKETS - 1)]++;
+        }
+
+        public synchronized long getCount() { return count; }
+        public synchronized double getTotalMs() { return totalNanos / 1_000_000.0; }
+        public synchronized double getAvgMs() { return count == 0 ? 0 : totalNanos / 1_000_000.0 / count; }
+        public synchronized double getMaxMs() { return maxNanos / 1_000_000.0; }
+        public synchronized long getRows() { return rows; }
+        public synchronized long getSlowCount() { return slowCount; }
+        public boolean isFullScan() { return fullScan; }
+        public String getPlan() { return plan; }
+
+        /**
+         * Độ trễ (ms, cận trên của bucket) tại phân vị p (0..1)
+         */
+        public synchronized long percentileMs(double p) {
+            long target = (long) Math.ceil(count * p);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= target && seen > 0) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (BUCKETS - 1);
+        }
+
+        synchronized JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("sql", sql);
+            json.put("tag", tag);
+            json.put("count", count);
+            json.put("total_ms", totalNanos / 1_000_000.0);
+            json.put("max_ms", maxNanos / 1_000_000.0);
+            json.put("rows", rows);
+            json.put("slow", slowCount);
+            json.put("full_scan", fullScan);
+            json.put("plan", plan);
+
+            JSONArray histogram = new JSONArray();
+            for (long bucket : buckets) {
+                histogram.put(bucket);
+            }
+            json.put("histogram_ms_pow2", histogram);
+            return json;
+        }
+    }
+
+    /**
+     * Tất cả câu đã ghi nhận, tổng thời gian giảm dần
+     */
+    public static List<Statement> snapshot() {
+        List<Statement> list = new ArrayList<>(STATEMENTS.values());
+        // Chụp tổng trước khi sort - số liệu vẫn đang được ghi từ thread khác
+        Map<Statement, Double> totals = new java.util.IdentityHashMap<>();
+        for (Statement statement : list) {
+            totals.put(statement, statement.getTotalMs());
+        }
+        Collections.sort(list, (a, b) -> Double.compare(totals.get(b), totals.get(a)));
+        return list;
+    }
+
+    /**
+     * Tóm tắt dạng text cho màn hình debug
+     */
+    public static String summary(int limit) {
+        List<Statement> list = snapshot();
+        StringBuilder text = new StringBuilder();
+        text.append("Statements: ").append(list.size()).append(", slow threshold: ").append(slowQueryMs).append(" ms\n");
+
+        for (int i = 0; i < Math.min(limit, list.size()); i++) {
+            Statement s = list.get(i);
+            text.append("\n#").append(i + 1).append(s.isFullScan() ? " ⚠️ SCAN" : "")
+                    .append(" @").append(s.tag).append('\n')
+                    .append(String.format(java.util.Locale.US, "  n=%d total=%.1fms avg=%.2fms p95<%dms max=%.1fms rows=%d slow=%d",
+                            s.getCount(), s.getTotalMs(), s.getAvgMs(), s.percentileMs(0.95), s.getMaxMs(), s.getRows(), s.getSlowCount()))
+                    .append('\n')
+                    .append("  ").append(abbreviate(s.sql, 160)).append('\n');
+        }
+        return text.toString();
+    }
+
+    public static String toJson() {
+        try {
+            JSONArray statements = new JSONArray();
+            for (Statement s : snapshot()) {
+                statements.put(s.toJson());
+            }
+
+            JSONObject json = new JSONObject();
+            json.put("generated_at", System.currentTimeMillis());
+            json.put("slow_query_ms", slowQueryMs);
+            json.put("statements", statements);
+            return json.toString(2);
+        } catch (JSONException e) {
+            Log.e(TAG, "❌ Error exporting query stats: " + e.getMessage());
+            return "{}";
+        }
+    }
+
+    private static String abbreviate(String text, int max) {
+        String flat = text.replaceAll("\\s+", " ");
+        return flat.length() <= max ? flat : flat.substring(0, max) + "…";
+    }
+
+    // ==================== RECORDING ====================
+
+    private static void record(SQLiteDatabase db, String sql, long nanos, int rowCount) {
+        Statement statement = STATEMENTS.get(sql);
+        if (statement == null) {
+            String key = STATEMENTS.size() < MAX_STATEMENTS ? sql : OVERFLOW_KEY;
+            // Chỉ lấy stack trace lần đầu gặp câu SQL
+            statement = STATEMENTS.computeIfAbsent(key, k -> new Statement(k, k == OVERFLOW_KEY ? "?" : callSite()));
+        }
+
+        boolean slow = nanos >= slowQueryMs * 1_000_000;
+        statement.record(nanos, rowCount, slow);
+
+        // EXPLAIN lần đầu gặp câu lệnh + lần chậm đầu tiên (thống kê của SQLite có thể đã đổi kế hoạch)
+        if (statement.sql != OVERFLOW_KEY) {
+            if (statement.explainQueued.compareAndSet(false, true)) {
+                queueExplain(db, statement, statement.explainQueued);
+            } else if (slow && statement.slowExplainQueued.compareAndSet(false, true)) {
+                queueExplain(db, statement, statement.slowExplainQueued);
+            }
+        }
+        if (slow) {
+            Log.w(TAG, String.format(java.util.Locale.US, "🐢 Slow query %.1f ms, %d rows @%s%s: %s",
+                    nanos / 1_000_000.0, rowCount, statement.tag, statement.fullScan ? " (full scan)" : "",
+                    abbreviate(sql, 300)));
+        }
+    }
+
+    // Frame đầu tiên ngoài framework + lớp này
+    private static String callSite() {
+        for (StackTraceElement frame : new Throwable().getStackTrace()) {
+            String className = frame.getClassName();
+            if (className.startsWith("android.") || className.startsWith("java.") || className.startsWith("dalvik.")
+                    || className.startsWith("com.android.") || className.startsWith(QueryStats.class.getName())) {
+                continue;
+            }
+            String simpleName = className.substring(className.lastIndexOf('.') + 1);
+            return simpleName + "." + frame.getMethodName() + ":" + frame.getLineNumber();
+        }
+        return "?";
+    }
+
+    // Hàng đợi đầy thì bỏ lượt và mở lại cờ để lần chạy sau của câu lệnh xếp lại
+    private static void queueExplain(SQLiteDatabase db, Statement statement, AtomicBoolean queued) {
+        try {
+            EXPLAIN_EXECUTOR.execute(() -> explain(db, statement));
+        } catch (RejectedExecutionException e) {
+            queued.set(false);
+        }
+    }
+
+    // Tham số để trống (NULL) - kế hoạch không phụ thuộc giá trị tham số. Chạy trên thread EXPLAIN.
+    private static void explain(SQLiteDatabase db, Statement statement) {
+        String trimmed = statement.sql.trim();
+        if (!trimmed.regionMatches(true, 0, "SELECT", 0, 6) && !trimmed.regionMatches(true, 0, "WITH", 0, 4)) {
+            statement.plan = "";
+            return;
+        }
+
+        // Connection có thể đã đóng trong lúc chờ (vd. connection toàn thời gian của TransactionArchive)
+        if (!db.isOpen()) {
+            return;
+        }
+
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQueryWithFactory(PLAIN_FACTORY, "EXPLAIN QUERY PLAN " + statement.sql, null, null);
+            StringBuilder plan = new StringBuilder();
+            boolean fullScan = false;
+            int detailIndex = cursor.getColumnCount() - 1;
+
+            while (cursor.moveToNext()) {
+                String detail = cursor.getString(detailIndex);
+                if (plan.length() > 0) plan.append(" | ");
+                plan.append(detail);
+                fullScan |= isFullScan(detail);
+            }
+
+            statement.fullScan = fullScan;
+            statement.plan = plan.toString();
+        } catch (Exception e) {
+            statement.plan = "";
+            Log.e(TAG, "❌ EXPLAIN failed: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    // "SCAN TABLE x" (SQLite < 3.36) / "SCAN x" - không dùng index, không phải subquery hay bảng ảo (FTS)
+    static boolean isFullScan(String detail) {
+        return detail != null && detail.startsWith("SCAN ")
+                && !detail.contains(" USING ")
+                && !detail.contains("VIRTUAL TABLE")
+                && !detail.startsWith("SCAN SUBQUERY")
+                && !detail.startsWith("SCAN CONSTANT");
+    }
+
+    // ==================== CURSOR ====================
+
+    private static final class TimedCursor extends SQLiteCursor {
+        private static final String QUERY_PREFIX = "SQLiteQuery: ";
+
+        private final SQLiteDatabase db;
+        private final String sql;
+        private boolean recorded;
+
+        TimedCursor(SQLiteDatabase db, SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
+            super(driver, editTable, query);
+            this.db = db;
+            // SQLiteProgram.getSql() là API ẩn; toString() trả về "SQLiteQuery: <sql>"
+            String text = query.toString();
+            this.sql = text.startsWith(QUERY_PREFIX) ? text.substring(QUERY_PREFIX.length()) : text;
+        }
+
+        // Lần getCount() đầu tiên chạy câu lệnh và đếm toàn bộ dòng
+        @Override
+        public int getCount() {
+            if (recorded) {
+                return super.getCount();
+            }
+            recorded = true;
+
+            long start = System.nanoTime();
+            int count = super.getCount();
+            record(db, sql, System.nanoTime() - start, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import models.DateCodec;
+
+/**
+ * 🗃️ Cache kết quả tính toán nặng (báo cáo, chỉ số) theo (user, phép tính, tham số), hợp lệ theo version dữ liệu.
+ *
+ * Version dữ liệu = version trong table_versions của các bảng mà phép tính đọc (xem InvalidationTracker) + ngày hiện tại,
+ * nên ghi vào bảng nào thì kết quả phụ thuộc bảng đó tự hết hạn, không cần xóa tay. Lần xem lại khi dữ liệu chưa đổi
+ * chỉ tốn 1 câu đọc table_versions.
+ *
+ * Bộ nhớ: LRU giới hạn MAX_ENTRIES. Kết quả có Codec thì được lưu thêm vào bảng result_cache để dùng lại sau khi mở lại app.
+ * Giá trị trả về dùng chung giữa các lần gọi - nơi gọi không được sửa.
+ */
+public class ResultCache {
+    private static final String TAG = "ResultCache";
+
+    private static final int MAX_ENTRIES = 64;
+    private static final int MAX_PERSISTED_ENTRIES = 200;
+
+    /**
+     * Chuyển giá trị sang chuỗi để lưu trong result_cache
+     */
+    public interface Codec<T> {
+        String encode(T value) throws JSONException;
+
+        T decode(String text) throws JSONException;
+    }
+
+    public static final Codec<Map<String, Double>> DOUBLE_MAP = new Codec<Map<String, Double>>() {
+        @Override
+        public String encode(Map<String, Double> value) throws JSONException {
+            JSONObject json = new JSONObject();
+            for (Map.Entry<String, Double> entry : value.entrySet()) {
+                json.put(entry.getKey(), entry.getValue().doubleValue());
+            }
+            return json.toString();
+        }
+
+        @Override
+        public Map<String, Double> decode(String text) throws JSONException {
+            JSONObject json = new JSONObject(text);
+            Map<String, Double> value = new HashMap<>();
+            Iterator<String> keys = json.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                value.put(key, json.getDouble(key));
+            }
+            return value;
+        }
+    };
+
+    private static final class Entry {
+        final String dataVersion;
+        final Object value;
+
+        Entry(String dataVersion, Object value) {
+            this.dataVersion = dataVersion;
+            this.value = value;
+        }
+    }
+
+    private final DatabaseHelper dbHelper;
+
+    // accessOrder = true: get() đưa entry lên cuối, entry đầu là lâu nhất chưa dùng
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private long hits;
+    private long misses;
+
+    ResultCache(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Kết quả của phép tính, chỉ tính lại khi chưa có hoặc 1 trong các bảng đã đổi (hoặc qua ngày mới)
+     *
+     * @param tables các bảng phép tính đọc (DatabaseHelper.VERSIONED_TABLES)
+     */
+    public <T> T get(int userId, String computation, String params, String[] tables, Supplier<T> compute) {
+        return get(userId, computation, params, tables, null, compute);
+    }
+
+    /**
+     * Như get() ở trên, kèm lưu xuống result_cache bằng codec
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(int userId, String computation, String params, String[] tables, Codec<T> codec, Supplier<T> compute) {
+        String key = userId + "|" + computation + "|" + params;
+        String dataVersion = dataVersionOf(tables);
+
+        if (dataVersion != null) {
+            synchronized (this) {
+                Entry entry = entries.get(key);
+                if (entry != null && entry.dataVersion.equals(dataVersion)) {
+                    hits++;
+                    return (T) entry.value;
+                }
+                misses++;
+            }
+
+            if (codec != null) {
+                T persisted = readPersisted(key, dataVersion, codec);
+                if (persisted != null) {
+                    put(key, dataVersion, persisted);
+                    return persisted;
+                }
+            }
+        }
+
+        // Tính ngoài khóa - 2 thread cùng miss thì tính 2 lần, kết quả như nhau
+        T value = compute.get();
+
+        // Không đọc được version thì không cache (không biết khi nào hết hạn)
+        if (dataVersion != null && value != null) {
+            put(key, dataVersion, value);
+            if (codec != null) {
+                writePersisted(key, dataVersion, value, codec);
+            }
+        }
+        return value;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized String stats() {
+        return "entries=" + entries.size() + ", hits=" + hits + ", misses=" + misses;
+    }
+
+    private synchronized void put(String key, String dataVersion, Object value) {
+        entries.put(key, new Entry(dataVersion, value));
+    }
+
+    // "transactions=12,budget_items=3@20381" - null nếu không đọc được table_versions
+    private String dataVersionOf(String[] tables) {
+        Map<String, Long> versions = dbHelper.getInvalidationTracker().getVersions();
+        if (versions == null) return null;
+
+        StringBuilder dataVersion = new StringBuilder();
+        for (String table : tables) {
+            Long version = versions.get(table);
+            if (version == null) {
+                throw new IllegalArgumentException("Table is not versioned: " + table);
+            }
+            if (dataVersion.length() > 0) dataVersion.append(',');
+            dataVersion.append(table).append('=').append(version);
+        }
+        return dataVersion.append('@').append(DateCodec.today()).toString();
+    }
+
+    // ==================== PERSISTENCE ====================
+
+    private <T> T readPersisted(String key, String dataVersion, Codec<T> codec) {
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_CACHE_VALUE + " FROM " + DatabaseHelper.TABLE_RESULT_CACHE +
+                            " WHERE " + DatabaseHelper.COLUMN_CACHE_KEY + " = ? AND " + DatabaseHelper.COLUMN_DATA_VERSION + " = ?",
+                    new String[]{key, dataVersion});
+
+            return cursor.moveToFirst() ? codec.decode(cursor.getString(0)) : null;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error reading cached result " + key + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private <T> void writePersisted(String key, String dataVersion, T value, Codec<T> codec) {
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COLUMN_CACHE_KEY, key);
+            values.put(DatabaseHelper.COLUMN_DATA_VERSION, dataVersion);
+            values.put(DatabaseHelper.COLUMN_CACHE_VALUE, codec.encode(value));
+            values.put(DatabaseHelper.COLUMN_UPDATED_AT, System.currentTimeMillis());
+
+            db.beginTransaction();
+            try {
+                db.insertWithOnConflict(DatabaseHelper.TABLE_RESULT_CACHE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                // Giữ MAX_PERSISTED_ENTRIES dòng mới nhất
+                db.execSQL("DELETE FROM " + DatabaseHelper.TABLE_RESULT_CACHE + " WHERE " + DatabaseHelper.COLUMN_CACHE_KEY +
+                        " NOT IN (SELECT " + DatabaseHelper.COLUMN_CACHE_KEY + " FROM " + DatabaseHelper.TABLE_RESULT_CACHE +
+                        " ORDER BY " + DatabaseHelper.COLUMN_UPDATED_AT + " DESC LIMIT " + MAX_PERSISTED_ENTRIES + ")");
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error persisting cached result " + key + ": " + e.getMessage());
+        }
+    }
+}
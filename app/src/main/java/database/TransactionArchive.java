@@ -0,0 +1,649 @@
+package database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import models.DateCodec;
+
+/**
+ * 🗄️ Tách nóng/lạnh cho transactions: giao dịch cũ hơn N tháng được chuyển sang file MoneyMasterArchive.db.
+ *
+ * Bảng transactions trong database chính chỉ giữ phần "nóng" nên các màn hình hằng ngày không quét lại lịch sử nhiều năm.
+ * monthly_rollups, user_balances, budget_progress, category_stats giữ nguyên khi chuyển (triggers bỏ qua id trong
+ * archive_moves); phần đã chuyển được cộng vào archived_rollups (theo tháng) và archived_day_totals (theo ngày) để các
+ * hàm tính lại (backfill / rebuild / verifyBalance) và các truy vấn tổng theo khoảng ngày vẫn ra đúng số.
+ *
+ * Lượt chuyển ghi main trên connection của DatabaseHelper và ghi file archive trên 1 connection WAL riêng của file đó -
+ * không ATTACH, vì Android tắt WAL cho connection có ATTACH.
+ * Truy vấn toàn thời gian đọc view TEMP all_transactions = main.transactions UNION ALL archive.transactions
+ * trên 1 connection chỉ đọc riêng (connection chỉ đọc không đổi journal mode của file main).
+ * Giao dịch đã archive được sửa/xóa bằng cách đưa về bảng nóng trước (restore()).
+ * File archive có transactions_fts riêng (nội dung đã bỏ dấu chép từ main khi chuyển) nên tìm kiếm theo từ khóa
+ * chạy MATCH trên cả 2 file (matchUnion()).
+ */
+public class TransactionArchive {
+    private static final String TAG = "TransactionArchive";
+
+    public static final String ARCHIVE_DATABASE_NAME = "MoneyMasterArchive.db";
+    public static final String VIEW_ALL_TRANSACTIONS = "all_transactions";
+
+    // Số tháng gần nhất giữ trong bảng nóng nếu không cấu hình khác
+    public static final int DEFAULT_HOT_MONTHS = 24;
+
+    static final String SCHEMA = "archive";
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private static final String COLUMNS = DatabaseHelper.COLUMN_ID + ", " +
+            DatabaseHelper.COLUMN_TYPE + ", " +
+            DatabaseHelper.COLUMN_AMOUNT + ", " +
+            DatabaseHelper.COLUMN_CATEGORY_ID + ", " +
+            DatabaseHelper.COLUMN_USER_ID + ", " +
+            DatabaseHelper.COLUMN_NOTE + ", " +
+            DatabaseHelper.COLUMN_DATE + ", " +
+            DatabaseHelper.COLUMN_DATE_EPOCH_DAY + ", " +
+            DatabaseHelper.COLUMN_PAYMENT_METHOD + ", " +
+            DatabaseHelper.COLUMN_CREATED_AT;
+
+    // COLUMNS với alias t (cột note / payment_method trùng tên với cột của transactions_fts)
+    private static final String T_COLUMNS = "t." + COLUMNS.replace(", ", ", t.");
+
+    private static final String FTS_COLUMNS = "docid, " + DatabaseHelper.COLUMN_NOTE + ", " +
+            DatabaseHelper.COLUMN_PAYMENT_METHOD + ", " + DatabaseHelper.COLUMN_FTS_CATEGORY_NAME;
+
+    // _id giữ nguyên id gốc (AUTOINCREMENT bên main không cấp lại id cũ). Tạo trên connection của file archive.
+    private static final String CREATE_TABLE_ARCHIVE_TRANSACTIONS = "CREATE TABLE IF NOT EXISTS " + DatabaseHelper.TABLE_TRANSACTIONS + " ("
+            + DatabaseHelper.COLUMN_ID + " INTEGER PRIMARY KEY, "
+            + DatabaseHelper.COLUMN_TYPE + " TEXT NOT NULL, "
+            + DatabaseHelper.COLUMN_AMOUNT + " INTEGER NOT NULL, "
+            + DatabaseHelper.COLUMN_CATEGORY_ID + " INTEGER NOT NULL, "
+            + DatabaseHelper.COLUMN_USER_ID + " INTEGER NOT NULL, "
+            + DatabaseHelper.COLUMN_NOTE + " TEXT, "
+            + DatabaseHelper.COLUMN_DATE + " DATE NOT NULL, "
+            + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " INTEGER, "
+            + DatabaseHelper.COLUMN_PAYMENT_METHOD + " TEXT, "
+            + DatabaseHelper.COLUMN_CREATED_AT + " DATETIME);";
+
+    private static final String CREATE_INDEX_ARCHIVE_USER_DAY = "CREATE INDEX IF NOT EXISTS idx_archive_transactions_user_day ON "
+            + DatabaseHelper.TABLE_TRANSACTIONS + "(" + DatabaseHelper.COLUMN_USER_ID + ", " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + ", "
+            + DatabaseHelper.COLUMN_CREATED_AT + ")";
+
+    // Dòng đã chép sang archive nhưng chưa xóa khỏi main (dừng giữa 2 bước) chỉ được tính 1 lần
+    private static final String CREATE_VIEW_ALL_TRANSACTIONS = "CREATE TEMP VIEW IF NOT EXISTS " + VIEW_ALL_TRANSACTIONS + " AS "
+            + "SELECT " + COLUMNS + " FROM main." + DatabaseHelper.TABLE_TRANSACTIONS + " "
+            + "UNION ALL SELECT " + COLUMNS + " FROM " + SCHEMA + "." + DatabaseHelper.TABLE_TRANSACTIONS + " "
+            + "a WHERE NOT EXISTS (SELECT 1 FROM main." + DatabaseHelper.TABLE_TRANSACTIONS + " m "
+            + "WHERE m." + DatabaseHelper.COLUMN_ID + " = a." + DatabaseHelper.COLUMN_ID + ")";
+
+    private final DatabaseHelper dbHelper;
+
+    // Chỉ file archive (ghi khi chuyển) / file main chỉ đọc + ATTACH archive (view all_transactions)
+    private SQLiteDatabase archiveDb;
+    private SQLiteDatabase allTimeDb;
+
+    // Ngày đầu tiên sau tháng archive mới nhất, NONE = chưa archive gì; null = chưa đọc
+    private volatile Integer archivedBeforeDay;
+
+    TransactionArchive(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Connection chỉ đọc có ATTACH archive + view all_transactions. Mở khi gọi lần đầu, đóng cùng DatabaseHelper.
+     */
+    public synchronized SQLiteDatabase getAllTimeDatabase() {
+        if (allTimeDb == null) {
+            // File archive + bảng phải có trước: ATTACH trên connection chỉ đọc không tạo được gì
+            String archivePath = getArchiveDatabase().getPath();
+            String mainPath = dbHelper.getWritableDatabase().getPath();
+
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(mainPath, QueryStats.CURSOR_FACTORY, SQLiteDatabase.OPEN_READONLY);
+            try {
+                db.execSQL("ATTACH DATABASE ? AS " + SCHEMA, new Object[]{archivePath});
+                db.execSQL(CREATE_VIEW_ALL_TRANSACTIONS);
+            } catch (RuntimeException e) {
+                db.close();
+                throw e;
+            }
+            allTimeDb = db;
+            Log.d(TAG, "✅ Attached " + ARCHIVE_DATABASE_NAME);
+        }
+        return allTimeDb;
+    }
+
+    // Connection WAL của riêng file archive, tạo file + bảng nếu chưa có
+    private synchronized SQLiteDatabase getArchiveDatabase() {
+        if (archiveDb == null) {
+            // Database chính phải được tạo / nâng cấp trước khi mở file cạnh nó
+            String archivePath = archivePathOf(dbHelper.getWritableDatabase().getPath());
+
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(archivePath, QueryStats.CURSOR_FACTORY,
+                    SQLiteDatabase.CREATE_IF_NECESSARY | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+            try {
+                db.execSQL(CREATE_TABLE_ARCHIVE_TRANSACTIONS);
+                db.execSQL(CREATE_INDEX_ARCHIVE_USER_DAY);
+
+                // File archive tạo trước khi có FTS bên archive -> đánh chỉ mục các dòng đã có 1 lần
+                boolean hadFts = hasTable(db, DatabaseHelper.TABLE_TRANSACTIONS_FTS);
+                db.execSQL(DatabaseHelper.CREATE_TABLE_TRANSACTIONS_FTS);
+                if (!hadFts) {
+                    indexArchived(db);
+                }
+            } catch (RuntimeException e) {
+                db.close();
+                throw e;
+            }
+            archiveDb = db;
+            Log.d(TAG, "✅ Opened " + ARCHIVE_DATABASE_NAME);
+        }
+        return archiveDb;
+    }
+
+    private static boolean hasTable(SQLiteDatabase db, String table) {
+        Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE name = ?", new String[]{table});
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Bỏ dấu phía Java (DatabaseHelper.foldDiacritics) cho cùng token với nội dung triggers ghi vào transactions_fts
+    private void indexArchived(SQLiteDatabase archive) {
+        Map<Long, String> categoryNames = new HashMap<>();
+        Cursor cursor = dbHelper.getReadableDatabase().rawQuery("SELECT " + DatabaseHelper.COLUMN_ID + ", " +
+                DatabaseHelper.COLUMN_CATEGORY_NAME + " FROM " + DatabaseHelper.TABLE_CATEGORIES, null);
+        try {
+            while (cursor.moveToNext()) {
+                categoryNames.put(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        int indexed = 0;
+        archive.beginTransaction();
+        cursor = archive.rawQuery("SELECT " + DatabaseHelper.COLUMN_ID + ", " + DatabaseHelper.COLUMN_NOTE + ", " +
+                DatabaseHelper.COLUMN_PAYMENT_METHOD + ", " + DatabaseHelper.COLUMN_CATEGORY_ID +
+                " FROM " + DatabaseHelper.TABLE_TRANSACTIONS, null);
+        try {
+            SQLiteStatement insert = archive.compileStatement("INSERT INTO " + DatabaseHelper.TABLE_TRANSACTIONS_FTS +
+                    " (" + FTS_COLUMNS + ") VALUES (?, ?, ?, ?)");
+            try {
+                while (cursor.moveToNext()) {
+                    insert.bindLong(1, cursor.getLong(0));
+                    insert.bindString(2, DatabaseHelper.foldDiacritics(cursor.getString(1)));
+                    insert.bindString(3, DatabaseHelper.foldDiacritics(cursor.getString(2)));
+                    insert.bindString(4, DatabaseHelper.foldDiacritics(categoryNames.get(cursor.getLong(3))));
+                    insert.executeInsert();
+                    indexed++;
+                }
+            } finally {
+                insert.close();
+            }
+            archive.setTransactionSuccessful();
+        } finally {
+            archive.endTransaction();
+            cursor.close();
+        }
+        Log.d(TAG, "✅ Indexed " + indexed + " archived transactions for search");
+    }
+
+    /**
+     * Bộ lọc có thể chạm tới dữ liệu đã archive không (khi đó phải đọc qua all_transactions, hoặc matchUnion() khi có từ khóa)
+     */
+    public boolean covers(TransactionQuery filter) {
+        int before = getArchivedBeforeDay();
+        if (before == NONE) return false;
+
+        Integer startDay = filter.getStartDay();
+        return startDay == null || startDay < before;
+    }
+
+    /**
+     * Truy vấn từng dòng từ ngày startDay có chạm tới dữ liệu đã archive không (khi đó phải đọc qua all_transactions)
+     */
+    public boolean covers(int startDay) {
+        int before = getArchivedBeforeDay();
+        return before != NONE && startDay < before;
+    }
+
+    /**
+     * Các dòng khớp từ khóa của cả bảng nóng và archive, cho connection getAllTimeDatabase() - dùng như 1 bảng (alias t).
+     * Mỗi nhánh có 1 tham số MATCH (TransactionQuery.bindArgs(args, true)); dòng còn ở main (lượt chuyển dừng giữa 2 bước)
+     * chỉ lấy bản ở main, giống view all_transactions. extraColumns: cột thêm tính trên transactions_fts của từng nhánh.
+     */
+    static String matchUnion(String extraColumns) {
+        return matchArmOf("main", extraColumns) + " UNION ALL " + matchArmOf(SCHEMA, extraColumns) +
+                " AND NOT EXISTS (SELECT 1 FROM main." + DatabaseHelper.TABLE_TRANSACTIONS + " m WHERE m." +
+                DatabaseHelper.COLUMN_ID + " = t." + DatabaseHelper.COLUMN_ID + ")";
+    }
+
+    private static String matchArmOf(String schema, String extraColumns) {
+        String fts = DatabaseHelper.TABLE_TRANSACTIONS_FTS;
+        return "SELECT " + T_COLUMNS + extraColumns + " FROM " + schema + "." + fts + " JOIN " + schema + "." +
+                DatabaseHelper.TABLE_TRANSACTIONS + " t ON t." + DatabaseHelper.COLUMN_ID + " = " + fts + ".docid" +
+                " WHERE " + fts + " MATCH ?";
+    }
+
+    /**
+     * Đã có giao dịch nào được chuyển sang archive chưa
+     */
+    public boolean hasArchived() {
+        return getArchivedBeforeDay() != NONE;
+    }
+
+    private int getArchivedBeforeDay() {
+        Integer before = archivedBeforeDay;
+        if (before == null) {
+            before = NONE;
+            Cursor cursor = null;
+            try {
+                cursor = dbHelper.getReadableDatabase().rawQuery(
+                        "SELECT MAX(" + DatabaseHelper.COLUMN_YEAR_MONTH + ") FROM " + DatabaseHelper.TABLE_ARCHIVED_ROLLUPS, null);
+                if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                    before = DateCodec.plusMonths(DateCodec.parse(cursor.getString(0) + "-01"), 1);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Error reading archive range: " + e.getMessage());
+            } finally {
+                if (cursor != null) cursor.close();
+            }
+            archivedBeforeDay = before;
+        }
+        return before;
+    }
+
+    /**
+     * Chuyển giao dịch trước đầu tháng (hôm nay - hotMonths) sang archive, mỗi (user, tháng) 1 lượt.
+     * Chạy trên thread nền; gọi lại nhiều lần vẫn an toàn. Không có tháng nào đủ cũ thì không mở file archive.
+     *
+     * @return số giao dịch đã chuyển
+     */
+    public int archiveOlderThan(int hotMonths) {
+        int cutoff = DateCodec.startOfMonth(DateCodec.plusMonths(DateCodec.today(), -hotMonths));
+        int moved = 0;
+
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+            List<Long> users = usersWithTransactionsBefore(db, cutoff);
+            if (users.isEmpty()) {
+                Log.d(TAG, "✅ Nothing to archive before " + DateCodec.format(cutoff));
+                return 0;
+            }
+
+            SQLiteDatabase archive = getArchiveDatabase();
+            for (long userId : users) {
+                int day = oldestHotDay(db, userId);
+                while (day != DateCodec.INVALID && day < cutoff) {
+                    int monthEnd = DateCodec.endOfMonth(day) + 1;
+                    moved += archiveMonth(db, archive, userId, day, monthEnd);
+                    day = monthEnd;
+                }
+            }
+
+            archivedBeforeDay = null;
+            Log.d(TAG, "✅ Archived " + moved + " transactions before " + DateCodec.format(cutoff));
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error archiving transactions: " + e.getMessage());
+        }
+
+        return moved;
+    }
+
+    private List<Long> usersWithTransactionsBefore(SQLiteDatabase db, int cutoff) {
+        List<Long> users = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_USER_ID + " FROM " + DatabaseHelper.TABLE_USER_BALANCES, null);
+        try {
+            while (cursor.moveToNext()) {
+                long userId = cursor.getLong(0);
+                int day = oldestHotDay(db, userId);
+                if (day != DateCodec.INVALID && day < cutoff) {
+                    users.add(userId);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return users;
+    }
+
+    // Seek đầu index (user_id, date_epoch_day, ...) thay vì quét bảng
+    private int oldestHotDay(SQLiteDatabase db, long userId) {
+        Cursor cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " FROM " + DatabaseHelper.TABLE_TRANSACTIONS +
+                        " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " IS NOT NULL" +
+                        " ORDER BY " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " LIMIT 1",
+                new String[]{String.valueOf(userId)});
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : DateCodec.INVALID;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // [startDay, endDay) nằm trong 1 tháng dương lịch
+    private int archiveMonth(SQLiteDatabase db, SQLiteDatabase archive, long userId, int startDay, int endDay) {
+        String range = DatabaseHelper.COLUMN_USER_ID + " = " + userId +
+                " AND " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " >= " + startDay +
+                " AND " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " < " + endDay;
+
+        // 1) Chép sang archive (transaction chỉ ghi file archive). Dừng sau bước này thì dòng vẫn còn ở main,
+        //    view bỏ qua bản chép và lần chạy sau chép đè lại.
+        List<Long> ids = copyToArchive(db, archive, range);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        // 2) Cộng vào archived_rollups + xóa khỏi main (transaction chỉ ghi file main, trên connection của helper).
+        //    Id đã chép nằm trong archive_moves suốt transaction nên triggers không trừ monthly_rollups / user_balances /
+        //    budget_progress / category_stats; lệnh xóa khác chen vào vẫn được trừ bình thường.
+        String archived = range + " AND " + DatabaseHelper.COLUMN_ID + " IN (SELECT " + DatabaseHelper.COLUMN_ID +
+                " FROM " + DatabaseHelper.TABLE_ARCHIVE_MOVES + ")";
+        int moved;
+        db.beginTransaction();
+        try {
+            SQLiteStatement mark = db.compileStatement("INSERT OR IGNORE INTO " + DatabaseHelper.TABLE_ARCHIVE_MOVES +
+                    " (" + DatabaseHelper.COLUMN_ID + ") VALUES (?)");
+            try {
+                for (long id : ids) {
+                    mark.bindLong(1, id);
+                    mark.executeInsert();
+                }
+            } finally {
+                mark.close();
+            }
+
+            String yearMonth = DateCodec.format(startDay).substring(0, 7);
+            db.execSQL("INSERT OR IGNORE INTO " + DatabaseHelper.TABLE_ARCHIVED_ROLLUPS + " (" +
+                    DatabaseHelper.COLUMN_USER_ID + ", " + DatabaseHelper.COLUMN_YEAR_MONTH + ", " +
+                    DatabaseHelper.COLUMN_CATEGORY_ID + ", " + DatabaseHelper.COLUMN_TYPE + ") " +
+                    "SELECT DISTINCT " + userId + ", ?, " + DatabaseHelper.COLUMN_CATEGORY_ID + ", " + DatabaseHelper.COLUMN_TYPE +
+                    " FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + archived, new Object[]{yearMonth});
+
+            // Cột không có tiền tố trong `archived` thuộc về t (bảng trong cùng nhất)
+            String sameKey = " FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " t WHERE " + archived +
+                    " AND t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = " + DatabaseHelper.TABLE_ARCHIVED_ROLLUPS + "." + DatabaseHelper.COLUMN_CATEGORY_ID +
+                    " AND t." + DatabaseHelper.COLUMN_TYPE + " = " + DatabaseHelper.TABLE_ARCHIVED_ROLLUPS + "." + DatabaseHelper.COLUMN_TYPE + ")";
+            db.execSQL("UPDATE " + DatabaseHelper.TABLE_ARCHIVED_ROLLUPS + " SET " +
+                    DatabaseHelper.COLUMN_ROLLUP_TOTAL + " = " + DatabaseHelper.COLUMN_ROLLUP_TOTAL +
+                    " + (SELECT COALESCE(SUM(t." + DatabaseHelper.COLUMN_AMOUNT + "), 0)" + sameKey + ", " +
+                    DatabaseHelper.COLUMN_ROLLUP_TX_COUNT + " = " + DatabaseHelper.COLUMN_ROLLUP_TX_COUNT +
+                    " + (SELECT COUNT(*)" + sameKey + " " +
+                    "WHERE " + DatabaseHelper.COLUMN_USER_ID + " = " + userId + " AND " + DatabaseHelper.COLUMN_YEAR_MONTH + " = ?",
+                    new Object[]{yearMonth});
+            addDayTotals(db, userId, archived);
+
+            SQLiteStatement delete = db.compileStatement("DELETE FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + archived);
+            try {
+                moved = delete.executeUpdateDelete();
+            } finally {
+                delete.close();
+            }
+            db.execSQL("DELETE FROM " + DatabaseHelper.TABLE_ARCHIVE_MOVES);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return moved;
+    }
+
+    // Cộng các dòng thỏa `archived` vào archived_day_totals (INSERT OR IGNORE khóa + UPDATE, không có UPSERT trên API 24)
+    private void addDayTotals(SQLiteDatabase db, long userId, String archived) {
+        db.execSQL("INSERT OR IGNORE INTO " + DatabaseHelper.TABLE_ARCHIVED_DAY_TOTALS + " (" +
+                DatabaseHelper.COLUMN_USER_ID + ", " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + ", " +
+                DatabaseHelper.COLUMN_CATEGORY_ID + ", " + DatabaseHelper.COLUMN_TYPE + ") " +
+                "SELECT DISTINCT " + userId + ", " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + ", " + DatabaseHelper.COLUMN_CATEGORY_ID + ", " +
+                DatabaseHelper.COLUMN_TYPE + " FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + archived);
+
+        String table = DatabaseHelper.TABLE_ARCHIVED_DAY_TOTALS;
+        String sameKey = " FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " t WHERE " + archived +
+                " AND t." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " = " + table + "." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY +
+                " AND t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = " + table + "." + DatabaseHelper.COLUMN_CATEGORY_ID +
+                " AND t." + DatabaseHelper.COLUMN_TYPE + " = " + table + "." + DatabaseHelper.COLUMN_TYPE + ")";
+        db.execSQL("UPDATE " + table + " SET " +
+                DatabaseHelper.COLUMN_ROLLUP_TOTAL + " = " + DatabaseHelper.COLUMN_ROLLUP_TOTAL +
+                " + (SELECT COALESCE(SUM(t." + DatabaseHelper.COLUMN_AMOUNT + "), 0)" + sameKey + ", " +
+                DatabaseHelper.COLUMN_ROLLUP_TX_COUNT + " = " + DatabaseHelper.COLUMN_ROLLUP_TX_COUNT +
+                " + (SELECT COUNT(*)" + sameKey + ", " +
+                DatabaseHelper.COLUMN_SUM_SQUARES + " = " + DatabaseHelper.COLUMN_SUM_SQUARES +
+                " + (SELECT COALESCE(SUM(t." + DatabaseHelper.COLUMN_AMOUNT + " * 1.0 * t." + DatabaseHelper.COLUMN_AMOUNT + "), 0)" + sameKey + " " +
+                "WHERE " + DatabaseHelper.COLUMN_USER_ID + " = " + userId + " AND " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY +
+                " IN (SELECT " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + archived + ")");
+    }
+
+    // Chép các dòng main thỏa `range` sang file archive (INSERT OR REPLACE), trả về id đã chép
+    private List<Long> copyToArchive(SQLiteDatabase db, SQLiteDatabase archive, String range) {
+        List<Long> ids = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT " + COLUMNS + " FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + range, null);
+        archive.beginTransaction();
+        try {
+            SQLiteStatement insert = archive.compileStatement("INSERT OR REPLACE INTO " + DatabaseHelper.TABLE_TRANSACTIONS +
+                    " (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            try {
+                while (cursor.moveToNext()) {
+                    insert.clearBindings();
+                    insert.bindLong(1, cursor.getLong(0));
+                    insert.bindString(2, cursor.getString(1));
+                    insert.bindLong(3, cursor.getLong(2));
+                    insert.bindLong(4, cursor.getLong(3));
+                    insert.bindLong(5, cursor.getLong(4));
+                    bindNullableString(insert, 6, cursor, 5);
+                    insert.bindString(7, cursor.getString(6));
+                    if (cursor.isNull(7)) {
+                        insert.bindNull(8);
+                    } else {
+                        insert.bindLong(8, cursor.getLong(7));
+                    }
+                    bindNullableString(insert, 9, cursor, 8);
+                    bindNullableString(insert, 10, cursor, 9);
+                    insert.executeInsert();
+                    ids.add(cursor.getLong(0));
+                }
+            } finally {
+                insert.close();
+            }
+            copyFtsToArchive(db, archive, range);
+            archive.setTransactionSuccessful();
+        } finally {
+            archive.endTransaction();
+            cursor.close();
+        }
+        return ids;
+    }
+
+    // Nội dung transactions_fts của main đã bỏ dấu -> chép nguyên sang FTS của archive (cùng docid, chép đè khi chạy lại)
+    private void copyFtsToArchive(SQLiteDatabase db, SQLiteDatabase archive, String range) {
+        Cursor cursor = db.rawQuery("SELECT " + FTS_COLUMNS + " FROM " + DatabaseHelper.TABLE_TRANSACTIONS_FTS +
+                " WHERE docid IN (SELECT " + DatabaseHelper.COLUMN_ID + " FROM " + DatabaseHelper.TABLE_TRANSACTIONS +
+                " WHERE " + range + ")", null);
+        SQLiteStatement delete = archive.compileStatement("DELETE FROM " + DatabaseHelper.TABLE_TRANSACTIONS_FTS + " WHERE docid = ?");
+        SQLiteStatement insert = archive.compileStatement("INSERT INTO " + DatabaseHelper.TABLE_TRANSACTIONS_FTS +
+                " (" + FTS_COLUMNS + ") VALUES (?, ?, ?, ?)");
+        try {
+            while (cursor.moveToNext()) {
+                delete.bindLong(1, cursor.getLong(0));
+                delete.executeUpdateDelete();
+
+                insert.clearBindings();
+                insert.bindLong(1, cursor.getLong(0));
+                bindNullableString(insert, 2, cursor, 1);
+                bindNullableString(insert, 3, cursor, 2);
+                bindNullableString(insert, 4, cursor, 3);
+                insert.executeInsert();
+            }
+        } finally {
+            delete.close();
+            insert.close();
+            cursor.close();
+        }
+    }
+
+    private static void bindNullableString(SQLiteStatement statement, int index, Cursor cursor, int column) {
+        if (cursor.isNull(column)) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, cursor.getString(column));
+        }
+    }
+
+    /**
+     * Đưa 1 giao dịch đã archive về bảng transactions để sửa/xóa như dòng thường.
+     * Tổng hợp (monthly_rollups, user_balances, budget_progress, category_stats) vẫn đang tính dòng này nên triggers
+     * insert bỏ qua nó (archive_moves); archived_rollups được trừ lại.
+     *
+     * @return true nếu giao dịch có trong archive và đã được đưa về
+     */
+    public boolean restore(long transactionId) {
+        if (!hasArchived()) return false;
+
+        try {
+            SQLiteDatabase archive = getArchiveDatabase();
+            ContentValues values = readArchived(archive, transactionId);
+            if (values == null) return false;
+
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.execSQL("INSERT OR IGNORE INTO " + DatabaseHelper.TABLE_ARCHIVE_MOVES + " (" + DatabaseHelper.COLUMN_ID + ") VALUES (?)",
+                        new Object[]{transactionId});
+
+                // Dòng còn ở main (lượt chuyển dừng giữa 2 bước) thì archived_rollups chưa cộng nó
+                if (db.insertWithOnConflict(DatabaseHelper.TABLE_TRANSACTIONS, null, values, SQLiteDatabase.CONFLICT_IGNORE) != -1) {
+                    String key = DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_YEAR_MONTH + " = ? AND " +
+                            DatabaseHelper.COLUMN_CATEGORY_ID + " = ? AND " + DatabaseHelper.COLUMN_TYPE + " = ?";
+                    Object[] keyArgs = {
+                            values.getAsLong(DatabaseHelper.COLUMN_USER_ID),
+                            values.getAsString(DatabaseHelper.COLUMN_DATE).substring(0, 7),
+                            values.getAsLong(DatabaseHelper.COLUMN_CATEGORY_ID),
+                            values.getAsString(DatabaseHelper.COLUMN_TYPE)
+                    };
+                    Object[] updateArgs = new Object[keyArgs.length + 1];
+                    updateArgs[0] = values.getAsLong(DatabaseHelper.COLUMN_AMOUNT);
+                    System.arraycopy(keyArgs, 0, updateArgs, 1, keyArgs.length);
+
+                    db.execSQL("UPDATE " + DatabaseHelper.TABLE_ARCHIVED_ROLLUPS + " SET " +
+                            DatabaseHelper.COLUMN_ROLLUP_TOTAL + " = " + DatabaseHelper.COLUMN_ROLLUP_TOTAL + " - ?, " +
+                            DatabaseHelper.COLUMN_ROLLUP_TX_COUNT + " = " + DatabaseHelper.COLUMN_ROLLUP_TX_COUNT + " - 1 " +
+                            "WHERE " + key, updateArgs);
+                    db.execSQL("DELETE FROM " + DatabaseHelper.TABLE_ARCHIVED_ROLLUPS + " WHERE " + key +
+                            " AND " + DatabaseHelper.COLUMN_ROLLUP_TX_COUNT + " <= 0", keyArgs);
+
+                    long amount = values.getAsLong(DatabaseHelper.COLUMN_AMOUNT);
+                    Object[] dayKeyArgs = {
+                            values.getAsLong(DatabaseHelper.COLUMN_USER_ID),
+                            values.getAsInteger(DatabaseHelper.COLUMN_DATE_EPOCH_DAY),
+                            values.getAsLong(DatabaseHelper.COLUMN_CATEGORY_ID),
+                            values.getAsString(DatabaseHelper.COLUMN_TYPE)
+                    };
+                    subtractDayTotal(db, dayKeyArgs, amount);
+                }
+                db.execSQL("DELETE FROM " + DatabaseHelper.TABLE_ARCHIVE_MOVES);
+
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            // Dừng trước bước này thì dòng có ở cả 2 nơi - view ưu tiên main, lượt archive sau chép đè lại
+            String[] idArgs = {String.valueOf(transactionId)};
+            archive.beginTransaction();
+            try {
+                archive.delete(DatabaseHelper.TABLE_TRANSACTIONS, DatabaseHelper.COLUMN_ID + " = ?", idArgs);
+                archive.delete(DatabaseHelper.TABLE_TRANSACTIONS_FTS, "docid = ?", idArgs);
+                archive.setTransactionSuccessful();
+            } finally {
+                archive.endTransaction();
+            }
+            archivedBeforeDay = null;
+
+            Log.d(TAG, "✅ Restored archived transaction " + transactionId);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error restoring archived transaction " + transactionId + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Đổi tên danh mục: trigger trên categories chỉ cập nhật transactions_fts của main, phần đã archive cập nhật ở đây
+     */
+    public void renameCategory(long categoryId, String name) {
+        if (!hasArchived()) return;
+
+        try {
+            getArchiveDatabase().execSQL("UPDATE " + DatabaseHelper.TABLE_TRANSACTIONS_FTS + " SET " +
+                            DatabaseHelper.COLUMN_FTS_CATEGORY_NAME + " = ? WHERE docid IN (SELECT " + DatabaseHelper.COLUMN_ID +
+                            " FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + DatabaseHelper.COLUMN_CATEGORY_ID + " = ?)",
+                    new Object[]{DatabaseHelper.foldDiacritics(name), categoryId});
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error renaming archived category " + categoryId + ": " + e.getMessage());
+        }
+    }
+
+    // Trừ 1 giao dịch khỏi archived_day_totals, xóa dòng khi không còn giao dịch nào
+    private static void subtractDayTotal(SQLiteDatabase db, Object[] dayKeyArgs, long amount) {
+        String key = DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " = ? AND " +
+                DatabaseHelper.COLUMN_CATEGORY_ID + " = ? AND " + DatabaseHelper.COLUMN_TYPE + " = ?";
+        Object[] updateArgs = new Object[dayKeyArgs.length + 2];
+        updateArgs[0] = amount;
+        updateArgs[1] = (double) amount * amount;
+        System.arraycopy(dayKeyArgs, 0, updateArgs, 2, dayKeyArgs.length);
+
+        db.execSQL("UPDATE " + DatabaseHelper.TABLE_ARCHIVED_DAY_TOTALS + " SET " +
+                DatabaseHelper.COLUMN_ROLLUP_TOTAL + " = " + DatabaseHelper.COLUMN_ROLLUP_TOTAL + " - ?, " +
+                DatabaseHelper.COLUMN_ROLLUP_TX_COUNT + " = " + DatabaseHelper.COLUMN_ROLLUP_TX_COUNT + " - 1, " +
+                DatabaseHelper.COLUMN_SUM_SQUARES + " = " + DatabaseHelper.COLUMN_SUM_SQUARES + " - ? " +
+                "WHERE " + key, updateArgs);
+        db.execSQL("DELETE FROM " + DatabaseHelper.TABLE_ARCHIVED_DAY_TOTALS + " WHERE " + key +
+                " AND " + DatabaseHelper.COLUMN_ROLLUP_TX_COUNT + " <= 0", dayKeyArgs);
+    }
+
+    // File archive nằm cạnh database chính
+    static String archivePathOf(String mainPath) {
+        return new File(new File(mainPath).getParentFile(), ARCHIVE_DATABASE_NAME).getPath();
+    }
+
+    private ContentValues readArchived(SQLiteDatabase archive, long transactionId) {
+        Cursor cursor = archive.rawQuery("SELECT " + COLUMNS + " FROM " + DatabaseHelper.TABLE_TRANSACTIONS +
+                " WHERE " + DatabaseHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(transactionId)});
+        try {
+            if (!cursor.moveToFirst()) return null;
+
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COLUMN_ID, cursor.getLong(0));
+            values.put(DatabaseHelper.COLUMN_TYPE, cursor.getString(1));
+            values.put(DatabaseHelper.COLUMN_AMOUNT, cursor.getLong(2));
+            values.put(DatabaseHelper.COLUMN_CATEGORY_ID, cursor.getLong(3));
+            values.put(DatabaseHelper.COLUMN_USER_ID, cursor.getLong(4));
+            values.put(DatabaseHelper.COLUMN_NOTE, cursor.getString(5));
+            values.put(DatabaseHelper.COLUMN_DATE, cursor.getString(6));
+            values.put(DatabaseHelper.COLUMN_DATE_EPOCH_DAY, cursor.isNull(7) ? null : cursor.getInt(7));
+            values.put(DatabaseHelper.COLUMN_PAYMENT_METHOD, cursor.getString(8));
+            values.put(DatabaseHelper.COLUMN_CREATED_AT, cursor.getString(9));
+            return values;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    synchronized void close() {
+        if (allTimeDb != null) {
+            allTimeDb.close();
+            allTimeDb = null;
+        }
+        if (archiveDb != null) {
+            archiveDb.close();
+            archiveDb = null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package database;
+
+/**
+ * 📊 Ảnh chụp dạng cột của giao dịch thu/chi: các mảng nguyên thủy song song, sắp theo ngày tăng dần.
+ *
+ * Đọc 1 lần (TransactionDAO.getColumns()) rồi các phép phân tích chạy vòng lặp trên mảng -
+ * không Cursor, không boxing, không strftime cho mỗi dòng. Dòng i = {days[i], amounts[i], categories[i], expense[i]}.
+ */
+public final class TransactionColumns {
+
+    public static final TransactionColumns EMPTY = new TransactionColumns(0);
+
+    public final int size;
+    // Epoch day
+    public final int[] days;
+    // Minor units
+    public final long[] amounts;
+    public final int[] categories;
+    // true = chi, false = thu
+    public final boolean[] expense;
+
+    TransactionColumns(int size) {
+        this.size = size;
+        this.days = new int[size];
+        this.amounts = new long[size];
+        this.categories = new int[size];
+        this.expense = new boolean[size];
+    }
+
+    /**
+     * Vị trí dòng đầu tiên có ngày >= day (size nếu không có)
+     */
+    public int indexOf(int day) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
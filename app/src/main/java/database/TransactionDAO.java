@@ -0,0 +1,321 @@
+package database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import models.Transaction;
+
+/**
+ * 🧾 Truy vấn giao dịch dùng chung (kể cả đã archive): chi tiết / xóa 1 giao dịch, đếm, giao dịch của 1 danh mục,
+ * tổng chi theo danh mục (1 câu cho nhiều danh mục) và ảnh chụp dạng cột cho phân tích (TransactionColumns).
+ *
+ * Lọc theo danh mục đi qua idx_transactions_user_category_day (user_id, category_id, date_epoch_day);
+ * biến thể batch dùng category_id IN (...) nên SQLite dò index 1 lần cho mỗi danh mục trong cùng câu lệnh.
+ * Danh sách theo trang / tìm kiếm / tổng hợp theo tháng vẫn ở TransactionPageDAO / TransactionSearchDAO / MonthlyRollupDAO.
+ */
+public class TransactionDAO {
+    private static final String TAG = "TransactionDAO";
+
+    // Giới hạn tham số của SQLite (SQLITE_MAX_VARIABLE_NUMBER = 999 trên Android) - chừa chỗ cho tham số khác
+    private static final int MAX_IN_ARGS = 900;
+
+    private final DatabaseHelper dbHelper;
+
+    public TransactionDAO(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Giao dịch theo id kèm thông tin danh mục, null nếu không có.
+     * Giao dịch đã chuyển sang archive vẫn hiện trong danh sách (all_transactions) nên cũng được tìm ở đó.
+     */
+    public Transaction getTransaction(long transactionId) {
+        try {
+            Transaction transaction = readTransaction(dbHelper.getReadableDatabase(), DatabaseHelper.TABLE_TRANSACTIONS, transactionId);
+
+            TransactionArchive archive = dbHelper.getArchive();
+            if (transaction == null && archive.hasArchived()) {
+                transaction = readTransaction(archive.getAllTimeDatabase(), TransactionArchive.VIEW_ALL_TRANSACTIONS, transactionId);
+            }
+            return transaction;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading transaction " + transactionId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Transaction readTransaction(SQLiteDatabase db, String table, long transactionId) {
+        Cursor cursor = db.rawQuery("SELECT " + TransactionRows.SELECT_COLUMNS + ", c." + DatabaseHelper.COLUMN_CATEGORY_TYPE +
+                        " FROM " + table + " t" +
+                        " INNER JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID +
+                        " WHERE t." + DatabaseHelper.COLUMN_ID + " = ?",
+                new String[]{String.valueOf(transactionId)});
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            Transaction transaction = TransactionRows.read(cursor);
+            transaction.setCategoryType(cursor.getString(12));
+            return transaction;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Xóa giao dịch theo id. Giao dịch đã archive được đưa về bảng nóng trước
+     * để triggers trừ nó khỏi các bảng tổng hợp như mọi lệnh xóa khác.
+     *
+     * @return số dòng đã xóa (0 nếu không có giao dịch)
+     */
+    public int deleteTransaction(long transactionId) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        String[] args = {String.valueOf(transactionId)};
+
+        int deleted = db.delete(DatabaseHelper.TABLE_TRANSACTIONS, DatabaseHelper.COLUMN_ID + " = ?", args);
+        if (deleted == 0 && dbHelper.getArchive().restore(transactionId)) {
+            deleted = db.delete(DatabaseHelper.TABLE_TRANSACTIONS, DatabaseHelper.COLUMN_ID + " = ?", args);
+        }
+        Log.d(TAG, "✅ Deleted transaction " + transactionId + ": " + deleted);
+        return deleted;
+    }
+
+    /**
+     * Tổng số giao dịch của user, kể cả đã archive (archived_rollups)
+     */
+    public int getTransactionCount(int userId) {
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT (SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_TRANSACTIONS +
+                            " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ?) + (SELECT COALESCE(SUM(" + DatabaseHelper.COLUMN_ROLLUP_TX_COUNT + "), 0)" +
+                            " FROM " + DatabaseHelper.TABLE_ARCHIVED_ROLLUPS + " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ?)",
+                    new String[]{String.valueOf(userId), String.valueOf(userId)});
+
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error counting transactions: " + e.getMessage());
+            return 0;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Giao dịch của 1 danh mục trong khoảng epoch day [startDay, endDay], mới nhất trước.
+     * Khoảng chạm tới phần đã archive thì đọc view all_transactions.
+     */
+    public List<Transaction> getTransactionsByCategory(int userId, long categoryId, int startDay, int endDay) {
+        List<Transaction> transactions = new ArrayList<>();
+        Cursor cursor = null;
+
+        try {
+            TransactionArchive archive = dbHelper.getArchive();
+            boolean allTime = archive.covers(startDay);
+            SQLiteDatabase db = allTime ? archive.getAllTimeDatabase() : dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT " + TransactionRows.SELECT_COLUMNS +
+                            " FROM " + (allTime ? TransactionArchive.VIEW_ALL_TRANSACTIONS : DatabaseHelper.TABLE_TRANSACTIONS) + " t" +
+                            " LEFT JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = c." + DatabaseHelper.COLUMN_ID +
+                            " WHERE t." + DatabaseHelper.COLUMN_USER_ID + " = ? AND t." + DatabaseHelper.COLUMN_CATEGORY_ID + " = ?" +
+                            " AND t." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " BETWEEN ? AND ?" +
+                            " ORDER BY t." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " DESC, t." + DatabaseHelper.COLUMN_ID + " DESC",
+                    new String[]{String.valueOf(userId), String.valueOf(categoryId), String.valueOf(startDay), String.valueOf(endDay)});
+
+            while (cursor.moveToNext()) {
+                transactions.add(TransactionRows.read(cursor));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading transactions of category " + categoryId + ": " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return transactions;
+    }
+
+    /**
+     * Đã chi + số giao dịch chi tiêu của 1 danh mục trong khoảng epoch day [startDay, endDay]
+     */
+    public CategoryDAO.Usage getExpenseByCategory(int userId, long categoryId, int startDay, int endDay) {
+        List<Long> ids = new ArrayList<>(1);
+        ids.add(categoryId);
+        CategoryDAO.Usage usage = getExpenseByCategories(userId, ids, startDay, endDay).get(categoryId);
+        return usage != null ? usage : CategoryDAO.NO_USAGE;
+    }
+
+    /**
+     * Đã chi + số giao dịch chi tiêu của nhiều danh mục trong khoảng epoch day [startDay, endDay], 1 câu lệnh
+     * (mỗi 900 danh mục). Danh mục không có giao dịch không có trong map (dùng CategoryDAO.NO_USAGE).
+     * Giao dịch đã archive được tính qua archived_day_totals.
+     */
+    public Map<Long, CategoryDAO.Usage> getExpenseByCategories(int userId, Collection<Long> categoryIds, int startDay, int endDay) {
+        Map<Long, CategoryDAO.Usage> spent = new HashMap<>();
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+            for (List<Long> chunk : chunks(categoryIds)) {
+                List<String> args = new ArrayList<>();
+                String where = expenseOf(userId, chunk, args) +
+                        " AND " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " BETWEEN ? AND ?";
+                args.add(String.valueOf(startDay));
+                args.add(String.valueOf(endDay));
+
+                cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_CATEGORY_ID + ", SUM(tx_count), " +
+                                "COALESCE(SUM(total), 0) FROM (" + withArchived(where, args) + ")" +
+                                " GROUP BY " + DatabaseHelper.COLUMN_CATEGORY_ID,
+                        args.toArray(new String[0]));
+
+                while (cursor.moveToNext()) {
+                    spent.put(cursor.getLong(0), new CategoryDAO.Usage(cursor.getInt(1), cursor.getLong(2)));
+                }
+                cursor.close();
+                cursor = null;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading spent by category: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return spent;
+    }
+
+    /**
+     * Chi tiêu theo tháng ("yyyy-MM" -> tổng, tháng tăng dần) của nhiều danh mục từ ngày fromDay, 1 câu lệnh
+     * (mỗi 900 danh mục). Tháng không có giao dịch không có trong map. Giao dịch đã archive được tính qua archived_day_totals.
+     */
+    public Map<Long, LinkedHashMap<String, Long>> getMonthlyExpenseByCategories(int userId, Collection<Long> categoryIds, int fromDay) {
+        Map<Long, LinkedHashMap<String, Long>> monthly = new HashMap<>();
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            // "yyyy-MM" từ epoch day (archived_day_totals không có cột date)
+            String month = "strftime('%Y-%m', " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " + 2440587.5)";
+
+            for (List<Long> chunk : chunks(categoryIds)) {
+                List<String> args = new ArrayList<>();
+                String where = expenseOf(userId, chunk, args) +
+                        " AND " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " >= ?";
+                args.add(String.valueOf(fromDay));
+
+                cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_CATEGORY_ID + ", " + month + " AS month, " +
+                                "SUM(total) FROM (" + withArchived(where, args) + ")" +
+                                " GROUP BY " + DatabaseHelper.COLUMN_CATEGORY_ID + ", month" +
+                                " ORDER BY " + DatabaseHelper.COLUMN_CATEGORY_ID + ", month",
+                        args.toArray(new String[0]));
+
+                while (cursor.moveToNext()) {
+                    LinkedHashMap<String, Long> months = monthly.get(cursor.getLong(0));
+                    if (months == null) {
+                        months = new LinkedHashMap<>();
+                        monthly.put(cursor.getLong(0), months);
+                    }
+                    months.put(cursor.getString(1), cursor.getLong(2));
+                }
+                cursor.close();
+                cursor = null;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading monthly spending by category: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return monthly;
+    }
+
+    /**
+     * Giao dịch thu/chi của user từ ngày fromDay (epoch day), dạng cột, ngày tăng dần - 1 câu cho cả báo cáo phân tích
+     * (range scan trên idx_transactions_user_day, đã đúng thứ tự nên không sort).
+     * Khoảng chạm tới phần đã archive thì đọc view all_transactions. Lỗi thì trả TransactionColumns.EMPTY.
+     */
+    public TransactionColumns getColumns(int userId, int fromDay) {
+        Cursor cursor = null;
+
+        try {
+            TransactionArchive archive = dbHelper.getArchive();
+            boolean allTime = archive.covers(fromDay);
+            SQLiteDatabase db = allTime ? archive.getAllTimeDatabase() : dbHelper.getReadableDatabase();
+            cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + ", " + DatabaseHelper.COLUMN_AMOUNT + ", " +
+                            DatabaseHelper.COLUMN_CATEGORY_ID + ", " + DatabaseHelper.COLUMN_TYPE + " = 'expense'" +
+                            " FROM " + (allTime ? TransactionArchive.VIEW_ALL_TRANSACTIONS : DatabaseHelper.TABLE_TRANSACTIONS) +
+                            " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " >= ?" +
+                            " AND " + DatabaseHelper.COLUMN_TYPE + " IN ('expense', 'income')" +
+                            " ORDER BY " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY,
+                    new String[]{String.valueOf(userId), String.valueOf(fromDay)});
+
+            TransactionColumns columns = new TransactionColumns(cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                columns.days[i] = cursor.getInt(0);
+                columns.amounts[i] = cursor.getLong(1);
+                columns.categories[i] = cursor.getInt(2);
+                columns.expense[i] = cursor.getInt(3) != 0;
+            }
+            return columns;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading transaction columns: " + e.getMessage());
+            return TransactionColumns.EMPTY;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    // "user_id = ? AND category_id IN (...) AND type = 'expense'", thêm tham số vào args
+    private static String expenseOf(int userId, List<Long> categoryIds, List<String> args) {
+        args.add(String.valueOf(userId));
+        return DatabaseHelper.COLUMN_USER_ID + " = ?" +
+                " AND " + DatabaseHelper.COLUMN_CATEGORY_ID + " IN (" + bindIn(categoryIds, args) + ")" +
+                " AND " + DatabaseHelper.COLUMN_TYPE + " = 'expense'";
+    }
+
+    // (category_id, date_epoch_day, total, tx_count) của transactions + archived_day_totals cùng điều kiện `where`;
+    // args chỉ chứa tham số của `where`, được lặp lại cho phần archived
+    private static String withArchived(String where, List<String> args) {
+        args.addAll(new ArrayList<>(args));
+        return "SELECT " + DatabaseHelper.COLUMN_CATEGORY_ID + ", " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + ", " +
+                DatabaseHelper.COLUMN_AMOUNT + " AS total, 1 AS tx_count FROM " + DatabaseHelper.TABLE_TRANSACTIONS + " WHERE " + where +
+                " UNION ALL SELECT " + DatabaseHelper.COLUMN_CATEGORY_ID + ", " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + ", " +
+                DatabaseHelper.COLUMN_ROLLUP_TOTAL + ", " + DatabaseHelper.COLUMN_ROLLUP_TX_COUNT + " FROM " + DatabaseHelper.TABLE_ARCHIVED_DAY_TOTALS +
+                " WHERE " + where;
+    }
+
+    // "?, ?, ..." cho danh sách id, thêm id vào args
+    private static String bindIn(List<Long> ids, List<String> args) {
+        StringBuilder in = new StringBuilder();
+        for (Long id : ids) {
+            if (in.length() > 0) in.append(", ");
+            in.append('?');
+            args.add(String.valueOf(id));
+        }
+        return in.toString();
+    }
+
+    private static List<List<Long>> chunks(Collection<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        List<Long> chunk = new ArrayList<>();
+        for (Long id : ids) {
+            chunk.add(id);
+            if (chunk.size() == MAX_IN_ARGS) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+        if (!chunk.isEmpty()) chunks.add(chunk);
+        return chunks;
+    }
+}
@@ -0,0 +1,187 @@
+package database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import models.Transaction;
+
+/**
+ * 📄 Danh sách giao dịch theo trang - keyset pagination trên (date_epoch_day DESC, created_at DESC, _id DESC).
+ *
+ * Mỗi trang bắt đầu từ khóa của dòng cuối trang trước thay vì OFFSET, nên chi phí mỗi trang
+ * không đổi dù đang ở đầu hay cuối lịch sử (range scan trên index user_id, date_epoch_day, created_at).
+ * Bộ lọc đến từ TransactionQuery; câu SQL được cache theo shape của bộ lọc + loại trang.
+ * Bộ lọc chạm tới khoảng ngày đã archive thì đọc view all_transactions của TransactionArchive.
+ */
+public class TransactionPageDAO {
+    private static final String TAG = "TransactionPageDAO";
+
+    private static final String ORDER_DESC = " ORDER BY t." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " DESC, t." +
+            DatabaseHelper.COLUMN_CREATED_AT + " DESC, t." + DatabaseHelper.COLUMN_ID + " DESC";
+    private static final String ORDER_ASC = " ORDER BY t." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " ASC, t." +
+            DatabaseHelper.COLUMN_CREATED_AT + " ASC, t." + DatabaseHelper.COLUMN_ID + " ASC";
+
+    private final DatabaseHelper dbHelper;
+
+    /**
+     * Vị trí của 1 dòng trong thứ tự sắp xếp
+     */
+    public static class PageKey {
+        final int epochDay;
+        final String createdAt;
+        final long id;
+
+        public PageKey(int epochDay, String createdAt, long id) {
+            this.epochDay = epochDay;
+            this.createdAt = createdAt != null ? createdAt : "";
+            this.id = id;
+        }
+
+        public static PageKey of(Transaction transaction) {
+            return new PageKey(transaction.getDateEpochDay(), transaction.getCreatedAt(), transaction.getId());
+        }
+    }
+
+    public TransactionPageDAO(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Trang tiếp theo (cũ hơn) sau khóa `after`; after = null -> trang đầu tiên.
+     */
+    public List<Transaction> loadPageAfter(TransactionQuery filter, PageKey after, int pageSize) {
+        boolean allTime = dbHelper.getArchive().covers(filter);
+        List<String> args = new ArrayList<>();
+        filter.bindArgs(args, allTime);
+
+        String query;
+        if (after == null) {
+            query = filter.sql(kindOf("page_first", allTime), () -> buildPageQuery(filter, allTime, "", ORDER_DESC));
+        } else {
+            query = filter.sql(kindOf("page_after", allTime), () -> buildPageQuery(filter, allTime, " AND " + keysetCondition("<"), ORDER_DESC));
+            bindKey(after, args);
+        }
+        args.add(String.valueOf(pageSize));
+
+        return query(allTime, query, args);
+    }
+
+    /**
+     * Trang liền trước (mới hơn) khóa `before`, trả về theo thứ tự hiển thị (DESC)
+     */
+    public List<Transaction> loadPageBefore(TransactionQuery filter, PageKey before, int pageSize) {
+        boolean allTime = dbHelper.getArchive().covers(filter);
+        List<String> args = new ArrayList<>();
+        filter.bindArgs(args, allTime);
+        bindKey(before, args);
+        args.add(String.valueOf(pageSize));
+
+        // Đọc ngược chiều từ khóa rồi đảo lại
+        String query = filter.sql(kindOf("page_before", allTime), () -> buildPageQuery(filter, allTime, " AND " + keysetCondition(">"), ORDER_ASC));
+        List<Transaction> page = query(allTime, query, args);
+        Collections.reverse(page);
+        return page;
+    }
+
+    /**
+     * Tổng thu/chi theo cùng bộ lọc (tính trong SQL, không cần tải danh sách)
+     *
+     * @return {income, expense}
+     */
+    public long[] getTotals(TransactionQuery filter) {
+        boolean allTime = dbHelper.getArchive().covers(filter);
+        List<String> args = new ArrayList<>();
+        filter.bindArgs(args, allTime);
+
+        String query = filter.sql(kindOf("totals", allTime), () ->
+                "SELECT t." + DatabaseHelper.COLUMN_TYPE + ", SUM(t." + DatabaseHelper.COLUMN_AMOUNT + ") " +
+                        "FROM " + filter.fromClause(allTime) + " WHERE " + filter.whereClause(allTime) +
+                        " GROUP BY t." + DatabaseHelper.COLUMN_TYPE);
+
+        long income = 0, expense = 0;
+        Cursor cursor = null;
+        try {
+            SQLiteDatabase db = databaseFor(allTime);
+            cursor = db.rawQuery(query, args.toArray(new String[0]));
+
+            while (cursor.moveToNext()) {
+                if ("income".equals(cursor.getString(0))) {
+                    income = cursor.getLong(1);
+                } else if ("expense".equals(cursor.getString(0))) {
+                    expense = cursor.getLong(1);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading totals: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return new long[]{income, expense};
+    }
+
+    // 🗄️ Khoảng ngày có dữ liệu đã archive -> connection có view all_transactions
+    private SQLiteDatabase databaseFor(boolean allTime) {
+        return allTime ? dbHelper.getArchive().getAllTimeDatabase() : dbHelper.getReadableDatabase();
+    }
+
+    private static String kindOf(String kind, boolean allTime) {
+        return allTime ? kind + "_all_time" : kind;
+    }
+
+    private String buildPageQuery(TransactionQuery filter, boolean allTime, String keyset, String orderBy) {
+        return "SELECT " + TransactionRows.SELECT_COLUMNS +
+                " FROM " + filter.fromClause(allTime) +
+                " LEFT JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON t." + DatabaseHelper.COLUMN_CATEGORY_ID +
+                " = c." + DatabaseHelper.COLUMN_ID +
+                " WHERE " + filter.whereClause(allTime) + keyset + orderBy +
+                " LIMIT ?";
+    }
+
+    // (date_epoch_day, created_at, _id) op (key) - viết tường minh vì SQLite trên API 24 chưa hỗ trợ row value.
+    // Điều kiện "day op= ?" thừa về logic nhưng cho phép seek thẳng vào index thay vì duyệt từ đầu.
+    private String keysetCondition(String op) {
+        String day = "t." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY;
+        String createdAt = "t." + DatabaseHelper.COLUMN_CREATED_AT;
+        String id = "t." + DatabaseHelper.COLUMN_ID;
+
+        return day + " " + op + "= ? AND (" + day + " " + op + " ? OR (" + day + " = ? AND (" +
+                createdAt + " " + op + " ? OR (" + createdAt + " = ? AND " + id + " " + op + " ?))))";
+    }
+
+    // Tham số theo đúng thứ tự của keysetCondition()
+    private void bindKey(PageKey key, List<String> args) {
+        String day = String.valueOf(key.epochDay);
+        args.add(day);
+        args.add(day);
+        args.add(day);
+        args.add(key.createdAt);
+        args.add(key.createdAt);
+        args.add(String.valueOf(key.id));
+    }
+
+    private List<Transaction> query(boolean allTime, String query, List<String> args) {
+        List<Transaction> page = new ArrayList<>();
+
+        Cursor cursor = null;
+        try {
+            SQLiteDatabase db = databaseFor(allTime);
+            cursor = db.rawQuery(query, args.toArray(new String[0]));
+
+            while (cursor.moveToNext()) {
+                page.add(TransactionRows.read(cursor));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error loading transaction page: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return page;
+    }
+}
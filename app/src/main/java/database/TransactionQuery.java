@@ -0,0 +1,339 @@
+package database;
+
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import models.DateCodec;
+
+/**
+ * 🧱 Bộ lọc giao dịch được biên dịch thành 1 câu SQL có tham số.
+ *
+ * Mọi điều kiện (khoảng ngày theo date_epoch_day, danh mục, loại, số tiền, phương thức thanh toán, từ khóa FTS)
+ * đều chạy trong SQLite trên index thay vì lọc danh sách trong Java.
+ * Câu SQL chỉ phụ thuộc vào "shape" của bộ lọc (điều kiện nào có mặt), không phụ thuộc giá trị,
+ * nên chuỗi SQL được cache theo shape và trúng statement cache của SQLiteDatabase.
+ *
+ * Dùng alias t cho bảng transactions.
+ */
+public final class TransactionQuery {
+
+    public static final String PERIOD_TODAY = "today";
+    public static final String PERIOD_WEEK = "week";
+    public static final String PERIOD_MONTH = "month";
+    public static final String PERIOD_ALL = "all";
+
+    private static final int MAX_CACHED_SHAPES = 32;
+
+    // shape -> câu SQL đã ghép
+    private static final Map<String, String> SQL_CACHE = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED_SHAPES;
+        }
+    };
+
+    final int userId;
+    final Integer startDay;
+    final Integer endDay;
+    final List<Long> categoryIds;
+    final String type;
+    final Long minAmount;
+    final Long maxAmount;
+    final String paymentMethod;
+    final String match;
+
+    private TransactionQuery(Builder builder) {
+        this.userId = builder.userId;
+        this.startDay = builder.startDay;
+        this.endDay = builder.endDay;
+        this.categoryIds = Collections.unmodifiableList(new ArrayList<>(builder.categoryIds));
+        this.type = builder.type;
+        this.minAmount = builder.minAmount;
+        this.maxAmount = builder.maxAmount;
+        this.paymentMethod = builder.paymentMethod;
+        this.match = builder.match;
+    }
+
+    public static Builder forUser(int userId) {
+        return new Builder(userId);
+    }
+
+    public boolean hasText() {
+        return match != null;
+    }
+
+    // Epoch day (DateCodec), null = không giới hạn
+    public Integer getStartDay() {
+        return startDay;
+    }
+
+    public Integer getEndDay() {
+        return endDay;
+    }
+
+    /**
+     * Khóa shape: điều kiện nào có mặt (+ số danh mục), không chứa giá trị
+     */
+    String shape() {
+        return (startDay != null ? "s" : "") +
+                (endDay != null ? "e" : "") +
+                (type != null ? "t" : "") +
+                (!categoryIds.isEmpty() ? "c" + categoryIds.size() : "") +
+                (minAmount != null ? "a" : "") +
+                (maxAmount != null ? "b" : "") +
+                (paymentMethod != null ? "p" : "") +
+                (match != null ? "m" : "");
+    }
+
+    /**
+     * FROM transactions t (JOIN transactions_fts khi có từ khóa)
+     */
+    String fromClause() {
+        return fromClause(false);
+    }
+
+    /**
+     * allTime = true: đọc view all_transactions (bảng nóng + archive) trên connection của TransactionArchive;
+     * có từ khóa thì MATCH chạy trong từng nhánh của TransactionArchive.matchUnion()
+     */
+    String fromClause(boolean allTime) {
+        if (allTime) {
+            if (match != null) {
+                return "(" + TransactionArchive.matchUnion("") + ") t";
+            }
+            return TransactionArchive.VIEW_ALL_TRANSACTIONS + " t";
+        }
+        if (match == null) {
+            return DatabaseHelper.TABLE_TRANSACTIONS + " t";
+        }
+        return DatabaseHelper.TABLE_TRANSACTIONS_FTS + " JOIN " + DatabaseHelper.TABLE_TRANSACTIONS + " t ON t." +
+                DatabaseHelper.COLUMN_ID + " = " + DatabaseHelper.TABLE_TRANSACTIONS_FTS + ".docid";
+    }
+
+    /**
+     * Điều kiện WHERE (không có chữ WHERE), thứ tự tham số khớp với bindArgs()
+     */
+    String whereClause() {
+        return whereClause(false);
+    }
+
+    /**
+     * allTime = true: MATCH đã nằm trong fromClause(true), thứ tự tham số khớp với bindArgs(args, true)
+     */
+    String whereClause(boolean allTime) {
+        StringBuilder where = new StringBuilder("t." + DatabaseHelper.COLUMN_USER_ID + " = ?");
+
+        if (startDay != null) {
+            where.append(" AND t.").append(DatabaseHelper.COLUMN_DATE_EPOCH_DAY).append(" >= ?");
+        }
+        if (endDay != null) {
+            where.append(" AND t.").append(DatabaseHelper.COLUMN_DATE_EPOCH_DAY).append(" <= ?");
+        }
+        if (type != null) {
+            where.append(" AND t.").append(DatabaseHelper.COLUMN_TYPE).append(" = ?");
+        }
+        if (!categoryIds.isEmpty()) {
+            where.append(" AND t.").append(DatabaseHelper.COLUMN_CATEGORY_ID).append(" IN (")
+                    .append(TextUtils.join(", ", Collections.nCopies(categoryIds.size(), "?"))).append(")");
+        }
+        if (minAmount != null) {
+            where.append(" AND t.").append(DatabaseHelper.COLUMN_AMOUNT).append(" >= ?");
+        }
+        if (maxAmount != null) {
+            where.append(" AND t.").append(DatabaseHelper.COLUMN_AMOUNT).append(" <= ?");
+        }
+        if (paymentMethod != null) {
+            where.append(" AND t.").append(DatabaseHelper.COLUMN_PAYMENT_METHOD).append(" = ?");
+        }
+        if (match != null && !allTime) {
+            where.append(" AND ").append(DatabaseHelper.TABLE_TRANSACTIONS_FTS).append(" MATCH ?");
+        }
+        return where.toString();
+    }
+
+    /**
+     * Thêm tham số theo đúng thứ tự của whereClause()
+     */
+    void bindArgs(List<String> args) {
+        bindArgs(args, false);
+    }
+
+    /**
+     * allTime = true: tham số MATCH của 2 nhánh trong fromClause(true) đứng trước các tham số của whereClause(true)
+     */
+    void bindArgs(List<String> args, boolean allTime) {
+        if (match != null && allTime) {
+            args.add(match);
+            args.add(match);
+        }
+        args.add(String.valueOf(userId));
+
+        if (startDay != null) args.add(String.valueOf(startDay));
+        if (endDay != null) args.add(String.valueOf(endDay));
+        if (type != null) args.add(type);
+        for (Long categoryId : categoryIds) {
+            args.add(String.valueOf(categoryId));
+        }
+        if (minAmount != null) args.add(String.valueOf(minAmount));
+        if (maxAmount != null) args.add(String.valueOf(maxAmount));
+        if (paymentMethod != null) args.add(paymentMethod);
+        if (match != null && !allTime) args.add(match);
+    }
+
+    /**
+     * Câu SQL cho 1 loại truy vấn (kind) + shape của bộ lọc - ghép 1 lần rồi dùng lại
+     */
+    String sql(String kind, Supplier<String> builder) {
+        String key = kind + "|" + shape();
+        synchronized (SQL_CACHE) {
+            String sql = SQL_CACHE.get(key);
+            if (sql == null) {
+                sql = builder.get();
+                SQL_CACHE.put(key, sql);
+            }
+            return sql;
+        }
+    }
+
+    /**
+     * Từ khóa người dùng -> MATCH query: mỗi từ (đã bỏ dấu) thành prefix term, nối bằng AND ngầm định.
+     * Trả về null nếu không còn từ nào.
+     */
+    static String toMatchQuery(String keyword) {
+        List<String> terms = new ArrayList<>();
+        for (String token : tokenize(keyword)) {
+            terms.add(token + "*");
+        }
+        return terms.isEmpty() ? null : TextUtils.join(" ", terms);
+    }
+
+    // Cụm từ chính xác ("...") cho FTS, null nếu rỗng
+    static String toPhrase(String text) {
+        List<String> tokens = tokenize(text);
+        return tokens.isEmpty() ? null : "\"" + TextUtils.join(" ", tokens) + "\"";
+    }
+
+    // Bỏ dấu rồi tách theo ký tự không phải chữ/số - loại luôn các ký tự cú pháp FTS (", *, -, :)
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+
+        for (String token : DatabaseHelper.foldDiacritics(text).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    public static class Builder {
+        private final int userId;
+        private Integer startDay;
+        private Integer endDay;
+        private final List<Long> categoryIds = new ArrayList<>();
+        private String type;
+        private Long minAmount;
+        private Long maxAmount;
+        private String paymentMethod;
+        private String match;
+
+        private Builder(int userId) {
+            this.userId = userId;
+        }
+
+        /**
+         * Kỳ định sẵn: today / week (7 ngày gần nhất) / month (từ đầu tháng) / all
+         */
+        public Builder period(String period) {
+            int today = DateCodec.today();
+
+            switch (period != null ? period : PERIOD_ALL) {
+                case PERIOD_TODAY:
+                    return dayRange(today, today);
+                case PERIOD_WEEK:
+                    return dayRange(today - 7, null);
+                case PERIOD_MONTH:
+                    return dayRange(DateCodec.startOfMonth(today), null);
+                case PERIOD_ALL:
+                default:
+                    return dayRange(null, null);
+            }
+        }
+
+        /**
+         * Khoảng ngày "yyyy-MM-dd" hoặc "dd/MM/yyyy" (2 đầu đều tính), null / không hợp lệ = không giới hạn
+         */
+        public Builder dateRange(String startDate, String endDate) {
+            return dayRange(toDay(startDate), toDay(endDate));
+        }
+
+        /**
+         * Khoảng epoch day (2 đầu đều tính), null = không giới hạn
+         */
+        public Builder dayRange(Integer startDay, Integer endDay) {
+            this.startDay = startDay;
+            this.endDay = endDay;
+            return this;
+        }
+
+        private static Integer toDay(String date) {
+            int epochDay = DateCodec.parse(date);
+            return epochDay == DateCodec.INVALID ? null : epochDay;
+        }
+
+        public Builder categories(Collection<Long> categoryIds) {
+            this.categoryIds.clear();
+            if (categoryIds != null) {
+                this.categoryIds.addAll(categoryIds);
+            }
+            return this;
+        }
+
+        /**
+         * "income" / "expense", null = cả hai
+         */
+        public Builder type(String type) {
+            this.type = type;
+            return this;
+        }
+
+        /**
+         * Khoảng số tiền (2 đầu đều tính) theo đơn vị của cột amount - Money.toMinorUnits(), null = không giới hạn
+         */
+        public Builder amountRange(Long minAmount, Long maxAmount) {
+            this.minAmount = minAmount;
+            this.maxAmount = maxAmount;
+            return this;
+        }
+
+        public Builder paymentMethod(String paymentMethod) {
+            this.paymentMethod = paymentMethod;
+            return this;
+        }
+
+        /**
+         * Từ khóa tìm kiếm (không dấu cũng khớp), rỗng = không lọc
+         */
+        public Builder text(String keyword) {
+            this.match = toMatchQuery(keyword);
+            return this;
+        }
+
+        // Biểu thức MATCH viết sẵn (đã bỏ dấu)
+        Builder match(String matchExpression) {
+            this.match = matchExpression;
+            return this;
+        }
+
+        public TransactionQuery build() {
+            return new TransactionQuery(this);
+        }
+    }
+}
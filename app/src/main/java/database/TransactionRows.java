@@ -0,0 +1,45 @@
+package database;
+
+import android.database.Cursor;
+
+import models.Transaction;
+
+/**
+ * Cột SELECT + đọc Transaction (kèm thông tin danh mục) dùng chung cho các DAO danh sách giao dịch.
+ * Câu truy vấn phải dùng alias t = transactions, c = categories.
+ */
+final class TransactionRows {
+
+    static final String SELECT_COLUMNS = "t." + DatabaseHelper.COLUMN_ID + ", " +
+            "t." + DatabaseHelper.COLUMN_TYPE + ", " +
+            "t." + DatabaseHelper.COLUMN_AMOUNT + ", " +
+            "t." + DatabaseHelper.COLUMN_CATEGORY_ID + ", " +
+            "t." + DatabaseHelper.COLUMN_NOTE + ", " +
+            "t." + DatabaseHelper.COLUMN_DATE + ", " +
+            "t." + DatabaseHelper.COLUMN_PAYMENT_METHOD + ", " +
+            "t." + DatabaseHelper.COLUMN_CREATED_AT + ", " +
+            "c." + DatabaseHelper.COLUMN_CATEGORY_NAME + ", " +
+            "c." + DatabaseHelper.COLUMN_CATEGORY_ICON + ", " +
+            "c." + DatabaseHelper.COLUMN_CATEGORY_COLOR + ", " +
+            "t." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY;
+
+    private TransactionRows() {}
+
+    // Đọc theo vị trí cột của SELECT_COLUMNS
+    static Transaction read(Cursor cursor) {
+        Transaction transaction = new Transaction();
+        transaction.setId(cursor.getLong(0));
+        transaction.setType(cursor.getString(1));
+        transaction.setAmount(cursor.getLong(2));
+        transaction.setCategoryId(cursor.getLong(3));
+        transaction.setNote(cursor.getString(4));
+        transaction.setDate(cursor.getString(5));
+        transaction.setPaymentMethod(cursor.getString(6));
+        transaction.setCreatedAt(cursor.getString(7));
+        transaction.setCategoryName(cursor.isNull(8) ? "" : cursor.getString(8));
+        transaction.setCategoryIcon(cursor.getString(9));
+        transaction.setCategoryColor(cursor.getString(10));
+        if (!cursor.isNull(11)) transaction.setDateEpochDay(cursor.getInt(11));
+        return transaction;
+    }
+}
@@ -0,0 +1,122 @@
+package database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import models.Transaction;
+
+/**
+ * 🔍 Tìm kiếm giao dịch qua chỉ mục FTS4 transactions_fts.
+ *
+ * Từ khóa (TransactionQuery.Builder.text) được bỏ dấu giống hệt nội dung chỉ mục (DatabaseHelper.foldDiacritics),
+ * mỗi từ là 1 prefix query nên "an uo" đã khớp "Ăn uống".
+ * Kết quả xếp theo số lần khớp rồi theo ngày, trả về từng trang (limit/offset).
+ * Khoảng ngày chạm tới phần đã archive thì tìm trên transactions_fts của cả 2 file (TransactionArchive.matchUnion()).
+ */
+public class TransactionSearchDAO {
+    private static final String TAG = "TransactionSearchDAO";
+
+    // Số lần khớp của dòng: offsets() cho 4 số "cột từ vị_trí độ_dài" mỗi lần khớp -> (số khoảng trắng + 1) / 4.
+    // Không dùng length(offsets()) vì vị trí càng lớn càng nhiều chữ số (ghi chú dài xếp trước dù khớp ít hơn).
+    private static final String HITS = "(length(offsets(" + DatabaseHelper.TABLE_TRANSACTIONS_FTS + ")) - " +
+            "length(replace(offsets(" + DatabaseHelper.TABLE_TRANSACTIONS_FTS + "), ' ', '')) + 1) / 4";
+
+    private final DatabaseHelper dbHelper;
+
+    public TransactionSearchDAO(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Tìm giao dịch theo từ khóa của bộ lọc (note, phương thức thanh toán, tên danh mục),
+     * cùng các điều kiện còn lại của bộ lọc. Bộ lọc không có từ khóa -> danh sách rỗng.
+     */
+    public List<Transaction> search(TransactionQuery filter, int limit, int offset) {
+        if (!filter.hasText()) {
+            return new ArrayList<>();
+        }
+
+        // Nhiều lần khớp hơn -> xếp trước (cột hits tính 1 lần mỗi dòng)
+        boolean allTime = dbHelper.getArchive().covers(filter);
+        String query = filter.sql(kindOf("search", allTime), () -> buildQuery(filter, allTime, true,
+                " ORDER BY hits DESC, t." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " DESC, t." + DatabaseHelper.COLUMN_CREATED_AT + " DESC"));
+
+        return query(filter, allTime, query, limit, offset);
+    }
+
+    /**
+     * Giao dịch tiết kiệm cho mục tiêu: có "tiết kiệm" (ở bất kỳ cột nào) và tên mục tiêu trong note.
+     * Thay cho các lần quét LOWER(note) LIKE trước đây.
+     */
+    public List<Transaction> findGoalSavings(int userId, String goalName, int limit) {
+        String goalPhrase = TransactionQuery.toPhrase(goalName);
+        if (goalPhrase == null) {
+            return new ArrayList<>();
+        }
+
+        TransactionQuery filter = TransactionQuery.forUser(userId)
+                .match("\"tiet kiem\" " + DatabaseHelper.COLUMN_NOTE + ":" + goalPhrase)
+                .build();
+
+        boolean allTime = dbHelper.getArchive().covers(filter);
+        String query = filter.sql(kindOf("goal_savings", allTime), () -> buildQuery(filter, allTime, false,
+                " ORDER BY t." + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " DESC, t." + DatabaseHelper.COLUMN_CREATED_AT + " DESC"));
+
+        return query(filter, allTime, query, limit, 0);
+    }
+
+    private static String kindOf(String kind, boolean allTime) {
+        return allTime ? kind + "_all_time" : kind;
+    }
+
+    // ranked: thêm cột hits - allTime thì mỗi nhánh của matchUnion() tự tính trên transactions_fts của nó
+    private String buildQuery(TransactionQuery filter, boolean allTime, boolean ranked, String orderBy) {
+        String from;
+        String hits = "";
+        if (allTime) {
+            from = ranked ? "(" + TransactionArchive.matchUnion(", " + HITS + " AS hits") + ") t" : filter.fromClause(true);
+        } else {
+            from = filter.fromClause();
+            if (ranked) hits = ", " + HITS + " AS hits";
+        }
+
+        return "SELECT " + TransactionRows.SELECT_COLUMNS + hits +
+                " FROM " + from +
+                " LEFT JOIN " + DatabaseHelper.TABLE_CATEGORIES + " c ON t." + DatabaseHelper.COLUMN_CATEGORY_ID +
+                " = c." + DatabaseHelper.COLUMN_ID +
+                " WHERE " + filter.whereClause(allTime) + orderBy +
+                " LIMIT ? OFFSET ?";
+    }
+
+    private List<Transaction> query(TransactionQuery filter, boolean allTime, String query, int limit, int offset) {
+        List<Transaction> results = new ArrayList<>();
+
+        List<String> args = new ArrayList<>();
+        filter.bindArgs(args, allTime);
+        args.add(String.valueOf(limit));
+        args.add(String.valueOf(offset));
+
+        Cursor cursor = null;
+        try {
+            // 🗄️ Có phần đã archive -> connection có ATTACH archive
+            SQLiteDatabase db = allTime ? dbHelper.getArchive().getAllTimeDatabase() : dbHelper.getReadableDatabase();
+            cursor = db.rawQuery(query, args.toArray(new String[0]));
+
+            while (cursor.moveToNext()) {
+                results.add(TransactionRows.read(cursor));
+            }
+            Log.d(TAG, "✅ Search returned " + results.size() + " transactions");
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error searching transactions: " + e.getMessage());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return results;
+    }
+}
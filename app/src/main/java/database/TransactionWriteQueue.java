@@ -0,0 +1,314 @@
+package database;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 🧾 Ghi giao dịch mới kiểu write-behind: enqueue() trả về ngay với id tạm (âm), 1 thread nền ghi xuống database.
+ *
+ * Thread ghi lấy hết các dòng đang chờ và insert trong 1 SQLite transaction (group commit) - nhập liên tục
+ * hoặc thêm hàng loạt chỉ tốn 1 lần commit/fsync cho mỗi lô thay vì mỗi dòng. Không chờ thêm để gom lô:
+ * trong lúc 1 lô đang commit, các dòng mới tới tự dồn vào lô sau.
+ * Dòng lỗi (ràng buộc, category không tồn tại...) chỉ hỏng riêng dòng đó, các dòng khác trong lô vẫn được commit.
+ *
+ * Sau mỗi lô, Listener được gọi trên main thread với các Write của lô (id thật hoặc lỗi) để màn hình tải lại số liệu.
+ * Trigger của transactions (rollup, sổ cái, budget_progress, FTS) chạy trong cùng transaction như khi insert trực tiếp.
+ */
+public class TransactionWriteQueue {
+    private static final String TAG = "TransactionWriteQueue";
+
+    // Số dòng tối đa trong 1 SQLite transaction - lô lớn hơn được chia, tránh giữ khóa ghi quá lâu
+    private static final int MAX_BATCH = 500;
+
+    /**
+     * Nhận kết quả từng lô ghi (main thread)
+     */
+    public interface Listener {
+        void onTransactionsCommitted(List<Write> writes);
+    }
+
+    /**
+     * Nhận số dư dự kiến (main thread)
+     */
+    public interface BalanceCallback {
+        void onBalance(long balance);
+    }
+
+    /**
+     * 1 giao dịch đã nhận vào hàng đợi
+     */
+    public static final class Write {
+        // Id tạm cấp ngay lúc enqueue, âm nên không trùng _id thật
+        public final long provisionalId;
+        public final int userId;
+        public final String type;
+        public final long amount;
+
+        final ContentValues values;
+
+        // 0 = đang chờ, > 0 = _id thật, -1 = lỗi
+        private volatile long id;
+        private volatile String error;
+
+        Write(long provisionalId, ContentValues values) {
+            this.provisionalId = provisionalId;
+            this.values = values;
+
+            Integer user = values.getAsInteger(DatabaseHelper.COLUMN_USER_ID);
+            Long value = values.getAsLong(DatabaseHelper.COLUMN_AMOUNT);
+            this.userId = user != null ? user : -1;
+            this.type = values.getAsString(DatabaseHelper.COLUMN_TYPE);
+            this.amount = value != null ? value : 0;
+        }
+
+        public long getId() {
+            return id > 0 ? id : provisionalId;
+        }
+
+        public boolean isPending() {
+            return id == 0;
+        }
+
+        public boolean isCommitted() {
+            return id > 0;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        // Ảnh hưởng lên số dư (thu +, chi -)
+        long balanceDelta() {
+            return "income".equals(type) ? amount : "expense".equals(type) ? -amount : 0;
+        }
+
+        void fail(String message) {
+            id = -1;
+            error = message;
+        }
+    }
+
+    private final DatabaseHelper dbHelper;
+    private final BalanceDAO balanceDAO;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> new Thread(r, "transaction-writer"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong nextProvisionalId = new AtomicLong(-1);
+
+    // lock: hàng đợi + lô đang ghi. commitLock: lúc commit (số dư trong sổ cái đổi) - luôn lấy commitLock trước lock
+    private final Object lock = new Object();
+    private final Object commitLock = new Object();
+    private final ArrayDeque<Write> pending = new ArrayDeque<>();
+    private final List<Write> inFlight = new ArrayList<>();
+    private boolean drainScheduled;
+
+    TransactionWriteQueue(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+        this.balanceDAO = new BalanceDAO(dbHelper);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Đưa 1 giao dịch (các cột của bảng transactions, amount là minor units) vào hàng đợi ghi, trả về ngay
+     */
+    public Write enqueue(ContentValues values) {
+        List<ContentValues> single = new ArrayList<>(1);
+        single.add(values);
+        return enqueueAll(single).get(0);
+    }
+
+    /**
+     * Thêm nhiều giao dịch một lúc - được ghi chung lô
+     */
+    public List<Write> enqueueAll(Collection<ContentValues> rows) {
+        List<Write> writes = new ArrayList<>(rows.size());
+        for (ContentValues values : rows) {
+            writes.add(new Write(nextProvisionalId.getAndDecrement(), values));
+        }
+
+        synchronized (lock) {
+            pending.addAll(writes);
+            if (!drainScheduled) {
+                drainScheduled = true;
+                writer.execute(this::drain);
+            }
+        }
+        return writes;
+    }
+
+    /**
+     * Số dư của user tính cả các giao dịch chưa ghi xong.
+     * Đọc sổ cái và phần đang chờ dưới commitLock nên 1 dòng vừa commit không bị cộng 2 lần hay bỏ sót.
+     * Đọc database và có thể chờ 1 lô đang commit - từ main thread dùng getProjectedBalanceAsync().
+     */
+    public long getProjectedBalance(int userId) {
+        synchronized (commitLock) {
+            long balance = balanceDAO.getBalance(userId);
+            synchronized (lock) {
+                for (Write write : inFlight) {
+                    if (write.userId == userId) balance += write.balanceDelta();
+                }
+                for (Write write : pending) {
+                    if (write.userId == userId) balance += write.balanceDelta();
+                }
+            }
+            return balance;
+        }
+    }
+
+    /**
+     * getProjectedBalance() chạy trên thread ghi (sau các giao dịch đã enqueue trước đó), kết quả trả về main thread
+     */
+    public void getProjectedBalanceAsync(int userId, BalanceCallback callback) {
+        try {
+            writer.execute(() -> {
+                long balance = getProjectedBalance(userId);
+                mainHandler.post(() -> callback.onBalance(balance));
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "⚠️ Writer stopped, projected balance not computed");
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size() + inFlight.size();
+        }
+    }
+
+    /**
+     * Chờ tới khi mọi giao dịch đã enqueue được ghi xong. Không gọi trên main thread.
+     */
+    public void flush() {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error waiting for pending writes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Ghi nốt hàng đợi rồi dừng thread ghi (DatabaseHelper.close())
+     */
+    void shutdown() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                Log.w(TAG, "⚠️ Writer did not finish, " + getPendingCount() + " transactions not written");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ==================== WRITER THREAD ====================
+
+    private void drain() {
+        while (true) {
+            List<Write> batch;
+            synchronized (lock) {
+                if (pending.isEmpty()) {
+                    drainScheduled = false;
+                    return;
+                }
+                batch = new ArrayList<>(Math.min(pending.size(), MAX_BATCH));
+                while (!pending.isEmpty() && batch.size() < MAX_BATCH) {
+                    batch.add(pending.poll());
+                }
+                inFlight.addAll(batch);
+            }
+
+            commit(batch);
+            dispatch(batch);
+        }
+    }
+
+    private void commit(List<Write> batch) {
+        long start = System.nanoTime();
+        boolean committed = false;
+        SQLiteDatabase db = null;
+
+        try {
+            db = dbHelper.getWritableDatabase();
+            db.beginTransaction();
+
+            try {
+                for (Write write : batch) {
+                    try {
+                        write.id = db.insertOrThrow(DatabaseHelper.TABLE_TRANSACTIONS, null, write.values);
+                    } catch (Exception e) {
+                        write.fail(e.getMessage());
+                        Log.e(TAG, "❌ Error inserting transaction " + write.provisionalId + ": " + e.getMessage());
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                // Số dư trong sổ cái đổi đúng lúc commit - getProjectedBalance() không được thấy cả 2 phía
+                synchronized (commitLock) {
+                    db.endTransaction();
+                    committed = true;
+                    synchronized (lock) {
+                        inFlight.removeAll(batch);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error committing " + batch.size() + " transactions: " + e.getMessage());
+        } finally {
+            // beginTransaction() lỗi thì chưa qua nhánh trên
+            synchronized (lock) {
+                inFlight.removeAll(batch);
+            }
+        }
+
+        int written = 0;
+        for (Write write : batch) {
+            if (!committed && write.id > 0) {
+                write.fail("commit failed");
+            }
+            if (write.isPending()) {
+                write.fail("not written");
+            }
+            if (write.isCommitted()) written++;
+        }
+        Log.d(TAG, String.format(java.util.Locale.US, "✅ Committed %d/%d transactions in %.1f ms",
+                written, batch.size(), (System.nanoTime() - start) / 1_000_000.0));
+    }
+
+    private void dispatch(List<Write> batch) {
+        if (listeners.isEmpty()) return;
+
+        List<Write> writes = Collections.unmodifiableList(batch);
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                try {
+                    listener.onTransactionsCommitted(writes);
+                } catch (Exception e) {
+                    Log.e(TAG, "❌ Listener error: " + e.getMessage());
+                }
+            }
+        });
+    }
+}
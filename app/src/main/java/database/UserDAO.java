@@ -36,7 +36,7 @@ public class UserDAO {
             return false;
         } finally {
             if (cursor != null) cursor.close();
-            // ❌ KHÔNG đóng database ở đây - để DashboardActivity quản lý
+            // ❌ KHÔNG đóng database - DatabaseHelper dùng chung cho toàn app
             // if (db != null) db.close();
         }
     }
@@ -111,7 +111,7 @@ public class UserDAO {
     }
 
     /**
-     * Insert new user - Chỉ đóng database khi ghi dữ liệu
+     * Insert new user
      */
     public long insertUser(User user) {
         SQLiteDatabase db = null;
@@ -133,9 +133,6 @@ public class UserDAO {
         } catch (Exception e) {
             Log.e("UserDAO", "❌ Error inserting user: " + e.getMessage());
             return -1;
-        } finally {
-            // ✅ Chỉ đóng database khi INSERT/UPDATE/DELETE
-            if (db != null) db.close();
         }
     }
 
@@ -163,8 +160,6 @@ public class UserDAO {
         } catch (Exception e) {
             Log.e("UserDAO", "❌ Error updating user: " + e.getMessage());
             return false;
-        } finally {
-            if (db != null) db.close();
         }
     }
 
@@ -191,8 +186,6 @@ public class UserDAO {
         } catch (Exception e) {
             Log.e("UserDAO", "❌ Error updating password: " + e.getMessage());
             return false;
-        } finally {
-            if (db != null) db.close();
         }
     }
 
@@ -9,8 +9,8 @@ public class Budget {
     private String period;
     private String startDate;
     private String endDate;
-    private double totalAmount;
-    private double spentAmount;
+    private long totalAmount; // minor units (đồng), xem Money
+    private long spentAmount;
     private String status;
     private String icon;
     private int categoriesCount;
@@ -20,7 +20,7 @@ public class Budget {
 
     // Original constructor
     public Budget(String id, String name, String period, String endDate,
-                  double totalAmount, double spentAmount, String status,
+                  long totalAmount, long spentAmount, String status,
                   String icon, int categoriesCount, String healthScore, String remainingDays) {
         this.id = id;
         this.name = name;
@@ -37,7 +37,7 @@ public class Budget {
 
     // Full constructor
     public Budget(String id, String name, String period, String startDate, String endDate,
-                  double totalAmount, double spentAmount, String status,
+                  long totalAmount, long spentAmount, String status,
                   String icon, int categoriesCount, String healthScore, String remainingDays, String userId) {
         this.id = id;
         this.name = name;
@@ -54,12 +54,12 @@ public class Budget {
         this.userId = userId;
     }
 
-    private String formatAmount(double amount) {
+    private String formatAmount(long amount) {
         DecimalFormat formatter = new DecimalFormat("#,###");
         return formatter.format(amount) + " VND";
     }
 
-    private String formatCurrency(double amount) {
+    private String formatCurrency(long amount) {
         NumberFormat formatter = NumberFormat.getCurrencyInstance(new Locale("vi", "VN"));
         return formatter.format(amount);
     }
@@ -90,11 +90,11 @@ public class Budget {
     public String getEndDate() { return endDate; }
     public void setEndDate(String endDate) { this.endDate = endDate; }
 
-    public double getTotalAmount() { return totalAmount; }
-    public void setTotalAmount(double totalAmount) { this.totalAmount = totalAmount; }
+    public long getTotalAmount() { return totalAmount; }
+    public void setTotalAmount(long totalAmount) { this.totalAmount = totalAmount; }
 
-    public double getSpentAmount() { return spentAmount; }
-    public void setSpentAmount(double spentAmount) { this.spentAmount = spentAmount; }
+    public long getSpentAmount() { return spentAmount; }
+    public void setSpentAmount(long spentAmount) { this.spentAmount = spentAmount; }
 
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
@@ -116,13 +116,12 @@ public class Budget {
 
     // Calculate progress percentage
     public int getProgressPercentage() {
-        if (totalAmount <= 0) return 0;
-        return (int) Math.min(100, (spentAmount / totalAmount) * 100);
+        return Math.min(100, Money.ofMinor(spentAmount).percentOf(Money.ofMinor(totalAmount)));
     }
 
 
     // Get remaining amount
-    public double getRemainingAmount() {
+    public long getRemainingAmount() {
         return totalAmount - spentAmount;
     }
 
@@ -0,0 +1,133 @@
+package models;
+
+/**
+ * Kết quả tổng hợp cho Dashboard - được tính bằng 1 truy vấn duy nhất
+ * (xem viewmodels.DashboardViewModel)
+ */
+public class DashboardSummary {
+    private boolean userExists;
+
+    // Tích lũy (tất cả thời gian)
+    private long totalIncome; // minor units (đồng), xem Money
+    private long totalExpense;
+
+    // Tháng hiện tại
+    private long monthIncome;
+    private long monthExpense;
+
+    // Tháng trước
+    private long previousMonthIncome;
+    private long previousMonthExpense;
+
+    private int recentTransactionCount; // 7 ngày gần nhất
+    private int totalTransactionCount;
+    private int unreadNotificationCount;
+
+    // Constructors
+    public DashboardSummary() {}
+
+    // Getters and Setters
+    public boolean isUserExists() {
+        return userExists;
+    }
+
+    public void setUserExists(boolean userExists) {
+        this.userExists = userExists;
+    }
+
+    public long getTotalIncome() {
+        return totalIncome;
+    }
+
+    public void setTotalIncome(long totalIncome) {
+        this.totalIncome = totalIncome;
+    }
+
+    public long getTotalExpense() {
+        return totalExpense;
+    }
+
+    public void setTotalExpense(long totalExpense) {
+        this.totalExpense = totalExpense;
+    }
+
+    public long getMonthIncome() {
+        return monthIncome;
+    }
+
+    public void setMonthIncome(long monthIncome) {
+        this.monthIncome = monthIncome;
+    }
+
+    public long getMonthExpense() {
+        return monthExpense;
+    }
+
+    public void setMonthExpense(long monthExpense) {
+        this.monthExpense = monthExpense;
+    }
+
+    public long getPreviousMonthIncome() {
+        return previousMonthIncome;
+    }
+
+    public void setPreviousMonthIncome(long previousMonthIncome) {
+        this.previousMonthIncome = previousMonthIncome;
+    }
+
+    public long getPreviousMonthExpense() {
+        return previousMonthExpense;
+    }
+
+    public void setPreviousMonthExpense(long previousMonthExpense) {
+        this.previousMonthExpense = previousMonthExpense;
+    }
+
+    public int getRecentTransactionCount() {
+        return recentTransactionCount;
+    }
+
+    public void setRecentTransactionCount(int recentTransactionCount) {
+        this.recentTransactionCount = recentTransactionCount;
+    }
+
+    public int getTotalTransactionCount() {
+        return totalTransactionCount;
+    }
+
+    public void setTotalTransactionCount(int totalTransactionCount) {
+        this.totalTransactionCount = totalTransactionCount;
+    }
+
+    public int getUnreadNotificationCount() {
+        return unreadNotificationCount;
+    }
+
+    public void setUnreadNotificationCount(int unreadNotificationCount) {
+        this.unreadNotificationCount = unreadNotificationCount;
+    }
+
+    // Utility methods
+    public long getTotalBalance() {
+        return totalIncome - totalExpense;
+    }
+
+    public long getPreviousMonthBalance() {
+        return previousMonthIncome - previousMonthExpense;
+    }
+
+    @Override
+    public String toString() {
+        return "DashboardSummary{" +
+                "userExists=" + userExists +
+                ", totalIncome=" + totalIncome +
+                ", totalExpense=" + totalExpense +
+                ", monthIncome=" + monthIncome +
+                ", monthExpense=" + monthExpense +
+                ", previousMonthIncome=" + previousMonthIncome +
+                ", previousMonthExpense=" + previousMonthExpense +
+                ", recentTransactionCount=" + recentTransactionCount +
+                ", totalTransactionCount=" + totalTransactionCount +
+                '}';
+    }
+}
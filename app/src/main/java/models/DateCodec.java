@@ -0,0 +1,295 @@
+package models;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * 📅 Mã hóa ngày dùng chung: "yyyy-MM-dd" / "dd/MM/yyyy" <-> epoch day (số ngày kể từ 1970-01-01).
+ *
+ * Cột transactions.date_epoch_day lưu giá trị này nên lọc khoảng ngày, group và sort đều là so sánh số nguyên.
+ * Parse/format tính bằng số học lịch Gregory trên int (không SimpleDateFormat, không Calendar),
+ * không có trạng thái dùng chung nên gọi được từ mọi thread. java.time cần API 26 nên không dùng ở đây.
+ */
+public final class DateCodec {
+
+    // Chuỗi không phải ngày hợp lệ
+    public static final int INVALID = Integer.MIN_VALUE;
+
+    public static final String PERIOD_WEEKLY = "weekly";
+    public static final String PERIOD_MONTHLY = "monthly";
+    public static final String PERIOD_YEARLY = "yearly";
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    // Cache chuỗi đã format theo epoch day (direct-mapped, lũy thừa của 2) - đủ cho ~2.8 năm quanh các ngày hay dùng
+    private static final int CACHE_SIZE = 1024;
+    private static final Formatted[] CACHE = new Formatted[CACHE_SIZE];
+
+    // Entry bất biến: ghi/đọc tham chiếu là atomic nên không cần khóa
+    private static final class Formatted {
+        final int epochDay;
+        final String iso;
+        final String display;
+
+        Formatted(int epochDay, String iso, String display) {
+            this.epochDay = epochDay;
+            this.iso = iso;
+            this.display = display;
+        }
+    }
+
+    private DateCodec() {}
+
+    // ==================== PARSE ====================
+
+    /**
+     * "yyyy-MM-dd" (cho phép phần giờ phía sau, vd "yyyy-MM-dd HH:mm:ss") hoặc "dd/MM/yyyy" -> epoch day.
+     * Trả về INVALID nếu không đúng định dạng hoặc ngày không tồn tại.
+     */
+    public static int parse(String text) {
+        if (text == null || text.length() < 10) return INVALID;
+
+        if (text.charAt(4) == '-' && text.charAt(7) == '-') {
+            return of(digits(text, 0, 4), digits(text, 5, 2), digits(text, 8, 2));
+        }
+        if (text.charAt(2) == '/' && text.charAt(5) == '/' && text.length() == 10) {
+            return of(digits(text, 6, 4), digits(text, 3, 2), digits(text, 0, 2));
+        }
+        return INVALID;
+    }
+
+    /**
+     * Ngày dương lịch -> epoch day, INVALID nếu ngày không tồn tại (vd 31/02)
+     */
+    public static int of(int year, int month, int day) {
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return INVALID;
+        }
+
+        // days_from_civil (thuật toán của Howard Hinnant), năm bắt đầu từ tháng 3
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    // n chữ số thập phân bắt đầu tại start, -1 nếu có ký tự khác
+    private static int digits(String text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // ==================== FORMAT ====================
+
+    /**
+     * epoch day -> "yyyy-MM-dd" (định dạng lưu trong database)
+     */
+    public static String format(int epochDay) {
+        return formatted(epochDay).iso;
+    }
+
+    /**
+     * epoch day -> "dd/MM/yyyy" (định dạng hiển thị)
+     */
+    public static String formatDisplay(int epochDay) {
+        return formatted(epochDay).display;
+    }
+
+    private static Formatted formatted(int epochDay) {
+        int slot = epochDay & (CACHE_SIZE - 1);
+        Formatted entry = CACHE[slot];
+        if (entry == null || entry.epochDay != epochDay) {
+            int date = civil(epochDay);
+            int year = date / 10000, month = date / 100 % 100, day = date % 100;
+
+            char[] iso = new char[10];
+            putDigits(iso, 0, year, 4);
+            iso[4] = '-';
+            putDigits(iso, 5, month, 2);
+            iso[7] = '-';
+            putDigits(iso, 8, day, 2);
+
+            char[] display = new char[10];
+            putDigits(display, 0, day, 2);
+            display[2] = '/';
+            putDigits(display, 3, month, 2);
+            display[5] = '/';
+            putDigits(display, 6, year, 4);
+
+            entry = new Formatted(epochDay, new String(iso), new String(display));
+            CACHE[slot] = entry;
+        }
+        return entry;
+    }
+
+    private static void putDigits(char[] out, int start, int value, int count) {
+        for (int i = start + count - 1; i >= start; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Chuẩn hóa về "yyyy-MM-dd" (nhận cả "dd/MM/yyyy"); giữ nguyên chuỗi nếu không parse được
+     */
+    public static String toDbDate(String text) {
+        int epochDay = parse(text);
+        return epochDay == INVALID ? text : format(epochDay);
+    }
+
+    /**
+     * Chuẩn hóa về "dd/MM/yyyy" để hiển thị; giữ nguyên chuỗi nếu không parse được
+     */
+    public static String toDisplayDate(String text) {
+        int epochDay = parse(text);
+        return epochDay == INVALID ? text : formatDisplay(epochDay);
+    }
+
+    /**
+     * Tham số SQL để so sánh với cột date_epoch_day (ngày không hợp lệ thì không khớp dòng nào)
+     */
+    public static String toEpochDayArg(String text) {
+        return String.valueOf(parse(text));
+    }
+
+    // ==================== CALENDAR FIELDS ====================
+
+    // civil_from_days -> yyyyMMdd dạng int
+    private static int civil(int epochDay) {
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 10000 + month * 100 + day;
+    }
+
+    public static int year(int epochDay) {
+        return civil(epochDay) / 10000;
+    }
+
+    public static int month(int epochDay) {
+        return civil(epochDay) / 100 % 100;
+    }
+
+    public static int dayOfMonth(int epochDay) {
+        return civil(epochDay) % 100;
+    }
+
+    /**
+     * Thứ trong tuần theo ISO: 1 = Thứ Hai ... 7 = Chủ Nhật (1970-01-01 là Thứ Năm)
+     */
+    public static int dayOfWeek(int epochDay) {
+        return Math.floorMod(epochDay + 3, 7) + 1;
+    }
+
+    public static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    public static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // ==================== PERIOD BOUNDARIES ====================
+
+    // Tuần bắt đầu từ Thứ Hai
+    public static int startOfWeek(int epochDay) {
+        return epochDay - (dayOfWeek(epochDay) - 1);
+    }
+
+    public static int endOfWeek(int epochDay) {
+        return startOfWeek(epochDay) + 6;
+    }
+
+    public static int startOfMonth(int epochDay) {
+        return epochDay - dayOfMonth(epochDay) + 1;
+    }
+
+    public static int endOfMonth(int epochDay) {
+        int date = civil(epochDay);
+        int year = date / 10000, month = date / 100 % 100;
+        return epochDay + daysInMonth(year, month) - date % 100;
+    }
+
+    public static int startOfYear(int epochDay) {
+        return of(year(epochDay), 1, 1);
+    }
+
+    public static int endOfYear(int epochDay) {
+        return of(year(epochDay), 12, 31);
+    }
+
+    /**
+     * Cộng n tháng, ngày bị kẹp về cuối tháng nếu tháng đích ngắn hơn (31/01 + 1 tháng = 28|29/02)
+     */
+    public static int plusMonths(int epochDay, int months) {
+        int date = civil(epochDay);
+        int total = (date / 10000) * 12 + (date / 100 % 100 - 1) + months;
+        int year = Math.floorDiv(total, 12);
+        int month = Math.floorMod(total, 12) + 1;
+        return of(year, month, Math.min(date % 100, daysInMonth(year, month)));
+    }
+
+    /**
+     * Kỳ (weekly / monthly / yearly) chứa ngày epochDay
+     *
+     * @return {start, end} - 2 đầu đều tính
+     */
+    public static int[] periodBounds(String period, int epochDay) {
+        if (PERIOD_WEEKLY.equals(period)) {
+            return new int[]{startOfWeek(epochDay), endOfWeek(epochDay)};
+        }
+        if (PERIOD_YEARLY.equals(period)) {
+            return new int[]{startOfYear(epochDay), endOfYear(epochDay)};
+        }
+        return new int[]{startOfMonth(epochDay), endOfMonth(epochDay)};
+    }
+
+    // ==================== CLOCK ====================
+
+    /**
+     * Hôm nay theo múi giờ của máy
+     */
+    public static int today() {
+        return fromMillis(System.currentTimeMillis());
+    }
+
+    public static int fromMillis(long millis) {
+        long local = millis + TimeZone.getDefault().getOffset(millis);
+        return (int) Math.floorDiv(local, MILLIS_PER_DAY);
+    }
+
+    public static int fromDate(Date date) {
+        return fromMillis(date.getTime());
+    }
+
+    /**
+     * 00:00 giờ địa phương của ngày epochDay
+     */
+    public static Date toDate(int epochDay) {
+        long utcMidnight = epochDay * MILLIS_PER_DAY;
+        return new Date(utcMidnight - TimeZone.getDefault().getOffset(utcMidnight));
+    }
+}
@@ -9,8 +9,8 @@ import java.time.temporal.ChronoUnit;
 public class Goal {
     private int id;
     private String name;
-    private double targetAmount;
-    private double currentAmount;
+    private long targetAmount;  // minor units (đồng), xem Money
+    private long currentAmount;
     private String deadline;
     private String icon;
     private String status;
@@ -20,7 +20,7 @@ public class Goal {
     // Constructors
     public Goal() {}
 
-    public Goal(String name, double targetAmount, double currentAmount, String deadline,
+    public Goal(String name, long targetAmount, long currentAmount, String deadline,
                 String icon, String status, int userId) {
         this.name = name;
         this.targetAmount = targetAmount;
@@ -48,19 +48,19 @@ public class Goal {
         this.name = name;
     }
 
-    public double getTargetAmount() {
+    public long getTargetAmount() {
         return targetAmount;
     }
 
-    public void setTargetAmount(double targetAmount) {
+    public void setTargetAmount(long targetAmount) {
         this.targetAmount = targetAmount;
     }
 
-    public double getCurrentAmount() {
+    public long getCurrentAmount() {
         return currentAmount;
     }
 
-    public void setCurrentAmount(double currentAmount) {
+    public void setCurrentAmount(long currentAmount) {
         this.currentAmount = currentAmount;
     }
 
@@ -110,14 +110,13 @@ public class Goal {
      * Get progress percentage (0-100)
      */
     public int getProgressPercentage() {
-        if (targetAmount <= 0) return 0;
-        return Math.min(100, (int) ((currentAmount * 100) / targetAmount));
+        return Math.min(100, Money.ofMinor(currentAmount).percentOf(Money.ofMinor(targetAmount)));
     }
 
     /**
      * Get remaining amount needed
      */
-    public double getRemainingAmount() {
+    public long getRemainingAmount() {
         return Math.max(0, targetAmount - currentAmount);
     }
 
@@ -160,7 +159,7 @@ public class Goal {
         if (daysLeft <= 0 || isCompleted()) {
             return 0;
         }
-        return getRemainingAmount() / daysLeft;
+        return (double) getRemainingAmount() / daysLeft;
     }
 
     /**
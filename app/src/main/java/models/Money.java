@@ -0,0 +1,115 @@
+package models;
+
+import java.text.DecimalFormat;
+
+/**
+ * 💰 Số tiền dạng số nguyên theo đơn vị nhỏ nhất (minor unit).
+ *
+ * App dùng VND - không có đơn vị lẻ (ISO 4217: 0 chữ số thập phân) nên 1 minor unit = 1 đồng,
+ * các cột INTEGER trong database lưu trực tiếp số đồng. Cộng/trừ/so sánh đều trên long nên
+ * tổng ngân sách, rollup, số dư luôn chính xác, không bị lệch như khi cộng dồn double.
+ */
+public final class Money implements Comparable<Money> {
+
+    public static final Money ZERO = new Money(0);
+
+    private static final DecimalFormat FORMATTER = new DecimalFormat("#,###");
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    public static Money ofMinor(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    /**
+     * Từ số tiền nhập vào (EditText, giá trị double cũ) - làm tròn tới đồng
+     */
+    public static Money fromMajor(double amount) {
+        return ofMinor(toMinorUnits(amount));
+    }
+
+    /**
+     * Giá trị để ghi vào cột INTEGER
+     */
+    public static long toMinorUnits(double amount) {
+        return Math.round(amount);
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    // Cho biểu đồ / phép tính tỉ lệ cần số thực
+    public double toMajor() {
+        return minorUnits;
+    }
+
+    public Money plus(Money other) {
+        return ofMinor(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money plus(long otherMinorUnits) {
+        return ofMinor(Math.addExact(minorUnits, otherMinorUnits));
+    }
+
+    public Money minus(Money other) {
+        return ofMinor(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money negate() {
+        return ofMinor(Math.negateExact(minorUnits));
+    }
+
+    public boolean isZero() {
+        return minorUnits == 0;
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    /**
+     * Phần trăm (làm tròn xuống) của số tiền này so với total, 0 nếu total <= 0
+     */
+    public int percentOf(Money total) {
+        if (total.minorUnits <= 0) return 0;
+        return (int) (minorUnits * 100 / total.minorUnits);
+    }
+
+    // "1,250,000"
+    public String format() {
+        synchronized (FORMATTER) {
+            return FORMATTER.format(minorUnits);
+        }
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Money)) return false;
+        return minorUnits == ((Money) o).minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        return format() + " đ";
+    }
+}
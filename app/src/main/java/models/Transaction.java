@@ -9,11 +9,12 @@ import java.util.Locale;
 public class Transaction {
     private Long id;
     private String type; // "income" or "expense"
-    private double amount;
+    private long amount; // minor units (đồng), xem Money
     private Long categoryId;
     private Long userId;
     private String note;
     private String date;
+    private int dateEpochDay = DateCodec.INVALID; // cột date_epoch_day
     private String paymentMethod;
     private String createdAt;
     private String updatedAt;
@@ -26,13 +27,11 @@ public class Transaction {
 
     // Formatters
     private static final DecimalFormat CURRENCY_FORMATTER = new DecimalFormat("#,###,###");
-    private static final SimpleDateFormat DATE_FORMATTER = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-    private static final SimpleDateFormat DISPLAY_DATE_FORMATTER = new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
 
     // Constructors
     public Transaction() {}
 
-    public Transaction(String type, double amount, Long categoryId, String note, String date, String paymentMethod) {
+    public Transaction(String type, long amount, Long categoryId, String note, String date, String paymentMethod) {
         this.type = type;
         this.amount = amount;
         this.categoryId = categoryId;
@@ -58,14 +57,18 @@ public class Transaction {
         this.type = type;
     }
 
-    public double getAmount() {
+    public long getAmount() {
         return amount;
     }
 
-    public void setAmount(double amount) {
+    public void setAmount(long amount) {
         this.amount = amount;
     }
 
+    public Money getMoney() {
+        return Money.ofMinor(amount);
+    }
+
     public Long getCategoryId() {
         return categoryId;
     }
@@ -96,6 +99,19 @@ public class Transaction {
 
     public void setDate(String date) {
         this.date = date;
+        this.dateEpochDay = DateCodec.INVALID;
+    }
+
+    // Epoch day của date - đọc sẵn từ cột date_epoch_day, nếu chưa có thì tính từ chuỗi date
+    public int getDateEpochDay() {
+        if (dateEpochDay == DateCodec.INVALID) {
+            dateEpochDay = DateCodec.parse(date);
+        }
+        return dateEpochDay;
+    }
+
+    public void setDateEpochDay(int dateEpochDay) {
+        this.dateEpochDay = dateEpochDay;
     }
 
     public String getPaymentMethod() {
@@ -174,20 +190,13 @@ public class Transaction {
     }
 
     public String getFormattedDate() {
-        try {
-            Date parsedDate = DATE_FORMATTER.parse(date);
-            return DISPLAY_DATE_FORMATTER.format(parsedDate);
-        } catch (ParseException e) {
-            return date;
-        }
+        int epochDay = getDateEpochDay();
+        return epochDay == DateCodec.INVALID ? date : DateCodec.formatDisplay(epochDay);
     }
 
     public Date getParsedDate() {
-        try {
-            return DATE_FORMATTER.parse(date);
-        } catch (ParseException e) {
-            return new Date();
-        }
+        int epochDay = getDateEpochDay();
+        return epochDay == DateCodec.INVALID ? new Date() : DateCodec.toDate(epochDay);
     }
 
     public Date getParsedCreatedAt() {
@@ -0,0 +1,195 @@
+package viewmodels;
+
+import android.app.Application;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import database.DatabaseHelper;
+import database.TransactionWriteQueue;
+import models.DashboardSummary;
+import models.DateCodec;
+
+/**
+ * ViewModel cho DashboardActivity.
+ * Toàn bộ số liệu tài chính được lấy bằng 1 truy vấn SUM(CASE ...) trên background thread,
+ * kết quả trả về qua LiveData nên Activity không còn chạy SQL trên main thread trong onResume.
+ */
+public class DashboardViewModel extends AndroidViewModel {
+    private static final String TAG = "DashboardViewModel";
+
+    private final DatabaseHelper dbHelper;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final MutableLiveData<DashboardSummary> summary = new MutableLiveData<>();
+    private final MutableLiveData<String> error = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> loading = new MutableLiveData<>(false);
+
+    // 🧾 Giao dịch ghi nền xong sau khi Dashboard đã load lại trong onResume - load thêm lần nữa
+    private final TransactionWriteQueue.Listener writeListener = this::onTransactionsCommitted;
+    private int lastUserId = -1;
+
+    public DashboardViewModel(@NonNull Application application) {
+        super(application);
+        dbHelper = DatabaseHelper.getInstance(application);
+        dbHelper.getWriteQueue().addListener(writeListener);
+    }
+
+    public LiveData<DashboardSummary> getSummary() {
+        return summary;
+    }
+
+    public LiveData<String> getError() {
+        return error;
+    }
+
+    public LiveData<Boolean> getLoading() {
+        return loading;
+    }
+
+    /**
+     * Load số liệu Dashboard cho user (chạy trên background executor)
+     */
+    public void loadSummary(int userId) {
+        lastUserId = userId;
+        loading.setValue(true);
+
+        executor.execute(() -> {
+            try {
+                SQLiteDatabase db = dbHelper.getReadableDatabase();
+                DashboardSummary result = querySummary(db, userId);
+
+                if (result.isUserExists()) {
+                    result.setUnreadNotificationCount(queryUnreadNotifications(db, userId));
+                }
+
+                Log.d(TAG, "✅ Loaded summary: " + result);
+                summary.postValue(result);
+
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Error loading dashboard summary: " + e.getMessage());
+                error.postValue(e.getMessage());
+            } finally {
+                loading.postValue(false);
+            }
+        });
+    }
+
+    /**
+     * 1 round-trip: kiểm tra user + tổng tích lũy + tháng này + tháng trước + số giao dịch.
+     * Tổng theo tháng đọc từ monthly_rollups (O(số danh mục x số tháng)),
+     * chỉ số giao dịch 7 ngày gần nhất là range scan trên index (user_id, date_epoch_day).
+     */
+    private DashboardSummary querySummary(SQLiteDatabase db, int userId) {
+        int today = DateCodec.today();
+
+        // Tháng hiện tại + tháng trước ("yyyy-MM")
+        String currentMonth = DateCodec.format(today).substring(0, 7);
+        String previousMonth = DateCodec.format(DateCodec.plusMonths(DateCodec.startOfMonth(today), -1)).substring(0, 7);
+
+        // 7 ngày gần nhất
+        String recentStart = String.valueOf(today - 7);
+
+        String total = DatabaseHelper.COLUMN_ROLLUP_TOTAL;
+        String type = DatabaseHelper.COLUMN_TYPE;
+        String yearMonth = DatabaseHelper.COLUMN_YEAR_MONTH;
+
+        String query = "SELECT " +
+                "(SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_USERS +
+                " WHERE " + DatabaseHelper.COLUMN_ID + " = ?) AS user_exists, " +
+                "COALESCE(SUM(CASE WHEN " + type + " = 'income' THEN " + total + " END), 0) AS total_income, " +
+                "COALESCE(SUM(CASE WHEN " + type + " = 'expense' THEN " + total + " END), 0) AS total_expense, " +
+                "COALESCE(SUM(CASE WHEN " + type + " = 'income' AND " + yearMonth + " = ? THEN " + total + " END), 0) AS month_income, " +
+                "COALESCE(SUM(CASE WHEN " + type + " = 'expense' AND " + yearMonth + " = ? THEN " + total + " END), 0) AS month_expense, " +
+                "COALESCE(SUM(CASE WHEN " + type + " = 'income' AND " + yearMonth + " = ? THEN " + total + " END), 0) AS prev_income, " +
+                "COALESCE(SUM(CASE WHEN " + type + " = 'expense' AND " + yearMonth + " = ? THEN " + total + " END), 0) AS prev_expense, " +
+                "(SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_TRANSACTIONS +
+                " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ? AND " + DatabaseHelper.COLUMN_DATE_EPOCH_DAY + " >= ?) AS recent_count, " +
+                "COALESCE(SUM(" + DatabaseHelper.COLUMN_ROLLUP_TX_COUNT + "), 0) AS total_count " +
+                "FROM " + DatabaseHelper.TABLE_MONTHLY_ROLLUPS +
+                " WHERE " + DatabaseHelper.COLUMN_USER_ID + " = ?";
+
+        String userIdStr = String.valueOf(userId);
+        String[] params = new String[]{
+                userIdStr,
+                currentMonth, currentMonth,
+                previousMonth, previousMonth,
+                userIdStr, recentStart,
+                userIdStr
+        };
+
+        DashboardSummary result = new DashboardSummary();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(query, params);
+            if (cursor.moveToFirst()) {
+                result.setUserExists(cursor.getInt(0) > 0);
+                result.setTotalIncome(cursor.getLong(1));
+                result.setTotalExpense(cursor.getLong(2));
+                result.setMonthIncome(cursor.getLong(3));
+                result.setMonthExpense(cursor.getLong(4));
+                result.setPreviousMonthIncome(cursor.getLong(5));
+                result.setPreviousMonthExpense(cursor.getLong(6));
+                result.setRecentTransactionCount(cursor.getInt(7));
+                result.setTotalTransactionCount(cursor.getInt(8));
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return result;
+    }
+
+    private int queryUnreadNotifications(SQLiteDatabase db, int userId) {
+        Cursor cursor = null;
+        try {
+            // Bảng notifications có thể chưa tồn tại
+            cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table' AND name='notifications'", null);
+            boolean tableExists = cursor.moveToFirst();
+            cursor.close();
+            cursor = null;
+
+            if (!tableExists) {
+                return 0;
+            }
+
+            cursor = db.rawQuery("SELECT COUNT(*) FROM notifications WHERE user_id = ? AND is_read = 0",
+                    new String[]{String.valueOf(userId)});
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error checking notifications: " + e.getMessage());
+            return 0;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        dbHelper.getWriteQueue().removeListener(writeListener);
+        executor.shutdownNow();
+    }
+
+    // Main thread (TransactionWriteQueue.Listener)
+    private void onTransactionsCommitted(List<TransactionWriteQueue.Write> writes) {
+        if (lastUserId == -1) return;
+
+        for (TransactionWriteQueue.Write write : writes) {
+            if (write.isCommitted() && write.userId == lastUserId) {
+                loadSummary(lastUserId);
+                return;
+            }
+        }
+    }
+}